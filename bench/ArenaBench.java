@@ -0,0 +1,132 @@
+/*
+ * Created 261018
+ *
+ * Bulk reads of one attribute over many files: byte[] per value vs. XAttrArena
+ *
+ * Usage: java bench.ArenaBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrArena;
+import net.trineo.xattr4j.XAttrBatchResult;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+public class ArenaBench {
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+    /* Files per batch */
+    private static final int N = 256;
+    private static final String NAME = "user.scan.k";
+    private static final byte[] VALUE = new byte[64];
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static long allocated() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return 0;
+        return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * An op reads all N files  reported per file along with heap bytes allocated per file
+     */
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long a = allocated();
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        a = allocated() - a;
+        sink = s;
+
+        double ops = (double) ITERATIONS * N;
+        System.out.printf("  %-32s %8.0f ns/op %8.1f B/op%n", what, ns / ops, a / ops);
+    }
+
+    private static void bench(File[] files) throws IOException {
+        final String[] spaths = new String[N];
+        final XAttrPath[] paths = new XAttrPath[N];
+        for (int i = 0; i < N; i++) {
+            XAttr4J.setxattr(files[i], NAME, VALUE, 0);
+            spaths[i] = files[i].getPath();
+            paths[i] = new XAttrPath(spaths[i]);
+        }
+        final XAttrName name = XAttrName.of(NAME);
+
+        measure("getxattr(XAttrPath) loop", new Op() {
+            public long run() throws IOException {
+                long s = 0;
+                for (XAttrPath p : paths) s += XAttr4J.getxattr(p, NAME, 0)[0];
+                return s;
+            }
+        });
+        measure("getxattrBatch(XAttrPath[])", new Op() {
+            public long run() throws IOException {
+                XAttrBatchResult r = XAttr4J.getxattrBatch(paths, NAME, 0);
+                return r.size();
+            }
+        });
+
+        /* Sized to hold the whole batch */
+        final XAttrArena arena = new XAttrArena(N * VALUE.length, N);
+        measure("XAttrArena.getxattr", new Op() {
+            public long run() throws IOException {
+                arena.reset();
+                arena.getxattr(paths, 0, N, name, 0);
+                long s = 0;
+                for (int i = 0; i < arena.size(); i++) s += arena.valueHashCode(i);
+                return s;
+            }
+        });
+
+        /* Too small for the batch  resumes four times */
+        final XAttrArena quarter = new XAttrArena(N * VALUE.length / 4, N);
+        measure("XAttrArena.getxattr(1/4 arena)", new Op() {
+            public long run() throws IOException {
+                long s = 0;
+                for (int next = 0; next < N; ) {
+                    quarter.reset();
+                    next = quarter.getxattr(paths, next, N, name, 0);
+                    s += quarter.size();
+                }
+                return s;
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) {
+            File d = new File(dir, "xattr4j_arena_" + UUID.randomUUID().toString());
+            if (!d.mkdir()) throw new IOException("Cannot create directory in " + dir);
+            File[] files = new File[N];
+            try {
+                for (int i = 0; i < N; i++) {
+                    files[i] = new File(d, "f" + i);
+                    if (!files[i].createNewFile()) throw new IOException("Cannot create " + files[i]);
+                }
+                System.out.println(dir + "(" + N + " files)");
+                bench(files);
+            } finally {
+                for (File f : files) if (f != null) f.delete();
+                d.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Created 261018
+ *
+ * Per-call latency of the selected backend(JNI or Panama FFM)
+ *
+ * Usage: java [-Dnet.trineo.xattr4j.backend=jni] bench.BackendBench [dir ...]
+ *  run once per backend and compare  FFM is only available on JDK 22+
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+public class BackendBench {
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 1000000;
+    private static final XAttrName NAME = XAttrName.of("user.xattr4j.bench");
+    private static final XAttrName MISSING = XAttrName.of("user.xattr4j.missing");
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-24s %8.0f ns/op%n", what, (double) ns / ITERATIONS);
+    }
+
+    private static void bench(File dir) throws IOException {
+        final File f = new File(dir, "xattr4j_backend_" + UUID.randomUUID().toString());
+        if (!f.createNewFile()) throw new IOException("Cannot create " + f);
+
+        try {
+            final XAttrPath p = new XAttrPath(f);
+            final byte[] value = "0123456789abcdef0123456789abcdef".getBytes("UTF-8");
+            XAttr4J.setxattr(p, NAME, value, 0);
+
+            System.out.printf("%s  backend: %s  java: %s%n", dir, XAttr4J.backend(), System.getProperty("java.version"));
+
+            measure("getxattr(32B)", new Op() {
+                public long run() throws IOException {
+                    return XAttr4J.getxattr(p, NAME, 0).length;
+                }
+            });
+            measure("getxattrOrNull(miss)", new Op() {
+                public long run() throws IOException {
+                    return XAttr4J.getxattrOrNull(p, MISSING, 0) == null ? 1 : 0;
+                }
+            });
+            measure("setxattr(32B)", new Op() {
+                public long run() throws IOException {
+                    XAttr4J.setxattr(p, NAME, value, 0);
+                    return 1;
+                }
+            });
+            measure("listxattr", new Op() {
+                public long run() throws IOException {
+                    return XAttr4J.listxattr(p, null, 0).size();
+                }
+            });
+            measure("sizexattr", new Op() {
+                public long run() throws IOException {
+                    return XAttr4J.sizexattr(p, NAME, 0);
+                }
+            });
+        } finally {
+            f.delete();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) bench(new File(dir));
+    }
+}
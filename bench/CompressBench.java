@@ -0,0 +1,112 @@
+/*
+ * Created 261018
+ *
+ * Plain vs. compressed JSON-ish values of 1-8 KiB
+ *
+ * Usage: java bench.CompressBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrCompression;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+public class CompressBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+    private static final XAttrName NAME = XAttrName.of("user.xattr4j.json");
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-32s %8.0f ns/op%n", what, (double) ns / ITERATIONS);
+    }
+
+    private static byte[] json(int size) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; sb.length() < size - 64; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"file").append(i).append("\":{\"owner\":\"u").append(i % 7)
+              .append("\",\"mtime\":").append(1540000000L + i * 37).append(",\"tags\":[\"a\",\"b\"]}");
+        }
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void bench(File dir, int size) throws IOException {
+        final File f1 = new File(dir, "xattr4j_plain_" + UUID.randomUUID().toString());
+        final File f2 = new File(dir, "xattr4j_deflate_" + UUID.randomUUID().toString());
+        if (!f1.createNewFile() || !f2.createNewFile()) throw new IOException("Cannot create files in " + dir);
+
+        try {
+            final XAttrPath p1 = new XAttrPath(f1);
+            final XAttrPath p2 = new XAttrPath(f2);
+            final byte[] v = json(size);
+            final XAttrCompression c = new XAttrCompression();
+
+            XAttr4J.setxattr(p1, NAME, v, 0);
+            c.setxattr(p2, NAME, v, 0);
+            System.out.printf("%s  %d bytes stored as %d%n", dir, v.length, XAttr4J.sizexattr(p2, NAME, 0));
+
+            measure("get(plain)", new Op() {
+                public long run() throws IOException {
+                    return XAttr4J.getxattr(p1, NAME, 0).length;
+                }
+            });
+            measure("get(compressed)", new Op() {
+                public long run() throws IOException {
+                    return XAttrCompression.getxattr(p2, NAME, 0).length;
+                }
+            });
+            measure("set(plain)", new Op() {
+                public long run() throws IOException {
+                    XAttr4J.setxattr(p1, NAME, v, 0);
+                    return 1;
+                }
+            });
+            measure("set(compressed)", new Op() {
+                public long run() throws IOException {
+                    c.setxattr(p2, NAME, v, 0);
+                    return 1;
+                }
+            });
+        } finally {
+            f1.delete();
+            f2.delete();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        /* Plain values past ~4 KiB need a file system taking them(e.g. tmpfs  XFS  ext4 with ea_inode) */
+        for (String dir : args) {
+            for (int size : new int[]{1024, 3072, 8192}) {
+                try {
+                    bench(new File(dir), size);
+                } catch (IOException e) {
+                    System.out.printf("%s  %d bytes: %s%n", dir, size, e.getMessage());
+                }
+            }
+        }
+    }
+}
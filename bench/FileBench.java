@@ -0,0 +1,111 @@
+/*
+ * Created 261018
+ *
+ * Repeated operations on one file: path-oriented calls vs. XAttrFile
+ *
+ * Usage: java bench.FileBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrFile;
+import net.trineo.xattr4j.XAttrPath;
+
+public class FileBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+    /* Path components below dir  each costs a lookup per path-oriented call */
+    private static final int DEPTH = 8;
+    private static final String NAME = "user.lease.owner";
+    private static final byte[] VALUE = new byte[32];
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-32s %8.0f ns/op%n", what, (double) ns / ITERATIONS);
+    }
+
+    private static void bench(final File f) throws IOException, InterruptedException {
+        final String path = f.getPath();
+        final XAttrPath p = new XAttrPath(path);
+        XAttr4J.setxattr(f, NAME, VALUE, 0);
+
+        measure("getxattr(String)", new Op() {
+            public long run() throws IOException {
+                return XAttr4J.getxattr(path, NAME, 0).length;
+            }
+        });
+        measure("getxattr(XAttrPath)", new Op() {
+            public long run() throws IOException {
+                return XAttr4J.getxattr(p, NAME, 0).length;
+            }
+        });
+        try (final XAttrFile x = XAttrFile.open(p, 0)) {
+            measure("XAttrFile.getxattr", new Op() {
+                public long run() throws IOException {
+                    return x.getxattr(NAME).length;
+                }
+            });
+            measure("XAttrFile.setxattr", new Op() {
+                public long run() throws IOException {
+                    x.setxattr(NAME, VALUE);
+                    return 1;
+                }
+            });
+        }
+        measure("setxattr(String)", new Op() {
+            public long run() throws IOException {
+                XAttr4J.setxattr(path, NAME, VALUE, 0);
+                return 1;
+            }
+        });
+
+        /* Let ctime age so that cached entries are trusted */
+        Thread.sleep(1100);
+        try (final XAttrFile x = XAttrFile.open(p, 0, 16)) {
+            measure("XAttrFile.getxattr(cached)", new Op() {
+                public long run() throws IOException {
+                    return x.getxattr(NAME).length;
+                }
+            });
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) {
+            File top = new File(dir, "xattr4j_file_" + UUID.randomUUID().toString());
+            File d = top;
+            for (int i = 0; i < DEPTH; i++) d = new File(d, "d" + i);
+            if (!d.mkdirs()) throw new IOException("Cannot create directories in " + dir);
+            File f = new File(d, "f");
+            try {
+                if (!f.createNewFile()) throw new IOException("Cannot create " + f);
+                System.out.println(dir + "(depth " + (DEPTH + 1) + ")");
+                bench(f);
+            } finally {
+                f.delete();
+                for (File x = d; !x.equals(top.getParentFile()); x = x.getParentFile()) x.delete();
+            }
+        }
+    }
+}
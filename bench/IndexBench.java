@@ -0,0 +1,148 @@
+/*
+ * Created 261018
+ *
+ * "Which files have user.tier=cold": rescanning a tree vs. querying an XAttrIndex
+ *
+ * Usage: java bench.IndexBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrIndex;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrWalker;
+
+public class IndexBench {
+    private static final int DIRS = 20;
+    private static final int FILES = 1000;
+    private static final int PARALLELISM = 4;
+    private static final byte[] COLD = "cold".getBytes();
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, int warmup, int iterations, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < warmup; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < iterations; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-32s %12.0f ns/op%n", what, (double) ns / iterations);
+    }
+
+    private static void bench(final String root, final File index) throws IOException {
+        final XAttrWalker walker = new XAttrWalker(PARALLELISM, 0, "user.tier");
+        measure("walk and filter", 2, 10, new Op() {
+            public long run() throws IOException {
+                final AtomicLong n = new AtomicLong();
+                walker.walk(root, new XAttrWalker.Visitor() {
+                    public void visit(String path, XAttrName name, byte[] value) {
+                        if (Arrays.equals(value, COLD)) n.incrementAndGet();
+                    }
+
+                    public void failed(String path, IOException e) {}
+                });
+                return n.get();
+            }
+        });
+
+        measure("XAttrIndex.build", 1, 5, new Op() {
+            public long run() throws IOException {
+                return XAttrIndex.build(index, root, PARALLELISM, "user.").fileCount();
+            }
+        });
+
+        final XAttrIndex x = XAttrIndex.open(index);
+        measure("XAttrIndex.find", 1000, 10000, new Op() {
+            public long run() {
+                return x.find("user.tier", COLD).size();
+            }
+        });
+        measure("XAttrIndex.find(absent)", 20000, 100000, new Op() {
+            public long run() {
+                return x.find("user.tier", "warm").size();
+            }
+        });
+        measure("XAttrIndex.findByPrefix", 20, 200, new Op() {
+            public long run() {
+                final long[] n = new long[1];
+                return x.findByPrefix("user.app.", new XAttrIndex.Visitor() {
+                    public void visit(String path, XAttrName name, byte[] value) {
+                        n[0] += value.length;
+                    }
+                }) + n[0];
+            }
+        });
+
+        /* Nothing changed  a stat(2) per file */
+        measure("XAttrIndex.refresh(unchanged)", 1, 5, new Op() {
+            public long run() throws IOException {
+                return x.refresh(PARALLELISM).fileCount();
+            }
+        });
+
+        /* One file changed  written to the delta segment rather than rewriting the index */
+        final String one = root + "/d0/f1";
+        final List<String> paths = Collections.singletonList(one);
+        measure("XAttrIndex.update(1 file)", 2, 20, new Op() {
+            int i;
+
+            public long run() throws IOException {
+                XAttr4J.setxattr(one, "user.tier", i++ % 2 == 0 ? "warm" : "hot", 0);
+                return x.update(paths, PARALLELISM).fileCount();
+            }
+        });
+    }
+
+    private static void delete(File f) {
+        File[] l = f.listFiles();
+        if (l != null) for (File c : l) delete(c);
+        f.delete();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) {
+            File root = new File(dir, "xattr4j_index_" + UUID.randomUUID().toString());
+            File index = new File(dir, root.getName() + ".xidx");
+            try {
+                for (int d = 0; d < DIRS; d++) {
+                    File sub = new File(root, "d" + d);
+                    if (!sub.mkdirs()) throw new IOException("Cannot create " + sub);
+                    for (int f = 0; f < FILES; f++) {
+                        File file = new File(sub, "f" + f);
+                        if (!file.createNewFile()) throw new IOException("Cannot create " + file);
+                        XAttr4J.setxattr(file, "user.tier", f % 10 == 0 ? "cold" : "hot", 0);
+                        XAttr4J.setxattr(file, "user.app.id", d + "/" + f, 0);
+                    }
+                }
+                /* Let ctime age so that indexed files are verified */
+                Thread.sleep(1100);
+
+                System.out.println(dir + "(" + DIRS * FILES + " files)");
+                bench(root.getAbsolutePath(), index);
+            } finally {
+                delete(root);
+                index.delete();
+                new File(index.getPath() + ".delta").delete();
+            }
+        }
+    }
+}
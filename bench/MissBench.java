@@ -0,0 +1,125 @@
+/*
+ * Created 261018
+ *
+ * Miss-path throughput of throwing lookups against non-throwing probes
+ *
+ * Usage: java bench.MissBench [dir ...]
+ *  e.g. java bench.MissBench /dev/shm /var/tmp
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrPath;
+
+public class MissBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+
+    private static final String XATTR_NAME = "user.xattr4j.bench.missing";
+
+    /* Prevent JIT from eliminating benchmarked calls */
+    private static long sink;
+
+    private interface Op {
+        void run() throws IOException;
+    }
+
+    private static double measure(Op op) throws IOException {
+        for (int i = 0; i < WARMUP; i++) op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) op.run();
+        return (double) (System.nanoTime() - t) / ITERATIONS;
+    }
+
+    private static void report(String what, double before, double after) {
+        System.out.printf("  %-24s throwing: %9.1f ns/op  probe: %9.1f ns/op  speedup: %.2fx  (%.0f vs %.0f ops/s)%n",
+                what, before, after, before / after, 1e9 / before, 1e9 / after);
+    }
+
+    private static void bench(File dir) throws IOException {
+        final File f = new File(dir, "xattr4j_bench_" + UUID.randomUUID().toString());
+        if (!f.createNewFile()) throw new IOException("Cannot create " + f);
+
+        try {
+            final String path = f.getAbsolutePath();
+            final XAttrPath xpath = new XAttrPath(f);
+
+            System.out.printf("%s (attribute missing)%n", dir);
+
+            double a = measure(new Op() {
+                public void run() {
+                    try {
+                        sink += XAttr4J.getxattr(path, XATTR_NAME, 0).length;
+                    } catch (IOException e) {
+                        sink--;
+                    }
+                }
+            });
+            double b = measure(new Op() {
+                public void run() throws IOException {
+                    if (XAttr4J.getxattrOrNull(path, XATTR_NAME, 0) == null) sink--;
+                }
+            });
+            report("getxattr", a, b);
+
+            a = measure(new Op() {
+                public void run() {
+                    try {
+                        sink += XAttr4J.sizexattr(path, XATTR_NAME, 0);
+                    } catch (IOException e) {
+                        sink--;
+                    }
+                }
+            });
+            b = measure(new Op() {
+                public void run() {
+                    sink += XAttr4J.trySizexattr(path, XATTR_NAME, 0);
+                }
+            });
+            report("sizexattr", a, b);
+
+            b = measure(new Op() {
+                public void run() {
+                    sink += XAttr4J.trySizexattr(xpath, XATTR_NAME, 0);
+                }
+            });
+            report("sizexattr(XAttrPath)", a, b);
+
+            /* File missing as well */
+            final String nonexist = path + ".nonexist";
+            System.out.printf("%s (file missing)%n", dir);
+
+            a = measure(new Op() {
+                public void run() {
+                    try {
+                        if (XAttr4J.existxattr(nonexist, XATTR_NAME, 0)) sink++;
+                    } catch (IOException e) {
+                        sink--;
+                    }
+                }
+            });
+            b = measure(new Op() {
+                public void run() throws IOException {
+                    if (!XAttr4J.existxattr(nonexist, XATTR_NAME, 0, true)) sink--;
+                }
+            });
+            report("existxattr", a, b);
+        } finally {
+            if (!f.delete()) System.err.println("Cannot delete " + f);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) bench(new File(dir));
+
+        System.out.println("\nsink: " + sink);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Created 261018
+ *
+ * Per-call latency of XAttr4J against JDK's UserDefinedFileAttributeView
+ *
+ * Usage: java bench.ParityBench [dir ...]
+ *  e.g. java bench.ParityBench /dev/shm /var/tmp  (tmpfs vs. ext4)
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+
+public class ParityBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+    private static final int[] SIZES = {16, 256, 4000};
+
+    /* UserDefinedFileAttributeView implicitly prepend "user." namespace on Linux */
+    private static final String VIEW_NAME = "xattr4j.bench";
+    private static final String XATTR_NAME = isLinux() ? "user." + VIEW_NAME : VIEW_NAME;
+
+    /* Prevent JIT from eliminating benchmarked calls */
+    private static long sink;
+
+    private static boolean isLinux() {
+        return System.getProperty("os.name").toLowerCase().startsWith("linux");
+    }
+
+    private interface Op {
+        void run() throws IOException;
+    }
+
+    private static double measure(Op op) throws IOException {
+        for (int i = 0; i < WARMUP; i++) op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) op.run();
+        return (double) (System.nanoTime() - t) / ITERATIONS;
+    }
+
+    private static void report(String what, double xattr4j, double jdk) {
+        System.out.printf("  %-24s xattr4j: %9.1f ns/op  jdk: %9.1f ns/op  speedup: %.2fx%n",
+                what, xattr4j, jdk, jdk / xattr4j);
+    }
+
+    private static void bench(File dir) throws IOException {
+        final File f = new File(dir, "xattr4j_bench_" + UUID.randomUUID().toString());
+        if (!f.createNewFile()) throw new IOException("Cannot create " + f);
+
+        try {
+            final String path = f.getAbsolutePath();
+            Path p = f.toPath();
+            final UserDefinedFileAttributeView view = Files.getFileAttributeView(p, UserDefinedFileAttributeView.class);
+            if (view == null) throw new IOException("UserDefinedFileAttributeView unsupported on " + dir);
+
+            System.out.printf("%s (%s)%n", dir, Files.getFileStore(p).type());
+
+            for (int size : SIZES) {
+                final byte[] value = new byte[size];
+                Arrays.fill(value, (byte) 'x');
+                final ByteBuffer src = ByteBuffer.wrap(value);
+                XAttr4J.setxattr(path, XATTR_NAME, value, 0);
+
+                double a = measure(new Op() {
+                    public void run() throws IOException {
+                        sink += XAttr4J.getxattr(path, XATTR_NAME, 0).length;
+                    }
+                });
+                double b = measure(new Op() {
+                    public void run() throws IOException {
+                        ByteBuffer dst = ByteBuffer.allocate(view.size(VIEW_NAME));
+                        sink += view.read(VIEW_NAME, dst);
+                    }
+                });
+                report("getxattr(" + size + "B)", a, b);
+
+                a = measure(new Op() {
+                    public void run() throws IOException {
+                        XAttr4J.setxattr(path, XATTR_NAME, value, 0);
+                    }
+                });
+                b = measure(new Op() {
+                    public void run() throws IOException {
+                        src.rewind();
+                        sink += view.write(VIEW_NAME, src);
+                    }
+                });
+                report("setxattr(" + size + "B)", a, b);
+            }
+
+            double a = measure(new Op() {
+                public void run() throws IOException {
+                    sink += XAttr4J.listxattr(path, 0).length;
+                }
+            });
+            double b = measure(new Op() {
+                public void run() throws IOException {
+                    sink += view.list().size();
+                }
+            });
+            report("listxattr", a, b);
+
+            a = measure(new Op() {
+                public void run() throws IOException {
+                    sink += XAttr4J.sizexattr(path, XATTR_NAME, 0);
+                }
+            });
+            b = measure(new Op() {
+                public void run() throws IOException {
+                    sink += view.size(VIEW_NAME);
+                }
+            });
+            report("sizexattr", a, b);
+        } finally {
+            if (!f.delete()) System.err.println("Cannot delete " + f);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) bench(new File(dir));
+
+        System.out.println("\nsink: " + sink);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Created 261018
+ *
+ * Twelve metadata fields as twelve attributes vs. one XAttrRecord
+ *
+ * Usage: java bench.RecordBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+import net.trineo.xattr4j.XAttrRecord;
+
+public class RecordBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+    private static final int FIELDS = 12;
+    private static final XAttrName RECORD = XAttrName.of("user.xattr4j.record");
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    /* Alternates updated values  so that record updates are never no-ops */
+    private static int tick;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-32s %8.0f ns/op%n", what, (double) ns / ITERATIONS);
+    }
+
+    private static void bench(File dir) throws IOException {
+        final File f1 = new File(dir, "xattr4j_fields_" + UUID.randomUUID().toString());
+        final File f2 = new File(dir, "xattr4j_record_" + UUID.randomUUID().toString());
+        if (!f1.createNewFile() || !f2.createNewFile()) throw new IOException("Cannot create files in " + dir);
+
+        try {
+            final XAttrPath p1 = new XAttrPath(f1);
+            final XAttrPath p2 = new XAttrPath(f2);
+            final XAttrName[] names = new XAttrName[FIELDS];
+            XAttrRecord.Builder bd = new XAttrRecord.Builder();
+            for (int i = 0; i < FIELDS; i++) {
+                names[i] = XAttrName.of("user.xattr4j.field" + i);
+                XAttr4J.setxattr(p1, names[i], ("value-" + i).getBytes(StandardCharsets.UTF_8), 0);
+                bd.put("field" + i, "value-" + i);
+            }
+            XAttrRecord.setxattr(p2, RECORD, bd.build(), 0);
+
+            System.out.printf("%s  record: %d bytes%n", dir, XAttrRecord.getxattr(p2, RECORD, 0).encodedSize());
+
+            measure("read 12 fields(12 attributes)", new Op() {
+                public long run() throws IOException {
+                    long n = 0;
+                    for (XAttrName name : names) n += XAttr4J.getxattr(p1, name, 0).length;
+                    return n;
+                }
+            });
+            measure("read 12 fields(1 record)", new Op() {
+                public long run() throws IOException {
+                    XAttrRecord r = XAttrRecord.getxattr(p2, RECORD, 0);
+                    long n = 0;
+                    for (int i = 0; i < FIELDS; i++) n += r.getString("field" + i).length();
+                    return n;
+                }
+            });
+            measure("update 1 field(1 attribute)", new Op() {
+                public long run() throws IOException {
+                    XAttr4J.setxattr(p1, names[0], ("v" + (++tick & 1)).getBytes(StandardCharsets.UTF_8), 0);
+                    return 1;
+                }
+            });
+            measure("update 1 field(record RMW)", new Op() {
+                public long run() throws IOException {
+                    final String v = "v" + (++tick & 1);
+                    return XAttrRecord.update(p2, RECORD, 0, b -> b.put("field0", v)).size();
+                }
+            });
+        } finally {
+            f1.delete();
+            f2.delete();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) bench(new File(dir));
+    }
+}
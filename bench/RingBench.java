@@ -0,0 +1,86 @@
+/*
+ * Created 261018
+ *
+ * Bulk getxattr via XAttrRing(io_uring) against one syscall per file
+ *
+ * Usage: java bench.RingBench [dir ...]
+ *  e.g. java bench.RingBench /dev/shm /var/tmp
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrBatchResult;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+import net.trineo.xattr4j.XAttrRing;
+
+public class RingBench {
+    private static final int FILES = 256;
+    private static final int WARMUP = 200;
+    private static final int ROUNDS = 2000;
+    private static final XAttrName NAME = XAttrName.of("user.xattr4j.bench");
+
+    private static long single(XAttrPath[] paths) throws IOException {
+        long n = 0;
+        for (XAttrPath p : paths) n += XAttr4J.getxattr(p, NAME, 0).length;
+        return n;
+    }
+
+    private static long ring(XAttrRing ring, XAttrPath[] paths) throws IOException {
+        for (XAttrPath p : paths) ring.getxattr(p, NAME, 0);
+        XAttrBatchResult r = ring.submit();
+        long n = 0;
+        for (int i = 0; i < r.size(); i++) n += r.value(i).length;
+        return n;
+    }
+
+    private static void bench(File dir) throws IOException {
+        File root = new File(dir, "xattr4j_ring_" + UUID.randomUUID().toString());
+        if (!root.mkdir()) throw new IOException("Cannot create " + root);
+
+        XAttrPath[] paths = new XAttrPath[FILES];
+        try {
+            for (int i = 0; i < FILES; i++) {
+                File f = new File(root, "f" + i);
+                if (!f.createNewFile()) throw new IOException("Cannot create " + f);
+                paths[i] = new XAttrPath(f);
+                XAttr4J.setxattr(paths[i], NAME, ("value" + i).getBytes("UTF-8"), 0);
+            }
+
+            try (XAttrRing r = new XAttrRing(FILES)) {
+                System.out.printf("%s (%d files per batch)  io_uring: %s%n", dir, FILES, r.isNative());
+                long sink = 0;
+
+                for (int i = 0; i < WARMUP; i++) sink += single(paths) - ring(r, paths);
+
+                long t = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) sink += single(paths);
+                long singleNs = System.nanoTime() - t;
+
+                t = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) sink -= ring(r, paths);
+                long ringNs = System.nanoTime() - t;
+
+                if (sink != 0) throw new IllegalStateException("Inconsistent results");
+
+                double ops = (double) FILES * ROUNDS;
+                System.out.printf("  %-12s %8.0f ns/op%n", "getxattr", singleNs / ops);
+                System.out.printf("  %-12s %8.0f ns/op%n", "XAttrRing", ringNs / ops);
+            }
+        } finally {
+            for (int i = 0; i < FILES; i++) new File(root, "f" + i).delete();
+            root.delete();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) bench(new File(dir));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Created 261018
+ *
+ * Tag an open file: path-oriented setxattr vs. FileDescriptor/FileChannel overloads
+ *
+ * Usage: java bench.TagBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrPath;
+
+public class TagBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+    private static final String NAME = "user.xattr4j.tag";
+    private static final byte[] VALUE = new byte[32];
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-32s %8.0f ns/op%n", what, (double) ns / ITERATIONS);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) {
+            final File f = new File(dir, "xattr4j_tag_" + UUID.randomUUID().toString());
+            final XAttrPath p = new XAttrPath(f.getAbsolutePath());
+            try (final FileOutputStream out = new FileOutputStream(f)) {
+                final FileChannel ch = out.getChannel();
+                final int fd = XAttr4J.fileno(out);
+                System.out.println(dir);
+
+                measure("setxattr(File)", new Op() {
+                    public long run() throws IOException {
+                        XAttr4J.setxattr(f, NAME, VALUE, 0);
+                        return 1;
+                    }
+                });
+                measure("setxattr(XAttrPath)", new Op() {
+                    public long run() throws IOException {
+                        XAttr4J.setxattr(p, NAME, VALUE, 0);
+                        return 1;
+                    }
+                });
+                measure("fsetxattr(int)", new Op() {
+                    public long run() throws IOException {
+                        XAttr4J.fsetxattr(fd, NAME, VALUE, 0);
+                        return 1;
+                    }
+                });
+                measure("fsetxattr(FileDescriptor)", new Op() {
+                    public long run() throws IOException {
+                        XAttr4J.fsetxattr(out.getFD(), NAME, VALUE, 0);
+                        return 1;
+                    }
+                });
+                measure("fsetxattr(FileChannel)", new Op() {
+                    public long run() throws IOException {
+                        XAttr4J.fsetxattr(ch, NAME, VALUE, 0);
+                        return 1;
+                    }
+                });
+            } finally {
+                f.delete();
+            }
+        }
+    }
+}
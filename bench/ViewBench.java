@@ -0,0 +1,93 @@
+/*
+ * Created 261018
+ *
+ * JDK's UserDefinedFileAttributeView vs. XAttrFileAttributeView
+ *
+ * Usage: java bench.ViewBench [dir ...]
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import net.trineo.xattr4j.XAttrFileSystemProvider;
+
+public class ViewBench {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+    private static final String NAME = "xattr4j.view";
+
+    /* Defeats dead code elimination */
+    static volatile long sink;
+
+    private interface Op {
+        long run() throws IOException;
+    }
+
+    private static void measure(String what, Op op) throws IOException {
+        long s = 0;
+        for (int i = 0; i < WARMUP; i++) s += op.run();
+
+        long t = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) s += op.run();
+        long ns = System.nanoTime() - t;
+        sink = s;
+
+        System.out.printf("  %-32s %8.0f ns/op%n", what, (double) ns / ITERATIONS);
+    }
+
+    private static void bench(String what, final Path p) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(256);
+        Files.getFileAttributeView(p, UserDefinedFileAttributeView.class).write(NAME, ByteBuffer.wrap(new byte[64]));
+
+        measure("read(" + what + ")", new Op() {
+            public long run() throws IOException {
+                buf.clear();
+                return Files.getFileAttributeView(p, UserDefinedFileAttributeView.class).read(NAME, buf);
+            }
+        });
+        measure("write(" + what + ")", new Op() {
+            public long run() throws IOException {
+                buf.clear().limit(64);
+                return Files.getFileAttributeView(p, UserDefinedFileAttributeView.class).write(NAME, buf);
+            }
+        });
+        measure("list(" + what + ")", new Op() {
+            public long run() throws IOException {
+                return Files.getFileAttributeView(p, UserDefinedFileAttributeView.class).list().size();
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        FileSystemProvider jdk = FileSystems.getDefault().provider();
+        FileSystem paths = new XAttrFileSystemProvider(jdk, 0, TimeUnit.SECONDS).getFileSystem(URI.create("file:///"));
+        FileSystem fds = new XAttrFileSystemProvider(jdk, 1, TimeUnit.SECONDS).getFileSystem(URI.create("file:///"));
+
+        for (String dir : args) {
+            File f = new File(dir, "xattr4j_view_" + UUID.randomUUID().toString());
+            if (!f.createNewFile()) throw new IOException("Cannot create files in " + dir);
+            try {
+                System.out.println(dir);
+                bench("JDK", f.toPath());
+                bench("xattr4j path", paths.getPath(f.getPath()));
+                bench("xattr4j cached fd", fds.getPath(f.getPath()));
+            } finally {
+                f.delete();
+            }
+        }
+    }
+}
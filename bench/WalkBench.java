@@ -0,0 +1,125 @@
+/*
+ * Created 261018
+ *
+ * XAttrWalker throughput against per-file path-oriented calls  by degree of parallelism
+ *
+ * Usage: java bench.WalkBench [dir ...]
+ *  e.g. java bench.WalkBench /dev/shm /var/tmp
+ */
+
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrWalker;
+
+public class WalkBench {
+    private static final int DIRS = 64;
+    private static final int FILES_PER_DIR = 500;
+    private static final int ROUNDS = 5;
+    private static final String PREFIX = "user.xattr4j.";
+
+    private static void populate(File root) throws IOException {
+        for (int d = 0; d < DIRS; d++) {
+            File dir = new File(root, "d" + d);
+            if (!dir.mkdir()) throw new IOException("Cannot create " + dir);
+            for (int f = 0; f < FILES_PER_DIR; f++) {
+                File file = new File(dir, "f" + f);
+                if (!file.createNewFile()) throw new IOException("Cannot create " + file);
+                XAttr4J.setxattr(file, PREFIX + "id", d + "/" + f, 0);
+                XAttr4J.setxattr(file, "user.other", "x", 0);
+            }
+        }
+    }
+
+    private static void cleanup(File root) {
+        for (int d = 0; d < DIRS; d++) {
+            File dir = new File(root, "d" + d);
+            for (int f = 0; f < FILES_PER_DIR; f++) new File(dir, "f" + f).delete();
+            dir.delete();
+        }
+        root.delete();
+    }
+
+    /* Baseline: listxattr(File) + getxattr(File) per file */
+    private static long naive(File dir) throws IOException {
+        long n = 0;
+        File[] children = dir.listFiles();
+        if (children == null) return 0;
+        for (File f : children) {
+            if (f.isDirectory()) {
+                n += naive(f);
+                continue;
+            }
+            for (String name : XAttr4J.listxattr(f, 0)) {
+                if (name.startsWith(PREFIX)) n += XAttr4J.getxattr(f, name, 0).length;
+            }
+        }
+        return n;
+    }
+
+    private static long walk(File root, int parallelism) throws IOException {
+        final AtomicLong n = new AtomicLong();
+        new XAttrWalker(parallelism, 0, PREFIX).walk(root.getAbsolutePath(), new XAttrWalker.Visitor() {
+            public void visit(String path, XAttrName name, byte[] value) {
+                n.addAndGet(value.length);
+            }
+
+            public void failed(String path, IOException e) {
+                throw new IllegalStateException(path, e);
+            }
+        });
+        return n.get();
+    }
+
+    private static void report(String what, long bestNanos) {
+        double files = DIRS * FILES_PER_DIR;
+        System.out.printf("  %-20s %8.1f ms  %10.0f files/s%n", what, bestNanos / 1e6, files * 1e9 / bestNanos);
+    }
+
+    private static void bench(File dir) throws IOException {
+        File root = new File(dir, "xattr4j_walk_" + UUID.randomUUID().toString());
+        if (!root.mkdir()) throw new IOException("Cannot create " + root);
+
+        try {
+            populate(root);
+            System.out.printf("%s (%d files)  cpus: %d%n", dir, DIRS * FILES_PER_DIR,
+                    Runtime.getRuntime().availableProcessors());
+
+            long best = Long.MAX_VALUE;
+            long sink = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                long t = System.nanoTime();
+                sink += naive(root);
+                best = Math.min(best, System.nanoTime() - t);
+            }
+            report("per-file(File)", best);
+
+            int max = Runtime.getRuntime().availableProcessors();
+            for (int p = 1; p <= max; p <<= 1) {
+                best = Long.MAX_VALUE;
+                for (int r = 0; r < ROUNDS; r++) {
+                    long t = System.nanoTime();
+                    sink -= walk(root, p);
+                    best = Math.min(best, System.nanoTime() - t);
+                }
+                report("walker(p=" + p + ")", best);
+            }
+
+            if (sink != 0) throw new IllegalStateException("Inconsistent results");
+        } finally {
+            cleanup(root);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) args = new String[]{System.getProperty("java.io.tmpdir")};
+
+        for (String dir : args) bench(new File(dir));
+    }
+}
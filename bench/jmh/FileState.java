@@ -0,0 +1,114 @@
+/*
+ * Created 261018
+ *
+ * Per-thread benchmark file shared by JMH benchmarks
+ */
+
+package bench.jmh;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Scope.Thread state  so each benchmark thread owns a file
+ *  and N threads measure scaling rather than inode contention
+ */
+@State(Scope.Thread)
+public abstract class FileState {
+    /* UserDefinedFileAttributeView implicitly prepend "user." namespace on Linux */
+    static final boolean LINUX = System.getProperty("os.name").toLowerCase().startsWith("linux");
+
+    /**
+     * Directory to create benchmark files in  e.g. tmpfs or a loopback image(see bench/mkloop.sh)
+     */
+    @Param("/dev/shm")
+    public String dir;
+
+    /**
+     * XAttr4J.BACKEND_PROPERTY  "ffm" needs JDK 22+ with FfmBackend on the classpath(see: make jmh)
+     *  each fork selects it before XAttr4J initializes
+     */
+    @Param("jni")
+    public String backend;
+
+    File file;
+    XAttrPath path;
+    RandomAccessFile raf;
+    int fd;
+    UserDefinedFileAttributeView view;
+
+    static String viewName(int i) {
+        return "xattr4j.jmh." + i;
+    }
+
+    static XAttrName name(int i) {
+        return XAttrName.of(LINUX ? "user." + viewName(i) : viewName(i));
+    }
+
+    static byte[] value(int size) {
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++) b[i] = (byte) ('a' + i % 26);
+        return b;
+    }
+
+    void open() throws IOException {
+        System.setProperty(XAttr4J.BACKEND_PROPERTY, backend);
+        if (!XAttr4J.backend().equals(backend)) throw new IllegalStateException("Backend " + backend + " not in use");
+
+        file = new File(dir, "xattr4j_jmh_" + UUID.randomUUID().toString());
+        if (!file.createNewFile()) throw new IOException("Cannot create " + file);
+        path = new XAttrPath(file);
+        raf = new RandomAccessFile(file, "rw");
+        fd = fd(raf.getFD(), file.toPath());
+        view = Files.getFileAttributeView(file.toPath(), UserDefinedFileAttributeView.class);
+        if (view == null) throw new IOException("UserDefinedFileAttributeView unsupported in " + dir);
+    }
+
+    void close() throws IOException {
+        try {
+            raf.close();
+        } finally {
+            if (!file.delete()) throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    /**
+     * No public fd accessor  FileDescriptor.fd is inaccessible since Java 16 without --add-opens
+     *  thus fallback to find the descriptor linked to the file in /proc/self/fd(Linux)
+     */
+    private static int fd(FileDescriptor fdObj, Path p) throws IOException {
+        try {
+            Field f = FileDescriptor.class.getDeclaredField("fd");
+            f.setAccessible(true);
+            return f.getInt(fdObj);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            File[] links = new File("/proc/self/fd").listFiles();
+            if (links != null) {
+                Path real = p.toRealPath();
+                for (File l : links) {
+                    try {
+                        if (Files.readSymbolicLink(l.toPath()).equals(real)) return Integer.parseInt(l.getName());
+                    } catch (IOException | NumberFormatException ignored) {
+                        /* Closed in between or not a descriptor */
+                    }
+                }
+            }
+            throw new IOException("Cannot get fd of " + p, e);
+        }
+    }
+}
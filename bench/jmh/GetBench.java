@@ -0,0 +1,169 @@
+/*
+ * Created 261018
+ *
+ * getxattr/sizexattr/existxattr latency by value size and hit ratio
+ */
+
+package bench.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrException;
+import net.trineo.xattr4j.XAttrName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operations cycle through NAMES names  hitRatio of which exist on the file
+ *  strict variants(getxattr  sizexattr) pay for an XAttrException on each miss
+ *  jdk* are the UserDefinedFileAttributeView baseline
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetBench extends FileState {
+    private static final int NAMES = 16;
+
+    @Param({"0", "64", "4096", "65536"})
+    public int valueSize;
+
+    @Param({"1.0", "0.5", "0.0"})
+    public double hitRatio;
+
+    private XAttrName[] names;
+    private String[] viewNames;
+    private ByteBuffer buf;
+    private int i;
+
+    @Setup
+    public void setup() throws IOException {
+        open();
+
+        int hits = (int) Math.round(hitRatio * NAMES);
+        byte[] value = value(valueSize);
+        for (int k = 0; k < hits; k++) XAttr4J.setxattr(path, name(k), value, 0);
+
+        /* Interleave hits and misses  same order every run */
+        List<Integer> order = new ArrayList<Integer>();
+        for (int k = 0; k < NAMES; k++) order.add(k);
+        Collections.shuffle(order, new Random(NAMES));
+
+        names = new XAttrName[NAMES];
+        viewNames = new String[NAMES];
+        for (int k = 0; k < NAMES; k++) {
+            names[k] = name(order.get(k));
+            viewNames[k] = viewName(order.get(k));
+        }
+        buf = ByteBuffer.allocate(Math.max(valueSize, 1));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    private int next() {
+        return i++ & (NAMES - 1);
+    }
+
+    @Benchmark
+    public byte[] getxattr() throws IOException {
+        try {
+            return XAttr4J.getxattr(path, names[next()], 0);
+        } catch (XAttrException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public byte[] fgetxattr() throws IOException {
+        try {
+            return XAttr4J.fgetxattr(fd, names[next()], 0);
+        } catch (XAttrException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public byte[] getxattrOrNull() throws IOException {
+        return XAttr4J.getxattrOrNull(path, names[next()], 0);
+    }
+
+    @Benchmark
+    public byte[] fgetxattrOrNull() throws IOException {
+        return XAttr4J.fgetxattrOrNull(fd, names[next()], 0);
+    }
+
+    @Benchmark
+    public long sizexattr() throws IOException {
+        try {
+            return XAttr4J.sizexattr(path, names[next()], 0);
+        } catch (XAttrException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public long fsizexattr() throws IOException {
+        try {
+            return XAttr4J.fsizexattr(fd, names[next()], 0);
+        } catch (XAttrException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public long trySizexattr() {
+        return XAttr4J.trySizexattr(path, names[next()], 0);
+    }
+
+    @Benchmark
+    public boolean existxattr() throws IOException {
+        return XAttr4J.existxattr(path, names[next()], 0);
+    }
+
+    @Benchmark
+    public boolean fexistxattr() throws IOException {
+        return XAttr4J.fexistxattr(fd, names[next()], 0);
+    }
+
+    @Benchmark
+    public int jdkRead() {
+        buf.clear();
+        try {
+            return view.read(viewNames[next()], buf);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Benchmark
+    public int jdkSize() {
+        try {
+            return view.size(viewNames[next()]);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
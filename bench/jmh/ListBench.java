@@ -0,0 +1,75 @@
+/*
+ * Created 261018
+ *
+ * listxattr latency by attribute count per file
+ */
+
+package bench.jmh;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrNameList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lists a file carrying attrs 16-byte attributes  jdkList is the UserDefinedFileAttributeView baseline
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListBench extends FileState {
+    @Param({"0", "1", "16", "128"})
+    public int attrs;
+
+    @Setup
+    public void setup() throws IOException {
+        open();
+        byte[] value = value(16);
+        for (int k = 0; k < attrs; k++) XAttr4J.setxattr(path, name(k), value, 0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    @Benchmark
+    public String[] listxattr() throws IOException {
+        return XAttr4J.listxattr(path, 0);
+    }
+
+    @Benchmark
+    public String[] flistxattr() throws IOException {
+        return XAttr4J.flistxattr(fd, 0);
+    }
+
+    /* Lazily decoded names */
+    @Benchmark
+    public int listxattrLazy() throws IOException {
+        XAttrNameList l = XAttr4J.listxattr(path, null, 0);
+        return l.size();
+    }
+
+    @Benchmark
+    public List<String> jdkList() throws IOException {
+        return view.list();
+    }
+}
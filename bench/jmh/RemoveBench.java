@@ -0,0 +1,88 @@
+/*
+ * Created 261018
+ *
+ * removexattr latency
+ */
+
+package bench.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A removal needs an attribute to remove  so *SetRemove measure a setxattr+removexattr pair
+ *  subtract SetBench.setxattr(valueSize=64) for the removal alone
+ *  Level.Invocation setup would cost more than the syscall itself
+ * *Missing measure a forced removal of an absent attribute(ENOATTR swallowed)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoveBench extends FileState {
+    private static final XAttrName NAME = name(0);
+    private static final XAttrName MISSING = name(1);
+    private static final String VIEW_NAME = viewName(0);
+
+    private byte[] value;
+    private ByteBuffer buf;
+
+    @Setup
+    public void setup() throws IOException {
+        open();
+        value = value(64);
+        buf = ByteBuffer.wrap(value);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    @Benchmark
+    public void setRemove() throws IOException {
+        XAttr4J.setxattr(path, NAME, value, 0);
+        XAttr4J.removexattr(path, NAME, 0);
+    }
+
+    @Benchmark
+    public void fsetRemove() throws IOException {
+        XAttr4J.fsetxattr(fd, NAME, value, 0);
+        XAttr4J.fremovexattr(fd, NAME, 0);
+    }
+
+    @Benchmark
+    public void jdkSetRemove() throws IOException {
+        buf.rewind();
+        view.write(VIEW_NAME, buf);
+        view.delete(VIEW_NAME);
+    }
+
+    @Benchmark
+    public void removeMissing() throws IOException {
+        XAttr4J.removexattr(path, MISSING, 0, true);
+    }
+
+    @Benchmark
+    public void fremoveMissing() throws IOException {
+        XAttr4J.fremovexattr(fd, MISSING, 0, true);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Created 261018
+ *
+ * setxattr latency by value size
+ */
+
+package bench.jmh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overwrites a single attribute  jdkWrite is the UserDefinedFileAttributeView baseline
+ *  values beyond 4KiB need ea_inode on ext4(see bench/mkloop.sh)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetBench extends FileState {
+    private static final XAttrName NAME = name(0);
+    private static final String VIEW_NAME = viewName(0);
+
+    @Param({"0", "64", "4096", "65536"})
+    public int valueSize;
+
+    private byte[] value;
+    private ByteBuffer buf;
+
+    @Setup
+    public void setup() throws IOException {
+        open();
+        value = value(valueSize);
+        buf = ByteBuffer.wrap(value);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        close();
+    }
+
+    @Benchmark
+    public void setxattr() throws IOException {
+        XAttr4J.setxattr(path, NAME, value, 0);
+    }
+
+    @Benchmark
+    public void fsetxattr() throws IOException {
+        XAttr4J.fsetxattr(fd, NAME, value, 0);
+    }
+
+    @Benchmark
+    public int jdkWrite() throws IOException {
+        buf.rewind();
+        return view.write(VIEW_NAME, buf);
+    }
+}
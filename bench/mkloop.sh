@@ -0,0 +1,58 @@
+#!/bin/sh
+#
+# Created 261018
+#
+# Create and mount a loopback ext4/xfs image to benchmark against(Linux  root required)
+#
+# Usage: bench/mkloop.sh ext4|xfs MOUNT_POINT [SIZE_MB]
+#        bench/mkloop.sh -u MOUNT_POINT
+#
+# ext4 is created with ea_inode  otherwise values are limited to a block(~4KiB)
+#  and 64KiB benchmarks fail with ENOSPC
+#
+
+set -eu
+
+usage() {
+    echo "Usage: $0 ext4|xfs MOUNT_POINT [SIZE_MB]" >&2
+    echo "       $0 -u MOUNT_POINT" >&2
+    exit 1
+}
+
+[ $# -ge 2 ] || usage
+
+if [ "$1" = "-u" ]; then
+    umount "$2"
+    rm -f "$2.img"
+    exit 0
+fi
+
+FS=$1
+MNT=$2
+SIZE_MB=${3:-512}
+IMG=$MNT.img
+
+case "$FS" in
+ext4)
+    MKFS="mkfs.ext4 -q -F -O ea_inode"
+    ;;
+xfs)
+    MKFS="mkfs.xfs -q -f"
+    ;;
+*)
+    usage
+    ;;
+esac
+
+truncate -s "${SIZE_MB}M" "$IMG"
+$MKFS "$IMG"
+mkdir -p "$MNT"
+# user_xattr is default on ext4/xfs  spelt out for older kernels
+if [ "$FS" = "ext4" ]; then
+    mount -o loop,user_xattr "$IMG" "$MNT"
+else
+    mount -o loop "$IMG" "$MNT"
+fi
+chmod 1777 "$MNT"
+
+echo "$FS mounted at $MNT  e.g. make jmh JMH_DIRS=\"/dev/shm $MNT\""
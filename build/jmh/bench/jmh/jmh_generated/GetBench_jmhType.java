@@ -0,0 +1,4 @@
+package bench.jmh.jmh_generated;
+public class GetBench_jmhType extends GetBench_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package bench.jmh.jmh_generated;
+public class ListBench_jmhType extends ListBench_jmhType_B3 {
+}
+
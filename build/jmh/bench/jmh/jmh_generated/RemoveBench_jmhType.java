@@ -0,0 +1,4 @@
+package bench.jmh.jmh_generated;
+public class RemoveBench_jmhType extends RemoveBench_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package bench.jmh.jmh_generated;
+public class SetBench_jmhType extends SetBench_jmhType_B3 {
+}
+
@@ -0,0 +1,522 @@
+/*
+ * Created 261018
+ *
+ * Panama FFM backend  libc extended attribute calls without JNI
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Calls libc [f|l]getxattr/setxattr/removexattr/listxattr via java.lang.foreign(JDK 22+)
+ *
+ * Selected automatically over JNI unless BACKEND_PROPERTY says "jni"
+ *  if libxattr4j cannot be loaded  operations covered here still work
+ *  batched and ByteBuffer operations fall back to them  XAttrRing to plain syscalls
+ *  (getAllxattrs, stat, directory and arena operations throw UnsupportedOperationException)
+ *
+ * Arguments are marshalled into a per-thread reusable segment  errno is captured
+ *  via Linker.Option.captureCallState("errno") right after each call
+ * JDK 22+ warns on first use unless run with --enable-native-access=ALL-UNNAMED(or the module name)
+ *
+ * Loaded reflectively by XAttrBackend.load()  method signatures mirror XAttr4J's private natives
+ */
+final class FfmBackend extends XAttrBackend {
+    private static final boolean MACOS = System.getProperty("os.name", "").startsWith("Mac");
+    private static final boolean LINUX = System.getProperty("os.name", "").startsWith("Linux");
+
+    /* errno values  same on both macOS and Linux unless noted */
+    private static final int ENOENT = 2;
+    private static final int ENOTDIR = 20;
+    private static final int EINVAL = 22;
+    private static final int ERANGE = 34;
+    /* ENODATA on Linux */
+    private static final int ENOATTR = MACOS ? 93 : 61;
+
+    /* Linux setxattr(2) flags */
+    private static final int LINUX_XATTR_CREATE = 1;
+    private static final int LINUX_XATTR_REPLACE = 2;
+
+    private static final int OPTIONS_MASK = XAttr4J.XATTR_NOFOLLOW | XAttr4J.XATTR_CREATE |
+                                            XAttr4J.XATTR_REPLACE | XAttr4J.XATTR_SHOWCOMPRESSION;
+
+    /* Same bounds as the JNI scratch buffer  see: xattr4j_jni.c */
+    private static final int SCRATCH_MAX = 65536;
+    /* 0(optimistic reads disabled) degenerates into a 1-byte scratch  i.e. probe size first */
+    private static final int SCRATCH_INIT =
+            Math.max(1, Math.min(Integer.getInteger(XAttr4J.SCRATCH_SIZE_PROPERTY, 4096), SCRATCH_MAX));
+    private static final int REPLAY_MAX = 8;
+
+    private static final FfmBackend INSTANCE = new FfmBackend();
+
+    private FfmBackend() {}
+
+    /**
+     * @return  Backend instance  null if unavailable or not selected
+     */
+    static FfmBackend load() {
+        if ("jni".equals(System.getProperty(XAttr4J.BACKEND_PROPERTY))) return null;
+        if (!MACOS && !LINUX) return null;
+        /* ssize_t/size_t are mapped to JAVA_LONG */
+        if (ADDRESS.byteSize() != 8) return null;
+
+        try {
+            Handles.init();
+            return INSTANCE;
+        } catch (Throwable t) {
+            /* e.g. native access denied  symbol missing */
+            return null;
+        }
+    }
+
+    /*
+     * Downcall handles  shapes differ between macOS(position, options) and Linux(l* variants)
+     *  each handle takes the errno capture segment as its first argument
+     */
+    private static final class Handles {
+        static final int ERRNO_OFFSET;
+
+        static final MethodHandle GETXATTR, LGETXATTR, FGETXATTR;
+        static final MethodHandle SETXATTR, LSETXATTR, FSETXATTR;
+        static final MethodHandle REMOVEXATTR, LREMOVEXATTR, FREMOVEXATTR;
+        static final MethodHandle LISTXATTR, LLISTXATTR, FLISTXATTR;
+
+        static {
+            Linker linker = Linker.nativeLinker();
+            SymbolLookup libc = linker.defaultLookup();
+            Linker.Option errno = Linker.Option.captureCallState("errno");
+
+            ERRNO_OFFSET = (int) Linker.Option.captureStateLayout()
+                                    .byteOffset(MemoryLayout.PathElement.groupElement("errno"));
+
+            if (MACOS) {
+                GETXATTR = handle(linker, libc, errno, "getxattr",
+                        FunctionDescriptor.of(JAVA_LONG, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT));
+                FGETXATTR = handle(linker, libc, errno, "fgetxattr",
+                        FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT));
+                SETXATTR = handle(linker, libc, errno, "setxattr",
+                        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT));
+                FSETXATTR = handle(linker, libc, errno, "fsetxattr",
+                        FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT));
+                REMOVEXATTR = handle(linker, libc, errno, "removexattr",
+                        FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT));
+                FREMOVEXATTR = handle(linker, libc, errno, "fremovexattr",
+                        FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT));
+                LISTXATTR = handle(linker, libc, errno, "listxattr",
+                        FunctionDescriptor.of(JAVA_LONG, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT));
+                FLISTXATTR = handle(linker, libc, errno, "flistxattr",
+                        FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT));
+                /* XATTR_NOFOLLOW is an option on macOS */
+                LGETXATTR = LSETXATTR = LREMOVEXATTR = LLISTXATTR = null;
+            } else {
+                FunctionDescriptor get = FunctionDescriptor.of(JAVA_LONG, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG);
+                FunctionDescriptor set = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT);
+                FunctionDescriptor remove = FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS);
+                FunctionDescriptor list = FunctionDescriptor.of(JAVA_LONG, ADDRESS, ADDRESS, JAVA_LONG);
+
+                GETXATTR = handle(linker, libc, errno, "getxattr", get);
+                LGETXATTR = handle(linker, libc, errno, "lgetxattr", get);
+                FGETXATTR = handle(linker, libc, errno, "fgetxattr",
+                        FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG));
+                SETXATTR = handle(linker, libc, errno, "setxattr", set);
+                LSETXATTR = handle(linker, libc, errno, "lsetxattr", set);
+                FSETXATTR = handle(linker, libc, errno, "fsetxattr",
+                        FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT));
+                REMOVEXATTR = handle(linker, libc, errno, "removexattr", remove);
+                LREMOVEXATTR = handle(linker, libc, errno, "lremovexattr", remove);
+                FREMOVEXATTR = handle(linker, libc, errno, "fremovexattr",
+                        FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS));
+                LISTXATTR = handle(linker, libc, errno, "listxattr", list);
+                LLISTXATTR = handle(linker, libc, errno, "llistxattr", list);
+                FLISTXATTR = handle(linker, libc, errno, "flistxattr",
+                        FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG));
+            }
+        }
+
+        private static MethodHandle handle(Linker linker, SymbolLookup libc, Linker.Option errno,
+                                           String sym, FunctionDescriptor fd) {
+            MemorySegment addr = libc.find(sym).orElseThrow(() -> new UnsatisfiedLinkError(sym));
+            return linker.downcallHandle(addr, fd, errno);
+        }
+
+        /* Trigger static initialization */
+        static void init() {}
+    }
+
+    /**
+     * Per-thread reusable native memory  never shared  hence no synchronization
+     *  segments come from automatic arenas  freed once the thread(and its scratch) is gone
+     */
+    private static final class Scratch {
+        final MemorySegment state = Arena.ofAuto().allocate(Linker.Option.captureStateLayout());
+        /* NUL-terminated path and name  back to back */
+        MemorySegment args = Arena.ofAuto().allocate(512);
+        /* Values and name lists */
+        MemorySegment buf = Arena.ofAuto().allocate(SCRATCH_INIT);
+
+        int errno() {
+            return state.get(JAVA_INT, Handles.ERRNO_OFFSET);
+        }
+
+        /**
+         * Copy path(nullable) and name as C strings
+         * @return  Offset of name in args
+         */
+        long put(byte[] path, byte[] name) {
+            long plen = path != null ? path.length + 1 : 0;
+            long need = plen + (name != null ? name.length + 1 : 0);
+            if (args.byteSize() < need) args = Arena.ofAuto().allocate(Math.max(need, args.byteSize() << 1));
+
+            /* Trailing NUL of a pre-encoded byte[](see: XAttrPath) is harmless */
+            if (path != null) {
+                MemorySegment.copy(path, 0, args, JAVA_BYTE, 0, path.length);
+                args.set(JAVA_BYTE, path.length, (byte) 0);
+            }
+            if (name != null) {
+                MemorySegment.copy(name, 0, args, JAVA_BYTE, plen, name.length);
+                args.set(JAVA_BYTE, plen + name.length, (byte) 0);
+            }
+            return plen;
+        }
+
+        /**
+         * @return  Buffer of at least cap bytes  beyond SCRATCH_MAX a transient one
+         */
+        MemorySegment buf(long cap) {
+            if (cap <= buf.byteSize()) return buf;
+            MemorySegment b = Arena.ofAuto().allocate(cap);
+            if (cap <= SCRATCH_MAX) buf = b;
+            return b;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static boolean isAbsent(int e) {
+        return e == ENOATTR || e == ENOENT || e == ENOTDIR;
+    }
+
+    private static boolean badopt(int options) {
+        return !MACOS && (options & ~OPTIONS_MASK) != 0;
+    }
+
+    private static int setflags(int options) {
+        if (MACOS) return options;
+        return ((options & XAttr4J.XATTR_CREATE) != 0 ? LINUX_XATTR_CREATE : 0) |
+               ((options & XAttr4J.XATTR_REPLACE) != 0 ? LINUX_XATTR_REPLACE : 0);
+    }
+
+    private static boolean nofollow(int options) {
+        return (options & XAttr4J.XATTR_NOFOLLOW) != 0;
+    }
+
+    /*
+     * Raw calls  path is NULL for fd-oriented ones
+     * @return  Result of the call  -errno if failed
+     */
+
+    private static long get(Scratch sc, MemorySegment path, int fd, MemorySegment name,
+                            MemorySegment buf, long size, int options) {
+        if (badopt(options)) return -EINVAL;
+        long r;
+        try {
+            if (MACOS) {
+                r = path != null ?
+                        (long) Handles.GETXATTR.invokeExact(sc.state, path, name, buf, size, 0, options) :
+                        (long) Handles.FGETXATTR.invokeExact(sc.state, fd, name, buf, size, 0, options);
+            } else if (path == null) {
+                r = (long) Handles.FGETXATTR.invokeExact(sc.state, fd, name, buf, size);
+            } else if (nofollow(options)) {
+                r = (long) Handles.LGETXATTR.invokeExact(sc.state, path, name, buf, size);
+            } else {
+                r = (long) Handles.GETXATTR.invokeExact(sc.state, path, name, buf, size);
+            }
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+        return r >= 0 ? r : -sc.errno();
+    }
+
+    private static long list(Scratch sc, MemorySegment path, int fd, MemorySegment buf, long size, int options) {
+        if (badopt(options)) return -EINVAL;
+        long r;
+        try {
+            if (MACOS) {
+                r = path != null ?
+                        (long) Handles.LISTXATTR.invokeExact(sc.state, path, buf, size, options) :
+                        (long) Handles.FLISTXATTR.invokeExact(sc.state, fd, buf, size, options);
+            } else if (path == null) {
+                r = (long) Handles.FLISTXATTR.invokeExact(sc.state, fd, buf, size);
+            } else if (nofollow(options)) {
+                r = (long) Handles.LLISTXATTR.invokeExact(sc.state, path, buf, size);
+            } else {
+                r = (long) Handles.LISTXATTR.invokeExact(sc.state, path, buf, size);
+            }
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+        return r >= 0 ? r : -sc.errno();
+    }
+
+    private static int set(Scratch sc, MemorySegment path, int fd, MemorySegment name,
+                           MemorySegment value, long size, int options) {
+        if (badopt(options)) return -EINVAL;
+        int flags = setflags(options);
+        int r;
+        try {
+            if (MACOS) {
+                r = path != null ?
+                        (int) Handles.SETXATTR.invokeExact(sc.state, path, name, value, size, 0, flags) :
+                        (int) Handles.FSETXATTR.invokeExact(sc.state, fd, name, value, size, 0, flags);
+            } else if (path == null) {
+                r = (int) Handles.FSETXATTR.invokeExact(sc.state, fd, name, value, size, flags);
+            } else if (nofollow(options)) {
+                r = (int) Handles.LSETXATTR.invokeExact(sc.state, path, name, value, size, flags);
+            } else {
+                r = (int) Handles.SETXATTR.invokeExact(sc.state, path, name, value, size, flags);
+            }
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+        return r == 0 ? 0 : -sc.errno();
+    }
+
+    private static int remove(Scratch sc, MemorySegment path, int fd, MemorySegment name, int options) {
+        if (badopt(options)) return -EINVAL;
+        int r;
+        try {
+            if (MACOS) {
+                r = path != null ?
+                        (int) Handles.REMOVEXATTR.invokeExact(sc.state, path, name, options) :
+                        (int) Handles.FREMOVEXATTR.invokeExact(sc.state, fd, name, options);
+            } else if (path == null) {
+                r = (int) Handles.FREMOVEXATTR.invokeExact(sc.state, fd, name);
+            } else if (nofollow(options)) {
+                r = (int) Handles.LREMOVEXATTR.invokeExact(sc.state, path, name);
+            } else {
+                r = (int) Handles.REMOVEXATTR.invokeExact(sc.state, path, name);
+            }
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+        return r == 0 ? 0 : -sc.errno();
+    }
+
+    /**
+     * Read a value(name != null) or name list  optimistically into scratch buffer first
+     *  only on ERANGE probe size  grow and retry  see: xattr_read_all() of xattr4j_jni.c
+     * @return  byte[] of the result  or Integer errno if failed
+     */
+    private static Object readAll(Scratch sc, MemorySegment path, int fd, MemorySegment name, int options) {
+        MemorySegment buf = sc.buf;
+        long cap = buf.byteSize();
+        long len = name != null ? get(sc, path, fd, name, buf, cap, options) : list(sc, path, fd, buf, cap, options);
+
+        if (len == -ERANGE) XAttrMetrics.scratchMiss();
+        for (int i = 0; len == -ERANGE && i < REPLAY_MAX; i++) {
+            if (i != 0) XAttrMetrics.replay();
+            len = name != null ?
+                    get(sc, path, fd, name, MemorySegment.NULL, 0, options) :
+                    list(sc, path, fd, MemorySegment.NULL, 0, options);
+            if (len <= 0) break;
+
+            /* Never less than twice of previous capacity  so that replays are bounded */
+            cap = Math.max(len, cap << 1);
+            buf = sc.buf(cap);
+            len = name != null ? get(sc, path, fd, name, buf, cap, options) : list(sc, path, fd, buf, cap, options);
+        }
+
+        if (len < 0) return (int) -len;
+        return buf.asSlice(0, len).toArray(JAVA_BYTE);
+    }
+
+    private static MemorySegment pathSeg(Scratch sc, byte[] path) {
+        return path != null ? sc.args : null;
+    }
+
+    @Override
+    int enoattr() {
+        return ENOATTR;
+    }
+
+    private byte[] read(byte[] path, int fd, byte[] name, int options, boolean nullable) throws IOException {
+        Scratch sc = SCRATCH.get();
+        long off = sc.put(path, name);
+        Object r = readAll(sc, pathSeg(sc, path), fd, sc.args.asSlice(off), options);
+        if (r instanceof byte[]) return (byte[]) r;
+
+        int e = (Integer) r;
+        /* Miss is reported as null  no exception construction nor stack walk
+         *  an fd names an existing file  so only ENOATTR is a miss as in JNI fgetxattr0 */
+        if (nullable && (path != null ? isAbsent(e) : e == ENOATTR)) return null;
+        throw new XAttrException(path != null ? "getxattr(2)" : "fgetxattr(2)", e, path, fd, name, options);
+    }
+
+    @Override
+    byte[] getxattr(byte[] path, byte[] name, int options, boolean nullable) throws IOException {
+        return read(path, -1, name, options, nullable);
+    }
+
+    @Override
+    byte[] fgetxattr(int fd, byte[] name, int options, boolean nullable) throws IOException {
+        return read(null, fd, name, options, nullable);
+    }
+
+    private void write(byte[] path, int fd, byte[] name, byte[] value, int options) throws IOException {
+        Scratch sc = SCRATCH.get();
+        long off = sc.put(path, name);
+        MemorySegment v = sc.buf(value.length);
+        MemorySegment.copy(value, 0, v, JAVA_BYTE, 0, value.length);
+
+        int e = -set(sc, pathSeg(sc, path), fd, sc.args.asSlice(off), v, value.length, options);
+        if (e != 0) throw new XAttrException(path != null ? "setxattr(2)" : "fsetxattr(2)", e, path, fd, name, options);
+    }
+
+    @Override
+    void setxattr(byte[] path, byte[] name, byte[] value, int options) throws IOException {
+        write(path, -1, name, value, options);
+    }
+
+    @Override
+    void fsetxattr(int fd, byte[] name, byte[] value, int options) throws IOException {
+        write(null, fd, name, value, options);
+    }
+
+    private void remove(byte[] path, int fd, byte[] name, int options, boolean force) throws IOException {
+        Scratch sc = SCRATCH.get();
+        long off = sc.put(path, name);
+        int e = -remove(sc, pathSeg(sc, path), fd, sc.args.asSlice(off), options);
+        if (e != 0 && (!force || (e != ENOENT && e != ENOATTR))) {
+            throw new XAttrException(path != null ? "removexattr(2)" : "fremovexattr(2)", e, path, fd, name, options);
+        }
+    }
+
+    @Override
+    void removexattr(byte[] path, byte[] name, int options, boolean force) throws IOException {
+        remove(path, -1, name, options, force);
+    }
+
+    @Override
+    void fremovexattr(int fd, byte[] name, int options, boolean force) throws IOException {
+        remove(null, fd, name, options, force);
+    }
+
+    private byte[] list(byte[] path, int fd, byte[] prefix, int options) throws IOException {
+        Scratch sc = SCRATCH.get();
+        sc.put(path, null);
+        Object r = readAll(sc, pathSeg(sc, path), fd, null, options);
+        if (!(r instanceof byte[])) {
+            throw new XAttrException(path != null ? "listxattr(2)" : "flistxattr(2)", (Integer) r, path, fd, null, options);
+        }
+        return prefix != null ? filterNames((byte[]) r, prefix) : (byte[]) r;
+    }
+
+    /**
+     * Keep names starting with any of NUL-separated prefixes  see: filter_names() of xattr4j_jni.c
+     */
+    private static byte[] filterNames(byte[] names, byte[] prefixes) {
+        int out = 0;
+        int i = 0;
+        while (i < names.length) {
+            int end = i;
+            while (end < names.length && names[end] != 0) end++;
+            int len = end - i + 1;
+            if (matches(names, i, end, prefixes)) {
+                if (out != i) System.arraycopy(names, i, names, out, len);
+                out += len;
+            }
+            i += len;
+        }
+        return out == names.length ? names : Arrays.copyOf(names, out);
+    }
+
+    private static boolean matches(byte[] names, int off, int end, byte[] prefixes) {
+        int p = 0;
+        while (p < prefixes.length) {
+            int pend = p;
+            while (pend < prefixes.length && prefixes[pend] != 0) pend++;
+            int plen = pend - p;
+            if (plen != 0 && plen <= end - off &&
+                    Arrays.equals(names, off, off + plen, prefixes, p, pend)) {
+                return true;
+            }
+            p = pend + 1;
+        }
+        return false;
+    }
+
+    @Override
+    byte[] listxattr(byte[] path, byte[] prefix, int options) throws IOException {
+        return list(path, -1, prefix, options);
+    }
+
+    @Override
+    byte[] flistxattr(int fd, byte[] prefix, int options) throws IOException {
+        return list(null, fd, prefix, options);
+    }
+
+    private static long probe(byte[] path, int fd, byte[] name, int options) {
+        Scratch sc = SCRATCH.get();
+        long off = sc.put(path, name);
+        return get(sc, pathSeg(sc, path), fd, sc.args.asSlice(off), MemorySegment.NULL, 0, options);
+    }
+
+    @Override
+    long sizexattr(byte[] path, byte[] name, int options) throws IOException {
+        long sz = probe(path, -1, name, options);
+        if (sz < 0) throw new XAttrException("getxattr(2)", (int) -sz, path, -1, name, options);
+        return sz;
+    }
+
+    @Override
+    long fsizexattr(int fd, byte[] name, int options) throws IOException {
+        long sz = probe(null, fd, name, options);
+        if (sz < 0) throw new XAttrException("fgetxattr(2)", (int) -sz, null, fd, name, options);
+        return sz;
+    }
+
+    @Override
+    boolean existxattr(byte[] path, byte[] name, int options, boolean force) throws IOException {
+        long sz = probe(path, -1, name, options);
+        if (sz >= 0) return true;
+        int e = (int) -sz;
+        /* Throw if given path doesn't exist(ENOENT) unless forced */
+        if (e != ENOATTR && (!force || !isAbsent(e))) {
+            throw new XAttrException("getxattr(2)", e, path, -1, name, options);
+        }
+        return false;
+    }
+
+    @Override
+    boolean fexistxattr(int fd, byte[] name, int options) throws IOException {
+        long sz = probe(null, fd, name, options);
+        if (sz >= 0) return true;
+        int e = (int) -sz;
+        if (e != ENOATTR) throw new XAttrException("fgetxattr(2)", e, null, fd, name, options);
+        return false;
+    }
+
+    @Override
+    long trysizexattr(byte[] path, byte[] name, int options) {
+        return probe(path, -1, name, options);
+    }
+
+    @Override
+    long ftrysizexattr(int fd, byte[] name, int options) {
+        return probe(null, fd, name, options);
+    }
+}
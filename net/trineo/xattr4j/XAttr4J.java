@@ -13,19 +13,60 @@
 package net.trineo.xattr4j;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public final class XAttr4J {
+    /**
+     * Initial size of per-thread native scratch buffer used by optimistic getxattr/listxattr reads
+     *  a single syscall suffices if value fits in it  0 to disable(always probe size first)
+     * Scratch buffer grows on demand  up to 64KiB
+     */
+    public static final String SCRATCH_SIZE_PROPERTY = "net.trineo.xattr4j.scratchsize";
+    private static final int DEFAULT_SCRATCH_SIZE = 4096;
+
+    /**
+     * "jni" to disable the Panama FFM backend(JDK 22+)  which is selected automatically otherwise
+     *  "ffm" to require it  class initialization fails if unavailable
+     *  see: java22/net/trineo/xattr4j/FfmBackend.java
+     */
+    public static final String BACKEND_PROPERTY = "net.trineo.xattr4j.backend";
+
+    /* null if JNI backend is used */
+    private static final XAttrBackend FFM = XAttrBackend.load();
+
+    /* false if FFM backend runs without the native library */
+    private static boolean nativeLoaded;
+
     static {
         try {
             LibLoader.loadlib("xattr4j");
-            init();
-        } catch (Exception e) {
-            throw new RuntimeException("ERROR: Cannot load library", e);
+            init(Integer.getInteger(SCRATCH_SIZE_PROPERTY, DEFAULT_SCRATCH_SIZE));
+            nativeLoaded = true;
+        } catch (Exception | UnsatisfiedLinkError e) {
+            /* FFM backend covers core operations without the native library */
+            if (FFM == null) throw new RuntimeException("ERROR: Cannot load library", e);
         }
     }
 
+    /**
+     * @return  "ffm" if Panama FFM backend is in use  "jni" otherwise
+     */
+    public static String backend() {
+        return FFM != null ? "ffm" : "jni";
+    }
+
     /*
      * Those options can be found at:
      *  xnu/bsd/sys/xattr.h
@@ -44,24 +85,55 @@ public final class XAttr4J {
     public static final int XATTR_SHOWCOMPRESSION = 0x0020;
 
     private static final String UTF_8 = "UTF-8";
+    static final Charset UTF_8_CHARSET = Charset.forName(UTF_8);
+
+    /* Same values on both macOS and Linux */
+    static final int EPERM = 1;
+    static final int ENOENT = 2;
+    static final int E2BIG = 7;
+    static final int EBADF = 9;
+    static final int EACCES = 13;
+    static final int EEXIST = 17;
+    static final int ENOSPC = 28;
+    static final int ERANGE = 34;
+
+    /** errno of a missing extended attribute  macOS 93, Linux 61(ENODATA) */
+    public static final int ENOATTR = FFM != null ? FFM.enoattr() : _enoattr();
 
     private static void checkNotNull(Object ref) {
         if (ref == null) throw new NullPointerException();
     }
 
-    private static byte[] getBytes(String str, String charsetName) throws UnsupportedEncodingException {
+    /**
+     * @param str   string to be encoded
+     * @return      array of UTF-8 bytes
+     */
+    static byte[] stringToUTF8Bytes(String str) {
         checkNotNull(str);
-        checkNotNull(charsetName);
-        return str.getBytes(charsetName);
+        /* Charset overload spares a charset lookup by name on every call */
+        return str.getBytes(UTF_8_CHARSET);
     }
 
     /**
-     * @param str   string to be encoded
-     * @return      array of UTF-8 bytes
-     * @throws      UnsupportedEncodingException if encode unsupported
+     * Inverse of stringToUTF8Bytes()  trailing NUL(if any) will be stripped
+     */
+    static String utf8BytesToString(byte[] bytes) {
+        int n = bytes.length;
+        if (n != 0 && bytes[n - 1] == 0) n--;
+        return utf8BytesToString(bytes, 0, n);
+    }
+
+    private static final Charset ISO_8859_1_CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * Decode a UTF-8 byte range  ASCII-only ranges(the common case of xattr names) take a fast path
      */
-    private static byte[] stringToUTF8Bytes(String str) throws UnsupportedEncodingException {
-        return getBytes(str, UTF_8);
+    static String utf8BytesToString(byte[] bytes, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (bytes[i] < 0) return new String(bytes, off, len, UTF_8_CHARSET);
+        }
+        /* ASCII is a subset of ISO-8859-1  which decodes by plain widening */
+        return new String(bytes, off, len, ISO_8859_1_CHARSET);
     }
 
     /**
@@ -74,7 +146,7 @@ public final class XAttr4J {
      * @throws IOException  If getxattr(2) operation failed
      */
     public static byte[] getxattr(String path, String name, int options) throws IOException {
-        return _getxattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options);
+        return _getxattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options, false);
     }
 
     /**
@@ -85,12 +157,284 @@ public final class XAttr4J {
         return getxattr(file.getAbsolutePath(), name, options);
     }
 
+    /**
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public static byte[] getxattr(XAttrPath path, String name, int options) throws IOException {
+        checkNotNull(path);
+        return _getxattr(path.bytes(), stringToUTF8Bytes(name), options, false);
+    }
+
     /**
      * Get an extended attribute value(fd-oriented)
      * @see XAttr4J#getxattr(String, String, int)
      */
     public static byte[] fgetxattr(int fd, String name, int options) throws IOException {
-        return _fgetxattr(fd, stringToUTF8Bytes(name), options);
+        return _fgetxattr(fd, stringToUTF8Bytes(name), options, false);
+    }
+
+    /**
+     * Get an extended attribute value  null if absent
+     *
+     * Misses cost a plain syscall  no exception is constructed
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param options       getxattr(2) options
+     * @return              A byte array contains extended attribute value
+     *                      null if either the attribute or the file doesn't exist
+     * @throws IOException  If getxattr(2) operation failed otherwise
+     */
+    public static byte[] getxattrOrNull(String path, String name, int options) throws IOException {
+        return _getxattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options, true);
+    }
+
+    /**
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public static byte[] getxattrOrNull(File file, String name, int options) throws IOException {
+        checkNotNull(file);
+        return getxattrOrNull(file.getAbsolutePath(), name, options);
+    }
+
+    /**
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public static byte[] getxattrOrNull(XAttrPath path, String name, int options) throws IOException {
+        checkNotNull(path);
+        return _getxattr(path.bytes(), stringToUTF8Bytes(name), options, true);
+    }
+
+    /**
+     * Get an extended attribute value(fd-oriented)  null if the attribute doesn't exist
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public static byte[] fgetxattrOrNull(int fd, String name, int options) throws IOException {
+        return _fgetxattr(fd, stringToUTF8Bytes(name), options, true);
+    }
+
+    /**
+     * Get an extended attribute value into a buffer
+     *
+     * Value will be transferred into dst starting at its current position
+     *  position will be advanced by number of bytes read
+     * For direct buffers  getxattr(2) writes into the buffer memory directly
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param dst           Destination buffer
+     * @param options       getxattr(2) options
+     * @return              Number of bytes read(possibly zero)
+     * @throws IOException  If getxattr(2) operation failed
+     *                      errno 34(ERANGE) if remaining space of dst is insufficient
+     */
+    public static int getxattr(String path, String name, ByteBuffer dst, int options) throws IOException {
+        return getxattr0(stringToUTF8Bytes(path), stringToUTF8Bytes(name), dst, options);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public static int getxattr(File file, String name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(file);
+        return getxattr(file.getAbsolutePath(), name, dst, options);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public static int getxattr(XAttrPath path, String name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(path);
+        return getxattr0(path.bytes(), stringToUTF8Bytes(name), dst, options);
+    }
+
+    private static int getxattr0(byte[] path, byte[] name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(dst);
+        if (dst.isReadOnly()) throw new ReadOnlyBufferException();
+
+        /* Copied through a byte[] if only FFM backend is available */
+        if (dst.isDirect() && nativeLoaded) {
+            int pos = dst.position();
+            long t = XAttrMetrics.start();
+            int n;
+            try {
+                n = _getxattrbuf(path, name, dst, pos, dst.limit() - pos, options);
+            } catch (IOException e) {
+                XAttrMetrics.failure(XAttrMetrics.GETXATTR, t, e);
+                throw e;
+            }
+            XAttrMetrics.success(XAttrMetrics.GETXATTR, t, n);
+            dst.position(pos + n);
+            return n;
+        }
+
+        return putValue(_getxattr(path, name, options, false), dst, "getxattr(2)", path, -1, name, options);
+    }
+
+    /**
+     * Get an extended attribute value into a buffer(fd-oriented)
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public static int fgetxattr(int fd, String name, ByteBuffer dst, int options) throws IOException {
+        return fgetxattr0(fd, stringToUTF8Bytes(name), dst, options);
+    }
+
+    private static int fgetxattr0(int fd, byte[] name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(dst);
+        if (dst.isReadOnly()) throw new ReadOnlyBufferException();
+
+        /* Copied through a byte[] if only FFM backend is available */
+        if (dst.isDirect() && nativeLoaded) {
+            int pos = dst.position();
+            long t = XAttrMetrics.start();
+            int n;
+            try {
+                n = _fgetxattrbuf(fd, name, dst, pos, dst.limit() - pos, options);
+            } catch (IOException e) {
+                XAttrMetrics.failure(XAttrMetrics.FGETXATTR, t, e);
+                throw e;
+            }
+            XAttrMetrics.success(XAttrMetrics.FGETXATTR, t, n);
+            dst.position(pos + n);
+            return n;
+        }
+
+        return putValue(_fgetxattr(fd, name, options, false), dst, "fgetxattr(2)", null, fd, name, options);
+    }
+
+    /**
+     * Heap buffer fallback  behaves as if getxattr(2) wrote into dst
+     */
+    private static int putValue(byte[] value, ByteBuffer dst, String op,
+                                byte[] path, int fd, byte[] name, int options) throws IOException {
+        if (value.length > dst.remaining()) throw new XAttrException(op, ERANGE, path, fd, name, options);
+        dst.put(value);
+        return value.length;
+    }
+
+    /**
+     * Get remaining bytes of a heap buffer  without copy if possible
+     */
+    private static byte[] getValue(ByteBuffer src) {
+        int n = src.remaining();
+        byte[] value;
+
+        if (src.hasArray() && src.arrayOffset() == 0 && src.position() == 0 && n == src.array().length) {
+            value = src.array();
+            src.position(src.limit());
+        } else if (src.hasArray()) {
+            int off = src.arrayOffset() + src.position();
+            value = Arrays.copyOfRange(src.array(), off, off + n);
+            src.position(src.limit());
+        } else {
+            value = new byte[n];
+            src.get(value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Get an extended attribute value of many files in a single native call
+     *  per-entry failures(e.g. attribute missing) are reported via errno instead of exception
+     *
+     * @param paths         File paths
+     * @param name          Extended attribute name
+     * @param options       getxattr(2) options
+     * @return              Values and errnos  in the same order as paths
+     * @throws IOException  If the batch cannot complete(e.g. out of memory)
+     */
+    public static XAttrBatchResult getxattrBatch(String[] paths, String name, int options) throws IOException {
+        checkNotNull(paths);
+
+        int n = paths.length;
+        byte[][] bpaths = new byte[n][];
+        for (int i = 0; i < n; i++) bpaths[i] = stringToUTF8Bytes(paths[i]);
+
+        return getxattrBatch0(bpaths, stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * @see XAttr4J#getxattrBatch(String[], String, int)
+     */
+    public static XAttrBatchResult getxattrBatch(XAttrPath[] paths, String name, int options) throws IOException {
+        checkNotNull(paths);
+
+        int n = paths.length;
+        byte[][] bpaths = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            checkNotNull(paths[i]);
+            bpaths[i] = paths[i].bytes();
+        }
+
+        return getxattrBatch0(bpaths, stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * Batch over pre-encoded paths and name  used by XAttrAsync to coalesce queued requests
+     */
+    static XAttrBatchResult getxattrBatch(byte[][] paths, XAttrName name, int options) throws IOException {
+        return getxattrBatch0(paths, name.bytes(), options);
+    }
+
+    private static XAttrBatchResult getxattrBatch0(byte[][] paths, byte[] name, int options) throws IOException {
+        int n = paths.length;
+        byte[][] values = new byte[n][];
+        int[] errnos = new int[n];
+        long t = XAttrMetrics.start();
+        try {
+            if (nativeLoaded) {
+                _getxattrbatch(paths, name, options, values, errnos);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    try {
+                        values[i] = FFM.getxattr(paths[i], name, options, false);
+                    } catch (XAttrException e) {
+                        errnos[i] = e.getErrno();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.GETXATTR_BATCH, t, e);
+            throw e;
+        }
+        XAttrMetrics.batch(XAttrMetrics.GETXATTR_BATCH, t, values, errnos);
+        return new XAttrBatchResult(values, errnos);
+    }
+
+    /**
+     * Get an extended attribute value of many files in a single native call(fd-oriented)
+     * @see XAttr4J#getxattrBatch(String[], String, int)
+     */
+    public static XAttrBatchResult fgetxattrBatch(int[] fds, String name, int options) throws IOException {
+        checkNotNull(fds);
+
+        return fgetxattrBatch0(fds, stringToUTF8Bytes(name), options);
+    }
+
+    private static XAttrBatchResult fgetxattrBatch0(int[] fds, byte[] name, int options) throws IOException {
+        int n = fds.length;
+        byte[][] values = new byte[n][];
+        int[] errnos = new int[n];
+        long t = XAttrMetrics.start();
+        try {
+            if (nativeLoaded) {
+                _fgetxattrbatch(fds, name, options, values, errnos);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    try {
+                        values[i] = FFM.fgetxattr(fds[i], name, options, false);
+                    } catch (XAttrException e) {
+                        errnos[i] = e.getErrno();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FGETXATTR_BATCH, t, e);
+            throw e;
+        }
+        XAttrMetrics.batch(XAttrMetrics.FGETXATTR_BATCH, t, values, errnos);
+        return new XAttrBatchResult(values, errnos);
     }
 
     /**
@@ -132,6 +476,79 @@ public final class XAttr4J {
         setxattr(file.getAbsolutePath(), name, value, options);
     }
 
+    /**
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public static void setxattr(XAttrPath path, String name, byte[] value, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(value);
+        _setxattr(path.bytes(), stringToUTF8Bytes(name), value, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public static void setxattr(XAttrPath path, String name, String value, int options) throws IOException {
+        setxattr(path, name, stringToUTF8Bytes(value), options);
+    }
+
+    /**
+     * Set an extended attribute value from a buffer
+     *
+     * Remaining bytes of src will be used as the value  position will be advanced to its limit
+     * For direct buffers  setxattr(2) reads from the buffer memory directly
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param src           Source buffer
+     * @param options       setxattr(2) options
+     * @return              Number of bytes written
+     * @throws IOException  If setxattr(2) operation failed
+     */
+    public static int setxattr(String path, String name, ByteBuffer src, int options) throws IOException {
+        return setxattr0(stringToUTF8Bytes(path), stringToUTF8Bytes(name), src, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public static int setxattr(File file, String name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(file);
+        return setxattr(file.getAbsolutePath(), name, src, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public static int setxattr(XAttrPath path, String name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(path);
+        return setxattr0(path.bytes(), stringToUTF8Bytes(name), src, options);
+    }
+
+    private static int setxattr0(byte[] path, byte[] name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(src);
+
+        /* Copied through a byte[] if only FFM backend is available */
+        if (src.isDirect() && nativeLoaded) {
+            int pos = src.position();
+            int n = src.limit() - pos;
+            long t = XAttrMetrics.start();
+            try {
+                _setxattrbuf(path, name, src, pos, n, options);
+            } catch (IOException e) {
+                XAttrMetrics.failure(XAttrMetrics.SETXATTR, t, e);
+                throw e;
+            }
+            XAttrMetrics.success(XAttrMetrics.SETXATTR, t, n);
+            src.position(pos + n);
+            return n;
+        }
+
+        byte[] value = getValue(src);
+        _setxattr(path, name, value, options);
+        return value.length;
+    }
+
     /**
      * Set an extended attribute value(fd-oriented)
      */
@@ -147,6 +564,38 @@ public final class XAttr4J {
         fsetxattr(fd, name, stringToUTF8Bytes(value), options);
     }
 
+    /**
+     * Set an extended attribute value from a buffer(fd-oriented)
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public static int fsetxattr(int fd, String name, ByteBuffer src, int options) throws IOException {
+        return fsetxattr0(fd, stringToUTF8Bytes(name), src, options);
+    }
+
+    private static int fsetxattr0(int fd, byte[] name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(src);
+
+        /* Copied through a byte[] if only FFM backend is available */
+        if (src.isDirect() && nativeLoaded) {
+            int pos = src.position();
+            int n = src.limit() - pos;
+            long t = XAttrMetrics.start();
+            try {
+                _fsetxattrbuf(fd, name, src, pos, n, options);
+            } catch (IOException e) {
+                XAttrMetrics.failure(XAttrMetrics.FSETXATTR, t, e);
+                throw e;
+            }
+            XAttrMetrics.success(XAttrMetrics.FSETXATTR, t, n);
+            src.position(pos + n);
+            return n;
+        }
+
+        byte[] value = getValue(src);
+        _fsetxattr(fd, name, value, options);
+        return value.length;
+    }
+
     /**
      * Remove an extended attribute value
      *
@@ -182,6 +631,21 @@ public final class XAttr4J {
         removexattr(file, name, options, false);
     }
 
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void removexattr(XAttrPath path, String name, int options, boolean force) throws IOException {
+        checkNotNull(path);
+        _removexattr(path.bytes(), stringToUTF8Bytes(name), options, force);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void removexattr(XAttrPath path, String name, int options) throws IOException {
+        removexattr(path, name, options, false);
+    }
+
     /**
      * Remove an extended attribute(fd-oriented)
      * @see XAttr4J#removexattr(String, String, int, boolean)
@@ -206,7 +670,7 @@ public final class XAttr4J {
      * @throws IOException  If listxattr(2) operation failed
      */
     public static String[] listxattr(String path, int options) throws IOException {
-        return _listxattr(stringToUTF8Bytes(path), options);
+        return listxattr(path, null, options).toArray();
     }
 
     /**
@@ -217,119 +681,1381 @@ public final class XAttr4J {
         return listxattr(file.getAbsolutePath(), options);
     }
 
+    /**
+     * @see XAttr4J#listxattr(String, int)
+     */
+    public static String[] listxattr(XAttrPath path, int options) throws IOException {
+        return listxattr(path, null, options).toArray();
+    }
+
     /**
      * List extended attribute names(fd-oriented)
      * @see XAttr4J#listxattr(String, int)
      */
     public static String[] flistxattr(int fd, int options) throws IOException {
-        return _flistxattr(fd, options);
+        return flistxattr(fd, null, options).toArray();
     }
 
     /**
-     * Get an extended attribute value size(fast wrapper of getxattr(2))
+     * List extended attribute names starting with a prefix  lazily
+     *
+     * Names are filtered natively  non-matching names never become Java objects
+     *  matching names are decoded only when iterated
      *
      * @param path          File path
-     * @param name          Extended attribute name
-     * @param options       getxattr(2) options
-     * @return              Size of the extended attribute value(possibly zero)
-     * @throws IOException  If getxattr(2) operation failed
+     * @param prefix        Name prefix  e.g. "user.myapp."  null to list all
+     * @param options       listxattr(2) options
+     * @return              Lazy list over the raw name buffer
+     * @throws IOException  If listxattr(2) operation failed
      */
-    public static long sizexattr(String path, String name, int options) throws IOException {
-        return _sizexattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options);
+    public static XAttrNameList listxattr(String path, String prefix, int options) throws IOException {
+        return new XAttrNameList(_listxattr(stringToUTF8Bytes(path), prefixBytes(prefix), options));
     }
 
     /**
-     * @see XAttr4J#sizexattr(String, String, int)
+     * @see XAttr4J#listxattr(String, String, int)
      */
-    public static long sizexattr(File file, String name, int options) throws IOException {
+    public static XAttrNameList listxattr(File file, String prefix, int options) throws IOException {
         checkNotNull(file);
-        return sizexattr(file.getAbsolutePath(), name, options);
+        return listxattr(file.getAbsolutePath(), prefix, options);
     }
 
     /**
-     * Get an extended attribute value size(fast wrapper of fgetxattr(2))
-     * @see XAttr4J#sizexattr(String, String, int)
+     * @see XAttr4J#listxattr(String, String, int)
      */
-    public static long fsizexattr(int fd, String name, int options) throws IOException {
-        return _fsizexattr(fd, stringToUTF8Bytes(name), options);
+    public static XAttrNameList listxattr(XAttrPath path, String prefix, int options) throws IOException {
+        checkNotNull(path);
+        return new XAttrNameList(_listxattr(path.bytes(), prefixBytes(prefix), options));
     }
 
     /**
-     * Check if an extended attribute exists
+     * @see XAttr4J#listxattr(String, String, int)
+     */
+    public static XAttrNameList flistxattr(int fd, String prefix, int options) throws IOException {
+        return new XAttrNameList(_flistxattr(fd, prefixBytes(prefix), options));
+    }
+
+    private static byte[] prefixBytes(String prefix) {
+        /* Empty prefix matches all */
+        return prefix == null || prefix.isEmpty() ? null : stringToUTF8Bytes(prefix);
+    }
+
+    /**
+     * List extended attribute names as interned XAttrName instances
      *
-     * @param path          File path
-     * @param name          Extended attribute name
-     * @param options       getxattr(2) options
-     * @return              true if given extended attribute exists  false o.w.
-     * @throws IOException  If getxattr(2) operation failed
-     *                      If given path doesn't exist  IOException will throw
+     * Names are decoded in Java side from the raw listxattr(2) buffer
+     *  already interned names cost neither String nor byte[] allocation
+     *
+     * @see XAttr4J#listxattr(String, int)
      */
-    public static boolean existxattr(String path, String name, int options) throws IOException {
-        return _existxattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options);
+    public static XAttrName[] listxattrNames(String path, int options) throws IOException {
+        return listxattr(path, null, options).toXAttrNames();
     }
 
     /**
-     * @see XAttr4J#existxattr(String, String, int)
+     * @see XAttr4J#listxattrNames(String, int)
      */
-    public static boolean existxattr(File file, String name, int options) throws IOException {
+    public static XAttrName[] listxattrNames(File file, int options) throws IOException {
         checkNotNull(file);
-        return existxattr(file.getAbsolutePath(), name, options);
+        return listxattrNames(file.getAbsolutePath(), options);
     }
 
     /**
-     * Check if an extended attribute exists(fd-oriented)
-     * @see XAttr4J#existxattr(String, String, int)
+     * @see XAttr4J#listxattrNames(String, int)
      */
-    public static boolean fexistxattr(int fd, String name, int options) throws IOException {
-        return _fexistxattr(fd, stringToUTF8Bytes(name), options);
+    public static XAttrName[] listxattrNames(XAttrPath path, int options) throws IOException {
+        return listxattr(path, null, options).toXAttrNames();
     }
 
     /**
-     * @return  number of bits used to store maximum extended attribute size in bytes
+     * @see XAttr4J#listxattrNames(String, int)
      */
-    public static long xattrsizebits(String path) throws IOException {
-        return _xattrsizebits(stringToUTF8Bytes(path));
+    public static XAttrName[] flistxattrNames(int fd, int options) throws IOException {
+        return flistxattr(fd, null, options).toXAttrNames();
     }
 
     /**
-     * @see XAttr4J#xattrsizebits(String)
+     * Get all extended attributes(names and values) in a single native call
+     *
+     * The file will be opened once and every value fetched via fgetxattr(2)
+     *  fallback to path-oriented syscalls if the file cannot be opened(e.g. EACCES)
+     * Attributes removed concurrently are silently skipped
+     *
+     * @param path          File path
+     * @param options       listxattr(2)/getxattr(2) options
+     * @return              Extended attribute name to value map(in listxattr(2) order, empty map is possible)
+     * @throws IOException  If listxattr(2)/getxattr(2) operation failed
+     * @throws UnsupportedOperationException  If the native library is absent
      */
-    public static long xattrsizebits(File file) throws IOException {
-        checkNotNull(file);
-        return xattrsizebits(file.getAbsolutePath());
+    public static Map<String, byte[]> getAllxattrs(String path, int options) throws IOException {
+        return getAllxattrs0(stringToUTF8Bytes(path), options);
     }
 
     /**
-     * @see XAttr4J#xattrsizebits(String)
+     * @see XAttr4J#getAllxattrs(String, int)
      */
-    public static long fxattrsizebits(int fd) throws IOException {
-        return _fxattrsizebits(fd);
+    public static Map<String, byte[]> getAllxattrs(File file, int options) throws IOException {
+        checkNotNull(file);
+        return getAllxattrs(file.getAbsolutePath(), options);
     }
 
-    /* Should call in static block and call once */
-    private static native void init();
+    /**
+     * @see XAttr4J#getAllxattrs(String, int)
+     */
+    public static Map<String, byte[]> getAllxattrs(XAttrPath path, int options) throws IOException {
+        checkNotNull(path);
+        return getAllxattrs0(path.bytes(), options);
+    }
 
-    private static native byte[] _getxattr(byte[] path, byte[] name, int options) throws IOException;
-    private static native byte[] _fgetxattr(int fd, byte[] name, int options) throws IOException;
+    /**
+     * Get all extended attributes(fd-oriented)
+     * @see XAttr4J#getAllxattrs(String, int)
+     */
+    public static Map<String, byte[]> fgetAllxattrs(int fd, int options) throws IOException {
+        checkNative("getAllxattrs");
+        long t = XAttrMetrics.start();
+        byte[] packed;
+        try {
+            packed = _fgetallxattrs(fd, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FGETALLXATTRS, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.FGETALLXATTRS, t, packed.length);
+        return unpackAll(packed);
+    }
 
-    private static native void _setxattr(byte[] path, byte[] name, byte[] value, int options) throws IOException;
-    private static native void _fsetxattr(int fd, byte[] name, byte[] value, int options) throws IOException;
+    private static Map<String, byte[]> getAllxattrs0(byte[] path, int options) throws IOException {
+        checkNative("getAllxattrs");
+        long t = XAttrMetrics.start();
+        byte[] packed;
+        try {
+            packed = _getallxattrs(path, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.GETALLXATTRS, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.GETALLXATTRS, t, packed.length);
+        return unpackAll(packed);
+    }
 
-    private static native void _removexattr(byte[] path, byte[] name, int options, boolean force) throws IOException;
-    private static native void _fremovexattr(int fd, byte[] name, int options, boolean force) throws IOException;
+    /**
+     * Unpack native packed buffer
+     *  each entry: name(UTF-8)  NUL  value length(4 bytes, big-endian)  value
+     */
+    private static Map<String, byte[]> unpackAll(byte[] packed) {
+        Map<String, byte[]> map = new LinkedHashMap<String, byte[]>();
+        int i = 0;
+
+        while (i < packed.length) {
+            int j = i;
+            while (packed[j] != 0) j++;
+            String name = utf8BytesToString(packed, i, j - i);
+            j++;
+
+            int len = (packed[j] & 0xff) << 24 | (packed[j + 1] & 0xff) << 16 |
+                        (packed[j + 2] & 0xff) << 8 | (packed[j + 3] & 0xff);
+            j += 4;
+
+            map.put(name, Arrays.copyOfRange(packed, j, j + len));
+            i = j + len;
+        }
+
+        return map;
+    }
+
+    /**
+     * Get an extended attribute value size(fast wrapper of getxattr(2))
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param options       getxattr(2) options
+     * @return              Size of the extended attribute value(possibly zero)
+     * @throws IOException  If getxattr(2) operation failed
+     */
+    public static long sizexattr(String path, String name, int options) throws IOException {
+        return _sizexattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public static long sizexattr(File file, String name, int options) throws IOException {
+        checkNotNull(file);
+        return sizexattr(file.getAbsolutePath(), name, options);
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public static long sizexattr(XAttrPath path, String name, int options) throws IOException {
+        checkNotNull(path);
+        return _sizexattr(path.bytes(), stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * Get an extended attribute value size(fast wrapper of fgetxattr(2))
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public static long fsizexattr(int fd, String name, int options) throws IOException {
+        return _fsizexattr(fd, stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * Get an extended attribute value size  never throws
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param options       getxattr(2) options
+     * @return              Size of the extended attribute value(possibly zero)
+     *                      negated errno if getxattr(2) failed  e.g. -ENOATTR, -ENOENT
+     * @see XAttr4J#ENOATTR
+     */
+    public static long trySizexattr(String path, String name, int options) {
+        return _trysizexattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public static long trySizexattr(File file, String name, int options) {
+        checkNotNull(file);
+        return trySizexattr(file.getAbsolutePath(), name, options);
+    }
+
+    /**
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public static long trySizexattr(XAttrPath path, String name, int options) {
+        checkNotNull(path);
+        return _trysizexattr(path.bytes(), stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * Get an extended attribute value size(fd-oriented)  never throws
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public static long ftrySizexattr(int fd, String name, int options) {
+        return _ftrysizexattr(fd, stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * Check if an extended attribute exists
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param options       getxattr(2) options
+     * @return              true if given extended attribute exists  false o.w.
+     * @throws IOException  If getxattr(2) operation failed
+     *                      If given path doesn't exist  IOException will throw
+     */
+    public static boolean existxattr(String path, String name, int options) throws IOException {
+        return existxattr(path, name, options, false);
+    }
+
+    /**
+     * Check if an extended attribute exists
+     *
+     * @param path          File path
+     * @param name          Extended attribute name
+     * @param options       getxattr(2) options
+     * @param force         Return false instead of throw if given path doesn't exist
+     * @return              true if given extended attribute exists  false o.w.
+     * @throws IOException  If getxattr(2) operation failed
+     */
+    public static boolean existxattr(String path, String name, int options, boolean force) throws IOException {
+        return _existxattr(stringToUTF8Bytes(path), stringToUTF8Bytes(name), options, force);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public static boolean existxattr(File file, String name, int options) throws IOException {
+        return existxattr(file, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int, boolean)
+     */
+    public static boolean existxattr(File file, String name, int options, boolean force) throws IOException {
+        checkNotNull(file);
+        return existxattr(file.getAbsolutePath(), name, options, force);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public static boolean existxattr(XAttrPath path, String name, int options) throws IOException {
+        return existxattr(path, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int, boolean)
+     */
+    public static boolean existxattr(XAttrPath path, String name, int options, boolean force) throws IOException {
+        checkNotNull(path);
+        return _existxattr(path.bytes(), stringToUTF8Bytes(name), options, force);
+    }
+
+    /**
+     * Check if an extended attribute exists(fd-oriented)
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public static boolean fexistxattr(int fd, String name, int options) throws IOException {
+        return _fexistxattr(fd, stringToUTF8Bytes(name), options);
+    }
+
+    /**
+     * @return  number of bits used to store maximum extended attribute size in bytes
+     * @throws UnsupportedOperationException  If the native library is absent
+     */
+    public static long xattrsizebits(String path) throws IOException {
+        checkNative("xattrsizebits");
+        return _xattrsizebits(stringToUTF8Bytes(path));
+    }
+
+    /**
+     * @see XAttr4J#xattrsizebits(String)
+     */
+    public static long xattrsizebits(File file) throws IOException {
+        checkNotNull(file);
+        return xattrsizebits(file.getAbsolutePath());
+    }
+
+    /**
+     * @see XAttr4J#xattrsizebits(String)
+     */
+    public static long xattrsizebits(XAttrPath path) throws IOException {
+        checkNotNull(path);
+        checkNative("xattrsizebits");
+        return _xattrsizebits(path.bytes());
+    }
+
+    /**
+     * @see XAttr4J#xattrsizebits(String)
+     */
+    public static long fxattrsizebits(int fd) throws IOException {
+        checkNative("xattrsizebits");
+        return _fxattrsizebits(fd);
+    }
+
+    /*
+     * XAttrName overloads  the name is passed down to JNI as is(no per-call encoding)
+     */
+
+    /**
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public static byte[] getxattr(String path, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _getxattr(stringToUTF8Bytes(path), name.bytes(), options, false);
+    }
+
+    /**
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public static byte[] getxattrOrNull(String path, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _getxattr(stringToUTF8Bytes(path), name.bytes(), options, true);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public static int getxattr(String path, XAttrName name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(name);
+        return getxattr0(stringToUTF8Bytes(path), name.bytes(), dst, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public static void setxattr(String path, XAttrName name, byte[] value, int options) throws IOException {
+        checkNotNull(name);
+        checkNotNull(value);
+        _setxattr(stringToUTF8Bytes(path), name.bytes(), value, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public static int setxattr(String path, XAttrName name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(name);
+        return setxattr0(stringToUTF8Bytes(path), name.bytes(), src, options);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void removexattr(String path, XAttrName name, int options, boolean force) throws IOException {
+        checkNotNull(name);
+        _removexattr(stringToUTF8Bytes(path), name.bytes(), options, force);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void removexattr(String path, XAttrName name, int options) throws IOException {
+        removexattr(path, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public static long sizexattr(String path, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _sizexattr(stringToUTF8Bytes(path), name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public static boolean existxattr(String path, XAttrName name, int options) throws IOException {
+        return existxattr(path, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int, boolean)
+     */
+    public static boolean existxattr(String path, XAttrName name, int options, boolean force) throws IOException {
+        checkNotNull(name);
+        return _existxattr(stringToUTF8Bytes(path), name.bytes(), options, force);
+    }
+
+    /**
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public static long trySizexattr(String path, XAttrName name, int options) {
+        checkNotNull(name);
+        return _trysizexattr(stringToUTF8Bytes(path), name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public static byte[] getxattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        return _getxattr(path.bytes(), name.bytes(), options, false);
+    }
+
+    /**
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public static byte[] getxattrOrNull(XAttrPath path, XAttrName name, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        return _getxattr(path.bytes(), name.bytes(), options, true);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public static int getxattr(XAttrPath path, XAttrName name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        return getxattr0(path.bytes(), name.bytes(), dst, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public static void setxattr(XAttrPath path, XAttrName name, byte[] value, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        checkNotNull(value);
+        _setxattr(path.bytes(), name.bytes(), value, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public static int setxattr(XAttrPath path, XAttrName name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        return setxattr0(path.bytes(), name.bytes(), src, options);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void removexattr(XAttrPath path, XAttrName name, int options, boolean force) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        _removexattr(path.bytes(), name.bytes(), options, force);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void removexattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        removexattr(path, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public static long sizexattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        return _sizexattr(path.bytes(), name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public static boolean existxattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        return existxattr(path, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int, boolean)
+     */
+    public static boolean existxattr(XAttrPath path, XAttrName name, int options, boolean force) throws IOException {
+        checkNotNull(path);
+        checkNotNull(name);
+        return _existxattr(path.bytes(), name.bytes(), options, force);
+    }
+
+    /**
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public static long trySizexattr(XAttrPath path, XAttrName name, int options) {
+        checkNotNull(path);
+        checkNotNull(name);
+        return _trysizexattr(path.bytes(), name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public static byte[] fgetxattr(int fd, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _fgetxattr(fd, name.bytes(), options, false);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattrOrNull(int, String, int)
+     */
+    public static byte[] fgetxattrOrNull(int fd, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _fgetxattr(fd, name.bytes(), options, true);
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public static int fgetxattr(int fd, XAttrName name, ByteBuffer dst, int options) throws IOException {
+        checkNotNull(name);
+        return fgetxattr0(fd, name.bytes(), dst, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public static void fsetxattr(int fd, XAttrName name, byte[] value, int options) throws IOException {
+        checkNotNull(name);
+        checkNotNull(value);
+        _fsetxattr(fd, name.bytes(), value, options);
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public static int fsetxattr(int fd, XAttrName name, ByteBuffer src, int options) throws IOException {
+        checkNotNull(name);
+        return fsetxattr0(fd, name.bytes(), src, options);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void fremovexattr(int fd, XAttrName name, int options, boolean force) throws IOException {
+        checkNotNull(name);
+        _fremovexattr(fd, name.bytes(), options, force);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public static void fremovexattr(int fd, XAttrName name, int options) throws IOException {
+        fremovexattr(fd, name, options, false);
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public static long fsizexattr(int fd, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _fsizexattr(fd, name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public static boolean fexistxattr(int fd, XAttrName name, int options) throws IOException {
+        checkNotNull(name);
+        return _fexistxattr(fd, name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public static long ftrySizexattr(int fd, XAttrName name, int options) {
+        checkNotNull(name);
+        return _ftrysizexattr(fd, name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#getxattrBatch(String[], String, int)
+     */
+    public static XAttrBatchResult getxattrBatch(XAttrPath[] paths, XAttrName name, int options) throws IOException {
+        checkNotNull(paths);
+        checkNotNull(name);
+
+        int n = paths.length;
+        byte[][] bpaths = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            checkNotNull(paths[i]);
+            bpaths[i] = paths[i].bytes();
+        }
+
+        return getxattrBatch0(bpaths, name.bytes(), options);
+    }
+
+    /**
+     * @see XAttr4J#getxattrBatch(String[], String, int)
+     */
+    public static XAttrBatchResult fgetxattrBatch(int[] fds, XAttrName name, int options) throws IOException {
+        checkNotNull(fds);
+        checkNotNull(name);
+
+        return fgetxattrBatch0(fds, name.bytes(), options);
+    }
+
+    /*
+     * Overloads on open Java files  the fd is read natively from the FileDescriptor(or FileChannel)
+     *  so that a file just written is tagged without another path lookup
+     * The file must not be closed concurrently  or the fd may already name another file
+     * Pass getFD() or getChannel() of RandomAccessFile  FileInputStream and FileOutputStream
+     */
+
+    /**
+     * @param fdObj         An open file descriptor
+     * @return              Underlying fd(Unix file descriptor number)
+     * @throws IOException  If fdObj is closed
+     * @throws UnsupportedOperationException  If the native library is absent
+     */
+    public static int fileno(FileDescriptor fdObj) throws IOException {
+        checkNotNull(fdObj);
+        int fd = nativeLoaded ? _fileno(fdObj) : unsupportedFileno();
+        if (fd == -2) throw new UnsupportedOperationException("FileDescriptor without an fd field");
+        if (fd < 0) throw new IOException("Invalid file descriptor");
+        return fd;
+    }
+
+    /**
+     * @param ch            A FileChannel of the default file system
+     * @throws ClosedChannelException  If ch is closed
+     * @throws UnsupportedOperationException  If ch isn't backed by a file descriptor
+     * @see XAttr4J#fileno(FileDescriptor)
+     */
+    public static int fileno(FileChannel ch) throws IOException {
+        checkNotNull(ch);
+        if (!ch.isOpen()) throw new ClosedChannelException();
+        int fd = nativeLoaded ? _fileno(ch) : unsupportedFileno();
+        if (fd == -2) throw new UnsupportedOperationException("Not backed by a file descriptor: " + ch.getClass().getName());
+        if (fd < 0) throw new ClosedChannelException();
+        return fd;
+    }
+
+    /**
+     * @see XAttr4J#fileno(FileDescriptor)
+     */
+    public static int fileno(RandomAccessFile file) throws IOException {
+        checkNotNull(file);
+        return fileno(file.getFD());
+    }
+
+    /**
+     * @see XAttr4J#fileno(FileDescriptor)
+     */
+    public static int fileno(FileInputStream in) throws IOException {
+        checkNotNull(in);
+        return fileno(in.getFD());
+    }
+
+    /**
+     * @see XAttr4J#fileno(FileDescriptor)
+     */
+    public static int fileno(FileOutputStream out) throws IOException {
+        checkNotNull(out);
+        return fileno(out.getFD());
+    }
+
+    private static int unsupportedFileno() {
+        throw new UnsupportedOperationException("Native library required to read file descriptors");
+    }
+
+    /**
+     * JNI-only operations  FFM backend may be in use without the native library
+     * @param user  Operation(or class) named in the exception
+     */
+    private static void checkNative(String user) {
+        if (!nativeLoaded) throw new UnsupportedOperationException("Native library required by " + user);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, String, int)
+     */
+    public static byte[] fgetxattr(FileDescriptor fd, String name, int options) throws IOException {
+        return fgetxattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, String, int)
+     */
+    public static byte[] fgetxattr(FileChannel ch, String name, int options) throws IOException {
+        return fgetxattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, String, ByteBuffer, int)
+     */
+    public static int fgetxattr(FileDescriptor fd, String name, ByteBuffer dst, int options) throws IOException {
+        return fgetxattr(fileno(fd), name, dst, options);
+    }
 
-    private static native String[] _listxattr(byte[] path, int options) throws IOException;
-    private static native String[] _flistxattr(int fd, int options) throws IOException;
+    /**
+     * @see XAttr4J#fgetxattr(int, String, ByteBuffer, int)
+     */
+    public static int fgetxattr(FileChannel ch, String name, ByteBuffer dst, int options) throws IOException {
+        return fgetxattr(fileno(ch), name, dst, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, String, byte[], int)
+     */
+    public static void fsetxattr(FileDescriptor fd, String name, byte[] value, int options) throws IOException {
+        fsetxattr(fileno(fd), name, value, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, String, byte[], int)
+     */
+    public static void fsetxattr(FileChannel ch, String name, byte[] value, int options) throws IOException {
+        fsetxattr(fileno(ch), name, value, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, String, ByteBuffer, int)
+     */
+    public static int fsetxattr(FileDescriptor fd, String name, ByteBuffer src, int options) throws IOException {
+        return fsetxattr(fileno(fd), name, src, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, String, ByteBuffer, int)
+     */
+    public static int fsetxattr(FileChannel ch, String name, ByteBuffer src, int options) throws IOException {
+        return fsetxattr(fileno(ch), name, src, options);
+    }
+
+    /**
+     * @see XAttr4J#fremovexattr(int, String, int)
+     */
+    public static void fremovexattr(FileDescriptor fd, String name, int options) throws IOException {
+        fremovexattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fremovexattr(int, String, int)
+     */
+    public static void fremovexattr(FileChannel ch, String name, int options) throws IOException {
+        fremovexattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#flistxattr(int, int)
+     */
+    public static String[] flistxattr(FileDescriptor fd, int options) throws IOException {
+        return flistxattr(fileno(fd), options);
+    }
+
+    /**
+     * @see XAttr4J#flistxattr(int, int)
+     */
+    public static String[] flistxattr(FileChannel ch, int options) throws IOException {
+        return flistxattr(fileno(ch), options);
+    }
+
+    /**
+     * @see XAttr4J#fsizexattr(int, String, int)
+     */
+    public static long fsizexattr(FileDescriptor fd, String name, int options) throws IOException {
+        return fsizexattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fsizexattr(int, String, int)
+     */
+    public static long fsizexattr(FileChannel ch, String name, int options) throws IOException {
+        return fsizexattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fexistxattr(int, String, int)
+     */
+    public static boolean fexistxattr(FileDescriptor fd, String name, int options) throws IOException {
+        return fexistxattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fexistxattr(int, String, int)
+     */
+    public static boolean fexistxattr(FileChannel ch, String name, int options) throws IOException {
+        return fexistxattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, XAttrName, int)
+     */
+    public static byte[] fgetxattr(FileDescriptor fd, XAttrName name, int options) throws IOException {
+        return fgetxattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, XAttrName, int)
+     */
+    public static byte[] fgetxattr(FileChannel ch, XAttrName name, int options) throws IOException {
+        return fgetxattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, XAttrName, ByteBuffer, int)
+     */
+    public static int fgetxattr(FileDescriptor fd, XAttrName name, ByteBuffer dst, int options) throws IOException {
+        return fgetxattr(fileno(fd), name, dst, options);
+    }
+
+    /**
+     * @see XAttr4J#fgetxattr(int, XAttrName, ByteBuffer, int)
+     */
+    public static int fgetxattr(FileChannel ch, XAttrName name, ByteBuffer dst, int options) throws IOException {
+        return fgetxattr(fileno(ch), name, dst, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, XAttrName, byte[], int)
+     */
+    public static void fsetxattr(FileDescriptor fd, XAttrName name, byte[] value, int options) throws IOException {
+        fsetxattr(fileno(fd), name, value, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, XAttrName, byte[], int)
+     */
+    public static void fsetxattr(FileChannel ch, XAttrName name, byte[] value, int options) throws IOException {
+        fsetxattr(fileno(ch), name, value, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, XAttrName, ByteBuffer, int)
+     */
+    public static int fsetxattr(FileDescriptor fd, XAttrName name, ByteBuffer src, int options) throws IOException {
+        return fsetxattr(fileno(fd), name, src, options);
+    }
+
+    /**
+     * @see XAttr4J#fsetxattr(int, XAttrName, ByteBuffer, int)
+     */
+    public static int fsetxattr(FileChannel ch, XAttrName name, ByteBuffer src, int options) throws IOException {
+        return fsetxattr(fileno(ch), name, src, options);
+    }
+
+    /**
+     * @see XAttr4J#fremovexattr(int, XAttrName, int)
+     */
+    public static void fremovexattr(FileDescriptor fd, XAttrName name, int options) throws IOException {
+        fremovexattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fremovexattr(int, XAttrName, int)
+     */
+    public static void fremovexattr(FileChannel ch, XAttrName name, int options) throws IOException {
+        fremovexattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fsizexattr(int, XAttrName, int)
+     */
+    public static long fsizexattr(FileDescriptor fd, XAttrName name, int options) throws IOException {
+        return fsizexattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fsizexattr(int, XAttrName, int)
+     */
+    public static long fsizexattr(FileChannel ch, XAttrName name, int options) throws IOException {
+        return fsizexattr(fileno(ch), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fexistxattr(int, XAttrName, int)
+     */
+    public static boolean fexistxattr(FileDescriptor fd, XAttrName name, int options) throws IOException {
+        return fexistxattr(fileno(fd), name, options);
+    }
+
+    /**
+     * @see XAttr4J#fexistxattr(int, XAttrName, int)
+     */
+    public static boolean fexistxattr(FileChannel ch, XAttrName name, int options) throws IOException {
+        return fexistxattr(fileno(ch), name, options);
+    }
+
+    /* Layout of stat arrays filled by stat()/fstat() */
+    static final int STAT_DEV = 0;
+    static final int STAT_INO = 1;
+    static final int STAT_CTIME_SEC = 2;
+    static final int STAT_CTIME_NSEC = 3;
+    static final int STAT_MAX = 4;
+
+    /**
+     * Fill st with device, inode number and ctime of a file
+     *  any xattr change bumps ctime
+     * @throws UnsupportedOperationException  If the native library is absent
+     */
+    static void stat(XAttrPath path, int options, long[] st) throws IOException {
+        checkNative("stat");
+        _stat(path.bytes(), options, st);
+    }
+
+    /**
+     * @see XAttr4J#stat(XAttrPath, int, long[])
+     */
+    static void fstat(int fd, long[] st) throws IOException {
+        checkNative("stat");
+        _fstat(fd, st);
+    }
+
+    /*
+     * Directory-relative operations for XAttrWalker
+     *  dirfd negative denotes current working directory for opendirat()
+     *  UnsupportedOperationException if the native library is absent
+     */
+
+    static int opendirat(int dirfd, byte[] name) throws IOException {
+        checkNative("XAttrWalker");
+        return _opendirat(dirfd, name);
+    }
+
+    static byte[] readdir(int dirfd) throws IOException {
+        checkNative("XAttrWalker");
+        return _readdir(dirfd);
+    }
+
+    /**
+     * Close an fd opened by this class  no fd can be opened without the native library
+     */
+    static void close(int fd) {
+        checkNative("close");
+        _close(fd);
+    }
+
+    /**
+     * Open a regular file or directory for fd-oriented operations  see: XAttrFdCache
+     * @return  fd  -1 if it cannot be opened or the native library is absent
+     */
+    static int openattr(XAttrPath path, int options) {
+        return nativeLoaded ? _openattr(path.bytes(), options) : -1;
+    }
+
+    /* Kinds of fds opened by openFile()  see: xattr4j_jni.c */
+    static final int FILE_FD = 0;
+    static final int FILE_PROC = 1;
+
+    /**
+     * Open a long-lived handle of XAttrFile
+     * @param kind  [out] kind[0] is FILE_FD or FILE_PROC(operate on /proc/self/fd/<fd> instead)
+     * @return      fd  -1 if the native library is absent
+     */
+    static int openFile(XAttrPath path, int options, int[] kind) throws IOException {
+        return nativeLoaded ? _openfile(path.bytes(), options, kind) : -1;
+    }
+
+    /*
+     * Index layout of XAttrArena  ARENA_STRIDE ints per entry
+     *  a failed read has no name and a negated errno as value length
+     */
+    static final int ARENA_SOURCE = 0;
+    static final int ARENA_NAME_OFF = 1;    /* -1 if no name */
+    static final int ARENA_NAME_LEN = 2;
+    static final int ARENA_VALUE_OFF = 3;
+    static final int ARENA_VALUE_LEN = 4;
+    static final int ARENA_STRIDE = 5;
+
+
+    /**
+     * Read a value of paths[off, off + n)(or fds) into an arena  one entry per file
+     * @param cursor    [in/out] {bytes used, entries}
+     * @return          Number of files read  less than n if the arena or index got full
+     */
+    static int arenaGet(byte[][] paths, int[] fds, int off, int n, int source, XAttrName name, int options,
+                        ByteBuffer arena, int[] index, int[] cursor) throws IOException {
+        checkNative("XAttrArena");
+        return _arenaget(paths, fds, off, n, source, name.bytes(), options, arena, index, cursor);
+    }
+
+    /**
+     * Read all attributes of a file(path or fd) into an arena
+     * @param prefix    Name prefix  null if not filtered
+     * @return          Number of entries appended  negated errno if failed(-ERANGE if it doesn't fit)
+     */
+    static int arenaGetAll(byte[] path, int fd, byte[] prefix, int options, int source,
+                           ByteBuffer arena, int[] index, int[] cursor) throws IOException {
+        checkNative("XAttrArena");
+        return _arenagetall(path, fd, prefix, options, source, arena, index, cursor);
+    }
+
+    /**
+     * @param name      Entry name relative to dirfd  null for dirfd itself
+     * @param prefixes  NUL-separated name prefixes  null if not filtered
+     * @return          Packed extended attributes  see: unpackAll()
+     */
+    static byte[] getAllxattrsAt(int dirfd, byte[] name, byte[] prefixes, int options) throws IOException {
+        checkNative("XAttrWalker");
+        return _getallxattrsat(dirfd, name, prefixes, options);
+    }
+
+    /*
+     * io_uring engine for XAttrRing  Linux only
+     *  operation kinds of uringSubmit()  see: xattr4j_jni.c
+     */
+    static final int URING_GETXATTR = 0;
+    static final int URING_FGETXATTR = 1;
+    static final int URING_SETXATTR = 2;
+    static final int URING_FSETXATTR = 3;
+
+    /**
+     * @return  Ring handle  0 if io_uring(or its xattr opcodes) or the native library unavailable
+     */
+    static long uringOpen(int entries) {
+        return nativeLoaded ? _uringopen(entries) : 0;
+    }
+
+    static void uringClose(long ring) {
+        checkNative("XAttrRing");
+        _uringclose(ring);
+    }
+
+    /**
+     * @param values    Values of set operations  [out] values of succeeded get operations
+     * @param errnos    [out] errno of each operation  0 if succeeded
+     */
+    static void uringSubmit(long ring, int[] ops, byte[][] paths, int[] fds, byte[][] names,
+                            byte[][] values, int[] sizes, int[] options, int[] errnos) throws IOException {
+        checkNative("XAttrRing");
+        _uringsubmit(ring, ops, paths, fds, names, values, sizes, options, errnos);
+    }
+
+    /*
+     * Dispatch to FFM backend if selected  JNI otherwise
+     *  FFM is a static final  so JIT folds the branch away
+     * Every core operation is recorded here  see: XAttrMetrics
+     */
+    private static byte[] _getxattr(byte[] path, byte[] name, int options, boolean nullable) throws IOException {
+        long t = XAttrMetrics.start();
+        byte[] value;
+        try {
+            value = FFM != null ? FFM.getxattr(path, name, options, nullable) : _getxattr0(path, name, options, nullable);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.GETXATTR, t, e);
+            throw e;
+        }
+        if (value != null) {
+            XAttrMetrics.success(XAttrMetrics.GETXATTR, t, value.length);
+        } else {
+            XAttrMetrics.miss(XAttrMetrics.GETXATTR, t);
+        }
+        return value;
+    }
+
+    private static byte[] _fgetxattr(int fd, byte[] name, int options, boolean nullable) throws IOException {
+        long t = XAttrMetrics.start();
+        byte[] value;
+        try {
+            value = FFM != null ? FFM.fgetxattr(fd, name, options, nullable) : _fgetxattr0(fd, name, options, nullable);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FGETXATTR, t, e);
+            throw e;
+        }
+        if (value != null) {
+            XAttrMetrics.success(XAttrMetrics.FGETXATTR, t, value.length);
+        } else {
+            XAttrMetrics.miss(XAttrMetrics.FGETXATTR, t);
+        }
+        return value;
+    }
+
+    private static void _setxattr(byte[] path, byte[] name, byte[] value, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        try {
+            if (FFM != null) {
+                FFM.setxattr(path, name, value, options);
+            } else {
+                _setxattr0(path, name, value, options);
+            }
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.SETXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.SETXATTR, t, value.length);
+    }
+
+    private static void _fsetxattr(int fd, byte[] name, byte[] value, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        try {
+            if (FFM != null) {
+                FFM.fsetxattr(fd, name, value, options);
+            } else {
+                _fsetxattr0(fd, name, value, options);
+            }
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FSETXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.FSETXATTR, t, value.length);
+    }
+
+    private static void _removexattr(byte[] path, byte[] name, int options, boolean force) throws IOException {
+        long t = XAttrMetrics.start();
+        try {
+            if (FFM != null) {
+                FFM.removexattr(path, name, options, force);
+            } else {
+                _removexattr0(path, name, options, force);
+            }
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.REMOVEXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.REMOVEXATTR, t, 0);
+    }
+
+    private static void _fremovexattr(int fd, byte[] name, int options, boolean force) throws IOException {
+        long t = XAttrMetrics.start();
+        try {
+            if (FFM != null) {
+                FFM.fremovexattr(fd, name, options, force);
+            } else {
+                _fremovexattr0(fd, name, options, force);
+            }
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FREMOVEXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.FREMOVEXATTR, t, 0);
+    }
+
+    private static byte[] _listxattr(byte[] path, byte[] prefix, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        byte[] names;
+        try {
+            names = FFM != null ? FFM.listxattr(path, prefix, options) : _listxattr0(path, prefix, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.LISTXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.LISTXATTR, t, names.length);
+        return names;
+    }
+
+    private static byte[] _flistxattr(int fd, byte[] prefix, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        byte[] names;
+        try {
+            names = FFM != null ? FFM.flistxattr(fd, prefix, options) : _flistxattr0(fd, prefix, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FLISTXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.FLISTXATTR, t, names.length);
+        return names;
+    }
+
+    private static long _sizexattr(byte[] path, byte[] name, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        long sz;
+        try {
+            sz = FFM != null ? FFM.sizexattr(path, name, options) : _sizexattr0(path, name, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.SIZEXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.SIZEXATTR, t, 0);
+        return sz;
+    }
+
+    private static long _fsizexattr(int fd, byte[] name, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        long sz;
+        try {
+            sz = FFM != null ? FFM.fsizexattr(fd, name, options) : _fsizexattr0(fd, name, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FSIZEXATTR, t, e);
+            throw e;
+        }
+        XAttrMetrics.success(XAttrMetrics.FSIZEXATTR, t, 0);
+        return sz;
+    }
+
+    private static boolean _existxattr(byte[] path, byte[] name, int options, boolean force) throws IOException {
+        long t = XAttrMetrics.start();
+        boolean exist;
+        try {
+            exist = FFM != null ? FFM.existxattr(path, name, options, force) : _existxattr0(path, name, options, force);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.EXISTXATTR, t, e);
+            throw e;
+        }
+        if (exist) {
+            XAttrMetrics.success(XAttrMetrics.EXISTXATTR, t, 0);
+        } else {
+            XAttrMetrics.miss(XAttrMetrics.EXISTXATTR, t);
+        }
+        return exist;
+    }
+
+    private static boolean _fexistxattr(int fd, byte[] name, int options) throws IOException {
+        long t = XAttrMetrics.start();
+        boolean exist;
+        try {
+            exist = FFM != null ? FFM.fexistxattr(fd, name, options) : _fexistxattr0(fd, name, options);
+        } catch (IOException e) {
+            XAttrMetrics.failure(XAttrMetrics.FEXISTXATTR, t, e);
+            throw e;
+        }
+        if (exist) {
+            XAttrMetrics.success(XAttrMetrics.FEXISTXATTR, t, 0);
+        } else {
+            XAttrMetrics.miss(XAttrMetrics.FEXISTXATTR, t);
+        }
+        return exist;
+    }
+
+    /**
+     * Record a trySizexattr() result  which is a negated errno if failed
+     */
+    private static long trySize(int op, long t, long sz) {
+        if (sz >= 0) {
+            XAttrMetrics.success(op, t, 0);
+        } else if (sz == -ENOATTR) {
+            XAttrMetrics.miss(op, t);
+        } else {
+            XAttrMetrics.failure(op, t, (int) -sz);
+        }
+        return sz;
+    }
+
+    private static long _trysizexattr(byte[] path, byte[] name, int options) {
+        long t = XAttrMetrics.start();
+        return trySize(XAttrMetrics.SIZEXATTR, t,
+                FFM != null ? FFM.trysizexattr(path, name, options) : _trysizexattr0(path, name, options));
+    }
+
+    private static long _ftrysizexattr(int fd, byte[] name, int options) {
+        long t = XAttrMetrics.start();
+        return trySize(XAttrMetrics.FSIZEXATTR, t,
+                FFM != null ? FFM.ftrysizexattr(fd, name, options) : _ftrysizexattr0(fd, name, options));
+    }
+
+    /**
+     * Slow path statistics of native reads  see: XAttrMetrics.Snapshot
+     * @return  {scratch misses, replays}  zeros if native library unavailable
+     */
+    static long[] readStats(boolean reset) {
+        long[] st = new long[2];
+        if (nativeLoaded) _readstats(st, reset);
+        return st;
+    }
+
+    /* Should call in static block and call once */
+    private static native void init(int scratchsz);
+
+    /* nullable: return null instead of throw if absent */
+    private static native byte[] _getxattr0(byte[] path, byte[] name, int options, boolean nullable) throws IOException;
+    private static native byte[] _fgetxattr0(int fd, byte[] name, int options, boolean nullable) throws IOException;
+
+    /* Fill values[i] and errnos[i] for each entry  throw only if the batch cannot complete */
+    private static native void _getxattrbatch(byte[][] paths, byte[] name, int options, byte[][] values, int[] errnos) throws IOException;
+    private static native void _fgetxattrbatch(int[] fds, byte[] name, int options, byte[][] values, int[] errnos) throws IOException;
+
+    /* Direct buffer versions  read/write [pos, pos + len) of the buffer in place */
+    private static native int _getxattrbuf(byte[] path, byte[] name, ByteBuffer dst, int pos, int len, int options) throws IOException;
+    private static native int _fgetxattrbuf(int fd, byte[] name, ByteBuffer dst, int pos, int len, int options) throws IOException;
+
+    private static native void _setxattr0(byte[] path, byte[] name, byte[] value, int options) throws IOException;
+    private static native void _fsetxattr0(int fd, byte[] name, byte[] value, int options) throws IOException;
+
+    private static native void _setxattrbuf(byte[] path, byte[] name, ByteBuffer src, int pos, int len, int options) throws IOException;
+    private static native void _fsetxattrbuf(int fd, byte[] name, ByteBuffer src, int pos, int len, int options) throws IOException;
+
+    private static native void _removexattr0(byte[] path, byte[] name, int options, boolean force) throws IOException;
+    private static native void _fremovexattr0(int fd, byte[] name, int options, boolean force) throws IOException;
+
+    /* NUL-separated names as is  prefix(nullable) filters names natively */
+    private static native byte[] _listxattr0(byte[] path, byte[] prefix, int options) throws IOException;
+    private static native byte[] _flistxattr0(int fd, byte[] prefix, int options) throws IOException;
+
+    /* Packed names and values  see: XAttr4J#unpackAll() */
+    private static native byte[] _getallxattrs(byte[] path, int options) throws IOException;
+    private static native byte[] _fgetallxattrs(int fd, int options) throws IOException;
 
     /* Fast version of getxattr(2) */
-    private static native long _sizexattr(byte[] path, byte[] name, int options) throws IOException;
+    private static native long _sizexattr0(byte[] path, byte[] name, int options) throws IOException;
     /* Fast version of fgetxattr(2) */
-    private static native long _fsizexattr(int fd, byte[] name, int options) throws IOException;
+    private static native long _fsizexattr0(int fd, byte[] name, int options) throws IOException;
 
-    private static native boolean _existxattr(byte[] path, byte[] name, int options) throws IOException;
-    private static native boolean _fexistxattr(int fd, byte[] name, int options) throws IOException;
+    private static native boolean _existxattr0(byte[] path, byte[] name, int options, boolean force) throws IOException;
+    private static native boolean _fexistxattr0(int fd, byte[] name, int options) throws IOException;
+
+    /* Return negated errno instead of throw */
+    private static native long _trysizexattr0(byte[] path, byte[] name, int options);
+    private static native long _ftrysizexattr0(int fd, byte[] name, int options);
+
+    private static native int _enoattr();
+
+    private static native void _readstats(long[] stats, boolean reset);
 
     private static native long _xattrsizebits(byte[] path) throws IOException;
     private static native long _fxattrsizebits(int fd) throws IOException;
-}
 
+    /* st: see STAT_* */
+    private static native void _stat(byte[] path, int options, long[] st) throws IOException;
+    private static native void _fstat(int fd, long[] st) throws IOException;
+
+    private static native int _opendirat(int dirfd, byte[] name) throws IOException;
+    private static native byte[] _readdir(int dirfd) throws IOException;
+    private static native void _close(int fd);
+
+    private static native int _openattr(byte[] path, int options);
+
+    private static native int _openfile(byte[] path, int options, int[] kind) throws IOException;
+
+    private static native int _arenaget(byte[][] paths, int[] fds, int off, int n, int source, byte[] name, int options,
+                                        ByteBuffer arena, int[] index, int[] cursor) throws IOException;
+    private static native int _arenagetall(byte[] path, int fd, byte[] prefix, int options, int source,
+                                           ByteBuffer arena, int[] index, int[] cursor) throws IOException;
+
+    /* -1 if closed  -2 if neither a FileDescriptor nor a FileChannel backed by one */
+    private static native int _fileno(Object fdOrChannel);
+
+    private static native byte[] _getallxattrsat(int dirfd, byte[] name, byte[] prefixes, int options) throws IOException;
+
+    private static native long _uringopen(int entries);
+    private static native void _uringclose(long ring);
+    private static native void _uringsubmit(long ring, int[] ops, byte[][] paths, int[] fds, byte[][] names,
+                                            byte[][] values, int[] sizes, int[] options, int[] errnos) throws IOException;
+}
@@ -0,0 +1,326 @@
+/*
+ * Created 261018
+ *
+ * Off-heap arena of extended attribute values for bulk readers
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Values(and names) of many files are read natively into one direct buffer
+ *  and described by a compact int index  so bulk reads allocate nothing per attribute
+ *
+ * Fill with getxattr()/getAllxattrs()  inspect entries in place
+ *  e.g. valueEquals()  valueHashCode()  compareValues()  buffer()
+ *  then reset() for the next batch  offsets are only valid until then
+ *
+ * Entry i refers to a value of source(i)  i.e. the index of its file in the batch(or the source given)
+ *  a failed read is an entry with errno(i) != 0
+ *
+ * Requires the native library  not thread-safe
+ * JDK 22+ callers may view buffer() as a MemorySegment via MemorySegment.ofBuffer()
+ */
+public final class XAttrArena {
+    private final ByteBuffer arena;
+    private final ByteBuffer view;
+    /* Position used by copyValue() only */
+    private final ByteBuffer copier;
+    private final int[] index;
+    /* {bytes used, entries} */
+    private final int[] cursor = new int[2];
+    /* Paths of a batch handed down to JNI  cleared afterwards */
+    private final byte[][] paths;
+
+    private String lastPrefix;
+    private byte[] lastPrefixBytes;
+
+    /**
+     * @param capacity      Bytes of the off-heap region
+     * @param maxEntries    Maximum number of entries between resets
+     */
+    public XAttrArena(int capacity, int maxEntries) {
+        if (capacity <= 0 || maxEntries <= 0) throw new IllegalArgumentException();
+        if (maxEntries > Integer.MAX_VALUE / XAttr4J.ARENA_STRIDE) throw new IllegalArgumentException("Too many entries " + maxEntries);
+        this.arena = ByteBuffer.allocateDirect(capacity);
+        this.view = arena.asReadOnlyBuffer();
+        this.copier = arena.duplicate();
+        this.index = new int[maxEntries * XAttr4J.ARENA_STRIDE];
+        this.paths = new byte[maxEntries][];
+    }
+
+    /**
+     * Read an extended attribute of paths[from, to)  one entry per file
+     *  stops early once the arena or index gets full  reset() and resume from the returned index
+     *
+     * @return              Index of the first path not read  to if all read
+     * @throws IOException  Only if the native call itself failed  per-file failures are entries
+     */
+    public int getxattr(XAttrPath[] paths, int from, int to, XAttrName name, int options) throws IOException {
+        checkRange(paths.length, from, to);
+        if (name == null) throw new NullPointerException();
+
+        int n = Math.min(to - from, this.paths.length - cursor[1]);
+        for (int i = 0; i < n; i++) this.paths[i] = paths[from + i].bytes();
+
+        int e = cursor[1];
+        int u = cursor[0];
+        long t = XAttrMetrics.start();
+        int read;
+        try {
+            read = XAttr4J.arenaGet(this.paths, null, 0, n, from, name, options, arena, index, cursor);
+        } finally {
+            Arrays.fill(this.paths, 0, n, null);
+        }
+        record(XAttrMetrics.GETXATTR_BATCH, t, u, e);
+        return from + read;
+    }
+
+    /**
+     * @see XAttrArena#getxattr(XAttrPath[], int, int, XAttrName, int)
+     */
+    public int fgetxattr(int[] fds, int from, int to, XAttrName name, int options) throws IOException {
+        checkRange(fds.length, from, to);
+        if (name == null) throw new NullPointerException();
+
+        int e = cursor[1];
+        int u = cursor[0];
+        long t = XAttrMetrics.start();
+        int read = XAttr4J.arenaGet(null, fds, from, to - from, from, name, options, arena, index, cursor);
+        record(XAttrMetrics.FGETXATTR_BATCH, t, u, e);
+        return from + read;
+    }
+
+    /**
+     * Read all extended attributes(names and values) of a file
+     *  names not starting with prefix still take arena space but no entry
+     *
+     * @param prefix        Name prefix  null to read all  reuse the same String to spare its encoding
+     * @param source        Recorded as source() of the entries
+     * @return              Number of entries appended  negated errno if failed
+     *                      -ERANGE if they don't fit  reset() and retry(still -ERANGE if too large for the arena)
+     */
+    public int getAllxattrs(XAttrPath path, String prefix, int options, int source) throws IOException {
+        long t = XAttrMetrics.start();
+        int u = cursor[0];
+        int r = XAttr4J.arenaGetAll(path.bytes(), -1, prefixBytes(prefix), options, source, arena, index, cursor);
+        recordAll(XAttrMetrics.GETALLXATTRS, t, u, r);
+        return r;
+    }
+
+    /**
+     * @see XAttrArena#getAllxattrs(XAttrPath, String, int, int)
+     */
+    public int fgetAllxattrs(int fd, String prefix, int options, int source) throws IOException {
+        long t = XAttrMetrics.start();
+        int u = cursor[0];
+        int r = XAttr4J.arenaGetAll(null, fd, prefixBytes(prefix), options, source, arena, index, cursor);
+        recordAll(XAttrMetrics.FGETALLXATTRS, t, u, r);
+        return r;
+    }
+
+    private byte[] prefixBytes(String prefix) {
+        if (prefix == null || prefix.isEmpty()) return null;
+        if (prefix != lastPrefix) {
+            lastPrefixBytes = XAttr4J.stringToUTF8Bytes(prefix);
+            lastPrefix = prefix;
+        }
+        return lastPrefixBytes;
+    }
+
+    private static void checkRange(int length, int from, int to) {
+        if (from < 0 || from > to || to > length) throw new IndexOutOfBoundsException("[" + from + ", " + to + ") of " + length);
+    }
+
+    private void record(int op, long t, int used, int entries) {
+        if (t == 0) return;
+        XAttrMetrics.success(op, t, cursor[0] - used);
+        for (int i = entries; i < cursor[1]; i++) {
+            int e = errno(i);
+            if (e != 0) XAttrMetrics.errno(e);
+        }
+    }
+
+    private void recordAll(int op, long t, int used, int r) {
+        if (r >= 0) {
+            XAttrMetrics.success(op, t, cursor[0] - used);
+        } else if (r != -XAttr4J.ERANGE) {
+            XAttrMetrics.failure(op, t, -r);
+        }
+    }
+
+    /**
+     * Drop all entries  the region is reused as is
+     */
+    public void reset() {
+        cursor[0] = 0;
+        cursor[1] = 0;
+    }
+
+    /**
+     * @return  Number of entries
+     */
+    public int size() {
+        return cursor[1];
+    }
+
+    /**
+     * @return  Bytes used of the region
+     */
+    public int used() {
+        return cursor[0];
+    }
+
+    public int capacity() {
+        return arena.capacity();
+    }
+
+    /**
+     * @return  Read-only view of the region  use absolute gets with offsets of entries
+     */
+    public ByteBuffer buffer() {
+        return view;
+    }
+
+    private int slot(int i, int field) {
+        if (i < 0 || i >= cursor[1]) throw new IndexOutOfBoundsException("Entry " + i + " of " + cursor[1]);
+        return index[i * XAttr4J.ARENA_STRIDE + field];
+    }
+
+    /**
+     * @return  Index of the file in its batch  or source given to getAllxattrs()
+     */
+    public int source(int i) {
+        return slot(i, XAttr4J.ARENA_SOURCE);
+    }
+
+    /**
+     * @return  errno of a failed read  0 if the value was read
+     */
+    public int errno(int i) {
+        int len = slot(i, XAttr4J.ARENA_VALUE_LEN);
+        return len < 0 ? -len : 0;
+    }
+
+    /**
+     * @return  Offset of the name in buffer()  -1 if the entry has no name(read by getxattr())
+     */
+    public int nameOffset(int i) {
+        return slot(i, XAttr4J.ARENA_NAME_OFF);
+    }
+
+    /**
+     * @return  Length of the UTF-8 name(without NUL)
+     */
+    public int nameLength(int i) {
+        return slot(i, XAttr4J.ARENA_NAME_LEN);
+    }
+
+    /**
+     * @return  Offset of the value in buffer()
+     */
+    public int valueOffset(int i) {
+        return slot(i, XAttr4J.ARENA_VALUE_OFF);
+    }
+
+    /**
+     * @return  Length of the value  -1 if the read failed
+     */
+    public int valueLength(int i) {
+        return Math.max(slot(i, XAttr4J.ARENA_VALUE_LEN), -1);
+    }
+
+    /**
+     * @return  true if the entry is named name
+     */
+    public boolean nameEquals(int i, XAttrName name) {
+        int off = nameOffset(i);
+        if (off < 0) return false;
+        byte[] b = name.bytes();
+        return rangeEquals(off, nameLength(i), b, 0, b.length - 1);
+    }
+
+    /**
+     * @return  true if the value equals value  false if the read failed
+     */
+    public boolean valueEquals(int i, byte[] value) {
+        int len = valueLength(i);
+        return len >= 0 && rangeEquals(valueOffset(i), len, value, 0, value.length);
+    }
+
+    private boolean rangeEquals(int off, int len, byte[] b, int boff, int blen) {
+        if (len != blen) return false;
+        for (int k = 0; k < len; k++) {
+            if (arena.get(off + k) != b[boff + k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return  Arrays.hashCode() of the value  0 if the read failed
+     */
+    public int valueHashCode(int i) {
+        int len = valueLength(i);
+        if (len < 0) return 0;
+        int off = valueOffset(i);
+        int h = 1;
+        for (int k = 0; k < len; k++) h = 31 * h + arena.get(off + k);
+        return h;
+    }
+
+    /**
+     * Compare values as unsigned bytes lexicographically  a failed read sorts first
+     */
+    public int compareValues(int i, int j) {
+        int li = valueLength(i);
+        int lj = valueLength(j);
+        if (li < 0 || lj < 0) return Integer.compare(li, lj);
+
+        int oi = valueOffset(i);
+        int oj = valueOffset(j);
+        int n = Math.min(li, lj);
+        for (int k = 0; k < n; k++) {
+            int c = (arena.get(oi + k) & 0xff) - (arena.get(oj + k) & 0xff);
+            if (c != 0) return c;
+        }
+        return Integer.compare(li, lj);
+    }
+
+    /**
+     * Copy the value into dst at off
+     * @return  Length of the value  -1 if the read failed
+     * @throws IndexOutOfBoundsException  If dst is too small
+     */
+    public int copyValue(int i, byte[] dst, int off) {
+        int len = valueLength(i);
+        if (len <= 0) return len;
+        copier.position(valueOffset(i));
+        copier.get(dst, off, len);
+        return len;
+    }
+
+    /**
+     * @return  A copy of the value  null if the read failed
+     */
+    public byte[] value(int i) {
+        int len = valueLength(i);
+        if (len < 0) return null;
+        byte[] v = new byte[len];
+        copyValue(i, v, 0);
+        return v;
+    }
+
+    /**
+     * @return  Decoded name  null if the entry has no name
+     */
+    public String name(int i) {
+        int off = nameOffset(i);
+        if (off < 0) return null;
+        byte[] b = new byte[nameLength(i)];
+        for (int k = 0; k < b.length; k++) b[k] = arena.get(off + k);
+        return XAttr4J.utf8BytesToString(b, 0, b.length);
+    }
+}
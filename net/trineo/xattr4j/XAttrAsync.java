@@ -0,0 +1,445 @@
+/*
+ * Created 261018
+ *
+ * Asynchronous extended attribute operations on a bounded native I/O pool
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CompletableFuture-based facade over XAttr4J
+ *
+ * Every blocking syscall runs on a fixed pool of platform threads
+ *  callers(e.g. virtual threads) never block nor pin their carrier threads
+ *  and kernel concurrency of extended attribute I/O is capped by the pool size
+ *
+ * Queued getxattr requests of the same name and options are coalesced into
+ *  a single batched native call  see: XAttr4J#getxattrBatch(String[], String, int)
+ *
+ * A cancelled(or timed out) request which hasn't started is skipped
+ *  a syscall already in flight cannot be interrupted  its result is simply dropped
+ *
+ * Futures are completed on pool threads  dependent stages should be async(or cheap)
+ */
+public final class XAttrAsync implements Closeable {
+    /* Maximum number of getxattr requests drained into one batch */
+    private static final int MAX_BATCH = 64;
+
+    private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+    private final int capacity;
+    private final int maxDrainers;
+    private final long timeoutNanos;
+
+    private final ThreadPoolExecutor executor;
+    /* null if no timeout */
+    private final ScheduledThreadPoolExecutor timer;
+
+    /* Queued and not yet started requests  bounded by capacity */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Get> gets = new ConcurrentLinkedQueue<Get>();
+    private final AtomicInteger drainers = new AtomicInteger();
+
+    /**
+     * @param threads       Number of platform threads issuing syscalls
+     * @param capacity      Maximum number of queued requests  excess ones fail with RejectedExecutionException
+     */
+    public XAttrAsync(int threads, int capacity) {
+        this(threads, capacity, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param threads       Number of platform threads issuing syscalls
+     * @param capacity      Maximum number of queued requests  excess ones fail with RejectedExecutionException
+     * @param timeout       Requests not completed within this time fail with TimeoutException  0 for no timeout
+     * @param unit          Time unit of timeout
+     */
+    public XAttrAsync(int threads, int capacity, long timeout, TimeUnit unit) {
+        if (threads <= 0 || capacity <= 0 || timeout < 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.maxDrainers = threads;
+        this.timeoutNanos = unit.toNanos(timeout);
+
+        int seq = POOL_SEQ.incrementAndGet();
+        /* Queue is bounded by pending  no need to bound it twice */
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.NANOSECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("xattr4j-async-" + seq + "-"));
+
+        if (timeoutNanos != 0) {
+            timer = new ScheduledThreadPoolExecutor(1, threadFactory("xattr4j-timer-" + seq + "-"));
+            timer.setRemoveOnCancelPolicy(true);
+        } else {
+            timer = null;
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * @return  true if a slot is acquired  otherwise future is failed
+     */
+    private boolean acquire(CompletableFuture<?> f) {
+        int n;
+        do {
+            n = pending.get();
+            if (n >= capacity) {
+                f.completeExceptionally(new RejectedExecutionException("Too many pending requests  capacity: " + capacity));
+                return false;
+            }
+        } while (!pending.compareAndSet(n, n + 1));
+
+        if (timer != null) {
+            final ScheduledFuture<?> t = timer.schedule(
+                    () -> f.completeExceptionally(new TimeoutException()), timeoutNanos, TimeUnit.NANOSECONDS);
+            f.whenComplete((v, e) -> t.cancel(false));
+        }
+        return true;
+    }
+
+    private <T> CompletableFuture<T> submit(final Call<T> call) {
+        final CompletableFuture<T> f = new CompletableFuture<T>();
+        if (!acquire(f)) return f;
+
+        try {
+            executor.execute(() -> {
+                pending.decrementAndGet();
+                /* Cancelled or timed out while queued */
+                if (f.isDone()) return;
+                try {
+                    f.complete(call.call());
+                } catch (Throwable e) {
+                    f.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    private static final class Get {
+        final XAttrPath path;
+        final XAttrName name;
+        final int options;
+        final boolean nullable;
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+
+        Get(XAttrPath path, XAttrName name, int options, boolean nullable) {
+            this.path = path;
+            this.name = name;
+            this.options = options;
+            this.nullable = nullable;
+        }
+
+        boolean sameBatch(Get g) {
+            return options == g.options && name.equals(g.name);
+        }
+
+        void fail(int errno) {
+            if (errno == XAttr4J.ENOATTR && nullable) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(
+                        new XAttrException("getxattr(2)", errno, path.bytes(), -1, name.bytes(), options));
+            }
+        }
+    }
+
+    private CompletableFuture<byte[]> get(Get g) {
+        if (!acquire(g.future)) return g.future;
+        gets.add(g);
+        scheduleDrain();
+        return g.future;
+    }
+
+    /**
+     * Make sure enough drainers are running for queued getxattr requests
+     *  at most one drainer per thread  the rest of requests pile up into batches
+     */
+    private void scheduleDrain() {
+        int n;
+        do {
+            n = drainers.get();
+            if (n >= maxDrainers) return;
+        } while (!drainers.compareAndSet(n, n + 1));
+
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            drainers.decrementAndGet();
+            Get g;
+            while ((g = gets.poll()) != null) {
+                pending.decrementAndGet();
+                g.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Drain a single batch  then yield the thread to other queued operations
+     */
+    private void drain() {
+        List<Get> chunk = new ArrayList<Get>();
+        try {
+            Get g;
+            while (chunk.size() < MAX_BATCH && (g = gets.poll()) != null) chunk.add(g);
+            pending.addAndGet(-chunk.size());
+            execute(chunk);
+        } finally {
+            drainers.decrementAndGet();
+        }
+
+        /* Requests may be queued after the poll but before the decrement */
+        if (!gets.isEmpty()) scheduleDrain();
+    }
+
+    /**
+     * Group requests by name and options  issue one syscall(or batched native call) per group
+     */
+    private static void execute(List<Get> chunk) {
+        int n = chunk.size();
+        boolean[] taken = new boolean[n];
+        List<Get> group = new ArrayList<Get>();
+
+        for (int i = 0; i < n; i++) {
+            if (taken[i]) continue;
+            Get head = chunk.get(i);
+            group.clear();
+            for (int j = i; j < n; j++) {
+                Get g = chunk.get(j);
+                if (!taken[j] && head.sameBatch(g)) {
+                    taken[j] = true;
+                    /* Skip cancelled or timed out ones */
+                    if (!g.future.isDone()) group.add(g);
+                }
+            }
+            if (!group.isEmpty()) execute(head.name, head.options, group);
+        }
+    }
+
+    private static void execute(XAttrName name, int options, List<Get> group) {
+        if (group.size() == 1) {
+            Get g = group.get(0);
+            try {
+                g.future.complete(g.nullable ?
+                        XAttr4J.getxattrOrNull(g.path, name, options) :
+                        XAttr4J.getxattr(g.path, name, options));
+            } catch (Throwable e) {
+                g.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        int n = group.size();
+        byte[][] paths = new byte[n][];
+        for (int i = 0; i < n; i++) paths[i] = group.get(i).path.bytes();
+
+        XAttrBatchResult r;
+        try {
+            r = XAttr4J.getxattrBatch(paths, name, options);
+        } catch (Throwable e) {
+            for (Get g : group) g.future.completeExceptionally(e);
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            Get g = group.get(i);
+            if (r.isSuccess(i)) {
+                g.future.complete(r.value(i));
+            } else {
+                g.fail(r.errno(i));
+            }
+        }
+    }
+
+    private static void checkNotNull(Object ref) {
+        if (ref == null) throw new NullPointerException();
+    }
+
+    /**
+     * @return  Future of the extended attribute value
+     *          failed with XAttrException(ENOATTR) if the attribute doesn't exist
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public CompletableFuture<byte[]> getxattr(String path, String name, int options) {
+        return get(new Get(new XAttrPath(path), XAttrName.of(name), options, false));
+    }
+
+    /**
+     * @see XAttrAsync#getxattr(String, String, int)
+     */
+    public CompletableFuture<byte[]> getxattr(File file, String name, int options) {
+        return get(new Get(new XAttrPath(file), XAttrName.of(name), options, false));
+    }
+
+    /**
+     * @see XAttrAsync#getxattr(String, String, int)
+     */
+    public CompletableFuture<byte[]> getxattr(XAttrPath path, XAttrName name, int options) {
+        checkNotNull(path);
+        checkNotNull(name);
+        return get(new Get(path, name, options, false));
+    }
+
+    /**
+     * @return  Future of the extended attribute value  completed with null if absent
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public CompletableFuture<byte[]> getxattrOrNull(String path, String name, int options) {
+        return get(new Get(new XAttrPath(path), XAttrName.of(name), options, true));
+    }
+
+    /**
+     * @see XAttrAsync#getxattrOrNull(String, String, int)
+     */
+    public CompletableFuture<byte[]> getxattrOrNull(File file, String name, int options) {
+        return get(new Get(new XAttrPath(file), XAttrName.of(name), options, true));
+    }
+
+    /**
+     * @see XAttrAsync#getxattrOrNull(String, String, int)
+     */
+    public CompletableFuture<byte[]> getxattrOrNull(XAttrPath path, XAttrName name, int options) {
+        checkNotNull(path);
+        checkNotNull(name);
+        return get(new Get(path, name, options, true));
+    }
+
+    /**
+     * NOTE: value must not be modified until the future completes
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public CompletableFuture<Void> setxattr(String path, String name, byte[] value, int options) {
+        final XAttrPath p = new XAttrPath(path);
+        final XAttrName x = XAttrName.of(name);
+        checkNotNull(value);
+        return submit(() -> {
+            XAttr4J.setxattr(p, x, value, options);
+            return null;
+        });
+    }
+
+    /**
+     * @see XAttrAsync#setxattr(String, String, byte[], int)
+     */
+    public CompletableFuture<Void> setxattr(File file, String name, byte[] value, int options) {
+        checkNotNull(file);
+        return setxattr(file.getAbsolutePath(), name, value, options);
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public CompletableFuture<Void> removexattr(String path, String name, int options, boolean force) {
+        final XAttrPath p = new XAttrPath(path);
+        final XAttrName x = XAttrName.of(name);
+        return submit(() -> {
+            XAttr4J.removexattr(p, x, options, force);
+            return null;
+        });
+    }
+
+    /**
+     * @see XAttrAsync#removexattr(String, String, int, boolean)
+     */
+    public CompletableFuture<Void> removexattr(File file, String name, int options, boolean force) {
+        checkNotNull(file);
+        return removexattr(file.getAbsolutePath(), name, options, force);
+    }
+
+    /**
+     * @see XAttr4J#listxattr(String, int)
+     */
+    public CompletableFuture<String[]> listxattr(String path, int options) {
+        final XAttrPath p = new XAttrPath(path);
+        return submit(() -> XAttr4J.listxattr(p, options));
+    }
+
+    /**
+     * @see XAttrAsync#listxattr(String, int)
+     */
+    public CompletableFuture<String[]> listxattr(File file, int options) {
+        checkNotNull(file);
+        return listxattr(file.getAbsolutePath(), options);
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public CompletableFuture<Long> sizexattr(String path, String name, int options) {
+        final XAttrPath p = new XAttrPath(path);
+        final XAttrName x = XAttrName.of(name);
+        return submit(() -> XAttr4J.sizexattr(p, x, options));
+    }
+
+    /**
+     * @see XAttrAsync#sizexattr(String, String, int)
+     */
+    public CompletableFuture<Long> sizexattr(File file, String name, int options) {
+        checkNotNull(file);
+        return sizexattr(file.getAbsolutePath(), name, options);
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int, boolean)
+     */
+    public CompletableFuture<Boolean> existxattr(String path, String name, int options, boolean force) {
+        final XAttrPath p = new XAttrPath(path);
+        final XAttrName x = XAttrName.of(name);
+        return submit(() -> XAttr4J.existxattr(p, x, options, force));
+    }
+
+    /**
+     * @see XAttrAsync#existxattr(String, String, int, boolean)
+     */
+    public CompletableFuture<Boolean> existxattr(File file, String name, int options, boolean force) {
+        checkNotNull(file);
+        return existxattr(file.getAbsolutePath(), name, options, force);
+    }
+
+    /**
+     * @return  Number of queued and not yet started requests
+     */
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stop accepting requests  already queued ones still run
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (timer != null) timer.shutdown();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Created 261018
+ *
+ * Alternative backend of XAttr4J core operations
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+
+/**
+ * Core operations served without JNI  implemented by java22/net/trineo/xattr4j/FfmBackend.java
+ *  which only exists in the multi-release jar(META-INF/versions/22)
+ *
+ * Method signatures mirror XAttr4J's private natives  keep both in sync
+ */
+abstract class XAttrBackend {
+    private static final String FFM_BACKEND = "net.trineo.xattr4j.FfmBackend";
+
+    /**
+     * @return  Panama FFM backend  null if unavailable(always on JDK < 22) or not selected
+     * @throws RuntimeException if BACKEND_PROPERTY says "ffm" yet it's unavailable
+     */
+    static XAttrBackend load() {
+        XAttrBackend b;
+        Throwable cause = null;
+        try {
+            b = (XAttrBackend) Class.forName(FFM_BACKEND).getDeclaredMethod("load").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            /* e.g. JDK < 22  FfmBackend class absent */
+            b = null;
+            cause = e;
+        }
+        if (b == null && "ffm".equals(System.getProperty(XAttr4J.BACKEND_PROPERTY))) {
+            throw new RuntimeException("ERROR: Panama FFM backend unavailable", cause);
+        }
+        return b;
+    }
+
+    abstract int enoattr();
+
+    abstract byte[] getxattr(byte[] path, byte[] name, int options, boolean nullable) throws IOException;
+
+    abstract byte[] fgetxattr(int fd, byte[] name, int options, boolean nullable) throws IOException;
+
+    abstract void setxattr(byte[] path, byte[] name, byte[] value, int options) throws IOException;
+
+    abstract void fsetxattr(int fd, byte[] name, byte[] value, int options) throws IOException;
+
+    abstract void removexattr(byte[] path, byte[] name, int options, boolean force) throws IOException;
+
+    abstract void fremovexattr(int fd, byte[] name, int options, boolean force) throws IOException;
+
+    abstract byte[] listxattr(byte[] path, byte[] prefix, int options) throws IOException;
+
+    abstract byte[] flistxattr(int fd, byte[] prefix, int options) throws IOException;
+
+    abstract long sizexattr(byte[] path, byte[] name, int options) throws IOException;
+
+    abstract long fsizexattr(int fd, byte[] name, int options) throws IOException;
+
+    abstract boolean existxattr(byte[] path, byte[] name, int options, boolean force) throws IOException;
+
+    abstract boolean fexistxattr(int fd, byte[] name, int options) throws IOException;
+
+    abstract long trysizexattr(byte[] path, byte[] name, int options);
+
+    abstract long ftrysizexattr(int fd, byte[] name, int options);
+}
@@ -0,0 +1,57 @@
+/*
+ * Created 261018
+ *
+ * Result of a batched extended attribute operation
+ */
+
+package net.trineo.xattr4j;
+
+/**
+ * Per-entry values and errnos of a batched operation
+ *  entries are in the same order as the batch inputs
+ *
+ * @see XAttr4J#getxattrBatch(String[], String, int)
+ * @see XAttr4J#fgetxattrBatch(int[], String, int)
+ */
+public final class XAttrBatchResult {
+    private final byte[][] values;
+    private final int[] errnos;
+
+    XAttrBatchResult(byte[][] values, int[] errnos) {
+        assert values.length == errnos.length;
+        this.values = values;
+        this.errnos = errnos;
+    }
+
+    /**
+     * @return  Number of entries
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param i     Entry index
+     * @return      true if operation on i-th entry succeeded
+     */
+    public boolean isSuccess(int i) {
+        return errnos[i] == 0;
+    }
+
+    /**
+     * @param i     Entry index
+     * @return      Extended attribute value of i-th entry  null if failed
+     */
+    public byte[] value(int i) {
+        return values[i];
+    }
+
+    /**
+     * @param i     Entry index
+     * @return      errno of i-th entry  0 if succeeded
+     *              e.g. ENOATTR(macOS 93, Linux 61) if attribute is missing
+     */
+    public int errno(int i) {
+        return errnos[i];
+    }
+}
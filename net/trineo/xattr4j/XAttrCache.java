@@ -0,0 +1,384 @@
+/*
+ * Created 261018
+ *
+ * Validated read cache of extended attribute values
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-weighted LRU cache of extended attribute values
+ *
+ * Each entry remembers (st_dev, st_ino, st_ctime) of its file at load time
+ *  any xattr change bumps ctime  so a hit costs a single stat(2) instead of getxattr(2)
+ *  within the staleness window a hit costs no syscall at all
+ *
+ * Since ctime granularity is coarse on some file systems(e.g. HFS+ 1 second)
+ *  entries loaded within RACY_NANOS of their file's ctime are reloaded instead of revalidated
+ *
+ * Writes through this cache invalidate affected entries
+ *  writes bypassing it are noticed on next revalidation(i.e. after the staleness window)
+ *
+ * Absence of an attribute is cached as well  thread-safe
+ * Requires the native library(for stat(2))  UnsupportedOperationException otherwise
+ */
+public final class XAttrCache {
+    /* Approximated per-entry footprint besides value and key bytes */
+    private static final int ENTRY_OVERHEAD = 96;
+    static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long maxWeight;
+    private final long staleNanos;
+
+    /* Access-ordered  guarded by itself */
+    private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+    private long weight;    /* Guarded by map */
+    /* Distinct options of cached keys  usually one or two  guarded by map */
+    private int[] cachedOptions = new int[0];
+    /* Bumped by every invalidation  guarded by map */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxWeight     Maximum total weight(approximately bytes) of cached entries
+     */
+    public XAttrCache(long maxWeight) {
+        this(maxWeight, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxWeight     Maximum total weight(approximately bytes) of cached entries
+     * @param staleness     Entries validated within this window are served without any syscall
+     *                      0 to validate on every hit
+     * @param unit          Time unit of staleness
+     */
+    public XAttrCache(long maxWeight, long staleness, TimeUnit unit) {
+        if (maxWeight <= 0 || staleness < 0) throw new IllegalArgumentException();
+        this.maxWeight = maxWeight;
+        this.staleNanos = unit.toNanos(staleness);
+    }
+
+    private static final class Key {
+        final String path;
+        final XAttrName name;
+        final int options;
+
+        Key(String path, XAttrName name, int options) {
+            if (path == null) throw new NullPointerException();
+            this.path = path;
+            this.name = name;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return options == k.options && name.equals(k.name) && path.equals(k.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + name.hashCode()) * 31 + options;
+        }
+    }
+
+    private static final class Entry {
+        final XAttrPath path;
+        final byte[] value;     /* null if absent */
+        final long[] st;
+        final boolean racy;
+        final long weight;
+        volatile long validated;
+
+        Entry(Key key, XAttrPath path, byte[] value, long[] st, long now) {
+            this.path = path;
+            this.value = value;
+            this.st = st;
+            this.racy = isRacy(st);
+            this.weight = ENTRY_OVERHEAD + path.bytes().length + key.name.bytes().length
+                            + (value != null ? value.length : 0);
+            this.validated = now;
+        }
+
+        boolean matches(long[] st) {
+            return this.st[XAttr4J.STAT_DEV] == st[XAttr4J.STAT_DEV]
+                && this.st[XAttr4J.STAT_INO] == st[XAttr4J.STAT_INO]
+                && this.st[XAttr4J.STAT_CTIME_SEC] == st[XAttr4J.STAT_CTIME_SEC]
+                && this.st[XAttr4J.STAT_CTIME_NSEC] == st[XAttr4J.STAT_CTIME_NSEC];
+        }
+    }
+
+    /**
+     * @return  true if ctime is too close to now to tell later changes apart
+     */
+    static boolean isRacy(long[] st) {
+        long ctime = TimeUnit.SECONDS.toNanos(st[XAttr4J.STAT_CTIME_SEC]) + st[XAttr4J.STAT_CTIME_NSEC];
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - ctime < RACY_NANOS;
+    }
+
+    /**
+     * Get an extended attribute value  served from cache if still valid
+     *
+     * @return              A copy of the extended attribute value
+     * @throws IOException  If getxattr(2) operation failed
+     *                      XAttrException with ENOATTR if the attribute doesn't exist
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public byte[] getxattr(String path, String name, int options) throws IOException {
+        Key key = new Key(path, XAttrName.of(name), options);
+        Entry e = get(key);
+        if (e == null) return XAttr4J.getxattr(path, key.name, options);
+        if (e.value == null) {
+            throw new XAttrException("getxattr(2)", XAttr4J.ENOATTR, e.path.bytes(), -1, key.name.bytes(), options);
+        }
+        return e.value.clone();
+    }
+
+    /**
+     * @see XAttrCache#getxattr(String, String, int)
+     */
+    public byte[] getxattr(File file, String name, int options) throws IOException {
+        if (file == null) throw new NullPointerException();
+        return getxattr(file.getAbsolutePath(), name, options);
+    }
+
+    /**
+     * Get an extended attribute value  null if absent
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public byte[] getxattrOrNull(String path, String name, int options) throws IOException {
+        Key key = new Key(path, XAttrName.of(name), options);
+        Entry e = get(key);
+        if (e == null) return XAttr4J.getxattrOrNull(path, key.name, options);
+        return e.value != null ? e.value.clone() : null;
+    }
+
+    /**
+     * @see XAttrCache#getxattrOrNull(String, String, int)
+     */
+    public byte[] getxattrOrNull(File file, String name, int options) throws IOException {
+        if (file == null) throw new NullPointerException();
+        return getxattrOrNull(file.getAbsolutePath(), name, options);
+    }
+
+    /**
+     * Set an extended attribute value and invalidate its cache entry
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public void setxattr(String path, String name, byte[] value, int options) throws IOException {
+        XAttrName x = XAttrName.of(name);
+        try {
+            XAttr4J.setxattr(path, x, value, options);
+        } finally {
+            invalidate(path, x);
+        }
+    }
+
+    /**
+     * @see XAttrCache#setxattr(String, String, byte[], int)
+     */
+    public void setxattr(File file, String name, byte[] value, int options) throws IOException {
+        if (file == null) throw new NullPointerException();
+        setxattr(file.getAbsolutePath(), name, value, options);
+    }
+
+    /**
+     * Remove an extended attribute and invalidate its cache entry
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public void removexattr(String path, String name, int options, boolean force) throws IOException {
+        XAttrName x = XAttrName.of(name);
+        try {
+            XAttr4J.removexattr(path, x, options, force);
+        } finally {
+            invalidate(path, x);
+        }
+    }
+
+    /**
+     * @see XAttrCache#removexattr(String, String, int, boolean)
+     */
+    public void removexattr(File file, String name, int options, boolean force) throws IOException {
+        if (file == null) throw new NullPointerException();
+        removexattr(file.getAbsolutePath(), name, options, force);
+    }
+
+    /**
+     * Lookup or load an entry
+     * @return  null if the file cannot be stat(2)ed  caller should fallback to uncached call
+     */
+    private Entry get(Key key) throws IOException {
+        long now = System.nanoTime();
+        Entry e;
+        long gen;
+        synchronized (map) {
+            e = map.get(key);
+            gen = generation;
+        }
+
+        if (e != null && !e.racy && now - e.validated < staleNanos) {
+            hits.incrementAndGet();
+            return e;
+        }
+
+        XAttrPath xpath = e != null ? e.path : new XAttrPath(key.path);
+        long[] st = new long[XAttr4J.STAT_MAX];
+        try {
+            XAttr4J.stat(xpath, key.options, st);
+        } catch (XAttrException ex) {
+            if (e != null) remove(key, e);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (e != null && !e.racy && e.matches(st)) {
+            e.validated = now;
+            hits.incrementAndGet();
+            return e;
+        }
+
+        misses.incrementAndGet();
+        /* stat(2) precedes getxattr(2)  a change in between bumps ctime thus fails next validation */
+        byte[] value = XAttr4J.getxattrOrNull(xpath, key.name, key.options);
+        Entry n = new Entry(key, xpath, value, st, now);
+        put(key, n, gen);
+        return n;
+    }
+
+    /**
+     * @param gen   Generation read before the stat(2)  if invalidated since(e.g. a write through this cache
+     *              raced with the load)  the entry may hold an old value under an old ctime thus isn't cached
+     */
+    private void put(Key key, Entry e, long gen) {
+        /* Never cache an entry which would evict everything else */
+        if (e.weight > maxWeight) return;
+
+        synchronized (map) {
+            if (generation != gen) return;
+            Entry old = map.put(key, e);
+            if (old != null) weight -= old.weight;
+            weight += e.weight;
+            if (old == null) addOptions(key.options);
+
+            Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+            while (weight > maxWeight && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                weight -= eldest.weight;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private void remove(Key key, Entry e) {
+        synchronized (map) {
+            if (map.get(key) == e) {
+                map.remove(key);
+                weight -= e.weight;
+            }
+        }
+    }
+
+    /* Must hold map */
+    private void addOptions(int options) {
+        for (int o : cachedOptions) if (o == options) return;
+        int[] a = Arrays.copyOf(cachedOptions, cachedOptions.length + 1);
+        a[cachedOptions.length] = options;
+        cachedOptions = a;
+    }
+
+    /**
+     * Invalidate both follow and nofollow entries(i.e. any options) of a path and name
+     *  exact keys are removed  no walk over the whole map
+     */
+    private void invalidate(String path, XAttrName name) {
+        synchronized (map) {
+            generation++;
+            for (int o : cachedOptions) {
+                Entry e = map.remove(new Key(path, name, o));
+                if (e != null) weight -= e.weight;
+            }
+        }
+    }
+
+    /**
+     * Invalidate all entries of a path
+     */
+    public void invalidate(String path) {
+        synchronized (map) {
+            generation++;
+            for (Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, Entry> me = it.next();
+                if (me.getKey().path.equals(path)) {
+                    it.remove();
+                    weight -= me.getValue().weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate all entries
+     */
+    public void invalidateAll() {
+        synchronized (map) {
+            generation++;
+            map.clear();
+            weight = 0;
+            cachedOptions = new int[0];
+        }
+    }
+
+    /**
+     * @return  Number of cached entries
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    /**
+     * @return  Total weight of cached entries
+     */
+    public long weight() {
+        synchronized (map) {
+            return weight;
+        }
+    }
+
+    /**
+     * @return  Number of lookups served from cache
+     */
+    public long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return  Number of lookups which (re)loaded the value
+     */
+    public long missCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return  Number of entries evicted due to weight limit
+     */
+    public long evictionCount() {
+        return evictions.get();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Created 261018
+ *
+ * Chunked value layout shared by XAttrOutputStream and XAttrInputStream
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A chunked value named N is stored as a header attribute N
+ *  and chunk attributes N#g.0  N#g.1  ...  where g is the generation(0 or 1) recorded in the header
+ *
+ * Header layout(version 1  big-endian  24 bytes):
+ *  u8 MAGIC  u8 version  u8 generation  u8 reserved(0)
+ *  u32 chunk size  u64 total length  u32 chunk count  u32 CRC32 of the whole value
+ *
+ * Writers fill the generation the header does not point at and publish by rewriting the header
+ *  so readers always see a complete value(a torn read is caught by the CRC)
+ */
+final class XAttrChunks {
+    static final int MAGIC = 0xC5;
+    static final int VERSION = 1;
+    static final int HEADER = 24;
+
+    /* Largest chunk  i.e. XATTR_SIZE_MAX of Linux */
+    static final int MAX_CHUNK = 65536;
+    static final int MIN_CHUNK = 256;
+
+    final XAttrPath path;
+    final int fd;
+    final XAttrName name;
+    final int options;
+
+    int generation;
+    int chunkSize;
+    long length;
+    int count;
+    int crc;
+
+    XAttrChunks(XAttrPath path, int fd, XAttrName name, int options) {
+        if (name == null) throw new NullPointerException();
+        /* Chunk names carry a suffix of at most 13 bytes */
+        if (name.getName().getBytes(StandardCharsets.UTF_8).length > 255 - 13) {
+            throw new IllegalArgumentException("Name too long for chunking: " + name);
+        }
+        this.path = path;
+        this.fd = fd;
+        this.name = name;
+        this.options = options & ~(XAttr4J.XATTR_CREATE | XAttr4J.XATTR_REPLACE);
+    }
+
+    /* Plain strings  chunk names are not worth interning */
+    String chunkName(int gen, int i) {
+        return name.getName() + "#" + gen + "." + i;
+    }
+
+    private String where() {
+        return String.format("%s of %s", name, path != null ? path : "fd " + fd);
+    }
+
+    IOException malformed(String why) {
+        return new IOException(String.format("%s is not a chunked value: %s", where(), why));
+    }
+
+    IOException changed(String why) {
+        return new IOException(String.format("%s changed while reading: %s", where(), why));
+    }
+
+    private static int u32(byte[] b, int i) {
+        return (b[i] & 0xff) << 24 | (b[i + 1] & 0xff) << 16 | (b[i + 2] & 0xff) << 8 | (b[i + 3] & 0xff);
+    }
+
+    private static void putU32(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+    }
+
+    /**
+     * Load the header
+     * @param required  Throw XAttrException(ENOATTR) rather than return false if absent
+     * @return          false if the header attribute is absent
+     */
+    boolean readHeader(boolean required) throws IOException {
+        byte[] b;
+        if (required) {
+            b = path != null ? XAttr4J.getxattr(path, name, options) : XAttr4J.fgetxattr(fd, name, options);
+        } else {
+            b = path != null ? XAttr4J.getxattrOrNull(path, name, options) : XAttr4J.fgetxattrOrNull(fd, name, options);
+            if (b == null) return false;
+        }
+
+        if (b.length < HEADER || (b[0] & 0xff) != MAGIC) throw malformed("bad magic");
+        if ((b[1] & 0xff) > VERSION) throw malformed("unsupported version " + (b[1] & 0xff));
+        generation = b[2] & 1;
+        chunkSize = u32(b, 4);
+        length = (long) u32(b, 8) << 32 | (u32(b, 12) & 0xffffffffL);
+        count = u32(b, 16);
+        crc = u32(b, 20);
+
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK || length < 0 || count < 0 ||
+                count != (length + chunkSize - 1) / chunkSize) {
+            throw malformed("inconsistent header");
+        }
+        return true;
+    }
+
+    void writeHeader() throws IOException {
+        byte[] b = new byte[HEADER];
+        b[0] = (byte) MAGIC;
+        b[1] = VERSION;
+        b[2] = (byte) generation;
+        putU32(b, 4, chunkSize);
+        putU32(b, 8, (int) (length >>> 32));
+        putU32(b, 12, (int) length);
+        putU32(b, 16, count);
+        putU32(b, 20, crc);
+
+        if (path != null) {
+            XAttr4J.setxattr(path, name, b, options);
+        } else {
+            XAttr4J.fsetxattr(fd, name, b, options);
+        }
+    }
+
+    int get(String n, ByteBuffer dst) throws IOException {
+        return path != null ? XAttr4J.getxattr(path, n, dst, options) : XAttr4J.fgetxattr(fd, n, dst, options);
+    }
+
+    void set(String n, ByteBuffer src) throws IOException {
+        if (path != null) {
+            XAttr4J.setxattr(path, n, src, options);
+        } else {
+            XAttr4J.fsetxattr(fd, n, src, options);
+        }
+    }
+
+    boolean exists(String n) throws IOException {
+        return path != null ? XAttr4J.existxattr(path, n, options) : XAttr4J.fexistxattr(fd, n, options);
+    }
+
+    void remove(String n) throws IOException {
+        if (path != null) {
+            XAttr4J.removexattr(path, n, options, true);
+        } else {
+            XAttr4J.fremovexattr(fd, n, options, true);
+        }
+    }
+
+    /**
+     * Remove chunks [from, to) of a generation
+     *  to < 0 removes until the first absent chunk(i.e. leftovers of an abandoned write)
+     */
+    void removeChunks(int gen, int from, int to) throws IOException {
+        for (int i = from; to < 0 || i < to; i++) {
+            String n = chunkName(gen, i);
+            if (to < 0 && !exists(n)) break;
+            remove(n);
+        }
+    }
+
+    /**
+     * Initial chunk size  largest value size reported by xattrsizebits capped to MAX_CHUNK
+     */
+    int initialChunkSize() {
+        long bits;
+        try {
+            bits = path != null ? XAttr4J.xattrsizebits(path) : XAttr4J.fxattrsizebits(fd);
+        } catch (IOException | UnsupportedOperationException e) {
+            /* e.g. FFM backend without the native library */
+            bits = 0;
+        }
+        if (bits <= 0 || bits > 31) return MAX_CHUNK;
+        /* Round down to a power of two */
+        return (int) Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, Long.highestOneBit((1L << bits) - 1)));
+    }
+
+    /**
+     * Whether errno means the value is too large for the file system
+     */
+    static boolean tooLarge(int errno) {
+        return errno == XAttr4J.E2BIG || errno == XAttr4J.ENOSPC || errno == XAttr4J.ERANGE;
+    }
+
+    /* A spare chunk buffer per thread  so that opening streams does not allocate direct memory each time */
+    private static final ThreadLocal<ByteBuffer> SPARE = new ThreadLocal<>();
+
+    static ByteBuffer borrow(int capacity) {
+        ByteBuffer b = SPARE.get();
+        if (b != null && b.capacity() >= capacity) {
+            SPARE.set(null);
+            b.clear();
+            return b;
+        }
+        return ByteBuffer.allocateDirect(Math.max(capacity, MIN_CHUNK));
+    }
+
+    static void release(ByteBuffer b) {
+        ByteBuffer spare = SPARE.get();
+        if (spare == null || spare.capacity() < b.capacity()) SPARE.set(b);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Created 261018
+ *
+ * Cleaner of native resources left unclosed
+ */
+
+package net.trineo.xattr4j;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * java.lang.ref.Cleaner counterpart usable on JDK 8
+ *  an action runs once  either explicitly via clean() or by a daemon thread after its object is phantom reachable
+ *
+ * Actions must not refer to their objects  or the objects would never become unreachable
+ */
+final class XAttrCleaner {
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    /* Keeps registered references reachable until cleaned */
+    private static final Set<Cleanable> LIVE = Collections.newSetFromMap(new ConcurrentHashMap<Cleanable, Boolean>());
+
+    static {
+        Thread t = new Thread(XAttrCleaner::drain, "xattr4j-cleaner");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private XAttrCleaner() {}
+
+    static final class Cleanable extends PhantomReference<Object> {
+        private final Runnable action;
+        private final AtomicBoolean cleaned = new AtomicBoolean();
+
+        private Cleanable(Object obj, Runnable action) {
+            super(obj, QUEUE);
+            this.action = action;
+        }
+
+        /**
+         * Deregister and run the action  no-op if already run
+         */
+        void clean() {
+            if (!cleaned.compareAndSet(false, true)) return;
+            LIVE.remove(this);
+            clear();
+            action.run();
+        }
+    }
+
+    /**
+     * @param obj       Object whose unreachability triggers action
+     * @param action    Releases resources of obj  must not refer to obj
+     */
+    static Cleanable register(Object obj, Runnable action) {
+        if (obj == null || action == null) throw new NullPointerException();
+        Cleanable c = new Cleanable(obj, action);
+        LIVE.add(c);
+        return c;
+    }
+
+    private static void drain() {
+        for (;;) {
+            try {
+                ((Cleanable) QUEUE.remove()).clean();
+            } catch (InterruptedException ignored) {
+                /* Daemon thread  keep draining */
+            } catch (Throwable t) {
+                /* A failing action must not stop later ones */
+            }
+        }
+    }
+}
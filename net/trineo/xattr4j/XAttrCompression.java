@@ -0,0 +1,298 @@
+/*
+ * Created 261018
+ *
+ * Transparent value compression
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate values on write and inflate them on read  so that more values stay inline
+ *  e.g. within the in-inode space of ext4/XFS  rather than spilling to an external block
+ *  which costs an extra disk read per cold getxattr(2)
+ *
+ * Tagged layout(version 1  big-endian):
+ *  u8 0x00  u8 0xC3  u8 version  u8 method  u32 original length  payload
+ * method 0 is stored as is  method 1 is zlib(RFC 1950  the Adler-32 trailer checks the payload)
+ *
+ * Values left uncompressed are stored as is so that other tools can still read them
+ *  only an uncompressed value beginning with the tag itself is stored tagged(method 0)
+ *
+ * Compression is decided per name by the Policy of its longest matching prefix
+ * Deflater/Inflater instances are reused per thread  they live as long as their thread
+ */
+public final class XAttrCompression {
+    public static final int VERSION = 1;
+    public static final int HEADER = 8;
+
+    /* Neither UTF-8 text nor JSON begins with NUL */
+    private static final int TAG0 = 0x00;
+    private static final int TAG1 = 0xC3;
+
+    private static final int STORED = 0;
+    private static final int DEFLATE = 1;
+
+    /**
+     * When a value is compressed
+     */
+    public static final class Policy {
+        /** Never compress */
+        public static final Policy NONE = new Policy(Integer.MAX_VALUE, 0, Deflater.DEFAULT_COMPRESSION);
+        /** Compress values of 128 bytes or more whenever smaller */
+        public static final Policy DEFAULT = new Policy(128, 0, Deflater.DEFAULT_COMPRESSION);
+
+        final int threshold;
+        final int fitsIn;
+        final int level;
+
+        /**
+         * @param threshold     Values shorter than this are never compressed
+         * @param fitsIn        Only compress if the tagged result takes at most this many bytes
+         *                      e.g. the in-inode space left for attributes  0 to compress whenever smaller
+         * @param level         Deflater level(0-9  or -1 for default)
+         */
+        public Policy(int threshold, int fitsIn, int level) {
+            if (threshold < 0 || fitsIn < 0) throw new IllegalArgumentException("Negative threshold or size");
+            if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("Bad level " + level);
+            }
+            this.threshold = threshold;
+            this.fitsIn = fitsIn;
+            this.level = level;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Policy(threshold=%d, fitsIn=%d, level=%d)", threshold, fitsIn, level);
+        }
+    }
+
+    /* Per-thread codec state */
+    private static final class Codec {
+        final Deflater deflater = new Deflater();
+        final Inflater inflater = new Inflater();
+        byte[] scratch = new byte[4096];
+    }
+
+    private static final ThreadLocal<Codec> CODEC = ThreadLocal.withInitial(Codec::new);
+
+    private final Policy defaults;
+    /* Copy-on-write  sorted by length descending so that the first match is the longest */
+    private volatile String[] prefixes = new String[0];
+    private volatile Policy[] policies = new Policy[0];
+
+    /**
+     * @param defaults  Policy of names no prefix matches
+     */
+    public XAttrCompression(Policy defaults) {
+        if (defaults == null) throw new NullPointerException();
+        this.defaults = defaults;
+    }
+
+    /**
+     * Compress every value of 128 bytes or more whenever smaller
+     */
+    public XAttrCompression() {
+        this(Policy.DEFAULT);
+    }
+
+    /**
+     * Set policy of names starting with prefix(a full name matches itself)
+     * @return  this
+     */
+    public synchronized XAttrCompression policy(String prefix, Policy policy) {
+        if (prefix == null || policy == null) throw new NullPointerException();
+
+        String[] ps = prefixes;
+        Policy[] pols = policies;
+        int i = Arrays.asList(ps).indexOf(prefix);
+        if (i >= 0) {
+            pols = pols.clone();
+            pols[i] = policy;
+        } else {
+            for (i = 0; i < ps.length && ps[i].length() >= prefix.length(); i++) continue;
+            String[] ps2 = new String[ps.length + 1];
+            Policy[] pols2 = new Policy[ps.length + 1];
+            System.arraycopy(ps, 0, ps2, 0, i);
+            System.arraycopy(pols, 0, pols2, 0, i);
+            ps2[i] = prefix;
+            pols2[i] = policy;
+            System.arraycopy(ps, i, ps2, i + 1, ps.length - i);
+            System.arraycopy(pols, i, pols2, i + 1, ps.length - i);
+            ps = ps2;
+            pols = pols2;
+        }
+        /* Policies before prefixes  so a reader seeing new prefixes sees their policies */
+        policies = pols;
+        prefixes = ps;
+        return this;
+    }
+
+    /**
+     * @return  Policy in effect for name
+     */
+    public Policy policyOf(XAttrName name) {
+        String n = name.getName();
+        String[] ps = prefixes;
+        Policy[] pols = policies;
+        for (int i = 0; i < ps.length; i++) {
+            if (n.startsWith(ps[i])) return pols[i];
+        }
+        return defaults;
+    }
+
+    private static boolean tagged(byte[] b) {
+        return b.length >= HEADER && (b[0] & 0xff) == TAG0 && (b[1] & 0xff) == TAG1;
+    }
+
+    private static void putHeader(byte[] b, int method, int length) {
+        b[0] = (byte) TAG0;
+        b[1] = (byte) TAG1;
+        b[2] = VERSION;
+        b[3] = (byte) method;
+        b[4] = (byte) (length >>> 24);
+        b[5] = (byte) (length >>> 16);
+        b[6] = (byte) (length >>> 8);
+        b[7] = (byte) length;
+    }
+
+    /**
+     * Encode a value as it is to be stored under name
+     * @return  value itself if left uncompressed(and untagged)
+     */
+    public byte[] encode(XAttrName name, byte[] value) {
+        if (value == null) throw new NullPointerException();
+        Policy p = policyOf(name);
+
+        if (value.length >= p.threshold) {
+            /* Give up as soon as the output cannot fit */
+            int limit = p.fitsIn > 0 ? Math.min(p.fitsIn, value.length - 1) : value.length - 1;
+            if (limit > HEADER) {
+                Codec c = CODEC.get();
+                if (c.scratch.length < limit) c.scratch = new byte[Math.max(limit, c.scratch.length << 1)];
+                Deflater d = c.deflater;
+                d.reset();
+                d.setLevel(p.level);
+                d.setInput(value);
+                d.finish();
+                int n = HEADER;
+                while (!d.finished() && n < limit) n += d.deflate(c.scratch, n, limit - n);
+                if (d.finished()) {
+                    putHeader(c.scratch, DEFLATE, value.length);
+                    return Arrays.copyOf(c.scratch, n);
+                }
+            }
+        }
+
+        if (!tagged(value)) return value;
+        byte[] b = new byte[HEADER + value.length];
+        putHeader(b, STORED, value.length);
+        System.arraycopy(value, 0, b, HEADER, value.length);
+        return b;
+    }
+
+    /**
+     * Decode a stored value  untagged values are returned as is
+     * @throws IllegalArgumentException If a tagged value is malformed
+     */
+    public static byte[] decode(byte[] stored) {
+        if (!tagged(stored)) return stored;
+
+        int version = stored[2] & 0xff;
+        int method = stored[3] & 0xff;
+        int length = (stored[4] & 0xff) << 24 | (stored[5] & 0xff) << 16 | (stored[6] & 0xff) << 8 | (stored[7] & 0xff);
+        if (version > VERSION) throw new IllegalArgumentException("Unsupported version " + version);
+        if (length < 0) throw new IllegalArgumentException("Bad length " + length);
+
+        if (method == STORED) {
+            if (length != stored.length - HEADER) throw new IllegalArgumentException("Bad stored length " + length);
+            return Arrays.copyOfRange(stored, HEADER, stored.length);
+        }
+        if (method != DEFLATE) throw new IllegalArgumentException("Unknown method " + method);
+        /* Deflate expands at most ~1032:1 */
+        if (length / 1032 > stored.length) throw new IllegalArgumentException("Bad length " + length);
+
+        Inflater inf = CODEC.get().inflater;
+        inf.reset();
+        inf.setInput(stored, HEADER, stored.length - HEADER);
+        byte[] value = new byte[length];
+        try {
+            int n = 0;
+            while (n < length) {
+                int k = inf.inflate(value, n, length - n);
+                if (k == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) break;
+                n += k;
+            }
+            /* Output filled up before the trailer was read  any further output means a bad length */
+            if (n == length && !inf.finished() && inf.inflate(new byte[1]) != 0) n++;
+            if (n != length || !inf.finished() || inf.getRemaining() != 0) {
+                throw new IllegalArgumentException("Corrupt value  inflated " + n + " of " + length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt value", e);
+        }
+        return value;
+    }
+
+    private static byte[] decode(byte[] stored, XAttrPath path, int fd, XAttrName name) throws IOException {
+        try {
+            return decode(stored);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("%s of %s cannot be decoded", name, path != null ? path : "fd " + fd), e);
+        }
+    }
+
+    /**
+     * Set a value  compressed as the policy of name says
+     * @see XAttr4J#setxattr(XAttrPath, XAttrName, byte[], int)
+     */
+    public void setxattr(XAttrPath path, XAttrName name, byte[] value, int options) throws IOException {
+        XAttr4J.setxattr(path, name, encode(name, value), options);
+    }
+
+    /**
+     * @see XAttrCompression#setxattr(XAttrPath, XAttrName, byte[], int)
+     */
+    public void fsetxattr(int fd, XAttrName name, byte[] value, int options) throws IOException {
+        XAttr4J.fsetxattr(fd, name, encode(name, value), options);
+    }
+
+    /**
+     * Get a value  decompressed if stored compressed
+     * @throws IOException  If getxattr(2) failed or the value is corrupt
+     * @see XAttr4J#getxattr(XAttrPath, XAttrName, int)
+     */
+    public static byte[] getxattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        return decode(XAttr4J.getxattr(path, name, options), path, -1, name);
+    }
+
+    /**
+     * @return  null if attribute or file absent
+     * @see XAttrCompression#getxattr(XAttrPath, XAttrName, int)
+     */
+    public static byte[] getxattrOrNull(XAttrPath path, XAttrName name, int options) throws IOException {
+        byte[] v = XAttr4J.getxattrOrNull(path, name, options);
+        return v != null ? decode(v, path, -1, name) : null;
+    }
+
+    /**
+     * @see XAttrCompression#getxattr(XAttrPath, XAttrName, int)
+     */
+    public static byte[] fgetxattr(int fd, XAttrName name, int options) throws IOException {
+        return decode(XAttr4J.fgetxattr(fd, name, options), null, fd, name);
+    }
+
+    /**
+     * @see XAttrCompression#getxattrOrNull(XAttrPath, XAttrName, int)
+     */
+    public static byte[] fgetxattrOrNull(int fd, XAttrName name, int options) throws IOException {
+        byte[] v = XAttr4J.fgetxattrOrNull(fd, name, options);
+        return v != null ? decode(v, null, fd, name) : null;
+    }
+}
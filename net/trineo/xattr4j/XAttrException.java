@@ -0,0 +1,106 @@
+/*
+ * Created 261018
+ *
+ * Structured extended attribute operation failure
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an extended attribute operation fails
+ *  carries errno and operation context instead of a preformatted message
+ *
+ * Instances are constructed directly from JNI without any native formatting
+ *  message is formatted lazily on first getMessage()
+ */
+public class XAttrException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String op;
+    private final int errno;
+    private final byte[] path;
+    private final int fd;
+    private final byte[] name;
+    private final int options;
+
+    private transient volatile String message;
+
+    /**
+     * NOTE: Called from JNI  keep signature in sync with xattr4j_jni.c
+     *
+     * @param op        Failed operation  e.g. "getxattr(2)"
+     * @param errno     errno of the failure
+     * @param path      UTF-8 encoded path  null if fd-oriented
+     * @param fd        File descriptor  -1 if path-oriented
+     * @param name      UTF-8 encoded extended attribute name  null if not applicable
+     * @param options   Options passed to the operation
+     */
+    XAttrException(String op, int errno, byte[] path, int fd, byte[] name, int options) {
+        this.op = op;
+        this.errno = errno;
+        this.path = path;
+        this.fd = fd;
+        this.name = name;
+        this.options = options;
+    }
+
+    /**
+     * @return  errno of the failure
+     *          e.g. ENOATTR(macOS 93, Linux 61), ERANGE(34)
+     */
+    public int getErrno() {
+        return errno;
+    }
+
+    /**
+     * @return  Failed operation  e.g. "getxattr(2)"
+     */
+    public String getOperation() {
+        return op;
+    }
+
+    /**
+     * @return  File path  null if fd-oriented
+     */
+    public String getPath() {
+        return path != null ? XAttr4J.utf8BytesToString(path) : null;
+    }
+
+    /**
+     * @return  File descriptor  -1 if path-oriented
+     */
+    public int getFd() {
+        return fd;
+    }
+
+    /**
+     * @return  Extended attribute name  null if not applicable
+     */
+    public String getName() {
+        return name != null ? XAttr4J.utf8BytesToString(name) : null;
+    }
+
+    /**
+     * @return  Options passed to the operation
+     */
+    public int getOptions() {
+        return options;
+    }
+
+    @Override
+    public String getMessage() {
+        String msg = message;
+        if (msg == null) {
+            StringBuilder sb = new StringBuilder(64);
+            sb.append(op).append(" fail  errno: ").append(errno);
+            if (fd >= 0) sb.append(" fd: ").append(fd);
+            sb.append(" options: 0x").append(Integer.toHexString(options));
+            if (name != null) sb.append(" name: ").append(getName());
+            if (path != null) sb.append(" path: ").append(getPath());
+            message = msg = sb.toString();
+        }
+        return msg;
+    }
+}
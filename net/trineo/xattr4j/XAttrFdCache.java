@@ -0,0 +1,217 @@
+/*
+ * Created 261018
+ *
+ * Open file descriptors reused across operations on the same path
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Path to fd cache  so that repeated operations on a path skip both the path lookup and open(2)/close(2)
+ *
+ * An fd keeps referring to the file it was opened on  a path renamed or replaced bypassing invalidate()
+ *  is seen only once the fd is dropped  so an fd is closed once idle and reopened once as old as the timeout
+ *  i.e. a change is seen within the timeout even if the path is in steady use
+ *  writes go through acquireVerified()  which checks the path still names the file at once
+ * Fds in use are never closed  so that a recycled fd number is never operated on
+ */
+final class XAttrFdCache {
+    static final class Entry {
+        final XAttrPath path;
+        final int options;
+        final int fd;
+        /* File the fd was opened on */
+        final long dev;
+        final long ino;
+        final long opened;
+        /* Guarded by this */
+        private int users;
+        private long lastUsed;
+        private boolean closed;
+        private boolean evicted;
+
+        private Entry(XAttrPath path, int options, int fd, long[] st, long opened) {
+            this.path = path;
+            this.options = options;
+            this.fd = fd;
+            this.dev = st[XAttr4J.STAT_DEV];
+            this.ino = st[XAttr4J.STAT_INO];
+            this.opened = opened;
+            this.lastUsed = opened;
+        }
+    }
+
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private final long idleNanos;   /* Also the maximum age */
+    private final ConcurrentHashMap<XAttrPath, Entry> follow = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<XAttrPath, Entry> nofollow = new ConcurrentHashMap<>();
+    private ScheduledThreadPoolExecutor reaper;     /* Guarded by this */
+
+    /**
+     * @param idle  Fds unused for this long are closed  fds open for this long are reopened
+     */
+    XAttrFdCache(long idle, TimeUnit unit) {
+        if (idle <= 0) throw new IllegalArgumentException("Non-positive idle timeout " + idle);
+        idleNanos = unit.toNanos(idle);
+    }
+
+    private ConcurrentHashMap<XAttrPath, Entry> map(int options) {
+        return (options & XAttr4J.XATTR_NOFOLLOW) != 0 ? nofollow : follow;
+    }
+
+    /**
+     * @param options   XATTR_NOFOLLOW to not follow a symlink
+     * @return          Entry in use  release() it when done  null if the file cannot be opened
+     *                  e.g. absent  not a regular file nor directory  or a symlink not to be followed
+     */
+    Entry acquire(XAttrPath path, int options) {
+        ConcurrentHashMap<XAttrPath, Entry> m = map(options);
+        for (;;) {
+            long now = System.nanoTime();
+            Entry e = m.get(path);
+            if (e != null && now - e.opened >= idleNanos) {
+                /* Too old  may refer to a file replaced meanwhile */
+                evict(e);
+                continue;
+            }
+            if (e != null) {
+                synchronized (e) {
+                    if (!e.closed) {
+                        e.users++;
+                        return e;
+                    }
+                }
+                /* Closed under us  reaper removes it */
+                m.remove(path, e);
+                continue;
+            }
+
+            int fd = XAttr4J.openattr(path, options & XAttr4J.XATTR_NOFOLLOW);
+            if (fd < 0) return null;
+            long[] st = new long[XAttr4J.STAT_MAX];
+            try {
+                XAttr4J.fstat(fd, st);
+            } catch (IOException x) {
+                XAttr4J.close(fd);
+                return null;
+            }
+            e = new Entry(path, options & XAttr4J.XATTR_NOFOLLOW, fd, st, now);
+            e.users = 1;
+            if (m.putIfAbsent(path, e) == null) {
+                startReaper();
+                return e;
+            }
+            XAttr4J.close(fd);
+        }
+    }
+
+    /**
+     * acquire() for writes  whose loss can't wait for the timeout
+     *  the fd is dropped and reopened if stat(2) of path finds another file(e.g. renamed over bypassing invalidate())
+     *  a rename between the stat(2) and the write is still missed
+     * @return  Entry in use  null if the file cannot be opened or stat(2) fails  i.e. fallback to path
+     */
+    Entry acquireVerified(XAttrPath path, int options) {
+        long[] st = new long[XAttr4J.STAT_MAX];
+        for (;;) {
+            Entry e = acquire(path, options);
+            if (e == null) return null;
+            try {
+                XAttr4J.stat(path, e.options, st);
+            } catch (IOException x) {
+                evict(e);
+                release(e);
+                return null;
+            }
+            if (st[XAttr4J.STAT_DEV] == e.dev && st[XAttr4J.STAT_INO] == e.ino) return e;
+            evict(e);
+            release(e);
+        }
+    }
+
+    void release(Entry e) {
+        if (e == null) return;
+        synchronized (e) {
+            e.lastUsed = System.nanoTime();
+            if (--e.users != 0 || !e.evicted || e.closed) return;
+            e.closed = true;
+        }
+        XAttr4J.close(e.fd);
+    }
+
+    /**
+     * Drop an fd whose file turned out to be gone(e.g. ENOENT of an unlinked directory)
+     *  it is closed once its last user releases it
+     */
+    void evict(Entry e) {
+        if (e == null) return;
+        map(e.options).remove(e.path, e);
+        synchronized (e) {
+            e.evicted = true;
+            if (e.users != 0 || e.closed) return;
+            e.closed = true;
+        }
+        XAttr4J.close(e.fd);
+    }
+
+    /**
+     * Drop fds of a path  e.g. it is being deleted or renamed over
+     */
+    void invalidate(XAttrPath path) {
+        evict(follow.get(path));
+        evict(nofollow.get(path));
+    }
+
+    private synchronized void startReaper() {
+        if (reaper != null) return;
+        final String name = "xattr4j-fdcache-" + SEQ.incrementAndGet();
+        reaper = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(idleNanos >> 1, TimeUnit.MILLISECONDS.toNanos(10));
+        reaper.scheduleWithFixedDelay(this::reap, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    private void reap() {
+        long now = System.nanoTime();
+        reap(follow, now, false);
+        reap(nofollow, now, false);
+    }
+
+    private void reap(ConcurrentHashMap<XAttrPath, Entry> m, long now, boolean all) {
+        for (Entry e : m.values()) {
+            synchronized (e) {
+                if (e.closed || e.users != 0) continue;
+                if (!all && now - e.lastUsed < idleNanos && now - e.opened < idleNanos) continue;
+                e.closed = true;
+            }
+            m.remove(e.path, e);
+            XAttr4J.close(e.fd);
+        }
+    }
+
+    /**
+     * Close every idle fd now  fds in use are closed by the reaper once released
+     */
+    void clear() {
+        long now = System.nanoTime();
+        reap(follow, now, true);
+        reap(nofollow, now, true);
+    }
+
+    /**
+     * @return  Number of cached fds
+     */
+    int size() {
+        return follow.size() + nofollow.size();
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Created 261018
+ *
+ * Long-lived handle of a file for repeated extended attribute operations
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A file opened once  every operation is an fd-oriented syscall on the retained descriptor
+ *  so repeated operations on the same file pay no path walk
+ *
+ * Linux opens the file with O_PATH(no read permission needed  safe on any file type)
+ *  kernels whose f*xattr(2) reject O_PATH fds get a regular file or directory reopened O_RDONLY
+ *  other files are operated via /proc/self/fd/<fd>  which still resolves no path component
+ * Other platforms open the file O_RDONLY
+ * Without the native library(FFM backend only) operations fall back to the path
+ *
+ * The handle follows the file itself  a rename or unlink of its path isn't noticed
+ *
+ * An optional per-handle cache keeps up to cacheEntries values  each validated by fstat(2)(ctime) of the fd
+ *  see: XAttrCache  writes through this handle invalidate affected entries
+ *
+ * Thread-safe  a handle left unclosed is closed once unreachable
+ */
+public final class XAttrFile implements AutoCloseable {
+    private final String path;
+    private final int fd;           /* -1 if native library absent */
+    private final XAttrPath via;    /* null if fd-oriented  /proc/self/fd/<fd> or the path itself o.w. */
+    private final int options;      /* Options of calls  XATTR_NOFOLLOW dropped unless operating on the path itself */
+    private final State state;
+    private final XAttrCleaner.Cleanable cleanable;
+    private final Cache cache;      /* null if disabled */
+
+    private XAttrFile(XAttrPath path, int options, int cacheEntries) throws IOException {
+        if (path == null) throw new NullPointerException();
+        if (cacheEntries < 0) throw new IllegalArgumentException("Negative cache entries " + cacheEntries);
+
+        int[] kind = new int[1];
+        int fd = XAttr4J.openFile(path, options, kind);
+        this.path = path.getPath();
+        this.fd = fd;
+        if (fd < 0) {
+            this.via = path;
+            this.options = options;
+        } else {
+            this.via = kind[0] == XAttr4J.FILE_PROC ? new XAttrPath("/proc/self/fd/" + fd) : null;
+            this.options = options & ~XAttr4J.XATTR_NOFOLLOW;
+        }
+        this.state = new State(fd);
+        this.cleanable = XAttrCleaner.register(this, state);
+        this.cache = cacheEntries != 0 && fd >= 0 ? new Cache(cacheEntries) : null;
+    }
+
+    /**
+     * Open a file
+     *
+     * @param path          File path
+     * @param options       XATTR_NOFOLLOW to open a symlink itself
+     *                      XATTR_SHOWCOMPRESSION(macOS) applies to every operation
+     * @return              A handle  which should be closed
+     * @throws IOException  If open(2) operation failed
+     */
+    public static XAttrFile open(String path, int options) throws IOException {
+        return open(path, options, 0);
+    }
+
+    /**
+     * @see XAttrFile#open(String, int)
+     */
+    public static XAttrFile open(File file, int options) throws IOException {
+        return open(new XAttrPath(file), options, 0);
+    }
+
+    /**
+     * @see XAttrFile#open(String, int)
+     */
+    public static XAttrFile open(XAttrPath path, int options) throws IOException {
+        return open(path, options, 0);
+    }
+
+    /**
+     * @param cacheEntries  Maximum number of values cached by the handle  0 to disable
+     * @see XAttrFile#open(String, int)
+     */
+    public static XAttrFile open(String path, int options, int cacheEntries) throws IOException {
+        return open(new XAttrPath(path), options, cacheEntries);
+    }
+
+    /**
+     * @see XAttrFile#open(String, int, int)
+     */
+    public static XAttrFile open(XAttrPath path, int options, int cacheEntries) throws IOException {
+        return new XAttrFile(path, options, cacheEntries);
+    }
+
+    /**
+     * @return  Path given to open()
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isOpen() {
+        return state.users.get() >= 0;
+    }
+
+    /**
+     * Close the descriptor  calls in flight complete first  idempotent
+     */
+    @Override
+    public void close() {
+        cleanable.clean();
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public byte[] getxattr(String name) throws IOException {
+        return getxattr(XAttrName.of(name));
+    }
+
+    /**
+     * @see XAttr4J#getxattr(String, String, int)
+     */
+    public byte[] getxattr(XAttrName name) throws IOException {
+        return get(name, false);
+    }
+
+    /**
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public byte[] getxattrOrNull(String name) throws IOException {
+        return getxattrOrNull(XAttrName.of(name));
+    }
+
+    /**
+     * @see XAttr4J#getxattrOrNull(String, String, int)
+     */
+    public byte[] getxattrOrNull(XAttrName name) throws IOException {
+        return get(name, true);
+    }
+
+    /**
+     * Not cached
+     * @see XAttr4J#getxattr(String, String, ByteBuffer, int)
+     */
+    public int getxattr(String name, ByteBuffer dst) throws IOException {
+        XAttrName x = XAttrName.of(name);
+        state.begin();
+        try {
+            return via == null ? XAttr4J.fgetxattr(fd, x, dst, options) : XAttr4J.getxattr(via, x, dst, options);
+        } finally {
+            state.end();
+        }
+    }
+
+    /**
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public void setxattr(String name, byte[] value) throws IOException {
+        setxattr(XAttrName.of(name), value, 0);
+    }
+
+    /**
+     * @param options       XATTR_CREATE or XATTR_REPLACE  combined with options of open()
+     * @see XAttr4J#setxattr(String, String, byte[], int)
+     */
+    public void setxattr(String name, byte[] value, int options) throws IOException {
+        setxattr(XAttrName.of(name), value, options);
+    }
+
+    /**
+     * @see XAttrFile#setxattr(String, byte[], int)
+     */
+    public void setxattr(XAttrName name, byte[] value, int options) throws IOException {
+        state.begin();
+        try {
+            if (via == null) {
+                XAttr4J.fsetxattr(fd, name, value, this.options | options);
+            } else {
+                XAttr4J.setxattr(via, name, value, this.options | options);
+            }
+        } finally {
+            invalidate(name);
+            state.end();
+        }
+    }
+
+    /**
+     * @see XAttrFile#setxattr(String, byte[], int)
+     * @see XAttr4J#setxattr(String, String, ByteBuffer, int)
+     */
+    public int setxattr(String name, ByteBuffer src, int options) throws IOException {
+        XAttrName x = XAttrName.of(name);
+        state.begin();
+        try {
+            return via == null ? XAttr4J.fsetxattr(fd, x, src, this.options | options)
+                                : XAttr4J.setxattr(via, x, src, this.options | options);
+        } finally {
+            invalidate(x);
+            state.end();
+        }
+    }
+
+    /**
+     * @see XAttr4J#removexattr(String, String, int)
+     */
+    public void removexattr(String name) throws IOException {
+        removexattr(XAttrName.of(name), false);
+    }
+
+    /**
+     * @param force         Don't throw if the attribute doesn't exist
+     * @see XAttr4J#removexattr(String, String, int, boolean)
+     */
+    public void removexattr(String name, boolean force) throws IOException {
+        removexattr(XAttrName.of(name), force);
+    }
+
+    /**
+     * @see XAttrFile#removexattr(String, boolean)
+     */
+    public void removexattr(XAttrName name, boolean force) throws IOException {
+        state.begin();
+        try {
+            if (via == null) {
+                XAttr4J.fremovexattr(fd, name, options, force);
+            } else {
+                XAttr4J.removexattr(via, name, options, force);
+            }
+        } finally {
+            invalidate(name);
+            state.end();
+        }
+    }
+
+    /**
+     * @see XAttr4J#listxattr(String, int)
+     */
+    public String[] listxattr() throws IOException {
+        return listxattr(null).toArray();
+    }
+
+    /**
+     * @param prefix        Name prefix  null to list all
+     * @see XAttr4J#listxattr(String, String, int)
+     */
+    public XAttrNameList listxattr(String prefix) throws IOException {
+        state.begin();
+        try {
+            return via == null ? XAttr4J.flistxattr(fd, prefix, options) : XAttr4J.listxattr(via, prefix, options);
+        } finally {
+            state.end();
+        }
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public long sizexattr(String name) throws IOException {
+        return sizexattr(XAttrName.of(name));
+    }
+
+    /**
+     * @see XAttr4J#sizexattr(String, String, int)
+     */
+    public long sizexattr(XAttrName name) throws IOException {
+        state.begin();
+        try {
+            return via == null ? XAttr4J.fsizexattr(fd, name, options) : XAttr4J.sizexattr(via, name, options);
+        } finally {
+            state.end();
+        }
+    }
+
+    /**
+     * @return  negated errno if failed  -EBADF if closed
+     * @see XAttr4J#trySizexattr(String, String, int)
+     */
+    public long trySizexattr(String name) {
+        XAttrName x = XAttrName.of(name);
+        try {
+            state.begin();
+        } catch (IOException e) {
+            return -XAttr4J.EBADF;
+        }
+        try {
+            return via == null ? XAttr4J.ftrySizexattr(fd, x, options) : XAttr4J.trySizexattr(via, x, options);
+        } finally {
+            state.end();
+        }
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public boolean existxattr(String name) throws IOException {
+        return existxattr(XAttrName.of(name));
+    }
+
+    /**
+     * @see XAttr4J#existxattr(String, String, int)
+     */
+    public boolean existxattr(XAttrName name) throws IOException {
+        state.begin();
+        try {
+            return via == null ? XAttr4J.fexistxattr(fd, name, options) : XAttr4J.existxattr(via, name, options);
+        } finally {
+            state.end();
+        }
+    }
+
+    private byte[] get(XAttrName name, boolean nullable) throws IOException {
+        if (name == null) throw new NullPointerException();
+        state.begin();
+        try {
+            if (cache == null) return load(name, nullable);
+
+            byte[] value = cached(name);
+            if (value == null && !nullable) {
+                throw new XAttrException(via == null ? "fgetxattr(2)" : "getxattr(2)", XAttr4J.ENOATTR,
+                                            via != null ? via.bytes() : null, via == null ? fd : -1, name.bytes(), options);
+            }
+            return value != null ? value.clone() : null;
+        } finally {
+            state.end();
+        }
+    }
+
+    private byte[] load(XAttrName name, boolean nullable) throws IOException {
+        if (via == null) {
+            return nullable ? XAttr4J.fgetxattrOrNull(fd, name, options) : XAttr4J.fgetxattr(fd, name, options);
+        }
+        return nullable ? XAttr4J.getxattrOrNull(via, name, options) : XAttr4J.getxattr(via, name, options);
+    }
+
+    /**
+     * @return  Cached or freshly loaded value  null if absent
+     */
+    private byte[] cached(XAttrName name) throws IOException {
+        long[] st = new long[XAttr4J.STAT_MAX];
+        XAttr4J.fstat(fd, st);
+
+        synchronized (cache) {
+            Entry e = cache.get(name);
+            if (e != null && !e.racy && e.matches(st)) {
+                cache.hits++;
+                return e.value;
+            }
+        }
+
+        /* fstat(2) precedes getxattr(2)  a change in between bumps ctime thus fails next validation */
+        byte[] value = load(name, true);
+        synchronized (cache) {
+            cache.put(name, new Entry(value, st));
+        }
+        return value;
+    }
+
+    private void invalidate(XAttrName name) {
+        if (cache == null) return;
+        synchronized (cache) {
+            cache.remove(name);
+        }
+    }
+
+    /**
+     * @return  Number of cache hits  0 if the cache is disabled
+     */
+    public long cacheHitCount() {
+        if (cache == null) return 0;
+        synchronized (cache) {
+            return cache.hits;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "XAttrFile[" + path + (isOpen() ? "" : " closed") + "]";
+    }
+
+    private static final class Entry {
+        final byte[] value;     /* null if absent */
+        final long[] st;
+        final boolean racy;
+
+        Entry(byte[] value, long[] st) {
+            this.value = value;
+            this.st = st;
+            this.racy = XAttrCache.isRacy(st);
+        }
+
+        boolean matches(long[] st) {
+            return this.st[XAttr4J.STAT_CTIME_SEC] == st[XAttr4J.STAT_CTIME_SEC]
+                && this.st[XAttr4J.STAT_CTIME_NSEC] == st[XAttr4J.STAT_CTIME_NSEC];
+        }
+    }
+
+    /**
+     * Access-ordered LRU  guarded by itself
+     */
+    private static final class Cache extends LinkedHashMap<XAttrName, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+        long hits;
+
+        Cache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<XAttrName, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+    /**
+     * Descriptor and calls in flight  outlives XAttrFile for the cleaner
+     *  users counts calls in flight  sign bit set once closed  the last call out closes fd
+     */
+    private static final class State implements Runnable {
+        private static final int CLOSED = Integer.MIN_VALUE;
+
+        private final int fd;
+        final AtomicInteger users = new AtomicInteger();
+
+        State(int fd) {
+            this.fd = fd;
+        }
+
+        void begin() throws IOException {
+            for (;;) {
+                int n = users.get();
+                if (n < 0) throw new IOException("XAttrFile closed");
+                if (users.compareAndSet(n, n + 1)) return;
+            }
+        }
+
+        void end() {
+            if (users.decrementAndGet() == CLOSED) release();
+        }
+
+        /**
+         * Close  run by XAttrFile.close() or the cleaner
+         */
+        @Override
+        public void run() {
+            for (;;) {
+                int n = users.get();
+                if (n < 0) return;
+                if (users.compareAndSet(n, n | CLOSED)) {
+                    if (n == 0) release();
+                    return;
+                }
+            }
+        }
+
+        private void release() {
+            if (fd >= 0) XAttr4J.close(fd);
+        }
+    }
+}
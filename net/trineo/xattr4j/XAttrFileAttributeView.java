@@ -0,0 +1,196 @@
+/*
+ * Created 261018
+ *
+ * UserDefinedFileAttributeView backed by XAttr4J
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Drop-in UserDefinedFileAttributeView  names live in the "user." namespace as with the JDK's
+ *
+ * Unlike the JDK's view  which opens and closes the file on every call
+ *  each call is a single path-oriented syscall  or with XAttrFileSystemProvider
+ *  an fd-oriented one on an fd cached per path
+ * Direct buffers are read and written by the syscalls in place
+ *
+ * Failures are thrown as FileSystemException(NoSuchFileException  AccessDeniedException)
+ *  whose cause is the XAttrException carrying errno
+ */
+public final class XAttrFileAttributeView implements UserDefinedFileAttributeView {
+    private static final String USER_NAMESPACE = "user.";
+
+    private final Path file;
+    private final XAttrPath path;
+    private final int options;
+    private final XAttrFdCache cache;
+
+    /**
+     * @param file      Path of the default file system
+     * @param options   LinkOption.NOFOLLOW_LINKS to access a symlink itself
+     */
+    public XAttrFileAttributeView(Path file, LinkOption... options) {
+        this(file, followLinks(options), null);
+    }
+
+    XAttrFileAttributeView(Path file, boolean followLinks, XAttrFdCache cache) {
+        if (!"file".equals(file.getFileSystem().provider().getScheme())) {
+            throw new IllegalArgumentException("Not a path of the default file system: " + file);
+        }
+        this.file = file;
+        this.path = new XAttrPath(file.toString());
+        this.options = followLinks ? 0 : XAttr4J.XATTR_NOFOLLOW;
+        this.cache = cache;
+    }
+
+    static boolean followLinks(LinkOption... options) {
+        boolean follow = true;
+        for (LinkOption o : options) {
+            if (o == LinkOption.NOFOLLOW_LINKS) {
+                follow = false;
+            } else if (o == null) {
+                throw new NullPointerException();
+            }
+        }
+        return follow;
+    }
+
+    @Override
+    public String name() {
+        return "user";
+    }
+
+    private static String xattrName(String name) {
+        if (name == null) throw new NullPointerException("'name' is null");
+        return USER_NAMESPACE + name;
+    }
+
+    private XAttrFdCache.Entry acquire() {
+        return cache != null ? cache.acquire(path, options) : null;
+    }
+
+    /**
+     * @see XAttrFdCache#acquireVerified(XAttrPath, int)
+     */
+    private XAttrFdCache.Entry acquireVerified() {
+        return cache != null ? cache.acquireVerified(path, options) : null;
+    }
+
+    private IOException translate(XAttrException e, XAttrFdCache.Entry fd) {
+        String f = file.toString();
+        FileSystemException x;
+        switch (e.getErrno()) {
+            case XAttr4J.ENOENT:
+                /* e.g. an unlinked directory still open */
+                if (cache != null) cache.evict(fd);
+                x = new NoSuchFileException(f);
+                break;
+            case XAttr4J.EPERM:
+            case XAttr4J.EACCES:
+                x = new AccessDeniedException(f, null, e.getMessage());
+                break;
+            default:
+                x = new FileSystemException(f, null, e.getMessage());
+                break;
+        }
+        x.initCause(e);
+        return x;
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        XAttrFdCache.Entry fd = acquire();
+        XAttrNameList names;
+        try {
+            names = fd != null ?
+                    XAttr4J.flistxattr(fd.fd, USER_NAMESPACE, 0) :
+                    XAttr4J.listxattr(path, USER_NAMESPACE, options);
+        } catch (XAttrException e) {
+            throw translate(e, fd);
+        } finally {
+            if (fd != null) cache.release(fd);
+        }
+
+        List<String> list = new ArrayList<>(names.size());
+        for (String n : names) list.add(n.substring(USER_NAMESPACE.length()));
+        return Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public int size(String name) throws IOException {
+        String n = xattrName(name);
+        XAttrFdCache.Entry fd = acquire();
+        long sz;
+        try {
+            sz = fd != null ? XAttr4J.fsizexattr(fd.fd, n, 0) : XAttr4J.sizexattr(path, n, options);
+        } catch (XAttrException e) {
+            throw translate(e, fd);
+        } finally {
+            if (fd != null) cache.release(fd);
+        }
+        if (sz > Integer.MAX_VALUE) throw new ArithmeticException("Extended attribute value too large");
+        return (int) sz;
+    }
+
+    /**
+     * Direct buffers are filled by getxattr(2) in place  heap buffers take one copy
+     */
+    @Override
+    public int read(String name, ByteBuffer dst) throws IOException {
+        String n = xattrName(name);
+        if (dst.isReadOnly()) throw new IllegalArgumentException("Read-only buffer");
+        XAttrFdCache.Entry fd = acquire();
+        try {
+            return fd != null ? XAttr4J.fgetxattr(fd.fd, n, dst, 0) : XAttr4J.getxattr(path, n, dst, options);
+        } catch (XAttrException e) {
+            throw translate(e, fd);
+        } finally {
+            if (fd != null) cache.release(fd);
+        }
+    }
+
+    /**
+     * Direct buffers are read by setxattr(2) in place
+     */
+    @Override
+    public int write(String name, ByteBuffer src) throws IOException {
+        String n = xattrName(name);
+        XAttrFdCache.Entry fd = acquireVerified();
+        try {
+            return fd != null ? XAttr4J.fsetxattr(fd.fd, n, src, 0) : XAttr4J.setxattr(path, n, src, options);
+        } catch (XAttrException e) {
+            throw translate(e, fd);
+        } finally {
+            if (fd != null) cache.release(fd);
+        }
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        String n = xattrName(name);
+        XAttrFdCache.Entry fd = acquireVerified();
+        try {
+            if (fd != null) {
+                XAttr4J.fremovexattr(fd.fd, n, 0);
+            } else {
+                XAttr4J.removexattr(path, n, options);
+            }
+        } catch (XAttrException e) {
+            throw translate(e, fd);
+        } finally {
+            if (fd != null) cache.release(fd);
+        }
+    }
+}
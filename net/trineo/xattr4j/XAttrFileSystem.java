@@ -0,0 +1,104 @@
+/*
+ * Created 261018
+ *
+ * File system of XAttrFileSystemProvider
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wraps the delegate file system  so that its paths lead back to XAttrFileSystemProvider
+ */
+final class XAttrFileSystem extends FileSystem {
+    private final XAttrFileSystemProvider provider;
+    final FileSystem delegate;
+
+    XAttrFileSystem(XAttrFileSystemProvider provider, FileSystem delegate) {
+        this.provider = provider;
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return  null if p is null
+     */
+    Path wrap(Path p) {
+        return p != null ? new XAttrFileSystemPath(this, p) : null;
+    }
+
+    @Override
+    public XAttrFileSystemProvider provider() {
+        return provider;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return delegate.isReadOnly();
+    }
+
+    @Override
+    public String getSeparator() {
+        return delegate.getSeparator();
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        List<Path> roots = new ArrayList<>();
+        for (Path p : delegate.getRootDirectories()) roots.add(wrap(p));
+        return roots;
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return delegate.getFileStores();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        Set<String> views = new HashSet<>(delegate.supportedFileAttributeViews());
+        views.add("user");
+        return views;
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        return wrap(delegate.getPath(first, more));
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        final PathMatcher m = delegate.getPathMatcher(syntaxAndPattern);
+        return p -> m.matches(p instanceof XAttrFileSystemPath ? ((XAttrFileSystemPath) p).delegate : p);
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        return delegate.getUserPrincipalLookupService();
+    }
+
+    @Override
+    public WatchService newWatchService() throws IOException {
+        return delegate.newWatchService();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Created 261018
+ *
+ * Path of XAttrFileSystem
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+
+/**
+ * Wraps a path of the delegate file system  so that Files.* operations reach XAttrFileSystemProvider
+ *  each method delegates and wraps paths it returns
+ */
+final class XAttrFileSystemPath implements Path {
+    private final XAttrFileSystem fs;
+    final Path delegate;
+
+    XAttrFileSystemPath(XAttrFileSystem fs, Path delegate) {
+        this.fs = fs;
+        this.delegate = delegate;
+    }
+
+    private Path wrap(Path p) {
+        return fs.wrap(p);
+    }
+
+    private static Path unwrap(Path p) {
+        if (p == null) throw new NullPointerException();
+        if (!(p instanceof XAttrFileSystemPath)) throw new ProviderMismatchException();
+        return ((XAttrFileSystemPath) p).delegate;
+    }
+
+    @Override
+    public XAttrFileSystem getFileSystem() {
+        return fs;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return delegate.isAbsolute();
+    }
+
+    @Override
+    public Path getRoot() {
+        return wrap(delegate.getRoot());
+    }
+
+    @Override
+    public Path getFileName() {
+        return wrap(delegate.getFileName());
+    }
+
+    @Override
+    public Path getParent() {
+        return wrap(delegate.getParent());
+    }
+
+    @Override
+    public int getNameCount() {
+        return delegate.getNameCount();
+    }
+
+    @Override
+    public Path getName(int index) {
+        return wrap(delegate.getName(index));
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        return wrap(delegate.subpath(beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        return other instanceof XAttrFileSystemPath && delegate.startsWith(unwrap(other));
+    }
+
+    @Override
+    public boolean startsWith(String other) {
+        return delegate.startsWith(other);
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        return other instanceof XAttrFileSystemPath && delegate.endsWith(unwrap(other));
+    }
+
+    @Override
+    public boolean endsWith(String other) {
+        return delegate.endsWith(other);
+    }
+
+    @Override
+    public Path normalize() {
+        return wrap(delegate.normalize());
+    }
+
+    @Override
+    public Path resolve(Path other) {
+        return wrap(delegate.resolve(unwrap(other)));
+    }
+
+    @Override
+    public Path resolve(String other) {
+        return wrap(delegate.resolve(other));
+    }
+
+    @Override
+    public Path resolveSibling(Path other) {
+        return wrap(delegate.resolveSibling(unwrap(other)));
+    }
+
+    @Override
+    public Path resolveSibling(String other) {
+        return wrap(delegate.resolveSibling(other));
+    }
+
+    @Override
+    public Path relativize(Path other) {
+        return wrap(delegate.relativize(unwrap(other)));
+    }
+
+    @Override
+    public URI toUri() {
+        return delegate.toUri();
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+        return wrap(delegate.toAbsolutePath());
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws IOException {
+        return wrap(delegate.toRealPath(options));
+    }
+
+    /**
+     * delegate.toFile() refuses once the delegate is no longer the default file system
+     */
+    @Override
+    public File toFile() {
+        return new File(toString());
+    }
+
+    /**
+     * Keys of the delegate's watch service report delegate paths
+     */
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) throws IOException {
+        return delegate.register(watcher, events, modifiers);
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) throws IOException {
+        return delegate.register(watcher, events);
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        final Iterator<Path> it = delegate.iterator();
+        return new Iterator<Path>() {
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            public Path next() {
+                return wrap(it.next());
+            }
+        };
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return delegate.compareTo(unwrap(other));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof XAttrFileSystemPath && delegate.equals(((XAttrFileSystemPath) o).delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
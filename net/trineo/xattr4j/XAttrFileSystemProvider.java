@@ -0,0 +1,302 @@
+/*
+ * Created 261018
+ *
+ * Delegating FileSystemProvider whose UserDefinedFileAttributeView is XAttrFileAttributeView
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps the default provider  every operation is delegated except
+ *  UserDefinedFileAttributeView and "user:" attributes  which are served by XAttrFileAttributeView
+ *  on an fd cached per path(closed once idle or as old as the idle timeout)
+ *
+ * Install it as the default provider(JDK 9+) so that existing call sites
+ *  e.g. Files.getFileAttributeView(path, UserDefinedFileAttributeView.class)  take the fast path unchanged:
+ *      java -Djava.nio.file.spi.DefaultFileSystemProvider=net.trineo.xattr4j.XAttrFileSystemProvider ...
+ * Or wrap explicitly: new XAttrFileSystemProvider(FileSystems.getDefault().provider())
+ *  and obtain paths from getFileSystem(URI.create("file:///"))
+ *
+ * A cached fd keeps referring to the file it was opened on  so a path renamed over or deleted
+ *  bypassing this provider is seen within the idle timeout(fds are reopened once that old)
+ *  set FD_CACHE_IDLE_PROPERTY to 0 if that is unacceptable
+ */
+public final class XAttrFileSystemProvider extends FileSystemProvider {
+    /**
+     * Idle timeout(also maximum age) of cached fds in milliseconds  0 disables the cache
+     */
+    public static final String FD_CACHE_IDLE_PROPERTY = "net.trineo.xattr4j.fdcache.idle";
+    public static final long DEFAULT_FD_CACHE_IDLE = 1000;
+
+    private static final String USER_VIEW = "user:";
+
+    private final FileSystemProvider delegate;
+    private final XAttrFileSystem fs;
+    private final XAttrFdCache cache;
+
+    /**
+     * Fd cache idle timeout from FD_CACHE_IDLE_PROPERTY
+     *  also the constructor used to install it as the default provider
+     * @param delegate  Provider of the "file" scheme
+     */
+    public XAttrFileSystemProvider(FileSystemProvider delegate) {
+        this(delegate, Long.getLong(FD_CACHE_IDLE_PROPERTY, DEFAULT_FD_CACHE_IDLE), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param delegate  Provider of the "file" scheme
+     * @param idle      Cached fds unused for this long are closed  fds open for this long are reopened
+     *                  0 to use path-oriented syscalls only
+     */
+    public XAttrFileSystemProvider(FileSystemProvider delegate, long idle, TimeUnit unit) {
+        if (!"file".equals(delegate.getScheme())) throw new IllegalArgumentException("Not a file provider: " + delegate.getScheme());
+        if (idle < 0) throw new IllegalArgumentException("Negative idle timeout " + idle);
+        this.delegate = delegate;
+        this.fs = new XAttrFileSystem(this, delegate.getFileSystem(URI.create("file:///")));
+        this.cache = idle != 0 ? new XAttrFdCache(idle, unit) : null;
+    }
+
+    private Path unwrap(Path p) {
+        if (p == null) throw new NullPointerException();
+        if (p instanceof XAttrFileSystemPath) return ((XAttrFileSystemPath) p).delegate;
+        if (p.getFileSystem() == fs.delegate) return p;
+        throw new ProviderMismatchException();
+    }
+
+    @Override
+    public String getScheme() {
+        return delegate.getScheme();
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        return new XAttrFileSystem(this, delegate.newFileSystem(uri, env));
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        /* Validates uri */
+        delegate.getFileSystem(uri);
+        return fs;
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        return fs.wrap(delegate.getPath(uri));
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return delegate.newByteChannel(unwrap(path), options, attrs);
+    }
+
+    @Override
+    public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return delegate.newFileChannel(unwrap(path), options, attrs);
+    }
+
+    @Override
+    public AsynchronousFileChannel newAsynchronousFileChannel(Path path, Set<? extends OpenOption> options,
+                                                              ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
+        return delegate.newAsynchronousFileChannel(unwrap(path), options, executor, attrs);
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        return delegate.newInputStream(unwrap(path), options);
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+        return delegate.newOutputStream(unwrap(path), options);
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, final DirectoryStream.Filter<? super Path> filter) throws IOException {
+        final DirectoryStream<Path> ds = delegate.newDirectoryStream(unwrap(dir), p -> filter.accept(fs.wrap(p)));
+        return new DirectoryStream<Path>() {
+            public Iterator<Path> iterator() {
+                final Iterator<Path> it = ds.iterator();
+                return new Iterator<Path>() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public Path next() {
+                        return fs.wrap(it.next());
+                    }
+                };
+            }
+
+            public void close() throws IOException {
+                ds.close();
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        delegate.createDirectory(unwrap(dir), attrs);
+    }
+
+    @Override
+    public void createSymbolicLink(Path link, Path target, FileAttribute<?>... attrs) throws IOException {
+        delegate.createSymbolicLink(unwrap(link), unwrap(target), attrs);
+    }
+
+    @Override
+    public void createLink(Path link, Path existing) throws IOException {
+        delegate.createLink(unwrap(link), unwrap(existing));
+    }
+
+    /**
+     * Cached fds of a path deleted or replaced through this provider are dropped
+     *  an empty cache is skipped so that plain file operations never load XAttr4J
+     */
+    private Path invalidate(Path p) {
+        if (cache != null && cache.size() != 0) cache.invalidate(new XAttrPath(p.toString()));
+        return p;
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        delegate.delete(invalidate(unwrap(path)));
+    }
+
+    @Override
+    public boolean deleteIfExists(Path path) throws IOException {
+        return delegate.deleteIfExists(invalidate(unwrap(path)));
+    }
+
+    @Override
+    public Path readSymbolicLink(Path link) throws IOException {
+        return fs.wrap(delegate.readSymbolicLink(unwrap(link)));
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        delegate.copy(unwrap(source), invalidate(unwrap(target)), options);
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        delegate.move(invalidate(unwrap(source)), invalidate(unwrap(target)), options);
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        return delegate.isSameFile(unwrap(path), unwrap(path2));
+    }
+
+    @Override
+    public boolean isHidden(Path path) throws IOException {
+        return delegate.isHidden(unwrap(path));
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        return delegate.getFileStore(unwrap(path));
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        delegate.checkAccess(unwrap(path), modes);
+    }
+
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        if (type == UserDefinedFileAttributeView.class) {
+            return type.cast(new XAttrFileAttributeView(unwrap(path), XAttrFileAttributeView.followLinks(options), cache));
+        }
+        return delegate.getFileAttributeView(unwrap(path), type, options);
+    }
+
+    @Override
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+        return delegate.readAttributes(unwrap(path), type, options);
+    }
+
+    /**
+     * "user:*" or "user:a,b" reads values as byte[]
+     */
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        if (!attributes.startsWith(USER_VIEW)) return delegate.readAttributes(unwrap(path), attributes, options);
+
+        UserDefinedFileAttributeView v = getFileAttributeView(path, UserDefinedFileAttributeView.class, options);
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (String name : attributes.substring(USER_VIEW.length()).split(",")) {
+            if (name.equals("*")) {
+                for (String n : v.list()) m.put(n, read(v, n));
+            } else if (!name.isEmpty()) {
+                m.put(name, read(v, name));
+            }
+        }
+        return m;
+    }
+
+    private static byte[] read(UserDefinedFileAttributeView v, String name) throws IOException {
+        for (;;) {
+            ByteBuffer b = ByteBuffer.allocate(v.size(name));
+            try {
+                v.read(name, b);
+            } catch (IOException e) {
+                /* Grown in between */
+                if (e.getCause() instanceof XAttrException && ((XAttrException) e.getCause()).getErrno() == XAttr4J.ERANGE) continue;
+                throw e;
+            }
+            return b.position() == b.capacity() ? b.array() : Arrays.copyOf(b.array(), b.position());
+        }
+    }
+
+    /**
+     * "user:name" writes a byte[] or ByteBuffer value
+     */
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+        if (!attribute.startsWith(USER_VIEW)) {
+            delegate.setAttribute(unwrap(path), attribute, value, options);
+            return;
+        }
+
+        UserDefinedFileAttributeView v = getFileAttributeView(path, UserDefinedFileAttributeView.class, options);
+        String name = attribute.substring(USER_VIEW.length());
+        if (value instanceof byte[]) {
+            v.write(name, ByteBuffer.wrap((byte[]) value));
+        } else if (value instanceof ByteBuffer) {
+            v.write(name, (ByteBuffer) value);
+        } else {
+            throw new ClassCastException("Value of " + attribute + " must be byte[] or ByteBuffer");
+        }
+    }
+}
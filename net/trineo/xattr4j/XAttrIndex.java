@@ -0,0 +1,1382 @@
+/*
+ * Created 261018
+ *
+ * Persistent memory-mapped inverted index from extended attributes to files
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Immutable inverted index  (name, value) -> files carrying it  persisted as memory-mapped files
+ *
+ * Built by a parallel XAttrWalker scan  kept up to date by update()/refresh()
+ *  which re-read only files whose (st_dev, st_ino, st_ctime) changed(any xattr change bumps ctime)
+ * Changed files go to a delta segment(file + ".delta") which queries merge with the base
+ *  once it outgrows 1/COMPACT_RATIO of the base  both are folded into a new base by a streaming merge
+ *  either file is replaced atomically  indices already opened keep reading the old ones
+ *
+ * File layout(big-endian)  same for base and delta
+ *  header  prefixes  file table(sorted by path)  paths  keys(sorted by name then value)
+ *  sparse block index(offset of every BLOCK_KEYS-th key)  postings(ascending file ids per key)
+ * A lookup binary searches the block index then scans a single block  queries only touch mapped pages
+ * Delta entries override base entries of the same path  those without keys drop them
+ *
+ * Files are indexed only if they carry any attribute matching the prefixes  symlinks are never followed
+ * Paths are as reported by XAttrWalker  i.e. root joined with relative path
+ *
+ * Indices are built in memory  updates hold only changed files  queries are thread-safe
+ * Building and updating require the native library  UnsupportedOperationException otherwise
+ * The mapping is released once the index is unreachable(JDK 8 cannot unmap explicitly)
+ */
+public final class XAttrIndex {
+    private static final int MAGIC = 0x58414958;    /* "XAIX" */
+    private static final int VERSION = 1;
+
+    /* Header */
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CREATED = 8;
+    private static final int H_FILES = 16;
+    private static final int H_KEYS = 20;
+    private static final int H_BLOCKS = 24;
+    private static final int H_FAILURES = 28;
+    private static final int H_PREFIXES_OFF = 32;
+    private static final int H_PREFIXES_LEN = 40;
+    private static final int H_FILES_OFF = 48;
+    private static final int H_KEYS_OFF = 56;
+    private static final int H_BLOCKS_OFF = 64;
+    private static final int H_LENGTH = 72;
+    private static final int H_ID = 80;
+    private static final int H_BASE_ID = 88;       /* Delta only  0 in a base */
+    private static final int HEADER_SIZE = 96;
+
+    /* File table entry */
+    private static final int F_DEV = 0;
+    private static final int F_INO = 8;
+    private static final int F_CTIME_SEC = 16;
+    private static final int F_CTIME_NSEC = 24;
+    private static final int F_PATH_LEN = 28;
+    private static final int F_PATH_OFF = 32;
+    private static final int FILE_SIZE = 40;
+
+    /* Key record  followed by name and value bytes */
+    private static final int K_NAME_LEN = 0;
+    private static final int K_VALUE_LEN = 4;
+    private static final int K_COUNT = 8;
+    private static final int K_POSTINGS = 12;
+    private static final int KEY_HEADER = 20;
+
+    /* Keys per block of the sparse index */
+    private static final int BLOCK_KEYS = 64;
+
+    /* Files are mapped in chunks  a MappedByteBuffer is limited to 2GiB */
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    /* Files revalidated per update task */
+    private static final int FILES_PER_TASK = 256;
+
+    /* st_ctime nanoseconds of a file whose values may be newer than its ctime  never matches */
+    private static final int UNVERIFIED = -1;
+
+    private static final String DELTA_SUFFIX = ".delta";
+    /* Delta entries beyond base files / COMPACT_RATIO are folded into the base */
+    private static final int COMPACT_RATIO = 8;
+
+    /**
+     * Receives hits of a prefix query
+     */
+    public interface Visitor {
+        /**
+         * @param path      Path of the file
+         * @param name      Interned extended attribute name
+         * @param value     Extended attribute value  shared by all files of the same (name, value)  don't modify
+         */
+        void visit(String path, XAttrName name, byte[] value);
+    }
+
+    private final File file;
+    private final Segment base;
+    /* Files changed since base was written  null if none */
+    private final Segment delta;
+    /* Base ids whose path is in delta  null if no delta */
+    private final BitSet shadowed;
+    /* Delta ids carrying any key  null if no delta */
+    private final BitSet live;
+    private final int nfiles;
+    /* Counted on first use if there's a delta  -1 until then */
+    private volatile int nkeys;
+
+    private XAttrIndex(File file, Segment base, Segment delta) {
+        this.file = file;
+        this.base = base;
+        this.delta = delta;
+        if (delta == null) {
+            shadowed = null;
+            live = null;
+            nfiles = base.nfiles;
+            nkeys = base.nkeys;
+            return;
+        }
+
+        shadowed = new BitSet(base.nfiles);
+        for (int j = 0; j < delta.nfiles; j++) {
+            int i = base.findPath(delta.pathBytes(j));
+            if (i >= 0) shadowed.set(i);
+        }
+        live = new BitSet(delta.nfiles);
+        long off = delta.keysOff;
+        for (int i = 0; i < delta.nkeys; i++, off = delta.nextKey(off)) {
+            int n = delta.getInt(off + K_COUNT);
+            long po = delta.getLong(off + K_POSTINGS);
+            for (int j = 0; j < n; j++) live.set(delta.getInt(po + 4L * j));
+        }
+        nfiles = base.nfiles - shadowed.cardinality() + live.cardinality();
+        nkeys = -1;
+    }
+
+    /**
+     * Scan a directory tree and write its index
+     *
+     * @param file          Index file  replaced atomically if exists
+     * @param root          Root directory  see: XAttrWalker#walk()
+     * @param parallelism   Number of worker threads
+     * @param prefixes      Name prefixes to index  e.g. "user."  none to index all
+     * @return              The index opened
+     * @throws IOException  If root cannot be opened or the index cannot be written
+     *                      entries which cannot be scanned are skipped  see: failureCount()
+     */
+    public static XAttrIndex build(File file, String root, int parallelism, String... prefixes) throws IOException {
+        final Model m = new Model(prefixes);
+        final long since = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+        new XAttrWalker(parallelism, 0, m.prefixes).walk(root, new XAttrWalker.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                Rec r = m.files.get(path);
+                if (r == null) {
+                    r = statRec(path, since);
+                    /* Vanished in the meantime */
+                    if (r == null) return;
+                    Rec old = m.files.putIfAbsent(path, r);
+                    if (old != null) r = old;
+                }
+                Key k = m.intern(name, value);
+                synchronized (r) {
+                    r.keys.add(k);
+                }
+            }
+
+            @Override
+            public void failed(String path, IOException e) {
+                m.failures.incrementAndGet();
+            }
+        });
+
+        write(m, file, 0);
+        /* Delta of the replaced base  ignored anyway */
+        Files.deleteIfExists(deltaFile(file).toPath());
+        return open(file);
+    }
+
+    /**
+     * Values are read before the stat(2)  a change in between would go unnoticed by later updates
+     *  so files changed since the walk began(within ctime granularity) are stored unverified
+     * @return  null if the file cannot be stat(2)ed  e.g. vanished in the meantime
+     */
+    private static Rec statRec(String path, long since) {
+        long[] st = new long[XAttr4J.STAT_MAX];
+        try {
+            XAttr4J.stat(new XAttrPath(path), XAttr4J.XATTR_NOFOLLOW, st);
+        } catch (IOException e) {
+            return null;
+        }
+        long ctime = TimeUnit.SECONDS.toNanos(st[XAttr4J.STAT_CTIME_SEC]) + st[XAttr4J.STAT_CTIME_NSEC];
+        return new Rec(path, st, ctime >= since - XAttrCache.RACY_NANOS);
+    }
+
+    private static File deltaFile(File file) {
+        return new File(file.getPath() + DELTA_SUFFIX);
+    }
+
+    /**
+     * Open an index file  along with its delta segment if any
+     *
+     * @throws IOException  If the file cannot be mapped  or isn't a complete index
+     */
+    public static XAttrIndex open(File file) throws IOException {
+        for (;;) {
+            Segment base = Segment.map(file);
+            if (base.baseId != 0) throw new IOException("Not a base xattr index " + file);
+            Segment delta;
+            try {
+                delta = Segment.map(deltaFile(file));
+            } catch (NoSuchFileException e) {
+                delta = null;
+            }
+            /* Left by a compaction which didn't get to delete it */
+            if (delta != null && delta.baseId != base.id) delta = null;
+
+            /* Compacted in between  whose delta may be gone already */
+            if (Segment.id(file) == base.id) return new XAttrIndex(file, base, delta);
+        }
+    }
+
+    /**
+     * Revalidate files by ctime  re-read changed ones and write them to the delta segment
+     *  paths not yet indexed are read and added if they carry any matching attribute
+     *  vanished paths are dropped
+     * The delta is folded into a new base once it outgrows 1/8 of it
+     *
+     * @param paths         Paths of changed(or possibly changed) files
+     * @param parallelism   Number of worker threads
+     * @return              The new index  this one still reads the old files
+     */
+    public XAttrIndex update(Collection<String> paths, int parallelism) throws IOException {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        final String[] a = paths.toArray(new String[paths.size()]);
+        for (String p : a) {
+            if (p == null) throw new NullPointerException();
+        }
+        return commit(revalidate(a.length, i -> a[i], parallelism));
+    }
+
+    /**
+     * Revalidate every indexed file  a stat(2) per file unless changed
+     *  files tagged since the index was built are not discovered  build() again for that
+     *
+     * @see XAttrIndex#update(Collection, int)
+     */
+    public XAttrIndex refresh(int parallelism) throws IOException {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        final int nb = base.nfiles;
+        int n = nb + (delta != null ? delta.nfiles : 0);
+        return commit(revalidate(n, i -> {
+            if (i < nb) return shadowed != null && shadowed.get(i) ? null : base.path(i);
+            return live.get(i - nb) ? delta.path(i - nb) : null;
+        }, parallelism));
+    }
+
+    /**
+     * @param paths     Path of each index  null to skip
+     * @return          Changed files  with no keys if dropped
+     */
+    private Model revalidate(int n, IntFunction<String> paths, int parallelism) {
+        Model m = new Model(base.prefixes);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new RevalidateTask(this, m, paths, 0, n));
+        } finally {
+            pool.shutdown();
+        }
+        return m;
+    }
+
+    private static final class RevalidateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final XAttrIndex x;
+        private final Model m;
+        private final IntFunction<String> paths;
+        private final int from;
+        private final int to;
+
+        RevalidateTask(XAttrIndex x, Model m, IntFunction<String> paths, int from, int to) {
+            this.x = x;
+            this.m = m;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FILES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RevalidateTask(x, m, paths, from, mid), new RevalidateTask(x, m, paths, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                String p = paths.apply(i);
+                if (p != null) x.revalidate(m, p);
+            }
+        }
+    }
+
+    /**
+     * stat(2) precedes the read  a change in between bumps ctime thus fails next revalidation
+     */
+    private void revalidate(Model m, String path) {
+        long[] st = new long[XAttr4J.STAT_MAX];
+        Rec old = rec(path);
+        Map<String, byte[]> all;
+        try {
+            XAttr4J.stat(new XAttrPath(path), XAttr4J.XATTR_NOFOLLOW, st);
+            if (old != null && old.matches(st)) return;
+            all = XAttr4J.getAllxattrs(path, XAttr4J.XATTR_NOFOLLOW);
+        } catch (XAttrException e) {
+            if (e.getErrno() == XAttr4J.ENOENT) {
+                if (old != null) m.files.put(path, new Rec(path, 0, 0, 0, UNVERIFIED));
+            } else {
+                m.failures.incrementAndGet();
+            }
+            return;
+        } catch (IOException e) {
+            m.failures.incrementAndGet();
+            return;
+        }
+
+        Rec r = new Rec(path, st, XAttrCache.isRacy(st));
+        for (Map.Entry<String, byte[]> e : all.entrySet()) {
+            if (m.matches(e.getKey())) r.keys.add(m.intern(XAttrName.of(e.getKey()), e.getValue()));
+        }
+        if (!r.keys.isEmpty() || old != null) m.files.put(path, r);
+    }
+
+    /**
+     * @return  Entry of an indexed path  without keys  null if not indexed
+     */
+    private Rec rec(String path) {
+        byte[] b = XAttr4J.stringToUTF8Bytes(path);
+        if (delta != null) {
+            int j = delta.findPath(b);
+            if (j >= 0) return live.get(j) ? delta.rec(j, path) : null;
+        }
+        int i = base.findPath(b);
+        return i >= 0 ? base.rec(i, path) : null;
+    }
+
+    /**
+     * Write changed files along with the current delta  folded into a new base if it grew too large
+     */
+    private XAttrIndex commit(Model m) throws IOException {
+        if (delta != null) delta.loadInto(m);
+        /* Dropping a file the base doesn't have is a no-op */
+        for (Iterator<Rec> it = m.files.values().iterator(); it.hasNext(); ) {
+            Rec r = it.next();
+            if (r.keys.isEmpty() && base.findPath(r.bpath) < 0) it.remove();
+        }
+
+        if (m.files.size() > base.nfiles / COMPACT_RATIO) return compact(m);
+        File df = deltaFile(file);
+        write(m, df, base.id);
+        return new XAttrIndex(file, base, Segment.map(df));
+    }
+
+    /**
+     * @return  Paths of files carrying name with exactly value  in path(UTF-8 byte) order
+     */
+    public List<String> find(String name, byte[] value) {
+        if (value == null) throw new NullPointerException();
+        byte[] n = XAttr4J.stringToUTF8Bytes(name);
+        long k = base.lookup(n, n.length, value);
+        long dk = delta != null ? delta.lookup(n, n.length, value) : -1;
+        if (k < 0 && dk < 0) return Collections.emptyList();
+
+        int cap = (k >= 0 ? base.getInt(k + K_COUNT) : 0) + (dk >= 0 ? delta.getInt(dk + K_COUNT) : 0);
+        List<String> paths = new ArrayList<String>(cap);
+        postings(k, dk, paths::add);
+        return paths;
+    }
+
+    /**
+     * @see XAttrIndex#find(String, byte[])
+     */
+    public List<String> find(String name, String value) {
+        return find(name, XAttr4J.stringToUTF8Bytes(value));
+    }
+
+    /**
+     * Visit every (file, name, value) whose name starts with prefix  in name then value order
+     *
+     * @return  Number of hits
+     */
+    public int findByPrefix(String prefix, final Visitor visitor) {
+        if (visitor == null) throw new NullPointerException();
+        final int[] hits = new int[1];
+        walk(XAttr4J.stringToUTF8Bytes(prefix), (k, dk) -> {
+            Segment s = k >= 0 ? base : delta;
+            long off = k >= 0 ? k : dk;
+            XAttrName name = s.name(off);
+            byte[] value = s.value(off);
+            hits[0] += postings(k, dk, path -> visitor.visit(path, name, value));
+        });
+        return hits[0];
+    }
+
+    /**
+     * Receives a key of the merged view
+     */
+    private interface KeyPair {
+        /**
+         * @param k     Offset of the key in base  -1 if absent
+         * @param dk    Offset of the key in delta  -1 if absent
+         */
+        void key(long k, long dk);
+    }
+
+    /**
+     * Walk keys whose name starts with prefix in name then value order  merging base and delta
+     */
+    private void walk(byte[] prefix, KeyPair sink) {
+        Cursor a = new Cursor(base, prefix);
+        Cursor b = delta != null ? new Cursor(delta, prefix) : null;
+        for (;;) {
+            long k = a.key();
+            long dk = b != null ? b.key() : -1;
+            if (k < 0 && dk < 0) return;
+
+            int c = k < 0 ? 1 : dk < 0 ? -1 : base.compareKey(k, delta, dk);
+            if (c <= 0) a.next();
+            if (c >= 0) b.next();
+            sink.key(c <= 0 ? k : -1, c >= 0 ? dk : -1);
+        }
+    }
+
+    /**
+     * Visit paths of a key in path order  skipping base entries overridden by delta
+     *
+     * @see KeyPair#key(long, long)
+     * @return  Number of paths visited
+     */
+    private int postings(long k, long dk, Consumer<String> sink) {
+        int n = k >= 0 ? base.getInt(k + K_COUNT) : 0;
+        long po = k >= 0 ? base.getLong(k + K_POSTINGS) : 0;
+        if (delta == null) {
+            for (int i = 0; i < n; i++) sink.accept(base.path(base.getInt(po + 4L * i)));
+            return n;
+        }
+
+        int dn = dk >= 0 ? delta.getInt(dk + K_COUNT) : 0;
+        long dpo = dk >= 0 ? delta.getLong(dk + K_POSTINGS) : 0;
+        int hits = 0;
+        int id = -1;
+        for (int i = 0, j = 0; ; hits++) {
+            while (id < 0 && i < n) {
+                id = base.getInt(po + 4L * i++);
+                if (shadowed.get(id)) id = -1;
+            }
+            int did = j < dn ? delta.getInt(dpo + 4L * j) : -1;
+            if (id < 0 && did < 0) return hits;
+
+            /* A path is in either segment  never both */
+            if (did < 0 || (id >= 0 && base.comparePath(id, delta, did) < 0)) {
+                sink.accept(base.path(id));
+                id = -1;
+            } else {
+                sink.accept(delta.path(did));
+                j++;
+            }
+        }
+    }
+
+    /**
+     * @return  Number of files indexed
+     */
+    public int fileCount() {
+        return nfiles;
+    }
+
+    /**
+     * @return  Number of distinct (name, value) pairs
+     *          walks every key once if there's a delta
+     */
+    public int keyCount() {
+        int n = nkeys;
+        if (n < 0) {
+            final int[] c = new int[1];
+            walk(new byte[0], (k, dk) -> {
+                if (dk >= 0 || postings(k, -1, p -> {}) != 0) c[0]++;
+            });
+            nkeys = n = c[0];
+        }
+        return n;
+    }
+
+    /**
+     * @return  Number of entries which couldn't be scanned by the build or update writing this index
+     */
+    public int failureCount() {
+        return delta != null ? delta.failures : base.failures;
+    }
+
+    /**
+     * @return  Time the index was written  in milliseconds since the epoch
+     */
+    public long createdMillis() {
+        return delta != null ? delta.created : base.created;
+    }
+
+    /**
+     * @return  Base file  its delta segment(if any) is next to it with ".delta" appended
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Fold delta entries into a new base  streamed from the mapped base in three passes over its keys
+     *  only new file ids of base entries(an int each) and delta entries are held in memory
+     */
+    private XAttrIndex compact(Model d) throws IOException {
+        final Rec[] drecs = d.files.values().toArray(new Rec[d.files.size()]);
+        Arrays.sort(drecs);
+
+        /* New ids  -1 if dropped */
+        final int[] bids = new int[base.nfiles];
+        final int[] dids = new int[drecs.length];
+        final long[] pathBytes = new long[1];
+        Arrays.fill(bids, -1);
+        Arrays.fill(dids, -1);
+        final int nfiles = mergeFiles(drecs, new FileSink() {
+            int id;
+
+            @Override
+            public void file(int i, int j) {
+                if (i >= 0) {
+                    bids[i] = id;
+                    pathBytes[0] += base.pathLength(i);
+                } else {
+                    dids[j] = id;
+                    pathBytes[0] += drecs[j].bpath.length;
+                }
+                id++;
+            }
+        });
+
+        /* Postings of delta keys in new ids  ascending as drecs are sorted */
+        List<Key> used = new ArrayList<Key>(d.keys.size());
+        for (int j = 0; j < drecs.length; j++) {
+            if (dids[j] < 0) continue;
+            for (Key k : drecs[j].keys) {
+                if (k.n == 0) used.add(k);
+                k.add(dids[j]);
+            }
+        }
+        final Key[] dkeys = used.toArray(new Key[used.size()]);
+        Arrays.sort(dkeys);
+
+        /* Pass 1: sizes */
+        final long[] sz = new long[3];      /* Keys  key bytes  postings */
+        mergeKeys(dkeys, (k, dk) -> {
+            int n = count(k, dk, bids);
+            if (n == 0) return;
+            sz[0]++;
+            sz[1] += KEY_HEADER + (dk != null ? dk.nameLength() + dk.value.length :
+                    base.getInt(k + K_NAME_LEN) + base.getInt(k + K_VALUE_LEN));
+            sz[2] += n;
+        });
+        if (sz[0] > Integer.MAX_VALUE) throw new IOException("Too many xattr index keys " + sz[0]);
+
+        final byte[] bprefixes = XAttr4J.stringToUTF8Bytes(String.join("\0", base.prefixes));
+        final int nkeys = (int) sz[0];
+        final long filesOff = HEADER_SIZE + bprefixes.length;
+        final long pathsOff = filesOff + (long) nfiles * FILE_SIZE;
+        final long keysOff = pathsOff + pathBytes[0];
+        final long blocksOff = keysOff + sz[1];
+        final int nblocks = (nkeys + BLOCK_KEYS - 1) / BLOCK_KEYS;
+        final long postingsOff = blocksOff + 8L * nblocks;
+        final long length = postingsOff + 4L * sz[2];
+
+        replace(file, length, out -> {
+            writeHeader(out, 0, nfiles, nkeys, nblocks, d.failures.get(), bprefixes, filesOff, keysOff, blocksOff, length);
+
+            final long[] off = {pathsOff};
+            mergeFiles(drecs, (i, j) -> {
+                if (i >= 0) {
+                    long e = base.filesOff + (long) i * FILE_SIZE;
+                    out.writeLong(base.getLong(e + F_DEV));
+                    out.writeLong(base.getLong(e + F_INO));
+                    out.writeLong(base.getLong(e + F_CTIME_SEC));
+                    out.writeInt(base.getInt(e + F_CTIME_NSEC));
+                    out.writeInt(base.pathLength(i));
+                    out.writeLong(off[0]);
+                    off[0] += base.pathLength(i);
+                } else {
+                    Rec r = drecs[j];
+                    out.writeLong(r.dev);
+                    out.writeLong(r.ino);
+                    out.writeLong(r.ctimeSec);
+                    out.writeInt(r.ctimeNsec);
+                    out.writeInt(r.bpath.length);
+                    out.writeLong(off[0]);
+                    off[0] += r.bpath.length;
+                }
+            });
+            final Scratch sc = new Scratch();
+            mergeFiles(drecs, (i, j) -> {
+                if (i >= 0) {
+                    int len = base.pathLength(i);
+                    base.get(base.getLong(base.filesOff + (long) i * FILE_SIZE + F_PATH_OFF), sc.get(len), 0, len);
+                    out.write(sc.b, 0, len);
+                } else {
+                    out.write(drecs[j].bpath);
+                }
+            });
+
+            /* Pass 2: key records */
+            final long[] blocks = new long[nblocks];
+            final long[] pos = {keysOff, postingsOff, 0};     /* Key  postings  key index */
+            mergeKeys(dkeys, (k, dk) -> {
+                int n = count(k, dk, bids);
+                if (n == 0) return;
+                if (pos[2] % BLOCK_KEYS == 0) blocks[(int) (pos[2] / BLOCK_KEYS)] = pos[0];
+                int nlen;
+                int vlen;
+                if (dk != null) {
+                    nlen = dk.nameLength();
+                    vlen = dk.value.length;
+                } else {
+                    nlen = base.getInt(k + K_NAME_LEN);
+                    vlen = base.getInt(k + K_VALUE_LEN);
+                }
+                out.writeInt(nlen);
+                out.writeInt(vlen);
+                out.writeInt(n);
+                out.writeLong(pos[1]);
+                if (dk != null) {
+                    out.write(dk.name.bytes(), 0, nlen);
+                    out.write(dk.value);
+                } else {
+                    base.get(k + KEY_HEADER, sc.get(nlen + vlen), 0, nlen + vlen);
+                    out.write(sc.b, 0, nlen + vlen);
+                }
+                pos[0] += KEY_HEADER + nlen + vlen;
+                pos[1] += 4L * n;
+                pos[2]++;
+            });
+            for (long b : blocks) out.writeLong(b);
+
+            /* Pass 3: postings  both sides ascending  merged */
+            mergeKeys(dkeys, (k, dk) -> {
+                int n = k >= 0 ? base.getInt(k + K_COUNT) : 0;
+                long po = k >= 0 ? base.getLong(k + K_POSTINGS) : 0;
+                int dn = dk != null ? dk.n : 0;
+                int id = -1;
+                for (int i = 0, j = 0; ; ) {
+                    while (id < 0 && i < n) id = bids[base.getInt(po + 4L * i++)];
+                    if (id < 0 && j == dn) break;
+                    if (j == dn || (id >= 0 && id < dk.ids[j])) {
+                        out.writeInt(id);
+                        id = -1;
+                    } else {
+                        out.writeInt(dk.ids[j++]);
+                    }
+                }
+            });
+        });
+        Files.deleteIfExists(deltaFile(file).toPath());
+        return new XAttrIndex(file, Segment.map(file), null);
+    }
+
+    /**
+     * Receives files of a compaction in new id order
+     */
+    private interface FileSink {
+        /**
+         * @param i     Base id  -1 if a delta entry
+         * @param j     Index of the delta entry  -1 if a base entry
+         */
+        void file(int i, int j) throws IOException;
+    }
+
+    /**
+     * Merge base entries and sorted delta entries by path  skipping overridden and dropped ones
+     * @return  Number of files
+     */
+    private int mergeFiles(Rec[] drecs, FileSink sink) throws IOException {
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < base.nfiles || j < drecs.length) {
+            int c = i == base.nfiles ? 1 : j == drecs.length ? -1 : base.comparePath(i, drecs[j].bpath);
+            if (c < 0) {
+                sink.file(i++, -1);
+                n++;
+                continue;
+            }
+            if (c == 0) i++;
+            if (!drecs[j].keys.isEmpty()) {
+                sink.file(-1, j);
+                n++;
+            }
+            j++;
+        }
+        return n;
+    }
+
+    /**
+     * Receives keys of a compaction in name then value order
+     */
+    private interface KeySink {
+        /**
+         * @param k     Offset of the key in base  -1 if absent
+         * @param dk    Delta key  null if absent
+         */
+        void key(long k, Key dk) throws IOException;
+    }
+
+    private void mergeKeys(Key[] dkeys, KeySink sink) throws IOException {
+        long off = base.keysOff;
+        int i = 0;
+        int j = 0;
+        while (i < base.nkeys || j < dkeys.length) {
+            int c = i == base.nkeys ? 1 : j == dkeys.length ? -1 :
+                    base.compareKey(off, dkeys[j].name.bytes(), dkeys[j].nameLength(), dkeys[j].value);
+            if (c <= 0) {
+                sink.key(off, c == 0 ? dkeys[j++] : null);
+                off = base.nextKey(off);
+                i++;
+            } else {
+                sink.key(-1, dkeys[j++]);
+            }
+        }
+    }
+
+    /**
+     * @return  Postings of a key after compaction
+     */
+    private int count(long k, Key dk, int[] bids) {
+        int n = dk != null ? dk.n : 0;
+        if (k < 0) return n;
+        int bn = base.getInt(k + K_COUNT);
+        long po = base.getLong(k + K_POSTINGS);
+        for (int i = 0; i < bn; i++) {
+            if (bids[base.getInt(po + 4L * i)] >= 0) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Reusable copy buffer
+     */
+    private static final class Scratch {
+        byte[] b = new byte[256];
+
+        byte[] get(int len) {
+            if (b.length < len) b = new byte[Math.max(len, b.length << 1)];
+            return b;
+        }
+    }
+
+    /**
+     * Body of a file being written
+     */
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Write into a temporary file  then rename it over file
+     *
+     * @param length    Expected length
+     */
+    private static void replace(File file, long length, Body body) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        boolean done = false;
+        try {
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+                body.write(out);
+                out.flush();
+                /* DataOutputStream.size() saturates at 2GiB */
+                long written = fos.getChannel().position();
+                if (written != length) throw new IOException("Bad xattr index length " + written + " vs " + length);
+                fos.getFD().sync();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            done = true;
+        } finally {
+            if (!done) tmp.delete();
+        }
+    }
+
+    /**
+     * @param baseId    Id of the base of a delta  0 for a base
+     */
+    private static void writeHeader(DataOutputStream out, long baseId, int nfiles, int nkeys, int nblocks, int failures,
+                                    byte[] bprefixes, long filesOff, long keysOff, long blocksOff, long length)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(nfiles);
+        out.writeInt(nkeys);
+        out.writeInt(nblocks);
+        out.writeInt(failures);
+        out.writeLong(HEADER_SIZE);
+        out.writeLong(bprefixes.length);
+        out.writeLong(filesOff);
+        out.writeLong(keysOff);
+        out.writeLong(blocksOff);
+        out.writeLong(length);
+        /* Nonzero */
+        out.writeLong(ThreadLocalRandom.current().nextLong() | 1);
+        out.writeLong(baseId);
+        out.write(bprefixes);
+    }
+
+    /**
+     * Write a model into a temporary file  then rename it over file
+     *
+     * @param baseId    Id of the base if writing a delta  0 otherwise
+     */
+    private static void write(Model m, File file, long baseId) throws IOException {
+        final Rec[] recs = m.files.values().toArray(new Rec[m.files.size()]);
+        Arrays.sort(recs);
+
+        /* Postings in ascending file id order  keys are interned so no lookup is needed */
+        List<Key> used = new ArrayList<Key>(m.keys.size());
+        for (int id = 0; id < recs.length; id++) {
+            for (Key k : recs[id].keys) {
+                if (k.n == 0) used.add(k);
+                k.add(id);
+            }
+        }
+        final Key[] keys = used.toArray(new Key[used.size()]);
+        Arrays.sort(keys);
+
+        final byte[] bprefixes = XAttr4J.stringToUTF8Bytes(String.join("\0", m.prefixes));
+        final long filesOff = HEADER_SIZE + bprefixes.length;
+        final long pathsOff = filesOff + (long) recs.length * FILE_SIZE;
+        long koff = pathsOff;
+        for (Rec r : recs) koff += r.bpath.length;
+        final long keysOff = koff;
+        long boff = keysOff;
+        for (Key k : keys) boff += KEY_HEADER + k.nameLength() + k.value.length;
+        final long blocksOff = boff;
+        final int nblocks = (keys.length + BLOCK_KEYS - 1) / BLOCK_KEYS;
+        final long postingsOff = blocksOff + 8L * nblocks;
+        long length = postingsOff;
+        for (Key k : keys) length += 4L * k.n;
+
+        final long len = length;
+        replace(file, length, out -> {
+            writeHeader(out, baseId, recs.length, keys.length, nblocks, m.failures.get(),
+                        bprefixes, filesOff, keysOff, blocksOff, len);
+
+            long off = pathsOff;
+            for (Rec r : recs) {
+                out.writeLong(r.dev);
+                out.writeLong(r.ino);
+                out.writeLong(r.ctimeSec);
+                out.writeInt(r.ctimeNsec);
+                out.writeInt(r.bpath.length);
+                out.writeLong(off);
+                off += r.bpath.length;
+            }
+            for (Rec r : recs) out.write(r.bpath);
+
+            long[] blocks = new long[nblocks];
+            off = keysOff;
+            long po = postingsOff;
+            for (int i = 0; i < keys.length; i++) {
+                Key k = keys[i];
+                if (i % BLOCK_KEYS == 0) blocks[i / BLOCK_KEYS] = off;
+                out.writeInt(k.nameLength());
+                out.writeInt(k.value.length);
+                out.writeInt(k.n);
+                out.writeLong(po);
+                out.write(k.name.bytes(), 0, k.nameLength());
+                out.write(k.value);
+                off += KEY_HEADER + k.nameLength() + k.value.length;
+                po += 4L * k.n;
+            }
+            for (long b : blocks) out.writeLong(b);
+            for (Key k : keys) {
+                for (int i = 0; i < k.n; i++) out.writeInt(k.ids[i]);
+            }
+        });
+    }
+
+    /**
+     * A mapped index file  base or delta
+     */
+    private static final class Segment {
+        final File file;
+        final ByteBuffer[] chunks;
+        final long id;
+        final long baseId;
+        final long created;
+        final int nfiles;
+        final int nkeys;
+        final int nblocks;
+        final int failures;
+        final long filesOff;
+        final long keysOff;
+        final long blocksOff;
+        final String[] prefixes;
+
+        private Segment(File file, ByteBuffer[] chunks, long size) throws IOException {
+            this.file = file;
+            this.chunks = chunks;
+            if (size < HEADER_SIZE || getInt(H_MAGIC) != MAGIC) throw new IOException("Not an xattr index " + file);
+            if (getInt(H_VERSION) != VERSION) throw new IOException("Unsupported xattr index version " + getInt(H_VERSION));
+            if (getLong(H_LENGTH) != size) throw new IOException("Truncated xattr index " + file);
+
+            this.id = getLong(H_ID);
+            this.baseId = getLong(H_BASE_ID);
+            this.created = getLong(H_CREATED);
+            this.nfiles = getInt(H_FILES);
+            this.nkeys = getInt(H_KEYS);
+            this.nblocks = getInt(H_BLOCKS);
+            this.failures = getInt(H_FAILURES);
+            this.filesOff = getLong(H_FILES_OFF);
+            this.keysOff = getLong(H_KEYS_OFF);
+            this.blocksOff = getLong(H_BLOCKS_OFF);
+
+            byte[] b = new byte[(int) getLong(H_PREFIXES_LEN)];
+            get(getLong(H_PREFIXES_OFF), b, 0, b.length);
+            this.prefixes = b.length != 0 ? XAttr4J.utf8BytesToString(b, 0, b.length).split("\0") : new String[0];
+        }
+
+        static Segment map(File file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = ch.size();
+                /* Mappings outlive the channel */
+                ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+                for (int i = 0; i < chunks.length; i++) {
+                    long pos = (long) i << CHUNK_SHIFT;
+                    MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(CHUNK_MASK + 1, size - pos));
+                    chunks[i] = b;
+                }
+                return new Segment(file, chunks, size);
+            }
+        }
+
+        /**
+         * @return  Id in the header of file  without mapping it
+         */
+        static long id(File file) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(8);
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                while (b.hasRemaining()) {
+                    if (ch.read(b, H_ID + b.position()) < 0) throw new IOException("Truncated xattr index " + file);
+                }
+            }
+            return b.getLong(0);
+        }
+
+        Rec rec(int i, String path) {
+            long e = filesOff + (long) i * FILE_SIZE;
+            return new Rec(path, getLong(e + F_DEV), getLong(e + F_INO), getLong(e + F_CTIME_SEC), getInt(e + F_CTIME_NSEC));
+        }
+
+        /**
+         * Add entries of paths absent from m  with their keys  for a delta only as it is small
+         */
+        void loadInto(Model m) {
+            Rec[] recs = new Rec[nfiles];
+            for (int i = 0; i < nfiles; i++) {
+                Rec r = rec(i, path(i));
+                if (m.files.putIfAbsent(r.path, r) == null) recs[i] = r;
+            }
+
+            long off = keysOff;
+            for (int i = 0; i < nkeys; i++, off = nextKey(off)) {
+                Key k = null;
+                int n = getInt(off + K_COUNT);
+                long po = getLong(off + K_POSTINGS);
+                for (int j = 0; j < n; j++) {
+                    Rec r = recs[getInt(po + 4L * j)];
+                    if (r == null) continue;
+                    if (k == null) k = m.intern(name(off), value(off));
+                    r.keys.add(k);
+                }
+            }
+        }
+
+        /**
+         * @return  Offset of the key  -1 if absent
+         */
+        long lookup(byte[] name, int nlen, byte[] value) {
+            /* Last block whose first key is not greater */
+            int b = -1;
+            int lo = 0;
+            int hi = nblocks - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareKey(blockKey(mid), name, nlen, value) <= 0) {
+                    b = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (b < 0) return -1;
+
+            long off = blockKey(b);
+            int n = Math.min(BLOCK_KEYS, nkeys - b * BLOCK_KEYS);
+            for (int i = 0; i < n; i++, off = nextKey(off)) {
+                int c = compareKey(off, name, nlen, value);
+                if (c == 0) return off;
+                if (c > 0) break;
+            }
+            return -1;
+        }
+
+        /**
+         * @return  Last block whose first name sorts before prefix  earlier blocks hold no match
+         */
+        int prefixBlock(byte[] p) {
+            int b = 0;
+            int lo = 1;
+            int hi = nblocks - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long off = blockKey(mid);
+                if (compare(off + KEY_HEADER, getInt(off + K_NAME_LEN), p, p.length) < 0) {
+                    b = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return b;
+        }
+
+        /**
+         * @return  Id of the file  -1 if absent
+         */
+        int findPath(byte[] p) {
+            int lo = 0;
+            int hi = nfiles - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = comparePath(mid, p);
+                if (c == 0) return mid;
+                if (c < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return -1;
+        }
+
+        long blockKey(int b) {
+            return getLong(blocksOff + 8L * b);
+        }
+
+        long nextKey(long off) {
+            return off + KEY_HEADER + getInt(off + K_NAME_LEN) + getInt(off + K_VALUE_LEN);
+        }
+
+        XAttrName name(long off) {
+            int nlen = getInt(off + K_NAME_LEN);
+            byte[] nb = new byte[nlen];
+            get(off + KEY_HEADER, nb, 0, nlen);
+            return XAttrName.of(nb, 0, nlen);
+        }
+
+        byte[] value(long off) {
+            byte[] value = new byte[getInt(off + K_VALUE_LEN)];
+            get(off + KEY_HEADER + getInt(off + K_NAME_LEN), value, 0, value.length);
+            return value;
+        }
+
+        int compareKey(long off, byte[] name, int nlen, byte[] value) {
+            int klen = getInt(off + K_NAME_LEN);
+            int c = compare(off + KEY_HEADER, klen, name, nlen);
+            if (c != 0) return c;
+            return compare(off + KEY_HEADER + klen, getInt(off + K_VALUE_LEN), value, value.length);
+        }
+
+        int compareKey(long off, Segment o, long ooff) {
+            int nlen = getInt(off + K_NAME_LEN);
+            int onlen = o.getInt(ooff + K_NAME_LEN);
+            int c = compare(off + KEY_HEADER, nlen, o, ooff + KEY_HEADER, onlen);
+            if (c != 0) return c;
+            return compare(off + KEY_HEADER + nlen, getInt(off + K_VALUE_LEN),
+                           o, ooff + KEY_HEADER + onlen, o.getInt(ooff + K_VALUE_LEN));
+        }
+
+        int pathLength(int id) {
+            return getInt(filesOff + (long) id * FILE_SIZE + F_PATH_LEN);
+        }
+
+        private long pathOffset(int id) {
+            return getLong(filesOff + (long) id * FILE_SIZE + F_PATH_OFF);
+        }
+
+        int comparePath(int id, byte[] p) {
+            return compare(pathOffset(id), pathLength(id), p, p.length);
+        }
+
+        int comparePath(int id, Segment o, int oid) {
+            return compare(pathOffset(id), pathLength(id), o, o.pathOffset(oid), o.pathLength(oid));
+        }
+
+        byte[] pathBytes(int id) {
+            byte[] b = new byte[pathLength(id)];
+            get(pathOffset(id), b, 0, b.length);
+            return b;
+        }
+
+        String path(int id) {
+            byte[] b = pathBytes(id);
+            return XAttr4J.utf8BytesToString(b, 0, b.length);
+        }
+
+        /**
+         * Compare mapped bytes with b as unsigned bytes lexicographically
+         */
+        private int compare(long off, int len, byte[] b, int blen) {
+            int n = Math.min(len, blen);
+            for (int i = 0; i < n; i++) {
+                int c = (get(off + i) & 0xff) - (b[i] & 0xff);
+                if (c != 0) return c;
+            }
+            return len - blen;
+        }
+
+        /**
+         * @see Segment#compare(long, int, byte[], int)
+         */
+        private int compare(long off, int len, Segment o, long ooff, int olen) {
+            int n = Math.min(len, olen);
+            for (int i = 0; i < n; i++) {
+                int c = (get(off + i) & 0xff) - (o.get(ooff + i) & 0xff);
+                if (c != 0) return c;
+            }
+            return len - olen;
+        }
+
+        byte get(long off) {
+            return chunks[(int) (off >>> CHUNK_SHIFT)].get((int) (off & CHUNK_MASK));
+        }
+
+        int getInt(long off) {
+            ByteBuffer c = chunks[(int) (off >>> CHUNK_SHIFT)];
+            int i = (int) (off & CHUNK_MASK);
+            if (i <= c.limit() - 4) return c.getInt(i);
+            /* Straddles two chunks */
+            return (get(off) & 0xff) << 24 | (get(off + 1) & 0xff) << 16 | (get(off + 2) & 0xff) << 8 | (get(off + 3) & 0xff);
+        }
+
+        long getLong(long off) {
+            ByteBuffer c = chunks[(int) (off >>> CHUNK_SHIFT)];
+            int i = (int) (off & CHUNK_MASK);
+            if (i <= c.limit() - 8) return c.getLong(i);
+            return (long) getInt(off) << 32 | (getInt(off + 4) & 0xffffffffL);
+        }
+
+        void get(long off, byte[] dst, int doff, int len) {
+            while (len > 0) {
+                /* Absolute bulk get is JDK 13+  position a duplicate instead */
+                ByteBuffer d = chunks[(int) (off >>> CHUNK_SHIFT)].duplicate();
+                d.position((int) (off & CHUNK_MASK));
+                int n = Math.min(len, d.remaining());
+                d.get(dst, doff, n);
+                off += n;
+                doff += n;
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * Position in the keys of a segment  starting at the first key whose name may start with a prefix
+     */
+    private static final class Cursor {
+        private final Segment s;
+        private final byte[] p;
+        private int i;
+        private long off;
+
+        Cursor(Segment s, byte[] p) {
+            this.s = s;
+            this.p = p;
+            int b = s.prefixBlock(p);
+            i = b * BLOCK_KEYS;
+            off = s.nblocks != 0 ? s.blockKey(b) : s.keysOff;
+            while (i < s.nkeys && comparePrefix() < 0) next();
+        }
+
+        private int comparePrefix() {
+            return s.compare(off + KEY_HEADER, Math.min(s.getInt(off + K_NAME_LEN), p.length), p, p.length);
+        }
+
+        /**
+         * @return  Offset of the current key  -1 if no key left starting with prefix
+         */
+        long key() {
+            return i < s.nkeys && comparePrefix() == 0 ? off : -1;
+        }
+
+        void next() {
+            off = s.nextKey(off);
+            i++;
+        }
+    }
+
+    /**
+     * Files and interned keys of an index being built  or changed files of an update
+     */
+    private static final class Model {
+        final String[] prefixes;
+        final ConcurrentHashMap<String, Rec> files;
+        final ConcurrentHashMap<Key, Key> keys;
+        final AtomicInteger failures = new AtomicInteger();
+
+        Model(String[] prefixes) {
+            this.files = new ConcurrentHashMap<String, Rec>();
+            this.keys = new ConcurrentHashMap<Key, Key>();
+            List<String> list = new ArrayList<String>();
+            for (String p : prefixes) {
+                if (p == null) throw new NullPointerException();
+                /* Empty prefix matches all */
+                if (p.isEmpty()) {
+                    list.clear();
+                    break;
+                }
+                list.add(p);
+            }
+            this.prefixes = list.toArray(new String[list.size()]);
+        }
+
+        boolean matches(String name) {
+            if (prefixes.length == 0) return true;
+            for (String p : prefixes) {
+                if (name.startsWith(p)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Files sharing a (name, value) share its Key
+         */
+        Key intern(XAttrName name, byte[] value) {
+            Key k = new Key(name, value);
+            Key old = keys.putIfAbsent(k, k);
+            return old != null ? old : k;
+        }
+    }
+
+    private static final class Rec implements Comparable<Rec> {
+        final String path;
+        final byte[] bpath;
+        final long dev;
+        final long ino;
+        final long ctimeSec;
+        final int ctimeNsec;
+        /* Guarded by itself while building */
+        final List<Key> keys = new ArrayList<Key>(2);
+
+        Rec(String path, long dev, long ino, long ctimeSec, int ctimeNsec) {
+            this.path = path;
+            this.bpath = XAttr4J.stringToUTF8Bytes(path);
+            this.dev = dev;
+            this.ino = ino;
+            this.ctimeSec = ctimeSec;
+            this.ctimeNsec = ctimeNsec;
+        }
+
+        Rec(String path, long[] st, boolean racy) {
+            this(path, st[XAttr4J.STAT_DEV], st[XAttr4J.STAT_INO], st[XAttr4J.STAT_CTIME_SEC],
+                    racy ? UNVERIFIED : (int) st[XAttr4J.STAT_CTIME_NSEC]);
+        }
+
+        boolean matches(long[] st) {
+            return dev == st[XAttr4J.STAT_DEV]
+                && ino == st[XAttr4J.STAT_INO]
+                && ctimeSec == st[XAttr4J.STAT_CTIME_SEC]
+                && ctimeNsec == st[XAttr4J.STAT_CTIME_NSEC];
+        }
+
+        @Override
+        public int compareTo(Rec o) {
+            return compareBytes(bpath, bpath.length, o.bpath, o.bpath.length);
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final XAttrName name;
+        final byte[] value;
+        final int hash;
+        /* Postings  filled by write() or compact() */
+        int[] ids;
+        int n;
+
+        Key(XAttrName name, byte[] value) {
+            this.name = name;
+            this.value = value;
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(value);
+        }
+
+        void add(int id) {
+            if (ids == null) {
+                ids = new int[2];
+            } else if (n == ids.length) {
+                ids = Arrays.copyOf(ids, n << 1);
+            }
+            ids[n++] = id;
+        }
+
+        /* XAttrName.bytes() is NUL-terminated */
+        int nameLength() {
+            return name.bytes().length - 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            /* XAttrName.of() stops interning once its table is full  so equal names may be distinct instances */
+            return name.equals(k.name) && Arrays.equals(value, k.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int c = compareBytes(name.bytes(), nameLength(), o.name.bytes(), o.nameLength());
+            return c != 0 ? c : compareBytes(value, value.length, o.value, o.value.length);
+        }
+    }
+
+    /**
+     * Compare as unsigned bytes lexicographically  consistent with the mapped comparisons
+     */
+    private static int compareBytes(byte[] a, int alen, byte[] b, int blen) {
+        int n = Math.min(alen, blen);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) return c;
+        }
+        return alen - blen;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Created 261018
+ *
+ * Read a value written by XAttrOutputStream
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Stream a chunked value back  one chunk at a time through a reusable direct buffer
+ *  getxattr(2) writes each chunk into the buffer memory directly
+ *
+ * The whole value is checked against the CRC32 in its header once the last byte is read
+ * An IOException is thrown if the value was rewritten while reading  reopen to retry
+ *
+ * @see XAttrOutputStream
+ */
+public final class XAttrInputStream extends InputStream {
+    private final XAttrChunks c;
+    private final CRC32 crc = new CRC32();
+    private final byte[] one = new byte[1];
+    private ByteBuffer buf;
+    private long pos;
+    private int next;
+    /* Cleared by skip()  skipped bytes cannot be checked */
+    private boolean checked = true;
+
+    /**
+     * @param path          File path
+     * @param name          Name of the value
+     * @param options       getxattr(2) options
+     * @throws IOException  If getxattr(2) failed(errno ENOATTR if absent) or the value is not chunked
+     */
+    public XAttrInputStream(XAttrPath path, XAttrName name, int options) throws IOException {
+        this(checkPath(path), -1, name, options);
+    }
+
+    /**
+     * fd-oriented  fd must stay open until the stream is closed
+     * @see XAttrInputStream#XAttrInputStream(XAttrPath, XAttrName, int)
+     */
+    public XAttrInputStream(int fd, XAttrName name, int options) throws IOException {
+        this(null, fd, name, options);
+    }
+
+    private static XAttrPath checkPath(XAttrPath path) {
+        if (path == null) throw new NullPointerException();
+        return path;
+    }
+
+    private XAttrInputStream(XAttrPath path, int fd, XAttrName name, int options) throws IOException {
+        c = new XAttrChunks(path, fd, name, options);
+        c.readHeader(true);
+        buf = XAttrChunks.borrow(c.chunkSize);
+        buf.limit(0);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buf == null) throw new IOException("Stream closed");
+    }
+
+    /**
+     * @return  Total length of the value
+     */
+    public long length() {
+        return c.length;
+    }
+
+    private void loadChunk() throws IOException {
+        int expect = (int) Math.min(c.chunkSize, c.length - (long) next * c.chunkSize);
+        String n = c.chunkName(c.generation, next);
+
+        buf.clear();
+        buf.limit(c.chunkSize);
+        int got;
+        try {
+            got = c.get(n, buf);
+        } catch (XAttrException e) {
+            if (e.getErrno() == XAttr4J.ENOATTR) throw c.changed(n + " absent");
+            if (e.getErrno() == XAttr4J.ERANGE) throw c.changed(n + " too large");
+            throw e;
+        }
+        if (got != expect) throw c.changed(String.format("%s has %d bytes  expect %d", n, got, expect));
+        buf.flip();
+        next++;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) throw new NullPointerException();
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        ensureOpen();
+        if (len == 0) return 0;
+        if (pos == c.length) return -1;
+
+        if (!buf.hasRemaining()) loadChunk();
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        crc.update(b, off, n);
+        pos += n;
+
+        if (pos == c.length && checked && (int) crc.getValue() != c.crc) throw c.changed("CRC mismatch");
+        return n;
+    }
+
+    /**
+     * Chunks skipped over entirely are not read at all
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        n = Math.min(n, c.length - pos);
+        if (n <= 0) return 0;
+
+        checked = false;
+        if (n <= buf.remaining()) {
+            buf.position(buf.position() + (int) n);
+        } else {
+            long target = pos + n;
+            next = (int) (target / c.chunkSize);
+            buf.limit(0);
+            if (target < c.length) {
+                loadChunk();
+                buf.position((int) (target % c.chunkSize));
+            }
+        }
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return buf.remaining();
+    }
+
+    @Override
+    public void close() {
+        if (buf == null) return;
+
+        ByteBuffer b = buf;
+        buf = null;
+        XAttrChunks.release(b);
+    }
+}
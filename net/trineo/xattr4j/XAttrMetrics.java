@@ -0,0 +1,512 @@
+/*
+ * Created 261018
+ *
+ * Opt-in instrumentation of extended attribute syscalls
+ */
+
+package net.trineo.xattr4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-operation call/error/miss counters  bytes transferred  latency histograms
+ *  and errno distribution of XAttr4J operations
+ *
+ * Disabled by default  enable via METRICS_PROPERTY(which also registers the MBean)
+ *  setEnabled() or the MBean  a disabled operation costs a single volatile read
+ * Counters are LongAdder  i.e. striped under contention
+ *
+ * Slow path counters(scratch misses  ERANGE replays) are always collected
+ */
+public final class XAttrMetrics {
+    /**
+     * Set to true to enable metrics at startup and register the MBean
+     *  e.g. -Dnet.trineo.xattr4j.metrics=true
+     */
+    public static final String METRICS_PROPERTY = "net.trineo.xattr4j.metrics";
+
+    /** ObjectName of the MBean */
+    public static final String OBJECT_NAME = "net.trineo.xattr4j:type=XAttrMetrics";
+
+    /*
+     * Operations  path- and fd-oriented ones counted separately
+     *  ByteBuffer and probe variants count as the syscall they issue
+     */
+    static final int GETXATTR = 0;
+    static final int FGETXATTR = 1;
+    static final int SETXATTR = 2;
+    static final int FSETXATTR = 3;
+    static final int REMOVEXATTR = 4;
+    static final int FREMOVEXATTR = 5;
+    static final int LISTXATTR = 6;
+    static final int FLISTXATTR = 7;
+    static final int SIZEXATTR = 8;
+    static final int FSIZEXATTR = 9;
+    static final int EXISTXATTR = 10;
+    static final int FEXISTXATTR = 11;
+    static final int GETXATTR_BATCH = 12;
+    static final int FGETXATTR_BATCH = 13;
+    static final int GETALLXATTRS = 14;
+    static final int FGETALLXATTRS = 15;
+
+    private static final String[] OPS = {
+            "getxattr", "fgetxattr", "setxattr", "fsetxattr",
+            "removexattr", "fremovexattr", "listxattr", "flistxattr",
+            "sizexattr", "fsizexattr", "existxattr", "fexistxattr",
+            "getxattr_batch", "fgetxattr_batch", "getallxattrs", "fgetallxattrs",
+    };
+
+    /** Number of latency histogram buckets  i-th bucket counts latencies in [2^(i-1), 2^i) ns */
+    public static final int BUCKETS = 32;
+
+    /* errnos beyond fall into the last slot */
+    private static final int ERRNO_MAX = 256;
+
+    static volatile boolean enabled = Boolean.getBoolean(METRICS_PROPERTY);
+
+    static {
+        if (enabled) registerMBean();
+    }
+
+    private XAttrMetrics() {}
+
+    /**
+     * Counters  allocated on first record(lazy holder)
+     */
+    private static final class Stats {
+        static final LongAdder[] ERRORS = adders(OPS.length);
+        static final LongAdder[] MISSES = adders(OPS.length);
+        static final LongAdder[] BYTES = adders(OPS.length);
+        static final LongAdder[] NANOS = adders(OPS.length);
+        /* Calls are the sum of histogram buckets  spares an adder per call */
+        static final LongAdder[] HISTOGRAMS = adders(OPS.length * BUCKETS);
+        static final LongAdder[] ERRNOS = adders(ERRNO_MAX);
+        /* Slow path counters of the FFM backend  native ones are kept by libxattr4j */
+        static final LongAdder SCRATCH_MISSES = new LongAdder();
+        static final LongAdder REPLAYS = new LongAdder();
+
+        private static LongAdder[] adders(int n) {
+            LongAdder[] a = new LongAdder[n];
+            for (int i = 0; i < n; i++) a[i] = new LongAdder();
+            return a;
+        }
+    }
+
+    /**
+     * @return  Start timestamp of an operation  0 if disabled
+     */
+    static long start() {
+        /* Never 0 when enabled */
+        return enabled ? System.nanoTime() | 1 : 0;
+    }
+
+    private static void time(int op, long t) {
+        long ns = System.nanoTime() - t;
+        if (ns < 0) ns = 0;
+        int b = 64 - Long.numberOfLeadingZeros(ns);
+        Stats.NANOS[op].add(ns);
+        Stats.HISTOGRAMS[op * BUCKETS + Math.min(b, BUCKETS - 1)].increment();
+    }
+
+    static void errno(int errno) {
+        Stats.ERRNOS[Math.min(Math.max(errno, 0), ERRNO_MAX - 1)].increment();
+    }
+
+    /**
+     * Record a succeeded operation
+     * @param t     Timestamp from start()  nothing recorded if 0
+     * @param bytes Bytes transferred
+     */
+    static void success(int op, long t, long bytes) {
+        if (t == 0) return;
+        time(op, t);
+        Stats.BYTES[op].add(bytes);
+    }
+
+    /**
+     * Record an operation that found no attribute without throwing  e.g. getxattrOrNull() yields null
+     */
+    static void miss(int op, long t) {
+        if (t == 0) return;
+        time(op, t);
+        Stats.MISSES[op].increment();
+        errno(XAttr4J.ENOATTR);
+    }
+
+    /**
+     * Record a failed operation
+     * @param errno     0 if unknown
+     */
+    static void failure(int op, long t, int errno) {
+        if (t == 0) return;
+        time(op, t);
+        Stats.ERRORS[op].increment();
+        if (errno != 0) errno(errno);
+    }
+
+    /**
+     * @see XAttrMetrics#failure(int, long, int)
+     */
+    static void failure(int op, long t, Exception e) {
+        failure(op, t, e instanceof XAttrException ? ((XAttrException) e).getErrno() : 0);
+    }
+
+    /**
+     * Record a batch as a single call  per-file errnos count in the errno distribution
+     */
+    static void batch(int op, long t, byte[][] values, int[] errnos) {
+        if (t == 0) return;
+        time(op, t);
+        long n = 0;
+        for (byte[] v : values) {
+            if (v != null) n += v.length;
+        }
+        Stats.BYTES[op].add(n);
+        for (int e : errnos) {
+            if (e != 0) errno(e);
+        }
+    }
+
+    /* FFM backend slow path  see: FfmBackend#readAll */
+    static void scratchMiss() {
+        Stats.SCRATCH_MISSES.increment();
+    }
+
+    static void replay() {
+        Stats.REPLAYS.increment();
+    }
+
+    /**
+     * @return  true if operations are being recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start or stop recording  counters are kept
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * @return  Names of recorded operations  e.g. "getxattr"  "flistxattr"
+     */
+    public static List<String> operations() {
+        return Collections.unmodifiableList(Arrays.asList(OPS));
+    }
+
+    /**
+     * @return  Point-in-time copy of all counters
+     *          concurrent operations may be partially reflected
+     */
+    public static Snapshot snapshot() {
+        return new Snapshot(false);
+    }
+
+    /**
+     * Zero all counters
+     * @return  Counters before reset
+     */
+    public static Snapshot reset() {
+        return new Snapshot(true);
+    }
+
+    /**
+     * Upper bound of a histogram bucket
+     * @return  2^i ns  Long.MAX_VALUE for the last bucket
+     */
+    public static long bucketBound(int i) {
+        if (i < 0 || i >= BUCKETS) throw new IndexOutOfBoundsException(String.valueOf(i));
+        return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+    }
+
+    /**
+     * Immutable copy of metrics
+     */
+    public static final class Snapshot {
+        private final long[] calls = new long[OPS.length];
+        private final long[] errors = new long[OPS.length];
+        private final long[] misses = new long[OPS.length];
+        private final long[] bytes = new long[OPS.length];
+        private final long[] nanos = new long[OPS.length];
+        private final long[] histograms = new long[OPS.length * BUCKETS];
+        private final Map<Integer, Long> errnos;
+        private final long scratchMisses;
+        private final long replays;
+
+        private static long get(LongAdder a, boolean reset) {
+            return reset ? a.sumThenReset() : a.sum();
+        }
+
+        private static void copy(LongAdder[] src, long[] dst, boolean reset) {
+            for (int i = 0; i < dst.length; i++) dst[i] = get(src[i], reset);
+        }
+
+        Snapshot(boolean reset) {
+            copy(Stats.ERRORS, errors, reset);
+            copy(Stats.MISSES, misses, reset);
+            copy(Stats.BYTES, bytes, reset);
+            copy(Stats.NANOS, nanos, reset);
+            copy(Stats.HISTOGRAMS, histograms, reset);
+            for (int i = 0; i < histograms.length; i++) calls[i / BUCKETS] += histograms[i];
+
+            Map<Integer, Long> m = new TreeMap<Integer, Long>();
+            for (int i = 0; i < ERRNO_MAX; i++) {
+                long n = get(Stats.ERRNOS[i], reset);
+                if (n != 0) m.put(i, n);
+            }
+            errnos = Collections.unmodifiableMap(m);
+
+            long[] st = XAttr4J.readStats(reset);
+            scratchMisses = get(Stats.SCRATCH_MISSES, reset) + st[0];
+            replays = get(Stats.REPLAYS, reset) + st[1];
+        }
+
+        private static int index(String op) {
+            for (int i = 0; i < OPS.length; i++) {
+                if (OPS[i].equals(op)) return i;
+            }
+            throw new IllegalArgumentException("Unknown operation: " + op);
+        }
+
+        /**
+         * @param op    Operation name  see XAttrMetrics#operations()
+         * @return      Number of completed calls(including failures and misses)
+         */
+        public long calls(String op) {
+            return calls[index(op)];
+        }
+
+        /**
+         * @return  Number of calls which threw
+         * @see Snapshot#calls(String)
+         */
+        public long errors(String op) {
+            return errors[index(op)];
+        }
+
+        /**
+         * @return  Number of calls which found no attribute without throwing
+         * @see Snapshot#calls(String)
+         */
+        public long misses(String op) {
+            return misses[index(op)];
+        }
+
+        /**
+         * @return  Value(or name list) bytes read or written
+         * @see Snapshot#calls(String)
+         */
+        public long bytes(String op) {
+            return bytes[index(op)];
+        }
+
+        /**
+         * @return  Accumulated latency in nanoseconds
+         * @see Snapshot#calls(String)
+         */
+        public long totalNanos(String op) {
+            return nanos[index(op)];
+        }
+
+        /**
+         * @return  Latency histogram  see XAttrMetrics#bucketBound(int)
+         * @see Snapshot#calls(String)
+         */
+        public long[] histogram(String op) {
+            int i = index(op) * BUCKETS;
+            return Arrays.copyOfRange(histograms, i, i + BUCKETS);
+        }
+
+        /**
+         * @param p     Percentile in (0, 100]
+         * @return      Upper bound of the bucket the percentile falls in(ns)  0 if no calls
+         * @see Snapshot#calls(String)
+         */
+        public long percentile(String op, double p) {
+            if (!(p > 0 && p <= 100)) throw new IllegalArgumentException("Bad percentile: " + p);
+            int op0 = index(op);
+            long total = calls[op0];
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(total * p / 100);
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                n += histograms[op0 * BUCKETS + i];
+                if (n >= rank) return bucketBound(i);
+            }
+            /* Unreachable  calls is the histogram sum */
+            return bucketBound(BUCKETS - 1);
+        }
+
+        /**
+         * @return  errno to number of failures(and misses as ENOATTR)
+         */
+        public Map<Integer, Long> errnos() {
+            return errnos;
+        }
+
+        /**
+         * @return  Number of optimistic scratch reads which yielded ERANGE  thus fell back to probe size first
+         */
+        public long scratchMisses() {
+            return scratchMisses;
+        }
+
+        /**
+         * @return  Number of reads which yielded ERANGE right after a size probe
+         *          i.e. value grew in between(TOCTTOU)
+         */
+        public long replays() {
+            return replays;
+        }
+
+        private Map<String, Long> byOp(long[] a) {
+            Map<String, Long> m = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < OPS.length; i++) m.put(OPS[i], a[i]);
+            return m;
+        }
+    }
+
+    /**
+     * MBean implementation  every getter takes a fresh snapshot
+     */
+    private static final class MXBean implements XAttrMetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return XAttrMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean on) {
+            XAttrMetrics.setEnabled(on);
+        }
+
+        @Override
+        public Map<String, Long> getCalls() {
+            Snapshot s = snapshot();
+            return s.byOp(s.calls);
+        }
+
+        @Override
+        public Map<String, Long> getErrors() {
+            Snapshot s = snapshot();
+            return s.byOp(s.errors);
+        }
+
+        @Override
+        public Map<String, Long> getMisses() {
+            Snapshot s = snapshot();
+            return s.byOp(s.misses);
+        }
+
+        @Override
+        public Map<String, Long> getBytes() {
+            Snapshot s = snapshot();
+            return s.byOp(s.bytes);
+        }
+
+        @Override
+        public Map<String, Long> getMeanLatencyNanos() {
+            Snapshot s = snapshot();
+            long[] mean = new long[OPS.length];
+            for (int i = 0; i < OPS.length; i++) {
+                if (s.calls[i] != 0) mean[i] = s.nanos[i] / s.calls[i];
+            }
+            return s.byOp(mean);
+        }
+
+        private static Map<String, Long> percentile(double p) {
+            Snapshot s = snapshot();
+            Map<String, Long> m = new LinkedHashMap<String, Long>();
+            for (String op : OPS) m.put(op, s.percentile(op, p));
+            return m;
+        }
+
+        @Override
+        public Map<String, Long> getP50LatencyNanos() {
+            return percentile(50);
+        }
+
+        @Override
+        public Map<String, Long> getP99LatencyNanos() {
+            return percentile(99);
+        }
+
+        @Override
+        public Map<String, long[]> getLatencyHistograms() {
+            Snapshot s = snapshot();
+            Map<String, long[]> m = new LinkedHashMap<String, long[]>();
+            for (String op : OPS) m.put(op, s.histogram(op));
+            return m;
+        }
+
+        @Override
+        public Map<Integer, Long> getErrnos() {
+            return snapshot().errnos();
+        }
+
+        @Override
+        public long getScratchMisses() {
+            return snapshot().scratchMisses();
+        }
+
+        @Override
+        public long getReplays() {
+            return snapshot().replays();
+        }
+
+        @Override
+        public void reset() {
+            XAttrMetrics.reset();
+        }
+    }
+
+    private static ObjectName objectName() throws JMException {
+        return new ObjectName(OBJECT_NAME);
+    }
+
+    /**
+     * Register the MBean to the platform MBean server  no-op if already registered
+     * @throws IllegalStateException    If registration failed
+     */
+    public static void registerMBean() {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            mbs.registerMBean(new MXBean(), objectName());
+        } catch (InstanceAlreadyExistsException ignored) {
+            /* Registered before */
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Unregister the MBean  no-op if not registered
+     */
+    public static void unregisterMBean() {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        try {
+            mbs.unregisterMBean(objectName());
+        } catch (InstanceNotFoundException ignored) {
+            /* Not registered */
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister " + OBJECT_NAME, e);
+        }
+    }
+}
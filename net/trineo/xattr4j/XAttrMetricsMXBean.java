@@ -0,0 +1,46 @@
+/*
+ * Created 261018
+ *
+ * JMX view of XAttrMetrics
+ */
+
+package net.trineo.xattr4j;
+
+import java.util.Map;
+
+/**
+ * Registered as XAttrMetrics#OBJECT_NAME  maps are keyed by operation name
+ * @see XAttrMetrics
+ */
+public interface XAttrMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean on);
+
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getErrors();
+
+    Map<String, Long> getMisses();
+
+    Map<String, Long> getBytes();
+
+    Map<String, Long> getMeanLatencyNanos();
+
+    /** Bucket upper bounds  see XAttrMetrics#bucketBound(int) */
+    Map<String, Long> getP50LatencyNanos();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    Map<String, long[]> getLatencyHistograms();
+
+    /** errno to number of failures(and misses as ENOATTR) */
+    Map<Integer, Long> getErrnos();
+
+    long getScratchMisses();
+
+    long getReplays();
+
+    /** Zero all counters */
+    void reset();
+}
@@ -0,0 +1,142 @@
+/*
+ * Created 261018
+ *
+ * Interned, pre-encoded extended attribute name
+ */
+
+package net.trineo.xattr4j;
+
+import java.util.Arrays;
+
+/**
+ * An extended attribute name whose NUL-terminated UTF-8 representation is computed once
+ *
+ * Instances are interned(up to INTERN_MAX distinct names)  same name yields same instance
+ *  XAttr4J operations accepting XAttrName pass the bytes down to JNI as is
+ *  and listxattrNames() returns interned instances instead of fresh Strings
+ *
+ * @see XAttr4J#listxattrNames(String, int)
+ */
+public final class XAttrName {
+    /* Names beyond this are still usable  just not interned */
+    static final int INTERN_MAX = 4096;
+
+    /*
+     * Open addressing(linear probing) table  load factor never exceeds 0.5
+     * Slots are written once under lock  lookups are lock-free
+     *  a racy null read only falls back to the locked path
+     *  final fields guarantee a non-null slot is seen fully constructed
+     */
+    private static final XAttrName[] table = new XAttrName[INTERN_MAX << 1];
+    private static final int MASK = table.length - 1;
+    private static int interned;    /* Guarded by table */
+
+    private final String name;
+    private final byte[] bytes;
+    private final int hash;
+
+    private XAttrName(String name, byte[] bytes) {
+        this.name = name;
+        this.bytes = bytes;
+        this.hash = name.hashCode();
+    }
+
+    /**
+     * @param name  Extended attribute name
+     * @return      Interned XAttrName of given name
+     */
+    public static XAttrName of(String name) {
+        if (name == null) throw new NullPointerException();
+        byte[] b = XAttr4J.stringToUTF8Bytes(name);
+        XAttrName x = lookup(b, 0, b.length, hashBytes(b, 0, b.length));
+        return x != null ? x : intern(name, b, 0, b.length);
+    }
+
+    /**
+     * Intern a name given by a UTF-8 byte range  no allocation if already interned
+     * @param buf   UTF-8 bytes(without NUL)
+     * @param off   Offset of the name in buf
+     * @param len   Length of the name
+     */
+    static XAttrName of(byte[] buf, int off, int len) {
+        XAttrName x = lookup(buf, off, len, hashBytes(buf, off, len));
+        if (x != null) return x;
+        return intern(XAttr4J.utf8BytesToString(buf, off, len), buf, off, len);
+    }
+
+    private static XAttrName intern(String name, byte[] buf, int off, int len) {
+        byte[] b = Arrays.copyOfRange(buf, off, off + len + 1);
+        b[len] = 0;
+        XAttrName x = new XAttrName(name, b);
+        int h = hashBytes(buf, off, len);
+
+        synchronized (table) {
+            int i = h & MASK;
+            XAttrName e;
+            while ((e = table[i]) != null) {
+                if (e.matches(buf, off, len)) return e;
+                i = (i + 1) & MASK;
+            }
+            if (interned < INTERN_MAX) {
+                table[i] = x;
+                interned++;
+            }
+        }
+
+        return x;
+    }
+
+    private static XAttrName lookup(byte[] buf, int off, int len, int h) {
+        int i = h & MASK;
+        XAttrName e;
+        while ((e = table[i]) != null) {
+            if (e.matches(buf, off, len)) return e;
+            i = (i + 1) & MASK;
+        }
+        return null;
+    }
+
+    private static int hashBytes(byte[] buf, int off, int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) h = 31 * h + buf[i];
+        return h ^ (h >>> 16);
+    }
+
+    private boolean matches(byte[] buf, int off, int len) {
+        /* bytes is NUL-terminated */
+        if (bytes.length != len + 1) return false;
+        for (int i = 0; i < len; i++) {
+            if (bytes[i] != buf[off + i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return  The extended attribute name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return  NUL-terminated UTF-8 bytes(shared  must not be modified)
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof XAttrName && name.equals(((XAttrName) o).name));
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Created 261018
+ *
+ * Lazy view over a raw listxattr(2) name buffer
+ */
+
+package net.trineo.xattr4j;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Extended attribute names backed by the NUL-separated buffer listxattr(2) returned
+ *
+ * Nothing is decoded upfront  names become Java objects only when iterated
+ * Decoding is standard UTF-8(supplementary characters included) with an ASCII fast path
+ *
+ * @see XAttr4J#listxattr(String, String, int)
+ */
+public final class XAttrNameList implements Iterable<String> {
+    private final byte[] buf;
+    private int count = -1;
+
+    XAttrNameList(byte[] buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * @return  Number of names
+     */
+    public int size() {
+        int n = count;
+        if (n < 0) {
+            n = 0;
+            for (byte b : buf) if (b == 0) n++;
+            count = n;
+        }
+        return n;
+    }
+
+    /**
+     * @return  true if there is no name
+     */
+    public boolean isEmpty() {
+        return buf.length == 0;
+    }
+
+    /**
+     * @return  Read-only view of the raw buffer  names are UTF-8 encoded and NUL-terminated
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return  Iterator decoding each name lazily into a String
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Cursor<String>() {
+            @Override
+            String get(int off, int len) {
+                return XAttr4J.utf8BytesToString(buf, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return  Iterator yielding interned XAttrName instances
+     *          already interned names cost no allocation
+     */
+    public Iterator<XAttrName> xattrNames() {
+        return new Cursor<XAttrName>() {
+            @Override
+            XAttrName get(int off, int len) {
+                return XAttrName.of(buf, off, len);
+            }
+        };
+    }
+
+    /**
+     * @return  All names decoded
+     */
+    public String[] toArray() {
+        String[] names = new String[size()];
+        int i = 0;
+        for (String name : this) names[i++] = name;
+        return names;
+    }
+
+    /**
+     * @return  All names as interned XAttrName instances
+     */
+    public XAttrName[] toXAttrNames() {
+        XAttrName[] names = new XAttrName[size()];
+        int i = 0;
+        for (Iterator<XAttrName> it = xattrNames(); it.hasNext(); ) names[i++] = it.next();
+        return names;
+    }
+
+    private abstract class Cursor<T> implements Iterator<T> {
+        private int off;
+
+        abstract T get(int off, int len);
+
+        @Override
+        public boolean hasNext() {
+            return off < buf.length;
+        }
+
+        @Override
+        public T next() {
+            if (off >= buf.length) throw new NoSuchElementException();
+            int end = off;
+            while (buf[end] != 0) end++;
+            T t = get(off, end - off);
+            off = end + 1;
+            return t;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Created 261018
+ *
+ * Write a large value as numbered chunk attributes
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Stream a value of any length into extended attributes  split into chunks the file system accepts
+ *
+ * Chunks are written through one reusable direct buffer as it fills  so writing a 1 MiB value
+ *  never holds more than a chunk in memory and setxattr(2) reads the buffer without copy
+ * The chunk size starts from xattrsizebits(capped to 64 KiB) and is halved while the first chunk
+ *  is rejected with E2BIG/ENOSPC/ERANGE(e.g. ext4 without ea_inode only takes ~4 KiB values)
+ *
+ * The value becomes visible only on close()  which publishes the header written last
+ *  the previous value stays readable until then  abort() discards what was written
+ * Concurrent writers of the same name must be coordinated externally
+ *
+ * @see XAttrInputStream
+ */
+public final class XAttrOutputStream extends OutputStream {
+    private final XAttrChunks c;
+    private final boolean hadOld;
+    private final int oldGeneration;
+    private final int oldCount;
+    private final int generation;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buf;
+    private int chunkSize;
+    private long length;
+    private int count;
+
+    /**
+     * @param path          File path
+     * @param name          Name of the value  chunks are named name#g.i
+     * @param options       getxattr(2)/setxattr(2) options  XATTR_CREATE/XATTR_REPLACE are ignored
+     * @param chunkSize     Chunk size in bytes  0 to size from the file system
+     * @throws IOException  If name already holds a value which is not chunked
+     */
+    public XAttrOutputStream(XAttrPath path, XAttrName name, int options, int chunkSize) throws IOException {
+        this(checkPath(path), -1, name, options, chunkSize);
+    }
+
+    /**
+     * @see XAttrOutputStream#XAttrOutputStream(XAttrPath, XAttrName, int, int)
+     */
+    public XAttrOutputStream(XAttrPath path, XAttrName name, int options) throws IOException {
+        this(path, name, options, 0);
+    }
+
+    /**
+     * fd-oriented  fd must stay open until the stream is closed
+     * @see XAttrOutputStream#XAttrOutputStream(XAttrPath, XAttrName, int, int)
+     */
+    public XAttrOutputStream(int fd, XAttrName name, int options, int chunkSize) throws IOException {
+        this(null, fd, name, options, chunkSize);
+    }
+
+    /**
+     * @see XAttrOutputStream#XAttrOutputStream(int, XAttrName, int, int)
+     */
+    public XAttrOutputStream(int fd, XAttrName name, int options) throws IOException {
+        this(fd, name, options, 0);
+    }
+
+    private static XAttrPath checkPath(XAttrPath path) {
+        if (path == null) throw new NullPointerException();
+        return path;
+    }
+
+    private XAttrOutputStream(XAttrPath path, int fd, XAttrName name, int options, int chunkSize) throws IOException {
+        if (chunkSize < 0) throw new IllegalArgumentException("Negative chunk size " + chunkSize);
+        c = new XAttrChunks(path, fd, name, options);
+
+        hadOld = c.readHeader(false);
+        oldGeneration = c.generation;
+        oldCount = c.count;
+        generation = hadOld ? oldGeneration ^ 1 : 0;
+
+        this.chunkSize = chunkSize != 0 ?
+                Math.max(XAttrChunks.MIN_CHUNK, Math.min(XAttrChunks.MAX_CHUNK, chunkSize)) :
+                c.initialChunkSize();
+        buf = XAttrChunks.borrow(this.chunkSize);
+        buf.limit(this.chunkSize);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buf == null) throw new IOException("Stream closed");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buf.hasRemaining()) flushChunks(false);
+        buf.put((byte) b);
+        crc.update(b);
+        length++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (b == null) throw new NullPointerException();
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        ensureOpen();
+
+        crc.update(b, off, len);
+        length += len;
+        while (len > 0) {
+            if (!buf.hasRemaining()) flushChunks(false);
+            int n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write buffered bytes as chunks  a trailing partial chunk is kept unless last
+     */
+    private void flushChunks(boolean last) throws IOException {
+        buf.flip();
+        try {
+            while (buf.remaining() >= chunkSize || (last && buf.hasRemaining())) {
+                int pos = buf.position();
+                int end = buf.limit();
+                buf.limit(pos + Math.min(buf.remaining(), chunkSize));
+                try {
+                    c.set(c.chunkName(generation, count), buf);
+                } catch (XAttrException e) {
+                    /* Only the first chunk may shrink  the rest must match */
+                    if (count != 0 || !XAttrChunks.tooLarge(e.getErrno()) || chunkSize >> 1 < XAttrChunks.MIN_CHUNK) {
+                        throw e;
+                    }
+                    chunkSize >>= 1;
+                    buf.position(pos);
+                    continue;
+                } finally {
+                    buf.limit(end);
+                }
+                count++;
+            }
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+        buf.compact();
+        buf.limit(chunkSize);
+    }
+
+    /**
+     * Write the remaining bytes and publish the value  then remove chunks of the previous value
+     */
+    @Override
+    public void close() throws IOException {
+        if (buf == null) return;
+
+        if (buf.position() > 0) flushChunks(true);
+        c.generation = generation;
+        c.chunkSize = chunkSize;
+        c.length = length;
+        c.count = count;
+        c.crc = (int) crc.getValue();
+        try {
+            c.writeHeader();
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+
+        ByteBuffer b = buf;
+        buf = null;
+        XAttrChunks.release(b);
+
+        if (hadOld) c.removeChunks(oldGeneration, 0, oldCount);
+        /* Leftovers of an abandoned write */
+        c.removeChunks(generation, count, -1);
+    }
+
+    /**
+     * Discard the chunks written so far  the previous value(if any) stays intact
+     * close() afterwards does nothing
+     */
+    public void abort() throws IOException {
+        if (buf == null) return;
+
+        ByteBuffer b = buf;
+        buf = null;
+        XAttrChunks.release(b);
+        c.removeChunks(generation, 0, count);
+    }
+
+    /**
+     * @return  Number of bytes written so far
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return  Chunk size in use  may shrink until the first chunk is written
+     */
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Remove a chunked value  the header first  then its chunks
+     * @return  false if absent
+     * @throws IOException  If removexattr(2) failed or name holds a value which is not chunked
+     */
+    public static boolean removexattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        return remove(new XAttrChunks(checkPath(path), -1, name, options));
+    }
+
+    /**
+     * @see XAttrOutputStream#removexattr(XAttrPath, XAttrName, int)
+     */
+    public static boolean fremovexattr(int fd, XAttrName name, int options) throws IOException {
+        return remove(new XAttrChunks(null, fd, name, options));
+    }
+
+    private static boolean remove(XAttrChunks c) throws IOException {
+        if (!c.readHeader(false)) return false;
+        c.remove(c.name.getName());
+        c.removeChunks(c.generation, 0, c.count);
+        c.removeChunks(c.generation ^ 1, 0, -1);
+        return true;
+    }
+}
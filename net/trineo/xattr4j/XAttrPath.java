@@ -0,0 +1,77 @@
+/*
+ * Created 261018
+ *
+ * Pre-encoded file path
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * A file path whose NUL-terminated UTF-8 representation is computed once
+ *
+ * Hot loops which hit the same paths repeatedly should keep instances around
+ *  XAttr4J operations accepting XAttrPath pass the bytes down to JNI as is
+ *  so neither Java allocation nor native malloc(3) is needed for the path
+ */
+public final class XAttrPath {
+    private final String path;
+    private final byte[] bytes;
+
+    private static void checkNotNull(Object ref) {
+        if (ref == null) throw new NullPointerException();
+    }
+
+    /**
+     * @param path  File path
+     */
+    public XAttrPath(String path) {
+        checkNotNull(path);
+        byte[] b = XAttr4J.stringToUTF8Bytes(path);
+        this.path = path;
+        this.bytes = Arrays.copyOf(b, b.length + 1);
+    }
+
+    /**
+     * @param file  File  its absolute path will be used
+     */
+    public XAttrPath(File file) {
+        this(checkFile(file).getAbsolutePath());
+    }
+
+    private static File checkFile(File file) {
+        checkNotNull(file);
+        return file;
+    }
+
+    /**
+     * @return  The original file path
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return  NUL-terminated UTF-8 bytes(shared  must not be modified)
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof XAttrPath && path.equals(((XAttrPath) o).path));
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,603 @@
+/*
+ * Created 261018
+ *
+ * Many typed fields packed into one extended attribute
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Immutable record of named typed fields  encoded into a single attribute value
+ *  so that a file's metadata is read by one getxattr(2) and written by one setxattr(2)
+ *  rather than one round trip per field
+ *
+ * Layout(version 1  big-endian):
+ *  u8 MAGIC  u8 version  u16 field count
+ *  index  one entry per field sorted by key(unsigned UTF-8 bytes):
+ *      u8 key length  key(UTF-8)  u8 type  u16 value offset(from data start)  u16 value length
+ *  data  values back to back
+ *
+ * Field lookups scan the index in place  no field is decoded unless asked for
+ * Fields of unknown types(written by a newer version) are preserved by edit()
+ */
+public final class XAttrRecord {
+    public static final int VERSION = 1;
+
+    /** Encoded size limit  i.e. XATTR_SIZE_MAX of Linux */
+    public static final int MAX_SIZE = 65536;
+
+    /** Maximum key length in UTF-8 bytes */
+    public static final int MAX_KEY = 255;
+
+    /** Raw bytes */
+    public static final int TYPE_BYTES = 0;
+    /** UTF-8 string */
+    public static final int TYPE_STRING = 1;
+    /** Zigzag varint */
+    public static final int TYPE_LONG = 2;
+    /** One byte  0 or 1 */
+    public static final int TYPE_BOOLEAN = 3;
+    /** IEEE 754 bits  8 bytes */
+    public static final int TYPE_DOUBLE = 4;
+
+    private static final int MAGIC = 0xA7;
+    private static final int HEADER = 4;
+    /* Index entry size besides key bytes  i.e. key length  type  offset  length */
+    private static final int ENTRY = 6;
+
+    private static final int RETRIES = 8;
+
+    private final byte[] b;
+    private final int count;
+    private final int data;     /* Offset of data area */
+
+    private XAttrRecord(byte[] b, int count, int data) {
+        this.b = b;
+        this.count = count;
+        this.data = data;
+    }
+
+    private static int u8(byte[] b, int i) {
+        return b[i] & 0xff;
+    }
+
+    private static int u16(byte[] b, int i) {
+        return (b[i] & 0xff) << 8 | (b[i + 1] & 0xff);
+    }
+
+    private static void putU16(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 8);
+        b[i + 1] = (byte) v;
+    }
+
+    /**
+     * Compare unsigned byte ranges
+     */
+    private static int compare(byte[] a, int aoff, int alen, byte[] c, int coff, int clen) {
+        int n = Math.min(alen, clen);
+        for (int i = 0; i < n; i++) {
+            int d = (a[aoff + i] & 0xff) - (c[coff + i] & 0xff);
+            if (d != 0) return d;
+        }
+        return alen - clen;
+    }
+
+    private static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] c) {
+            return XAttrRecord.compare(a, 0, a.length, c, 0, c.length);
+        }
+    };
+
+    /** Record without fields */
+    public static final XAttrRecord EMPTY = new Builder().build();
+
+    private static IllegalArgumentException malformed(String why) {
+        return new IllegalArgumentException("Malformed record: " + why);
+    }
+
+    /**
+     * @return  true if a value length is valid for its type  unknown types always are
+     */
+    private static boolean lengthFits(int type, int len) {
+        switch (type) {
+            case TYPE_LONG:
+                return len <= 10;
+            case TYPE_BOOLEAN:
+                return len == 1;
+            case TYPE_DOUBLE:
+                return len == 8;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Validate an encoded record  only the index is walked
+     *
+     * @param packed    Encoded record  must not be modified afterwards
+     * @throws IllegalArgumentException If not a record of a supported version
+     */
+    public static XAttrRecord decode(byte[] packed) {
+        if (packed == null) throw new NullPointerException();
+        if (packed.length < HEADER || u8(packed, 0) != MAGIC) throw malformed("bad magic");
+        if (u8(packed, 1) > VERSION) throw new IllegalArgumentException("Unsupported record version " + u8(packed, 1));
+
+        int count = u16(packed, 2);
+        int i = HEADER;
+        int prev = -1;
+        int prevLen = 0;
+        for (int k = 0; k < count; k++) {
+            if (i >= packed.length) throw malformed("truncated index");
+            int klen = u8(packed, i);
+            if (i + klen + ENTRY > packed.length) throw malformed("truncated index");
+            if (prev >= 0 && compare(packed, prev, prevLen, packed, i + 1, klen) >= 0) throw malformed("unsorted index");
+            prev = i + 1;
+            prevLen = klen;
+            i += klen + ENTRY;
+        }
+
+        int data = i;
+        for (int k = 0, e = HEADER; k < count; k++) {
+            int klen = u8(packed, e);
+            int len = u16(packed, e + 4 + klen);
+            if (data + u16(packed, e + 2 + klen) + len > packed.length) throw malformed("value out of bounds");
+            if (!lengthFits(u8(packed, e + 1 + klen), len)) throw malformed("bad value length");
+            e += klen + ENTRY;
+        }
+
+        return new XAttrRecord(packed, count, data);
+    }
+
+    /**
+     * @return  Encoded record  a copy
+     */
+    public byte[] encode() {
+        return b.clone();
+    }
+
+    /**
+     * @return  Encoded size in bytes
+     */
+    public int encodedSize() {
+        return b.length;
+    }
+
+    /**
+     * @return  Number of fields
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return  Offset of the index entry of key  -1 if absent
+     */
+    private int find(byte[] key) {
+        int e = HEADER;
+        for (int k = 0; k < count; k++) {
+            int klen = u8(b, e);
+            int d = compare(b, e + 1, klen, key, 0, key.length);
+            if (d == 0) return e;
+            if (d > 0) break;
+            e += klen + ENTRY;
+        }
+        return -1;
+    }
+
+    private int find(String key) {
+        return find(XAttr4J.stringToUTF8Bytes(key));
+    }
+
+    /* Accessors of an index entry */
+    private int typeAt(int e) {
+        return u8(b, e + 1 + u8(b, e));
+    }
+
+    private int offAt(int e) {
+        return data + u16(b, e + 2 + u8(b, e));
+    }
+
+    private int lenAt(int e) {
+        return u16(b, e + 4 + u8(b, e));
+    }
+
+    /**
+     * @return  true if key present
+     */
+    public boolean contains(String key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return  Type of a field(one of TYPE_*  or an unknown one)  -1 if absent
+     */
+    public int type(String key) {
+        int e = find(key);
+        return e >= 0 ? typeAt(e) : -1;
+    }
+
+    /**
+     * @return  Keys in index order
+     */
+    public List<String> keys() {
+        List<String> keys = new ArrayList<String>(count);
+        for (int k = 0, e = HEADER; k < count; k++) {
+            int klen = u8(b, e);
+            keys.add(XAttr4J.utf8BytesToString(b, e + 1, klen));
+            e += klen + ENTRY;
+        }
+        return keys;
+    }
+
+    private int expect(String key, int type) {
+        int e = find(key);
+        if (e >= 0 && typeAt(e) != type) {
+            throw new IllegalArgumentException(String.format("Field %s has type %d  not %d", key, typeAt(e), type));
+        }
+        return e;
+    }
+
+    private byte[] bytesAt(int e) {
+        int off = offAt(e);
+        return Arrays.copyOfRange(b, off, off + lenAt(e));
+    }
+
+    private String stringAt(int e) {
+        return XAttr4J.utf8BytesToString(b, offAt(e), lenAt(e));
+    }
+
+    private long longAt(int e) {
+        int off = offAt(e);
+        int end = off + lenAt(e);
+        long v = 0;
+        int shift = 0;
+        for (int i = off; i < end; i++, shift += 7) {
+            v |= (long) (b[i] & 0x7f) << shift;
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private boolean booleanAt(int e) {
+        return b[offAt(e)] != 0;
+    }
+
+    private double doubleAt(int e) {
+        int off = offAt(e);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) bits = bits << 8 | (b[off + i] & 0xff);
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @return  Encoded value of a field of any type  null if absent
+     */
+    public byte[] getBytes(String key) {
+        int e = find(key);
+        return e >= 0 ? bytesAt(e) : null;
+    }
+
+    /**
+     * @return  Value of a string field  null if absent
+     * @throws IllegalArgumentException If the field is not a string
+     */
+    public String getString(String key) {
+        int e = expect(key, TYPE_STRING);
+        return e >= 0 ? stringAt(e) : null;
+    }
+
+    /**
+     * @return  Value of a long field  def if absent
+     * @throws IllegalArgumentException If the field is not a long
+     */
+    public long getLong(String key, long def) {
+        int e = expect(key, TYPE_LONG);
+        return e >= 0 ? longAt(e) : def;
+    }
+
+    /**
+     * @return  Value of a boolean field  def if absent
+     * @throws IllegalArgumentException If the field is not a boolean
+     */
+    public boolean getBoolean(String key, boolean def) {
+        int e = expect(key, TYPE_BOOLEAN);
+        return e >= 0 ? booleanAt(e) : def;
+    }
+
+    /**
+     * @return  Value of a double field  def if absent
+     * @throws IllegalArgumentException If the field is not a double
+     */
+    public double getDouble(String key, double def) {
+        int e = expect(key, TYPE_DOUBLE);
+        return e >= 0 ? doubleAt(e) : def;
+    }
+
+    /**
+     * Decode all fields
+     * @return  Key to value(byte[]  String  Long  Boolean  Double) map in index order
+     *          fields of unknown types map to byte[]
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        for (int k = 0, e = HEADER; k < count; k++) {
+            int klen = u8(b, e);
+            Object v;
+            switch (typeAt(e)) {
+                case TYPE_STRING:
+                    v = stringAt(e);
+                    break;
+                case TYPE_LONG:
+                    v = longAt(e);
+                    break;
+                case TYPE_BOOLEAN:
+                    v = booleanAt(e);
+                    break;
+                case TYPE_DOUBLE:
+                    v = doubleAt(e);
+                    break;
+                default:
+                    v = bytesAt(e);
+                    break;
+            }
+            m.put(XAttr4J.utf8BytesToString(b, e + 1, klen), v);
+            e += klen + ENTRY;
+        }
+        return m;
+    }
+
+    /**
+     * @return  Builder initialized with fields of this record
+     */
+    public Builder edit() {
+        Builder bd = new Builder();
+        for (int k = 0, e = HEADER; k < count; k++) {
+            int klen = u8(b, e);
+            bd.put0(Arrays.copyOfRange(b, e + 1, e + 1 + klen), typeAt(e), bytesAt(e));
+            e += klen + ENTRY;
+        }
+        return bd;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof XAttrRecord && Arrays.equals(b, ((XAttrRecord) o).b);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(b);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    /**
+     * Mutable set of fields  not thread-safe
+     */
+    public static final class Builder {
+        private static final class Field {
+            final int type;
+            final byte[] value;
+
+            Field(int type, byte[] value) {
+                this.type = type;
+                this.value = value;
+            }
+        }
+
+        private final TreeMap<byte[], Field> fields = new TreeMap<byte[], Field>(KEY_ORDER);
+
+        public Builder() {}
+
+        private static byte[] key(String key) {
+            byte[] k = XAttr4J.stringToUTF8Bytes(key);
+            if (k.length > MAX_KEY) throw new IllegalArgumentException("Key too long: " + key);
+            return k;
+        }
+
+        private Builder put0(byte[] key, int type, byte[] value) {
+            fields.put(key, new Field(type, value));
+            return this;
+        }
+
+        public Builder put(String key, byte[] value) {
+            if (value == null) throw new NullPointerException();
+            return put0(key(key), TYPE_BYTES, value.clone());
+        }
+
+        public Builder put(String key, String value) {
+            return put0(key(key), TYPE_STRING, XAttr4J.stringToUTF8Bytes(value));
+        }
+
+        public Builder put(String key, long value) {
+            long z = (value << 1) ^ (value >> 63);
+            byte[] v = new byte[(64 - Long.numberOfLeadingZeros(z) + 6) / 7];
+            for (int i = 0; i < v.length; i++, z >>>= 7) {
+                v[i] = (byte) ((z & 0x7f) | (i != v.length - 1 ? 0x80 : 0));
+            }
+            return put0(key(key), TYPE_LONG, v);
+        }
+
+        public Builder put(String key, boolean value) {
+            return put0(key(key), TYPE_BOOLEAN, new byte[]{(byte) (value ? 1 : 0)});
+        }
+
+        public Builder put(String key, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            byte[] v = new byte[8];
+            for (int i = 7; i >= 0; i--, bits >>>= 8) v[i] = (byte) bits;
+            return put0(key(key), TYPE_DOUBLE, v);
+        }
+
+        public Builder remove(String key) {
+            fields.remove(XAttr4J.stringToUTF8Bytes(key));
+            return this;
+        }
+
+        /**
+         * @return  true if key present
+         */
+        public boolean contains(String key) {
+            return fields.containsKey(XAttr4J.stringToUTF8Bytes(key));
+        }
+
+        /**
+         * @throws IllegalStateException    If encoded record exceeds MAX_SIZE
+         */
+        public XAttrRecord build() {
+            int count = fields.size();
+            int index = 0;
+            int values = 0;
+            for (Map.Entry<byte[], Field> en : fields.entrySet()) {
+                index += en.getKey().length + ENTRY;
+                values += en.getValue().value.length;
+            }
+            long size = (long) HEADER + index + values;
+            if (count > 0xffff || size > MAX_SIZE) throw new IllegalStateException("Record too large: " + size + " bytes");
+
+            byte[] b = new byte[(int) size];
+            b[0] = (byte) MAGIC;
+            b[1] = (byte) VERSION;
+            putU16(b, 2, count);
+
+            int e = HEADER;
+            int data = HEADER + index;
+            int off = 0;
+            for (Map.Entry<byte[], Field> en : fields.entrySet()) {
+                byte[] k = en.getKey();
+                Field f = en.getValue();
+                b[e] = (byte) k.length;
+                System.arraycopy(k, 0, b, e + 1, k.length);
+                b[e + 1 + k.length] = (byte) f.type;
+                putU16(b, e + 2 + k.length, off);
+                putU16(b, e + 4 + k.length, f.value.length);
+                e += k.length + ENTRY;
+                System.arraycopy(f.value, 0, b, data + off, f.value.length);
+                off += f.value.length;
+            }
+
+            return new XAttrRecord(b, count, data);
+        }
+    }
+
+    private static XAttrRecord decode(byte[] packed, XAttrPath path, int fd, XAttrName name) throws IOException {
+        try {
+            return decode(packed);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("%s of %s is not a record", name, path != null ? path : "fd " + fd), e);
+        }
+    }
+
+    /**
+     * Read a record via a single getxattr(2)
+     * @throws IOException  If getxattr(2) failed or value is not a record
+     * @see XAttr4J#getxattr(XAttrPath, XAttrName, int)
+     */
+    public static XAttrRecord getxattr(XAttrPath path, XAttrName name, int options) throws IOException {
+        return decode(XAttr4J.getxattr(path, name, options), path, -1, name);
+    }
+
+    /**
+     * @return  null if attribute or file absent
+     * @see XAttrRecord#getxattr(XAttrPath, XAttrName, int)
+     */
+    public static XAttrRecord getxattrOrNull(XAttrPath path, XAttrName name, int options) throws IOException {
+        byte[] v = XAttr4J.getxattrOrNull(path, name, options);
+        return v != null ? decode(v, path, -1, name) : null;
+    }
+
+    /**
+     * @see XAttrRecord#getxattr(XAttrPath, XAttrName, int)
+     */
+    public static XAttrRecord fgetxattr(int fd, XAttrName name, int options) throws IOException {
+        return decode(XAttr4J.fgetxattr(fd, name, options), null, fd, name);
+    }
+
+    /**
+     * @see XAttrRecord#getxattrOrNull(XAttrPath, XAttrName, int)
+     */
+    public static XAttrRecord fgetxattrOrNull(int fd, XAttrName name, int options) throws IOException {
+        byte[] v = XAttr4J.fgetxattrOrNull(fd, name, options);
+        return v != null ? decode(v, null, fd, name) : null;
+    }
+
+    /**
+     * Write a record via a single setxattr(2)
+     * @see XAttr4J#setxattr(XAttrPath, XAttrName, byte[], int)
+     */
+    public static void setxattr(XAttrPath path, XAttrName name, XAttrRecord record, int options) throws IOException {
+        XAttr4J.setxattr(path, name, record.b, options);
+    }
+
+    /**
+     * @see XAttrRecord#setxattr(XAttrPath, XAttrName, XAttrRecord, int)
+     */
+    public static void fsetxattr(int fd, XAttrName name, XAttrRecord record, int options) throws IOException {
+        XAttr4J.fsetxattr(fd, name, record.b, options);
+    }
+
+    /**
+     * Read-modify-write a record  creating it if absent
+     *
+     * The write is XATTR_CREATE if the record was absent and XATTR_REPLACE otherwise
+     *  so a concurrent creation or removal is detected and the update retried(fn may run more than once)
+     * Concurrent updates of an existing record are last-writer-wins  coordinate them externally
+     * Nothing is written if fn changes nothing
+     *
+     * @param options   getxattr(2)/setxattr(2) options  XATTR_CREATE/XATTR_REPLACE are ignored
+     * @param fn        Edits the fields
+     * @return          Record written
+     */
+    public static XAttrRecord update(XAttrPath path, XAttrName name, int options, Consumer<Builder> fn) throws IOException {
+        if (path == null) throw new NullPointerException();
+        return update(path, -1, name, options, fn);
+    }
+
+    /**
+     * @see XAttrRecord#update(XAttrPath, XAttrName, int, Consumer)
+     */
+    public static XAttrRecord fupdate(int fd, XAttrName name, int options, Consumer<Builder> fn) throws IOException {
+        return update(null, fd, name, options, fn);
+    }
+
+    private static XAttrRecord update(XAttrPath path, int fd, XAttrName name, int options, Consumer<Builder> fn) throws IOException {
+        if (fn == null) throw new NullPointerException();
+        options &= ~(XAttr4J.XATTR_CREATE | XAttr4J.XATTR_REPLACE);
+
+        for (int i = 0; ; i++) {
+            byte[] old = path != null ?
+                    XAttr4J.getxattrOrNull(path, name, options) :
+                    XAttr4J.fgetxattrOrNull(fd, name, options);
+            Builder bd = old != null ? decode(old, path, fd, name).edit() : new Builder();
+            fn.accept(bd);
+            XAttrRecord r = bd.build();
+            if (old != null && Arrays.equals(old, r.b)) return r;
+
+            int opt = options | (old != null ? XAttr4J.XATTR_REPLACE : XAttr4J.XATTR_CREATE);
+            try {
+                if (path != null) {
+                    XAttr4J.setxattr(path, name, r.b, opt);
+                } else {
+                    XAttr4J.fsetxattr(fd, name, r.b, opt);
+                }
+                return r;
+            } catch (XAttrException e) {
+                /* Created or removed in between */
+                if (i == RETRIES || (e.getErrno() != XAttr4J.EEXIST && e.getErrno() != XAttr4J.ENOATTR)) throw e;
+            }
+        }
+    }
+}
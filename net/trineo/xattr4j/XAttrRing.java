@@ -0,0 +1,271 @@
+/*
+ * Created 261018
+ *
+ * Bulk extended attribute operations via io_uring
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Queue of getxattr/setxattr operations submitted in bulk
+ *
+ * On Linux 5.19+ queued operations are submitted via a single io_uring_enter(2) per
+ *  ring-size round and their completions reaped in bulk  so syscall entry cost is paid per batch
+ * Otherwise(io_uring or its xattr opcodes unavailable  or disabled via URING_PROPERTY)
+ *  operations run as plain syscalls  results are the same either way
+ *
+ * io_uring xattr operations always follow symlinks  thus XATTR_NOFOLLOW operations
+ *  run as plain syscalls  so does a getxattr whose value exceeds the value buffer size
+ *
+ * Not thread-safe  a ring should be confined to one thread(or externally synchronized)
+ */
+public final class XAttrRing implements Closeable {
+    /**
+     * Set to false to disable io_uring  e.g. -Dnet.trineo.xattr4j.uring=false
+     */
+    public static final String URING_PROPERTY = "net.trineo.xattr4j.uring";
+
+    private static final int DEFAULT_VALUE_SIZE = 4096;
+    /* XATTR_SIZE_MAX of Linux */
+    private static final int MAX_VALUE_SIZE = 65536;
+
+    /* Options io_uring can carry  other ones take the plain syscall path */
+    private static final int URING_OPTIONS = XAttr4J.XATTR_CREATE | XAttr4J.XATTR_REPLACE;
+
+    /* 0 if io_uring unavailable */
+    private final long ring;
+    private final int valueSize;
+    private boolean closed;
+
+    /* Queued operations */
+    private int n;
+    private int[] ops = new int[16];
+    private XAttrPath[] paths = new XAttrPath[16];
+    private int[] fds = new int[16];
+    private XAttrName[] names = new XAttrName[16];
+    private byte[][] values = new byte[16][];
+    private int[] options = new int[16];
+
+    /**
+     * @param entries   Submission queue size  i.e. operations per io_uring_enter(2)
+     */
+    public XAttrRing(int entries) {
+        this(entries, DEFAULT_VALUE_SIZE);
+    }
+
+    /**
+     * @param entries   Submission queue size  i.e. operations per io_uring_enter(2)
+     * @param valueSize Value buffer size of each getxattr  larger values are read again via plain syscalls
+     */
+    public XAttrRing(int entries, int valueSize) {
+        if (entries <= 0 || valueSize <= 0 || valueSize > MAX_VALUE_SIZE) throw new IllegalArgumentException();
+        this.valueSize = valueSize;
+        this.ring = Boolean.parseBoolean(System.getProperty(URING_PROPERTY, "true")) ? XAttr4J.uringOpen(entries) : 0;
+    }
+
+    /**
+     * @return  true if operations are submitted via io_uring
+     */
+    public boolean isNative() {
+        return ring != 0;
+    }
+
+    /**
+     * @return  Number of queued operations
+     */
+    public int size() {
+        return n;
+    }
+
+    private static void checkNotNull(Object ref) {
+        if (ref == null) throw new NullPointerException();
+    }
+
+    private int add(int op, XAttrPath path, int fd, XAttrName name, byte[] value, int opt) {
+        checkNotNull(name);
+        if (closed) throw new IllegalStateException("Ring closed");
+
+        if (n == ops.length) {
+            int cap = n << 1;
+            ops = Arrays.copyOf(ops, cap);
+            paths = Arrays.copyOf(paths, cap);
+            fds = Arrays.copyOf(fds, cap);
+            names = Arrays.copyOf(names, cap);
+            values = Arrays.copyOf(values, cap);
+            options = Arrays.copyOf(options, cap);
+        }
+
+        ops[n] = op;
+        paths[n] = path;
+        fds[n] = fd;
+        names[n] = name;
+        values[n] = value;
+        options[n] = opt;
+        return n++;
+    }
+
+    /**
+     * Queue a getxattr
+     * @return  Index of the operation in the result of submit()
+     * @see XAttr4J#getxattr(XAttrPath, XAttrName, int)
+     */
+    public int getxattr(XAttrPath path, XAttrName name, int options) {
+        checkNotNull(path);
+        return add(XAttr4J.URING_GETXATTR, path, -1, name, null, options);
+    }
+
+    /**
+     * @see XAttrRing#getxattr(XAttrPath, XAttrName, int)
+     */
+    public int fgetxattr(int fd, XAttrName name, int options) {
+        return add(XAttr4J.URING_FGETXATTR, null, fd, name, null, options);
+    }
+
+    /**
+     * Queue a setxattr  value must not be modified until submitted
+     * @return  Index of the operation in the result of submit()
+     * @see XAttr4J#setxattr(XAttrPath, XAttrName, byte[], int)
+     */
+    public int setxattr(XAttrPath path, XAttrName name, byte[] value, int options) {
+        checkNotNull(path);
+        checkNotNull(value);
+        return add(XAttr4J.URING_SETXATTR, path, -1, name, value, options);
+    }
+
+    /**
+     * @see XAttrRing#setxattr(XAttrPath, XAttrName, byte[], int)
+     */
+    public int fsetxattr(int fd, XAttrName name, byte[] value, int options) {
+        checkNotNull(value);
+        return add(XAttr4J.URING_FSETXATTR, null, fd, name, value, options);
+    }
+
+    private static boolean isGet(int op) {
+        return op == XAttr4J.URING_GETXATTR || op == XAttr4J.URING_FGETXATTR;
+    }
+
+    /**
+     * Submit all queued operations and wait for their completions  queue is emptied afterwards
+     *
+     * @return              Per-operation values(null for set operations) and errnos
+     *                      in the order operations were queued
+     * @throws IOException  If the batch itself cannot complete
+     */
+    public XAttrBatchResult submit() throws IOException {
+        if (closed) throw new IllegalStateException("Ring closed");
+
+        int cnt = n;
+        byte[][] out = new byte[cnt][];
+        int[] errnos = new int[cnt];
+        try {
+            if (ring != 0) {
+                submitNative(out, errnos);
+            } else {
+                for (int i = 0; i < cnt; i++) errnos[i] = runSync(i, out);
+            }
+        } finally {
+            clear();
+        }
+        return new XAttrBatchResult(out, errnos);
+    }
+
+    private void submitNative(byte[][] out, int[] errnos) throws IOException {
+        /* Indices of operations io_uring can carry */
+        int[] idx = new int[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if ((options[i] & ~URING_OPTIONS) == 0) idx[k++] = i;
+        }
+
+        if (k != 0) {
+            int[] kops = new int[k];
+            byte[][] kpaths = new byte[k][];
+            int[] kfds = new int[k];
+            byte[][] knames = new byte[k][];
+            byte[][] kvalues = new byte[k][];
+            int[] ksizes = new int[k];
+            int[] koptions = new int[k];
+            int[] kerrnos = new int[k];
+
+            for (int j = 0; j < k; j++) {
+                int i = idx[j];
+                kops[j] = ops[i];
+                kpaths[j] = paths[i] != null ? paths[i].bytes() : null;
+                kfds[j] = fds[i];
+                knames[j] = names[i].bytes();
+                kvalues[j] = values[i];
+                ksizes[j] = isGet(ops[i]) ? valueSize : 0;
+                koptions[j] = options[i];
+            }
+
+            XAttr4J.uringSubmit(ring, kops, kpaths, kfds, knames, kvalues, ksizes, koptions, kerrnos);
+
+            for (int j = 0; j < k; j++) {
+                int i = idx[j];
+                if (isGet(ops[i])) {
+                    out[i] = kerrnos[j] == 0 ? kvalues[j] : null;
+                }
+                errnos[i] = kerrnos[j];
+            }
+        }
+
+        /* Leftovers  value size exceeded ones and those io_uring cannot carry */
+        for (int i = 0; i < n; i++) {
+            if ((options[i] & ~URING_OPTIONS) != 0 || (isGet(ops[i]) && errnos[i] == XAttr4J.ERANGE)) {
+                errnos[i] = runSync(i, out);
+            }
+        }
+    }
+
+    /**
+     * Run i-th operation as a plain syscall
+     * @return  errno  0 if succeeded
+     */
+    private int runSync(int i, byte[][] out) throws IOException {
+        try {
+            switch (ops[i]) {
+                case XAttr4J.URING_GETXATTR:
+                    out[i] = XAttr4J.getxattr(paths[i], names[i], options[i]);
+                    break;
+                case XAttr4J.URING_FGETXATTR:
+                    out[i] = XAttr4J.fgetxattr(fds[i], names[i], options[i]);
+                    break;
+                case XAttr4J.URING_SETXATTR:
+                    XAttr4J.setxattr(paths[i], names[i], values[i], options[i]);
+                    break;
+                case XAttr4J.URING_FSETXATTR:
+                    XAttr4J.fsetxattr(fds[i], names[i], values[i], options[i]);
+                    break;
+                default:
+                    throw new AssertionError(ops[i]);
+            }
+        } catch (XAttrException e) {
+            out[i] = null;
+            return e.getErrno();
+        }
+        return 0;
+    }
+
+    private void clear() {
+        Arrays.fill(paths, 0, n, null);
+        Arrays.fill(names, 0, n, null);
+        Arrays.fill(values, 0, n, null);
+        n = 0;
+    }
+
+    /**
+     * Release the ring  queued operations are discarded
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (ring != 0) XAttr4J.uringClose(ring);
+            clear();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Created 261018
+ *
+ * Parallel directory tree extended attribute scanner
+ */
+
+package net.trineo.xattr4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walk a directory tree and stream every extended attribute to a visitor
+ *
+ * Each directory is opened once  its entries are read and opened relative to the directory fd
+ *  so kernel never resolves full paths from the root
+ * Directories and large batches of files are scanned in parallel via a work-stealing ForkJoinPool
+ * Symlinks are never followed  entries other than directories and regular files
+ *  (symlinks, devices, FIFOs, sockets) are read path-oriented without being opened
+ *
+ * Name prefixes are filtered natively  non-matching attributes never reach JVM
+ * Requires the native library  UnsupportedOperationException otherwise
+ */
+public final class XAttrWalker {
+    /* Regular files of a directory are split into tasks of this many files */
+    private static final int FILES_PER_TASK = 256;
+
+    /* Entry types of XAttr4J.readdir()  see: xattr4j_jni.c */
+    private static final byte DENT_DIR = 'd';
+    private static final byte DENT_REG = 'f';
+
+    /**
+     * Receives records of a walk  called concurrently from worker threads
+     */
+    public interface Visitor {
+        /**
+         * @param path      Path of the file(root joined with relative path)
+         * @param name      Interned extended attribute name
+         * @param value     Extended attribute value
+         */
+        void visit(String path, XAttrName name, byte[] value);
+
+        /**
+         * Called if an entry cannot be scanned  walk goes on
+         * @param path      Path of the entry
+         * @param e         Cause
+         */
+        void failed(String path, IOException e);
+    }
+
+    private final int parallelism;
+    private final int options;
+    private final String[] prefixes;
+    private final byte[] bprefixes;
+
+    /**
+     * @param parallelism   Number of worker threads
+     * @param options       getxattr(2) options(XATTR_NOFOLLOW is implied)
+     * @param prefixes      Name prefixes to scan  e.g. "user."  none to scan all
+     */
+    public XAttrWalker(int parallelism, int options, String... prefixes) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+        this.options = options | XAttr4J.XATTR_NOFOLLOW;
+        this.prefixes = nonEmpty(prefixes);
+        this.bprefixes = joinPrefixes(this.prefixes);
+    }
+
+    private static String[] nonEmpty(String[] prefixes) {
+        List<String> list = new ArrayList<String>();
+        for (String p : prefixes) {
+            if (p == null) throw new NullPointerException();
+            /* Empty prefix matches all */
+            if (p.isEmpty()) return new String[0];
+            list.add(p);
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * @return  NUL-separated UTF-8 prefixes  null if not filtered
+     */
+    private static byte[] joinPrefixes(String[] prefixes) {
+        if (prefixes.length == 0) return null;
+
+        StringBuilder sb = new StringBuilder();
+        for (String p : prefixes) {
+            if (sb.length() != 0) sb.append('\0');
+            sb.append(p);
+        }
+        return XAttr4J.stringToUTF8Bytes(sb.toString());
+    }
+
+    private boolean matches(String name) {
+        if (prefixes.length == 0) return true;
+        for (String p : prefixes) {
+            if (name.startsWith(p)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Walk a directory tree  return after all entries scanned
+     *
+     * @param root          Root directory  a symlink won't be followed
+     * @param visitor       Record receiver
+     * @throws IOException  If root directory cannot be opened
+     */
+    public void walk(String root, Visitor visitor) throws IOException {
+        if (visitor == null) throw new NullPointerException();
+
+        int fd = XAttr4J.opendirat(-1, XAttr4J.stringToUTF8Bytes(root));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new DirTask(visitor, root, fd, null));
+        } finally {
+            pool.shutdown();
+            XAttr4J.close(fd);
+        }
+    }
+
+    private static String childPath(String dir, byte[] ents, int off, int len) {
+        String name = XAttr4J.utf8BytesToString(ents, off, len);
+        return dir.endsWith("/") ? dir + name : dir + "/" + name;
+    }
+
+    /**
+     * Emit every record of a packed buffer  see: XAttr4J#unpackAll()
+     */
+    private static void emit(Visitor visitor, String path, byte[] packed) {
+        int i = 0;
+        while (i < packed.length) {
+            int j = i;
+            while (packed[j] != 0) j++;
+            XAttrName name = XAttrName.of(packed, i, j - i);
+            j++;
+
+            int len = (packed[j] & 0xff) << 24 | (packed[j + 1] & 0xff) << 16 |
+                        (packed[j + 2] & 0xff) << 8 | (packed[j + 3] & 0xff);
+            j += 4;
+
+            visitor.visit(path, name, Arrays.copyOfRange(packed, j, j + len));
+            i = j + len;
+        }
+    }
+
+    /**
+     * Path-oriented fallback  for entries which cannot(or shouldn't) be opened
+     *  getAllxattrs() never opens anything but regular files and directories
+     */
+    private void scanPath(Visitor visitor, String path) {
+        Map<String, byte[]> all;
+        try {
+            all = XAttr4J.getAllxattrs(path, options);
+        } catch (XAttrException e) {
+            if (e.getErrno() != XAttr4J.ENOENT) visitor.failed(path, e);
+            return;
+        } catch (IOException e) {
+            visitor.failed(path, e);
+            return;
+        }
+
+        for (Map.Entry<String, byte[]> e : all.entrySet()) {
+            if (matches(e.getKey())) visitor.visit(path, XAttrName.of(e.getKey()), e.getValue());
+        }
+    }
+
+    /**
+     * Scan a regular file relative to dirfd
+     */
+    private void scanFile(Visitor visitor, String dir, int dirfd, byte[] ents, int off, int len) {
+        byte[] packed;
+        try {
+            /* NUL terminated */
+            packed = XAttr4J.getAllxattrsAt(dirfd, Arrays.copyOfRange(ents, off, off + len + 1), bprefixes, options);
+        } catch (XAttrException e) {
+            /* Vanished in the meantime */
+            if (e.getErrno() == XAttr4J.ENOENT) return;
+            /* e.g. EACCES  fallback to path-oriented syscalls which need no open(2) */
+            scanPath(visitor, childPath(dir, ents, off, len));
+            return;
+        } catch (IOException e) {
+            visitor.failed(childPath(dir, ents, off, len), e);
+            return;
+        }
+
+        /* Path string is built only if there is any record */
+        if (packed.length != 0) emit(visitor, childPath(dir, ents, off, len), packed);
+    }
+
+    private final class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Visitor visitor;
+        private final String path;
+        private final int parentfd;
+        private final byte[] name;
+
+        /**
+         * @param parentfd  Parent directory fd  or this directory's fd if name is null
+         * @param name      NUL-terminated name relative to parentfd  null if already opened
+         */
+        DirTask(Visitor visitor, String path, int parentfd, byte[] name) {
+            this.visitor = visitor;
+            this.path = path;
+            this.parentfd = parentfd;
+            this.name = name;
+        }
+
+        @Override
+        protected void compute() {
+            int fd;
+            if (name == null) {
+                fd = parentfd;
+            } else {
+                try {
+                    fd = XAttr4J.opendirat(parentfd, name);
+                } catch (XAttrException e) {
+                    if (e.getErrno() != XAttr4J.ENOENT) visitor.failed(path, e);
+                    return;
+                } catch (IOException e) {
+                    visitor.failed(path, e);
+                    return;
+                }
+            }
+
+            /* fd must outlive subtasks  they open entries relative to it */
+            try {
+                scan(fd);
+            } finally {
+                if (name != null) XAttr4J.close(fd);
+            }
+        }
+
+        private void scan(int fd) {
+            byte[] ents;
+            try {
+                byte[] packed = XAttr4J.getAllxattrsAt(fd, null, bprefixes, options);
+                if (packed.length != 0) emit(visitor, path, packed);
+                ents = XAttr4J.readdir(fd);
+            } catch (IOException e) {
+                visitor.failed(path, e);
+                return;
+            }
+
+            List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+            int[] files = new int[16];
+            int nfiles = 0;
+
+            int i = 0;
+            while (i < ents.length) {
+                byte type = ents[i++];
+                int j = i;
+                while (ents[j] != 0) j++;
+
+                if (type == DENT_DIR) {
+                    tasks.add(new DirTask(visitor, childPath(path, ents, i, j - i), fd, Arrays.copyOfRange(ents, i, j + 1)));
+                } else if (type == DENT_REG) {
+                    if (nfiles == files.length) files = Arrays.copyOf(files, nfiles << 1);
+                    files[nfiles++] = i;
+                    if (nfiles == FILES_PER_TASK) {
+                        tasks.add(new FileTask(visitor, path, fd, ents, files, nfiles));
+                        files = new int[16];
+                        nfiles = 0;
+                    }
+                } else {
+                    scanPath(visitor, childPath(path, ents, i, j - i));
+                }
+
+                i = j + 1;
+            }
+
+            /* Scan the remaining files in current thread while subtasks are stolen */
+            if (tasks.isEmpty()) {
+                new FileTask(visitor, path, fd, ents, files, nfiles).compute();
+            } else {
+                tasks.add(new FileTask(visitor, path, fd, ents, files, nfiles));
+                invokeAll(tasks);
+            }
+        }
+    }
+
+    private final class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Visitor visitor;
+        private final String dir;
+        private final int dirfd;
+        private final byte[] ents;
+        private final int[] offs;
+        private final int n;
+
+        FileTask(Visitor visitor, String dir, int dirfd, byte[] ents, int[] offs, int n) {
+            this.visitor = visitor;
+            this.dir = dir;
+            this.dirfd = dirfd;
+            this.ents = ents;
+            this.offs = offs;
+            this.n = n;
+        }
+
+        @Override
+        protected void compute() {
+            for (int k = 0; k < n; k++) {
+                int off = offs[k];
+                int end = off;
+                while (ents[end] != 0) end++;
+                scanFile(visitor, dir, dirfd, ents, off, end - off);
+            }
+        }
+    }
+}
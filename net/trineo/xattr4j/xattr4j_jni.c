@@ -17,9 +17,28 @@
 #include <errno.h>
 #include <stdlib.h>
 #include <string.h>
-#include <stdarg.h>
 #include <unistd.h>
+#include <fcntl.h>
+#include <pthread.h>
+#include <limits.h>
 #include <sys/xattr.h>
+#include <sys/stat.h>
+#include <dirent.h>
+#include <stdint.h>
+#ifdef __linux__
+#include <sys/syscall.h>    /* __NR_io_uring_* */
+#include <linux/limits.h>   /* XATTR_SIZE_MAX PATH_MAX */
+#if defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#include <linux/io_uring.h>
+#endif
+#endif
+/* IORING_OP_*XATTR(enum) came along with IORING_SETUP_CQE32 in Linux 5.19 headers */
+#if defined(IORING_SETUP_CQE32) && defined(__NR_io_uring_setup)
+#define X4J_URING
+#include <sys/mman.h>
+#endif
+#endif
 
 #include "xattr4j_jni.h"
 
@@ -43,839 +62,3043 @@
 
 #define assert_nonnull(p)       assert(p != NULL)
 
-/**
- * Strong version of atomic compare-and-swap
- * @p           pointer to cas with
- * @o           old value
- * @n           new value
- * @return      true if success  false o.w.
- * see: http://donghao.org/2015/01/30/128bit-atomic-operation-in-arm64
- *
- * NOTE: GCC-compatible available only
+/*
+ * Options exposed to Java side(macOS values)
+ *  we translate them into native flags on platforms other than macOS
+ */
+#define X4J_NOFOLLOW            net_trineo_xattr4j_XAttr4J_XATTR_NOFOLLOW
+#define X4J_CREATE              net_trineo_xattr4j_XAttr4J_XATTR_CREATE
+#define X4J_REPLACE             net_trineo_xattr4j_XAttr4J_XATTR_REPLACE
+#define X4J_SHOWCOMPRESSION     net_trineo_xattr4j_XAttr4J_XATTR_SHOWCOMPRESSION
+#define X4J_OPTIONS_MASK        \
+    (X4J_NOFOLLOW | X4J_CREATE | X4J_REPLACE | X4J_SHOWCOMPRESSION)
+
+#ifdef __APPLE__
+
+#define x_getxattr(path, name, buf, sz, opt)        getxattr(path, name, buf, sz, 0, opt)
+#define x_fgetxattr(fd, name, buf, sz, opt)         fgetxattr(fd, name, buf, sz, 0, opt)
+#define x_setxattr(path, name, val, sz, opt)        setxattr(path, name, val, sz, 0, opt)
+#define x_fsetxattr(fd, name, val, sz, opt)         fsetxattr(fd, name, val, sz, 0, opt)
+#define x_removexattr(path, name, opt)              removexattr(path, name, opt)
+#define x_fremovexattr(fd, name, opt)               fremovexattr(fd, name, opt)
+#define x_listxattr(path, buf, sz, opt)             listxattr(path, buf, sz, opt)
+#define x_flistxattr(fd, buf, sz, opt)              flistxattr(fd, buf, sz, opt)
+
+#elif defined(__linux__)
+
+/*
+ * glibc <sys/xattr.h> have no position/options parameters
+ *  XATTR_NOFOLLOW is emulated by l*xattr(2) family
+ *  XATTR_SHOWCOMPRESSION is meaningless thus silently ignored
+ *  ENODATA plays the role of ENOATTR
+ * see: xattr(7)
+ */
+#ifndef ENOATTR
+#define ENOATTR     ENODATA
+#endif
+
+/* Reject unknown options  as what macOS does(EINVAL) */
+#define x_badopt(opt)   (((opt) & ~X4J_OPTIONS_MASK) ? (errno = EINVAL, 1) : 0)
+
+static inline int x_setflags(int opt)
+{
+    return ((opt & X4J_CREATE) ? XATTR_CREATE : 0) |
+           ((opt & X4J_REPLACE) ? XATTR_REPLACE : 0);
+}
+
+static inline ssize_t x_getxattr(const char *path, const char *name, void *buf, size_t sz, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return (opt & X4J_NOFOLLOW) ? lgetxattr(path, name, buf, sz) : getxattr(path, name, buf, sz);
+}
+
+static inline ssize_t x_fgetxattr(int fd, const char *name, void *buf, size_t sz, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return fgetxattr(fd, name, buf, sz);
+}
+
+static inline int x_setxattr(const char *path, const char *name, const void *val, size_t sz, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return (opt & X4J_NOFOLLOW) ?
+            lsetxattr(path, name, val, sz, x_setflags(opt)) :
+            setxattr(path, name, val, sz, x_setflags(opt));
+}
+
+static inline int x_fsetxattr(int fd, const char *name, const void *val, size_t sz, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return fsetxattr(fd, name, val, sz, x_setflags(opt));
+}
+
+static inline int x_removexattr(const char *path, const char *name, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return (opt & X4J_NOFOLLOW) ? lremovexattr(path, name) : removexattr(path, name);
+}
+
+static inline int x_fremovexattr(int fd, const char *name, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return fremovexattr(fd, name);
+}
+
+static inline ssize_t x_listxattr(const char *path, char *buf, size_t sz, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return (opt & X4J_NOFOLLOW) ? llistxattr(path, buf, sz) : listxattr(path, buf, sz);
+}
+
+static inline ssize_t x_flistxattr(int fd, char *buf, size_t sz, int opt)
+{
+    if (x_badopt(opt)) return -1;
+    return flistxattr(fd, buf, sz);
+}
+
+/*
+ * Linux have no _PC_XATTR_SIZE_BITS  the VFS caps every value at XATTR_SIZE_MAX
+ *  we report number of bits needed to store that limit
+ *  individual file systems may impose a lower limit(e.g. ext4 without ea_inode)
+ */
+static inline long x_sizebits(void)
+{
+    long bits = 0;
+    unsigned long n = XATTR_SIZE_MAX;
+    while (n != 0) {
+        bits++;
+        n >>= 1;
+    }
+    return bits;
+}
+
+static inline long x_pathconf_sizebits(const char *path)
+{
+    struct stat st;
+    /* stat(2) only to report ENOENT and friends */
+    return stat(path, &st) == 0 ? x_sizebits() : -1;
+}
+
+static inline long x_fpathconf_sizebits(int fd)
+{
+    struct stat st;
+    return fstat(fd, &st) == 0 ? x_sizebits() : -1;
+}
+
+#else
+#error "Unsupported platform  only macOS and Linux are supported"
+#endif
+
+/*
+ * Operations reported by XAttrException  see: op_strs[]
  */
-#define atomic_cas(p, o, n) ({      \
-    __typeof(*(p)) t = (o);         \
-    __atomic_compare_exchange_n(    \
-        p, &t, n, 0, __ATOMIC_SEQ_CST, __ATOMIC_SEQ_CST); \
-})
+enum {
+    OP_GETXATTR = 0,
+    OP_FGETXATTR,
+    OP_SETXATTR,
+    OP_FSETXATTR,
+    OP_REMOVEXATTR,
+    OP_FREMOVEXATTR,
+    OP_LISTXATTR,
+    OP_FLISTXATTR,
+    OP_GETALLXATTRS,
+    OP_FGETALLXATTRS,
+    OP_PATHCONF,
+    OP_FPATHCONF,
+    OP_STAT,
+    OP_FSTAT,
+    OP_OPENAT,
+    OP_READDIR,
+    OP_MALLOC,
+    OP_IO_URING_ENTER,
+    OP_OPEN,
+    OP_MAX,
+};
+
+static const char * const op_strs[OP_MAX] = {
+    "getxattr(2)",
+    "fgetxattr(2)",
+    "setxattr(2)",
+    "fsetxattr(2)",
+    "removexattr(2)",
+    "fremovexattr(2)",
+    "listxattr(2)",
+    "flistxattr(2)",
+    "getallxattrs()",
+    "fgetallxattrs()",
+    "pathconf(2)",
+    "fpathconf(2)",
+    "stat(2)",
+    "fstat(2)",
+    "openat(2)",
+    "readdir(3)",
+    "malloc(3)",
+    "io_uring_enter(2)",
+    "open(2)",
+};
 
-static int __k = 0;
-#define spin_lock()     while (!atomic_cas(&__k, 0, 1)) continue
-#define spin_unlock()   do {            \
-    int ok = atomic_cas(&__k, 1, 0);    \
-    assert(ok);                         \
-} while (0)
+static jclass java_io_IOException;
+static jclass xattr_exception;
+static jmethodID xattr_exception_ctor;
+/* Global references of op_strs[] */
+static jstring op_jstrs[OP_MAX];
 
-#define EXC_BUFSZ   8192
-static char exc_buff[EXC_BUFSZ];
+/*
+ * Cached by init() for _fileno()  NULL if this JDK lacks them
+ *  JNI field access isn't subject to module encapsulation
+ */
+static jclass file_descriptor;          /* java.io.FileDescriptor */
+static jfieldID file_descriptor_fd;     /* java.io.FileDescriptor.fd */
+static jclass file_channel_impl;        /* sun.nio.ch.FileChannelImpl */
+static jfieldID file_channel_impl_fd;   /* sun.nio.ch.FileChannelImpl.fd */
 
 /**
- * Throw an exception
- * @env     JNI environment
- * @cls     Exception class
- * @fmt     Exception message format
- * @...     Exception message parameters
+ * Throw a net.trineo.xattr4j.XAttrException
+ * @env         JNI environment
+ * @op          Operation  see: OP_*
+ * @e           errno
+ * @jbpath      UTF-8 encoded path  NULL if fd-oriented
+ * @fd          File descriptor  -1 if path-oriented
+ * @jbname      UTF-8 encoded xattr name  NULL if not applicable
+ * @options     Options passed to the operation
+ *
+ * Nothing is formatted here  the message will be formatted lazily in Java side
+ *  thus neither shared buffer nor lock is needed  failing threads never contend
  */
-static void throw_exc(JNIEnv *env, jclass cls, const char *fmt, ...)
+static void throw_xattr_exc(
+        JNIEnv *env,
+        int op,
+        int e,
+        jbyteArray jbpath,
+        jint fd,
+        jbyteArray jbname,
+        jint options)
 {
-    int sz;
-    jint e;
-    va_list ap;
+    jthrowable exc;
+    jint ok;
 
-    va_start(ap, fmt);
-    spin_lock();
-    /*
-     * We use static buffer simply :. the exception itself may caused by OOM
-     *  in such case further malloc(3) will fail again
-     */
-    sz = vsnprintf(exc_buff, EXC_BUFSZ, fmt, ap);
+    assert(op >= 0 && op < OP_MAX);
 
-    e = (*env)->ThrowNew(env, cls, sz > 0 ? exc_buff : fmt);
-    spin_unlock();
-    va_end(ap);
+    exc = (jthrowable) (*env)->NewObject(env, xattr_exception, xattr_exception_ctor,
+                                            op_jstrs[op], e, jbpath, fd, jbname, options);
+    /* JNIEnv->NewObject() fails only if OOM  in which case OutOfMemoryError is pending */
+    if (exc == NULL) return;
+
+    ok = (*env)->Throw(env, exc);
+    (*env)->DeleteLocalRef(env, exc);
 
     /* We should fail if exception cannot be throw */
+    assert(ok == 0);
+    UNUSED(ok);
+}
+
+/**
+ * Throw an IOException with a constant message
+ */
+static void throw_ioexc(JNIEnv *env, const char *msg)
+{
+    jint e = (*env)->ThrowNew(env, java_io_IOException, msg);
     assert(e == 0);
+    UNUSED(e);
 }
 
-#define throw_ioexc(env, fmt, ...) \
-    throw_exc(env, java_io_IOException, fmt " line: %d", ##__VA_ARGS__, __LINE__)
+/*
+ * Strings(paths, names) shorter than this are marshalled into caller's stack storage
+ *  so that common calls need neither malloc(3) nor pinning the Java array
+ */
+#if defined(PATH_MAX) && PATH_MAX >= 1024
+#define CSTR_STKSZ      PATH_MAX
+#else
+#define CSTR_STKSZ      1024
+#endif
 
 /**
  * Get a NUL-terminated native C string from Java byte[]
+ * @stk         Stack storage of CSTR_STKSZ bytes  used if string fits in
  * @return      C char array    NULL if OOM(errno will set)
- *              Must be free via free(3)
+ *              Must be released via put_cstr_bytes()
+ *
+ * Trailing NUL of a pre-encoded byte[](see: XAttrPath) is harmless
  */
-static inline char *get_cstr_bytes(JNIEnv *env, jbyteArray jbarr)
+static inline char *get_cstr_bytes(JNIEnv *env, jbyteArray jbarr, char *stk)
 {
-    char *buff = NULL;
-    jbyte *arr;
+    char *buff;
     jsize sz;
 
     assert_nonnull(env);
     assert_nonnull(jbarr);
-
-    arr = (*env)->GetByteArrayElements(env, jbarr, NULL);
-    if (arr == NULL) {
-        /* Set a pseudo-errno for JNIEnv->GetByteArrayElements() */
-        errno = EIO;
-        goto out;
-    }
+    assert_nonnull(stk);
 
     sz = (*env)->GetArrayLength(env, jbarr);
-    /* ENOMEM is the only possible errno from malloc(3) */
-    buff = (char *) malloc(sz + 1);
-    if (buff != NULL) {
-        (void) memcpy(buff, arr, sz);
-        buff[sz] = '\0';
+    if (sz < CSTR_STKSZ) {
+        buff = stk;
+    } else {
+        /* ENOMEM is the only possible errno from malloc(3) */
+        buff = (char *) malloc(sz + 1);
+        if (buff == NULL) return NULL;
     }
 
-    (*env)->ReleaseByteArrayElements(env, jbarr, arr, JNI_ABORT);
+    /* Copy straight into destination  no intermediate pinned/copied array */
+    (*env)->GetByteArrayRegion(env, jbarr, 0, sz, (jbyte *) buff);
+    buff[sz] = '\0';
 
-out:
     return buff;
 }
 
-static jclass java_lang_String;
-static jclass java_io_IOException;
+static inline void put_cstr_bytes(char *buff, char *stk)
+{
+    if (buff != stk) free(buff);
+}
+
+/*
+ * Optimistic single-syscall reads
+ *
+ * Instead of probing size with a NULL buffer then read into a freshly malloc(3)ed buffer
+ *  we first read into a per-thread scratch buffer  which covers most small values
+ * Only if it yields ERANGE  we fallback to probe, grow and retry
+ */
+#define SCRATCH_MAX     65536   /* Scratch buffer never grow beyond this size */
+#define REPLAY_MAX      8       /* Bounded ERANGE replays  see: xattr_read_all() */
+
+struct scratch {
+    size_t sz;
+    char buf[];
+};
+
+/* Initial scratch size  zero means optimistic reads disabled */
+static size_t scratch_init_sz;
+static pthread_key_t scratch_key;
+
+static void scratch_free(void *sc)
+{
+    free(sc);
+}
+
+/**
+ * Get scratch buffer of current thread  grow it if necessary
+ * @minsz       Minimal size of the scratch buffer(zero to take it as is)
+ * @return      NULL if optimistic read disabled or OOM
+ */
+static struct scratch *get_scratch(size_t minsz)
+{
+    struct scratch *sc;
+    struct scratch *sc2;
+    size_t sz;
+
+    if (scratch_init_sz == 0 || minsz > SCRATCH_MAX) return NULL;
+
+    sc = (struct scratch *) pthread_getspecific(scratch_key);
+    if (sc != NULL && sc->sz >= minsz) return sc;
+
+    sz = sc != NULL ? sc->sz : scratch_init_sz;
+    while (sz < minsz) sz <<= 1;
+    if (sz > SCRATCH_MAX) sz = SCRATCH_MAX;
+
+    /*
+     * Contents needn't survive  so malloc(3) rather than realloc(3)
+     *  the original one stays installed and valid until the new one is
+     */
+    sc2 = (struct scratch *) malloc(sizeof(*sc2) + sz);
+    if (sc2 == NULL) return NULL;
+    sc2->sz = sz;
+
+    if (pthread_setspecific(scratch_key, sc2) != 0) {
+        /* Original one is too small  caller falls back to malloc(3) */
+        free(sc2);
+        return NULL;
+    }
+
+    free(sc);
+    return sc2;
+}
+
+/*
+ * Slow path statistics of xattr_read_all()  see: XAttrMetrics
+ *  rare events  so a relaxed atomic add is cheap enough to count unconditionally
+ */
+static jlong stat_scratch_miss;     /* Optimistic scratch read yielded ERANGE */
+static jlong stat_replay;           /* Read yielded ERANGE right after a size probe(TOCTTOU) */
+
+#define STAT_INC(v)     ((void) __atomic_fetch_add(&(v), 1, __ATOMIC_RELAXED))
+#define STAT_GET(v, reset)  ((reset) ? __atomic_exchange_n(&(v), 0, __ATOMIC_RELAXED) : __atomic_load_n(&(v), __ATOMIC_RELAXED))
+
+/*
+ * Describes a getxattr(2)/listxattr(2) request
+ */
+struct xreq {
+    const char *path;   /* NULL if fd-oriented */
+    int fd;
+    const char *name;   /* NULL if it's a listxattr(2) request */
+    int options;
+};
+
+static inline ssize_t xattr_read(const struct xreq *r, char *buf, size_t sz)
+{
+    if (r->name != NULL) {
+        return r->path != NULL ?
+                x_getxattr(r->path, r->name, buf, sz, r->options) :
+                x_fgetxattr(r->fd, r->name, buf, sz, r->options);
+    }
+    return r->path != NULL ?
+            x_listxattr(r->path, buf, sz, r->options) :
+            x_flistxattr(r->fd, buf, sz, r->options);
+}
+
+/**
+ * Read a whole extended attribute value(or name list)
+ * @bufp        [out] Buffer contains the result  either thread scratch or a malloc(3)ed one
+ *              Must release via put_read_buf()
+ * @return      Length of the result  -1 if failed(errno will set)
+ *
+ * Value may grow between size probe and actual read(TOCTTOU)  we replay at most
+ *  REPLAY_MAX times with geometrically growing capacity  then give up with ERANGE
+ */
+static ssize_t xattr_read_all(const struct xreq *r, char **bufp)
+{
+    struct scratch *sc;
+    char *buf = NULL;
+    size_t cap = 0;
+    ssize_t len;
+    int i;
+
+    *bufp = NULL;
+
+    sc = get_scratch(0);
+    if (sc != NULL) {
+        len = xattr_read(r, sc->buf, sc->sz);
+        if (len >= 0) {
+            *bufp = sc->buf;
+            return len;
+        }
+        if (errno != ERANGE) return -1;
+        STAT_INC(stat_scratch_miss);
+        cap = sc->sz;
+    }
+
+    for (i = 0; i < REPLAY_MAX; i++) {
+        len = xattr_read(r, NULL, 0);
+        if (len <= 0) return len;
+
+        /* Never less than twice of previous capacity  so that replays are bounded */
+        cap = (size_t) len > (cap << 1) ? (size_t) len : (cap << 1);
+
+        sc = get_scratch(cap);
+        if (sc != NULL) {
+            buf = sc->buf;
+            cap = sc->sz;
+        } else {
+            /* ENOMEM is the only possible errno from malloc(3) */
+            buf = (char *) malloc(cap);
+            if (buf == NULL) return -1;
+        }
+
+        len = xattr_read(r, buf, cap);
+        if (len >= 0) {
+            *bufp = buf;
+            return len;
+        }
+
+        if (sc == NULL) free(buf);
+        if (errno != ERANGE) return -1;
+
+        STAT_INC(stat_replay);
+        LOG("TOCTTOU BUG in %s  replay: %d cap: %zu name: %s path: %s fd: %d", r->name != NULL ? "getxattr(2)" : "listxattr(2)",
+                i, cap, r->name != NULL ? r->name : "(none)", r->path != NULL ? r->path : "(fd)", r->fd);
+    }
+
+    errno = ERANGE;
+    return -1;
+}
+
+static inline void put_read_buf(char *buf)
+{
+    struct scratch *sc = NULL;
+    /* scratch_key is valid only if optimistic read enabled */
+    if (scratch_init_sz != 0) sc = (struct scratch *) pthread_getspecific(scratch_key);
+    if (sc == NULL || buf != sc->buf) free(buf);
+}
+
+/**
+ * Look up fields read by _fileno()  a missing class or field is tolerated(left NULL)
+ *  only failure to create a global reference leaves an exception pending
+ */
+static void init_fileno(JNIEnv *env)
+{
+    jclass c;
+    jfieldID f;
+
+    c = (*env)->FindClass(env, "java/io/FileDescriptor");
+    f = c != NULL ? (*env)->GetFieldID(env, c, "fd", "I") : NULL;
+    (*env)->ExceptionClear(env);
+    if (f == NULL) return;
+    file_descriptor = (*env)->NewGlobalRef(env, c);
+    if (file_descriptor == NULL) return;
+    file_descriptor_fd = f;
+
+    c = (*env)->FindClass(env, "sun/nio/ch/FileChannelImpl");
+    f = c != NULL ? (*env)->GetFieldID(env, c, "fd", "Ljava/io/FileDescriptor;") : NULL;
+    (*env)->ExceptionClear(env);
+    if (f == NULL) return;
+    file_channel_impl = (*env)->NewGlobalRef(env, c);
+    if (file_channel_impl == NULL) return;
+    file_channel_impl_fd = f;
+}
 
 /**
  * Initialize non-direct JNI functionalities
  *
- * see: javap -s java.lang.String
+ * see: javap -s -p net.trineo.xattr4j.XAttrException
  */
 JNIEXPORT void JNICALL
 Java_net_trineo_xattr4j_XAttr4J_init(
         JNIEnv *env,
-        jclass cls)
+        jclass cls,
+        jint scratchsz)
 {
+    int i;
+    int e;
+
     BUILD_BUG_ON(sizeof(char) == sizeof(jbyte));
     BUILD_BUG_ON(sizeof(int) == sizeof(jint));
     BUILD_BUG_ON(sizeof(int) == sizeof(jsize));
     BUILD_BUG_ON(sizeof(ssize_t) <= sizeof(jlong));
+    BUILD_BUG_ON(sizeof(op_strs) / sizeof(*op_strs) == OP_MAX);
 
-    java_lang_String = (*env)->FindClass(env, "java/lang/String");
-    /* JNIEnv->FindClass() will throw an exception if given class not found */
-    if (java_lang_String == NULL) return;
-    java_lang_String = (*env)->NewGlobalRef(env, java_lang_String);
-    assert_nonnull(java_lang_String);
-
+    /*
+     * JNIEnv->FindClass() will throw an exception if given class not found
+     * Global references are leaked on failure  which is fatal to XAttr4J anyway
+     */
     java_io_IOException = (*env)->FindClass(env, "java/io/IOException");
-    if (java_io_IOException == NULL) {
-        (*env)->DeleteGlobalRef(env, java_lang_String);
-        return;
-    }
+    if (java_io_IOException == NULL) return;
     java_io_IOException = (*env)->NewGlobalRef(env, java_io_IOException);
-    if (java_io_IOException == NULL) {
-        /* Properly drop global reference of java.lang.String before assert */
-        (*env)->DeleteGlobalRef(env, java_lang_String);
+    if (java_io_IOException == NULL) return;
+
+    xattr_exception = (*env)->FindClass(env, "net/trineo/xattr4j/XAttrException");
+    if (xattr_exception == NULL) return;
+    xattr_exception = (*env)->NewGlobalRef(env, xattr_exception);
+    if (xattr_exception == NULL) return;
+
+    /* see: javap -s -p net.trineo.xattr4j.XAttrException */
+    xattr_exception_ctor = (*env)->GetMethodID(env, xattr_exception, "<init>", "(Ljava/lang/String;I[BI[BI)V");
+    if (xattr_exception_ctor == NULL) return;
+
+    for (i = 0; i < OP_MAX; i++) {
+        op_jstrs[i] = (*env)->NewStringUTF(env, op_strs[i]);
+        if (op_jstrs[i] == NULL) return;
+        op_jstrs[i] = (jstring) (*env)->NewGlobalRef(env, op_jstrs[i]);
+        if (op_jstrs[i] == NULL) return;
+    }
+
+    init_fileno(env);
+    if ((*env)->ExceptionCheck(env)) return;
+
+    if (scratchsz > 0) {
+        e = pthread_key_create(&scratch_key, scratch_free);
+        if (e != 0) {
+            throw_ioexc(env, "pthread_key_create() fail");
+            return;
+        }
+        scratch_init_sz = scratchsz < SCRATCH_MAX ? (size_t) scratchsz : SCRATCH_MAX;
     }
-    assert_nonnull(java_io_IOException);
+}
+
+/**
+ * @return      true if errno denotes absence of a path-oriented xattr
+ *              i.e. either the attribute or the file itself doesn't exist
+ */
+static inline int is_absent(int e)
+{
+    return e == ENOATTR || e == ENOENT || e == ENOTDIR;
 }
 
 /**
  * XXX: When xattr data sized zero  we should return new byte[0] instead of null
- * @return      A valid(nonnull) byte[] array
+ * @nullable    return NULL instead of throw if xattr or file is absent
+ * @return      A valid(nonnull) byte[] array  NULL if absent and nullable
  * @throws      IOException if internal failure
  */
 JNIEXPORT jbyteArray JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1getxattr(
+Java_net_trineo_xattr4j_XAttr4J__1getxattr0(
         JNIEnv *env,
         jclass cls,
         jbyteArray jbpath,
         jbyteArray jbname,
-        jint options)
+        jint options,
+        jboolean nullable)
 {
     jbyteArray out = NULL;
+    struct xreq r;
     char *path;
+    char pathstk[CSTR_STKSZ];
     char *name;
-    jbyte *buff;
+    char namestk[CSTR_STKSZ];
+    char *buff;
     ssize_t len;
-    ssize_t len2;
 
-    path = get_cstr_bytes(env, jbpath);
+    path = get_cstr_bytes(env, jbpath, pathstk);
     if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() path fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         goto out1;
     }
 
-    name = get_cstr_bytes(env, jbname);
+    name = get_cstr_bytes(env, jbname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() name fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         goto out2;
     }
 
-out_replay:
-    len = getxattr(path, name, NULL, 0, 0, options);
-    if (len < 0) {
-        throw_ioexc(env, "getxattr(2) fail  errno: %d options: %#x name: %s path: %s", errno, options, name, path);
-        goto out3;
-    }
-
-    /*
-     * malloc(3) with zero-size have implementation-defined behaviour
-     * BSD malloc(3) won't fail in such case
-     * see: Open Group Base Specifications - malloc(3)
-     */
-    if (len != 0) {
-        buff = (jbyte *) malloc(len);
-        if (buff == NULL) {
-            throw_ioexc(env, "malloc(3) fail  errno: %d len: %zd name: %s path: %s", errno, len, name, path);
-            goto out3;
-        }
-    } else {
-        buff = NULL;
-    }
+    r.path = path;
+    r.fd = -1;
+    r.name = name;
+    r.options = options;
 
-    len2 = getxattr(path, name, buff, len, 0, options);
-    if (len2 < 0) {
-        if (errno == ERANGE) {
-            free(buff);
-            LOG("TOCTTOU BUG in getxattr(2)  errno: %d len: %zd name: %s path: %s", errno, len, name, path);
-            goto out_replay;
+    len = xattr_read_all(&r, &buff);
+    if (len < 0) {
+        /* Miss is reported as null  no exception construction nor stack walk */
+        if (!nullable || !is_absent(errno)) {
+            throw_xattr_exc(env, OP_GETXATTR, errno, jbpath, -1, jbname, options);
         }
-
-        throw_ioexc(env, "getxattr(2) fail  errno: %d options: %#x len: %zd name: %s path: %s", errno, options, len, name, path);
-        goto out4;
+        goto out3;
     }
 
-    len = len2;     /* NOTE: 0 <= len2 <= len */
-
     /* zero is a valid size in JVM allocator */
     out = (*env)->NewByteArray(env, len);
-    if (out != NULL) {
-        (*env)->SetByteArrayRegion(env, out, 0, len, buff);
-    } else {
-        throw_ioexc(env, "JNIEnv->NewByteArray() fail  errno: %d len: %zd name: %s path: %s", errno, len, name, path);
-    }
+    /* OutOfMemoryError is pending if JNIEnv->NewByteArray() failed */
+    if (out != NULL) (*env)->SetByteArrayRegion(env, out, 0, len, (jbyte *) buff);
 
-out4:
-    free(buff);
+    put_read_buf(buff);
 out3:
-    free(name);
+    put_cstr_bytes(name, namestk);
 out2:
-    free(path);
+    put_cstr_bytes(path, pathstk);
 out1:
     return out;
 }
 
 JNIEXPORT jbyteArray JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1fgetxattr(
+Java_net_trineo_xattr4j_XAttr4J__1fgetxattr0(
         JNIEnv *env,
         jclass cls,
         jint fd,
         jbyteArray bname,
-        jint options)
+        jint options,
+        jboolean nullable)
 {
     jbyteArray out = NULL;
+    struct xreq r;
     char *name;
-    jbyte *buff;
+    char namestk[CSTR_STKSZ];
+    char *buff;
     ssize_t len;
-    ssize_t len2;
 
-    name = get_cstr_bytes(env, bname);
+    name = get_cstr_bytes(env, bname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() name fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         goto out1;
     }
 
-out_replay:
-    len = fgetxattr(fd, name, NULL, 0, 0, options);
+    r.path = NULL;
+    r.fd = fd;
+    r.name = name;
+    r.options = options;
+
+    len = xattr_read_all(&r, &buff);
     if (len < 0) {
-        throw_ioexc(env, "fgetxattr(2) fail  errno: %d fd: %d name: %s options: %#x", errno, fd, name, options);
+        /* EBADF is a programming error  thus always throw */
+        if (!nullable || errno != ENOATTR) {
+            throw_xattr_exc(env, OP_FGETXATTR, errno, NULL, fd, bname, options);
+        }
         goto out2;
     }
 
-    /*
-     * malloc(3) with zero-size have implementation-defined behaviour
-     * BSD malloc(3) won't fail in such case
-     * see: Open Group Base Specifications - malloc(3)
-     */
-    if (len != 0) {
-        buff = (jbyte *) malloc(len);
-        if (buff == NULL) {
-            throw_ioexc(env, "malloc(3) fail  errno: %d fd: %d name: %s len: %zd", errno, fd, name, len);
-            goto out2;
-        }
-    } else {
-        buff = NULL;
-    }
+    /* zero is a valid size in JVM allocator */
+    out = (*env)->NewByteArray(env, len);
+    /* OutOfMemoryError is pending if JNIEnv->NewByteArray() failed */
+    if (out != NULL) (*env)->SetByteArrayRegion(env, out, 0, len, (jbyte *) buff);
 
-    len2 = fgetxattr(fd, name, buff, len, 0, options);
-    if (len2 < 0) {
-        if (errno == ERANGE) {
-            free(buff);
-            LOG("TOCTTOU BUG in fgetxattr(2)  errno: %d fd: %d name: %s len: %zd", errno, fd, name, len);
-            goto out_replay;
-        }
+    put_read_buf(buff);
+out2:
+    put_cstr_bytes(name, namestk);
+out1:
+    return out;
+}
 
-        throw_ioexc(env, "fgetxattr(2) fail  errno: %d fd: %d name: %s len: %zd options: %#x", errno, fd, name, len, options);
-        goto out3;
-    }
+/**
+ * Read one value of a batch into values[i]
+ * @return      0 if succeeded  errno o.w.
+ *              -1 if JVM failed to allocate the value(exception pending)
+ */
+static int batch_read_one(JNIEnv *env, const struct xreq *r, jobjectArray values, jsize i)
+{
+    jbyteArray out;
+    char *buff;
+    ssize_t len;
+    int e = 0;
 
-    len = len2;     /* NOTE: 0 <= len2 <= len */
+    len = xattr_read_all(r, &buff);
+    if (len < 0) return errno;
 
-    /* zero is a valid size in JVM allocator */
     out = (*env)->NewByteArray(env, len);
     if (out != NULL) {
-        (*env)->SetByteArrayRegion(env, out, 0, len, buff);
+        (*env)->SetByteArrayRegion(env, out, 0, len, (jbyte *) buff);
+        (*env)->SetObjectArrayElement(env, values, i, out);
+        (*env)->DeleteLocalRef(env, out);
     } else {
-        throw_ioexc(env, "JNIEnv->NewByteArray() fail  errno: %d fd: %d name: %s len: %zd", errno, fd, name, len);
+        e = -1;
     }
 
-out3:
-    free(buff);
-out2:
-    free(name);
-out1:
-    return out;
+    put_read_buf(buff);
+    return e;
 }
 
+/**
+ * Batched getxattr(2) over many paths  in a single JNI transition
+ * @jbpaths     UTF-8 encoded paths
+ * @values      [out] values[i] will be set if i-th entry succeeded
+ * @jerrnos     [out] errno of each entry  0 if succeeded
+ * @throws      IOException if the batch itself cannot complete
+ */
 JNIEXPORT void JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1setxattr(
+Java_net_trineo_xattr4j_XAttr4J__1getxattrbatch(
         JNIEnv *env,
         jclass cls,
-        jbyteArray jbpath,
+        jobjectArray jbpaths,
         jbyteArray jbname,
-        jbyteArray jbvalue,
-        jint options)
+        jint options,
+        jobjectArray values,
+        jintArray jerrnos)
 {
+    struct xreq r;
+    jbyteArray jbpath;
+    jint *errnos;
     char *path;
+    char pathstk[CSTR_STKSZ];
     char *name;
-    jbyte *value;
-    jsize sz;
+    char namestk[CSTR_STKSZ];
+    jsize n, i;
+    int e;
 
-    path = get_cstr_bytes(env, jbpath);
-    if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() path fail  errno: %d", errno);
+    n = (*env)->GetArrayLength(env, jbpaths);
+    if (n == 0) return;
+
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         return;
     }
 
-    name = get_cstr_bytes(env, jbname);
-    if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() name fail  errno: %d", errno);
+    errnos = (jint *) malloc(sizeof(*errnos) * n);
+    if (errnos == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         goto out1;
     }
 
-    value = (*env)->GetByteArrayElements(env, jbvalue, NULL);
-    if (value == NULL) {
-        throw_ioexc(env, "JNIEnv->GetByteArrayElements() `value' fail  name: %s path: %s", name, path);
-        goto out2;
-    }
+    r.fd = -1;
+    r.name = name;
+    r.options = options;
 
-    sz = (*env)->GetArrayLength(env, jbvalue);
+    for (i = 0; i < n; i++) {
+        jbpath = (jbyteArray) (*env)->GetObjectArrayElement(env, jbpaths, i);
+        assert_nonnull(jbpath);
+
+        path = get_cstr_bytes(env, jbpath, pathstk);
+        (*env)->DeleteLocalRef(env, jbpath);
+        if (path == NULL) {
+            errnos[i] = errno;
+            continue;
+        }
+
+        r.path = path;
+        e = batch_read_one(env, &r, values, i);
+        put_cstr_bytes(path, pathstk);
 
-    if (setxattr(path, name, value, (size_t) sz, 0, options) < 0) {
-        throw_ioexc(env, "setxattr(2) fail  errno: %d options: %#x sz: %d name: %s path: %s", errno, options, sz, name, path);
+        if (e < 0) {
+            /* OutOfMemoryError is pending */
+            goto out2;
+        }
+        errnos[i] = e;
     }
 
-    (*env)->ReleaseByteArrayElements(env, jbvalue, value, JNI_ABORT);
+    (*env)->SetIntArrayRegion(env, jerrnos, 0, n, errnos);
+
 out2:
-    free(name);
+    free(errnos);
 out1:
-    free(path);
+    put_cstr_bytes(name, namestk);
 }
 
+/**
+ * see: Java_net_trineo_xattr4j_XAttr4J__1getxattrbatch()
+ */
 JNIEXPORT void JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1fsetxattr(
+Java_net_trineo_xattr4j_XAttr4J__1fgetxattrbatch(
         JNIEnv *env,
         jclass cls,
-        jint fd,
-        jbyteArray bname,
-        jbyteArray bvalue,
-        jint options)
+        jintArray jfds,
+        jbyteArray jbname,
+        jint options,
+        jobjectArray values,
+        jintArray jerrnos)
 {
+    struct xreq r;
+    jint *fds;
+    jint *errnos;
     char *name;
-    jbyte *value;
-    jsize sz;
+    char namestk[CSTR_STKSZ];
+    jsize n, i;
+    int e;
+
+    n = (*env)->GetArrayLength(env, jfds);
+    if (n == 0) return;
 
-    name = get_cstr_bytes(env, bname);
+    name = get_cstr_bytes(env, jbname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() `name' fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         return;
     }
 
-    value = (*env)->GetByteArrayElements(env, bvalue, NULL);
-    if (value == NULL) {
-        throw_ioexc(env, "JNIEnv->GetByteArrayElements() `value' fail  fd: %d name: %s", fd, name);
-        goto out;
+    /* fds and errnos share a single allocation */
+    fds = (jint *) malloc(sizeof(*fds) * n * 2);
+    if (fds == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
     }
+    errnos = fds + n;
 
-    sz = (*env)->GetArrayLength(env, bvalue);
-    if (fsetxattr(fd, name, value, (size_t) sz, 0, options) < 0) {
-        throw_ioexc(env, "fsetxattr(2) fail  errno: %d fd: %d name: %s sz: %d options: %#x", errno, fd, name, sz, options);
-    }
+    (*env)->GetIntArrayRegion(env, jfds, 0, n, fds);
 
-    (*env)->ReleaseByteArrayElements(env, bvalue, value, JNI_ABORT);
-out:
-    free(name);
+    r.path = NULL;
+    r.name = name;
+    r.options = options;
+
+    for (i = 0; i < n; i++) {
+        r.fd = fds[i];
+        e = batch_read_one(env, &r, values, i);
+        if (e < 0) {
+            /* OutOfMemoryError is pending */
+            goto out2;
+        }
+        errnos[i] = e;
+    }
+
+    (*env)->SetIntArrayRegion(env, jerrnos, 0, n, errnos);
+
+out2:
+    free(fds);
+out1:
+    put_cstr_bytes(name, namestk);
 }
 
-JNIEXPORT void JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1removexattr(
+/**
+ * Get memory address of [pos, pos + len) of a direct java.nio.ByteBuffer
+ * @return      NULL if given buffer isn't a direct buffer
+ *              or JVM doesn't support JNI access to direct buffers
+ */
+static inline char *get_direct_addr(JNIEnv *env, jobject jbuf, jint pos, jint len)
+{
+    char *addr;
+
+    assert_nonnull(env);
+    assert_nonnull(jbuf);
+    assert(pos >= 0 && len >= 0);
+
+    addr = (char *) (*env)->GetDirectBufferAddress(env, jbuf);
+    if (addr == NULL) return NULL;
+
+    assert((jlong) pos + len <= (*env)->GetDirectBufferCapacity(env, jbuf));
+    return addr + pos;
+}
+
+/**
+ * Read an extended attribute value directly into a direct buffer
+ * @return      Number of bytes read into [pos, pos + len)
+ * @throws      IOException if getxattr(2) failed(ERANGE if len is insufficient)
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1getxattrbuf(
         JNIEnv *env,
         jclass cls,
         jbyteArray jbpath,
         jbyteArray jbname,
-        jint options,
-        jboolean force)
+        jobject jbuf,
+        jint pos,
+        jint len,
+        jint options)
 {
-    int ok;
+    jint out = -1;
     char *path;
+    char pathstk[CSTR_STKSZ];
     char *name;
+    char namestk[CSTR_STKSZ];
+    char *addr;
+    ssize_t sz;
 
-    path = get_cstr_bytes(env, jbpath);
-    if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() path fail  errno: %d", errno);
-        return;
+    addr = get_direct_addr(env, jbuf, pos, len);
+    if (addr == NULL) {
+        throw_ioexc(env, "JNIEnv->GetDirectBufferAddress() fail");
+        goto out1;
     }
 
-    name = get_cstr_bytes(env, jbname);
-    if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() name fail  errno: %d", errno);
-        goto out;
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
     }
 
-    ok = !removexattr(path, name, options);
-    if (!ok && (!force || (errno != ENOENT && errno != ENOATTR))) {
-        throw_ioexc(env, "removexattr(2) fail  force: %d errno: %d options: %#x name: %s path: %s", force, errno, options, name, path);
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out2;
     }
 
-    free(name);
-out:
-    free(path);
-}
-
-JNIEXPORT void JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1fremovexattr(
-        JNIEnv *env,
-        jclass cls,
-        jint fd,
-        jbyteArray bname,
-        jint options,
-        jboolean force)
-{
-    int e;
-    char *name;
-
-    name = get_cstr_bytes(env, bname);
-    if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() `name' fail  errno: %d", errno);
-        return;
+    /* Zero-sized buffer means size probe to getxattr(2)  treat nonzero value as ERANGE */
+    sz = x_getxattr(path, name, len != 0 ? addr : NULL, len, options);
+    if (sz > 0 && len == 0) {
+        errno = ERANGE;
+        sz = -1;
     }
 
-    e = fremovexattr(fd, name, options);
-    if (e != 0 && (!force || (errno != ENOENT && errno != ENOATTR))) {
-        throw_ioexc(env, "fremovexattr(2) fail  errno: %d fd: %d name: %s options: %#x force: %d", errno, fd, name, options, force);
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_GETXATTR, errno, jbpath, -1, jbname, options);
+    } else {
+        out = (jint) sz;    /* NOTE: 0 <= sz <= len */
     }
 
-    free(name);
+    put_cstr_bytes(name, namestk);
+out2:
+    put_cstr_bytes(path, pathstk);
+out1:
+    return out;
 }
 
 /**
- * List extended attribute names for a given path
- * @jbpath      UTF-8 encoded path
- * @options     Options passed to listxattr(2)
- * @return      An java.lang.String array contains all extended attribute names
- *              An empty array if given path have no xattr at all
- * @throws      IOException if operation cannot complete or failed
+ * see: Java_net_trineo_xattr4j_XAttr4J__1getxattrbuf()
  */
-JNIEXPORT jobjectArray JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1listxattr(
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fgetxattrbuf(
         JNIEnv *env,
         jclass cls,
-        jbyteArray jbpath,
+        jint fd,
+        jbyteArray bname,
+        jobject jbuf,
+        jint pos,
+        jint len,
         jint options)
 {
-    jobjectArray arr = NULL;
-    char *path;
+    jint out = -1;
+    char *name;
+    char namestk[CSTR_STKSZ];
+    char *addr;
     ssize_t sz;
-    ssize_t sz2;
-    char *namebuf;
-    char *cursor;
-    size_t cnt, i;
-    jstring *jnamebuf;
 
-    path = get_cstr_bytes(env, jbpath);
-    if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() path fail  errno: %d", errno);
-        goto out1;
+    addr = get_direct_addr(env, jbuf, pos, len);
+    if (addr == NULL) {
+        throw_ioexc(env, "JNIEnv->GetDirectBufferAddress() fail");
+        goto out;
     }
 
-out_replay:
-    sz = listxattr(path, NULL, 0, options);
-    if (sz < 0) {
-        throw_ioexc(env, "listxattr(2) fail  errno: %d options: %#x path: %s", errno, options, path);
-        goto out2;
+    name = get_cstr_bytes(env, bname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out;
     }
 
-    if (sz == 0) {
-        arr = (*env)->NewObjectArray(env, 0, java_lang_String, NULL);
-        if (arr == NULL) throw_ioexc(env, "JNIEnv->NewObjectArray() fail  sz: %zd", sz);
-        goto out2;
+    sz = x_fgetxattr(fd, name, len != 0 ? addr : NULL, len, options);
+    if (sz > 0 && len == 0) {
+        errno = ERANGE;
+        sz = -1;
     }
 
-    namebuf = (char *) malloc(sz);
-    if (namebuf == NULL) {
-        throw_ioexc(env, "malloc(3) fail  errno: %d options: %#x sz: %zd path: %s", errno, options, sz, path);
-        goto out2;
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_FGETXATTR, errno, NULL, fd, bname, options);
+    } else {
+        out = (jint) sz;
     }
 
-    sz2 = listxattr(path, namebuf, sz, options);
-    if (sz2 < 0) {
-        if (errno == ERANGE) {
-            free(namebuf);
-            LOG("TOCTTOU BUG in listxattr(2)  errno: %d options: %#x sz: %zd path: %s", errno, options, sz, path);
-            goto out_replay;
-        }
+    put_cstr_bytes(name, namestk);
+out:
+    return out;
+}
 
-        throw_ioexc(env, "listxattr(2) fail  errno: %d options: %#x sz: %zd path: %s", errno, options, sz, path);
-        goto out3;
+/*
+ * XAttrArena  values(and names) are read straight into a direct buffer
+ *  each entry is described by ARENA_STRIDE ints of an index array  see: XAttr4J#ARENA_*
+ */
+#define ARENA_STRIDE    net_trineo_xattr4j_XAttr4J_ARENA_STRIDE
+#define ARENA_SOURCE    net_trineo_xattr4j_XAttr4J_ARENA_SOURCE
+#define ARENA_NAME_OFF  net_trineo_xattr4j_XAttr4J_ARENA_NAME_OFF
+#define ARENA_NAME_LEN  net_trineo_xattr4j_XAttr4J_ARENA_NAME_LEN
+#define ARENA_VALUE_OFF net_trineo_xattr4j_XAttr4J_ARENA_VALUE_OFF
+#define ARENA_VALUE_LEN net_trineo_xattr4j_XAttr4J_ARENA_VALUE_LEN
+
+/**
+ * xattr_read() into [buf, buf + len)
+ *  zero-sized buffer means size probe to getxattr(2)  treat nonzero result as ERANGE
+ */
+static inline ssize_t arena_read(const struct xreq *r, char *buf, size_t len)
+{
+    ssize_t sz = xattr_read(r, len != 0 ? buf : NULL, len);
+    if (sz > 0 && len == 0) {
+        errno = ERANGE;
+        sz = -1;
     }
+    return sz;
+}
 
-    sz = sz2;       /* NOTE: 0 <= sz2 <= sz */
-    if (sz == 0) {
-        arr = (*env)->NewObjectArray(env, 0, java_lang_String, NULL);
-        if (arr == NULL) throw_ioexc(env, "JNIEnv->NewObjectArray() fail  sz: %zd", sz);
-        goto out3;
+/**
+ * Locate arena memory and load cursor
+ * @cursor      [out] {bytes used, entries}
+ * @return      Arena base address  NULL if failed(exception thrown)
+ */
+static char *arena_begin(JNIEnv *env, jobject arena, jintArray jcursor, jint *cursor, jlong *cap)
+{
+    char *base = (char *) (*env)->GetDirectBufferAddress(env, arena);
+    if (base == NULL) {
+        throw_ioexc(env, "JNIEnv->GetDirectBufferAddress() fail");
+        return NULL;
     }
+    *cap = (*env)->GetDirectBufferCapacity(env, arena);
+    (*env)->GetIntArrayRegion(env, jcursor, 0, 2, cursor);
+    assert(cursor[0] >= 0 && cursor[0] <= *cap);
+    return base;
+}
+
+/**
+ * Read an extended attribute of many files into an arena
+ *  one entry per file  a failed read is an entry with negated errno as value length
+ *
+ * @jbpaths     Pre-encoded paths  NULL if fd-oriented
+ * @jfds        fds  used if jbpaths is NULL
+ * @off         Offset of the first path(fd)
+ * @n           Number of paths(fds) to read
+ * @source      Source of the first entry  incremented per file
+ * @jcursor     [in/out] {bytes used, entries}
+ * @return      Number of files read  less than n if the arena or index got full
+ *              a value larger than the whole arena yields an ERANGE entry
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1arenaget(
+        JNIEnv *env,
+        jclass cls,
+        jobjectArray jbpaths,
+        jintArray jfds,
+        jint off,
+        jint n,
+        jint source,
+        jbyteArray jbname,
+        jint options,
+        jobject arena,
+        jintArray jindex,
+        jintArray jcursor)
+{
+    struct xreq r;
+    jbyteArray jbpath;
+    char *base;
+    jlong cap;
+    jint cursor[2];
+    jint ent[ARENA_STRIDE];
+    jint maxent;
+    char *path = NULL;
+    char pathstk[CSTR_STKSZ];
+    char *name;
+    char namestk[CSTR_STKSZ];
+    ssize_t sz;
+    jint i;
 
-    cnt = 0;
-    cursor = namebuf;
-    do {
-        cnt++;
-        cursor += strlen(cursor) + 1; /* +1 for trailing EOS(end-of-string) */
-    } while (cursor - namebuf < sz);
+    base = arena_begin(env, arena, jcursor, cursor, &cap);
+    if (base == NULL) return 0;
+    maxent = (*env)->GetArrayLength(env, jindex) / ARENA_STRIDE;
 
-    jnamebuf = (jstring *) malloc(sizeof(jstring *) * cnt);
-    if (jnamebuf == NULL) {
-        throw_ioexc(env, "malloc(3) fail size: %zu  errno: %d options: %#x sz: %zd path: %s",
-                            sizeof(jstring *) * cnt, errno, options, sz, path);
-        goto out3;
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return 0;
     }
 
-    cursor = namebuf;
-    for (i = 0; i < cnt; i++) {
-        jnamebuf[i] = (*env)->NewStringUTF(env, cursor);
-        if (jnamebuf[i] == NULL) {
-            throw_ioexc(env, "JNIEnv->NewStringUTF() fail  i: %zu cursor: %s options: %#x sz: %zd path: %s",
-                                i, cursor, options, sz, path);
-            while (i--) (*env)->DeleteLocalRef(env, jnamebuf[i]);
-            goto out4;
+    r.path = NULL;
+    r.fd = -1;
+    r.name = name;
+    r.options = options;
+
+    for (i = 0; i < n && cursor[1] < maxent; i++) {
+        if (jbpaths != NULL) {
+            jbpath = (jbyteArray) (*env)->GetObjectArrayElement(env, jbpaths, off + i);
+            assert_nonnull(jbpath);
+            path = get_cstr_bytes(env, jbpath, pathstk);
+            (*env)->DeleteLocalRef(env, jbpath);
+            if (path == NULL) {
+                throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+                break;
+            }
+            r.path = path;
+        } else {
+            (*env)->GetIntArrayRegion(env, jfds, off + i, 1, &r.fd);
         }
-        cursor += strlen(cursor) + 1;
-    }
 
-    arr = (*env)->NewObjectArray(env, cnt, java_lang_String, NULL);
-    if (arr == NULL) {
-        /* i must be cnt at this moment */
-        while (i--) (*env)->DeleteLocalRef(env, jnamebuf[i]);
-        throw_ioexc(env, "JNIEnv->NewObjectArray() fail  cnt: %zu options: %#x sz: %zd path: %s",
-                            cnt, options, sz, path);
-        goto out4;
-    }
+        sz = arena_read(&r, base + cursor[0], (size_t) (cap - cursor[0]));
+        if (path != NULL) {
+            put_cstr_bytes(path, pathstk);
+            path = NULL;
+        }
+
+        /* Doesn't fit the rest  caller consumes entries, resets and resumes */
+        if (sz < 0 && errno == ERANGE && cursor[0] != 0) break;
+
+        ent[ARENA_SOURCE] = source + i;
+        ent[ARENA_NAME_OFF] = -1;
+        ent[ARENA_NAME_LEN] = 0;
+        ent[ARENA_VALUE_OFF] = cursor[0];
+        ent[ARENA_VALUE_LEN] = sz >= 0 ? (jint) sz : -errno;
+        (*env)->SetIntArrayRegion(env, jindex, cursor[1] * ARENA_STRIDE, ARENA_STRIDE, ent);
 
-    for (i = 0; i < cnt; i++) {
-        (*env)->SetObjectArrayElement(env, arr, i, jnamebuf[i]);
-        /* see: https://stackoverflow.com/q/4369974/10725426 */
-        (*env)->DeleteLocalRef(env, jnamebuf[i]);
+        if (sz > 0) cursor[0] += (jint) sz;
+        cursor[1]++;
     }
 
-out4:
-    free(jnamebuf);
-out3:
-    free(namebuf);
-out2:
-    free(path);
-out1:
-    return arr;
+    (*env)->SetIntArrayRegion(env, jcursor, 0, 2, cursor);
+    put_cstr_bytes(name, namestk);
+    return i;
 }
 
 /**
- * see: Java_net_trineo_xattr4j_XAttr4J__1listxattr()
+ * Read all extended attributes(names and values) of a file into an arena
+ *  the name list is laid out first  each entry refers to its name within it
+ *  a name removed in between is skipped
+ *
+ * @jbpath      Pre-encoded path  NULL if fd-oriented
+ * @jbprefix    NUL-terminated name prefix  NULL if not filtered
+ * @jcursor     [in/out] {bytes used, entries}  untouched unless succeeded
+ * @return      Number of entries appended  negated errno if failed
+ *              -ERANGE if they don't fit the arena or index
  */
-JNIEXPORT jobjectArray JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1flistxattr(
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1arenagetall(
         JNIEnv *env,
         jclass cls,
+        jbyteArray jbpath,
         jint fd,
-        jint options)
+        jbyteArray jbprefix,
+        jint options,
+        jint source,
+        jobject arena,
+        jintArray jindex,
+        jintArray jcursor)
 {
-    jobjectArray arr = NULL;
+    struct xreq r;
+    char *base;
+    jlong cap;
+    jint cursor[2];
+    jint ent[ARENA_STRIDE];
+    jint maxent;
+    jint pos;
+    jint count = 0;
+    char *path = NULL;
+    char pathstk[CSTR_STKSZ];
+    char prefix[CSTR_STKSZ];
+    size_t plen = 0;
+    char *names;
+    ssize_t len;
     ssize_t sz;
-    ssize_t sz2;
-    char *namebuf;
-    char *cursor;
-    size_t cnt, i;
-    jstring *jnamebuf;
-
-out_replay:
-    sz = flistxattr(fd, NULL, 0, options);
-    if (sz < 0) {
-        throw_ioexc(env, "flistxattr(2) fail  errno: %d fd: %d options: %#x", errno, fd, options);
-        goto out1;
-    }
-
-    if (sz == 0) {
-        arr = (*env)->NewObjectArray(env, 0, java_lang_String, NULL);
-        if (arr == NULL) throw_ioexc(env, "JNIEnv->NewObjectArray() fail  sz: %zd", sz);
-        goto out1;
+    size_t i;
+    int e = 0;
+
+    base = arena_begin(env, arena, jcursor, cursor, &cap);
+    if (base == NULL) return 0;
+    maxent = (*env)->GetArrayLength(env, jindex) / ARENA_STRIDE;
+
+    if (jbprefix != NULL) {
+        plen = (size_t) (*env)->GetArrayLength(env, jbprefix);
+        if (plen > sizeof(prefix)) return -ERANGE;
+        (*env)->GetByteArrayRegion(env, jbprefix, 0, (jsize) plen, (jbyte *) prefix);
+        plen = strnlen(prefix, plen);
     }
 
-    namebuf = (char *) malloc(sz);
-    if (namebuf == NULL) {
-        throw_ioexc(env, "malloc(3) fail  errno: %d fd: %d options: %#x sz: %zd", errno, fd, options, sz);
-        goto out1;
-    }
-
-    sz2 = flistxattr(fd, namebuf, sz, options);
-    if (sz2 < 0) {
-        if (errno == ERANGE) {
-            free(namebuf);
-            LOG("TOCTTOU BUG in flistxattr(2)  errno: %d fd: %d options: %#x sz: %zd", errno, fd, options, sz);
-            goto out_replay;
+    if (jbpath != NULL) {
+        path = get_cstr_bytes(env, jbpath, pathstk);
+        if (path == NULL) {
+            throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+            return 0;
         }
-
-        throw_ioexc(env, "flistxattr(2) fail  errno: %d fd: %d options: %#x sz: %zd", errno, fd, options, sz);
-        goto out2;
     }
 
-    sz = sz2;       /* NOTE: 0 <= sz2 <= sz */
-    if (sz == 0) {
-        arr = (*env)->NewObjectArray(env, 0, java_lang_String, NULL);
-        if (arr == NULL) throw_ioexc(env, "JNIEnv->NewObjectArray() fail  sz: %zd", sz);
-        goto out2;
+    r.path = path;
+    r.fd = fd;
+    r.name = NULL;
+    r.options = options;
+
+    names = base + cursor[0];
+    len = arena_read(&r, names, (size_t) (cap - cursor[0]));
+    if (len < 0) {
+        e = errno;
+        goto out;
     }
+    pos = cursor[0] + (jint) len;
 
-    cnt = 0;
-    cursor = namebuf;
-    do {
-        cnt++;
-        cursor += strlen(cursor) + 1; /* +1 for trailing EOS(end-of-string) */
-    } while (cursor - namebuf < sz);
+    for (i = 0; i < (size_t) len; i += strlen(names + i) + 1) {
+        /* Name list truncated in between */
+        if (memchr(names + i, '\0', (size_t) len - i) == NULL) break;
+        if (strncmp(names + i, prefix, plen) != 0) continue;
 
-    jnamebuf = (jstring *) malloc(sizeof(jstring *) * cnt);
-    if (jnamebuf == NULL) {
-        throw_ioexc(env, "malloc(3) fail size: %zu  errno: %d fd: %d options: %#x sz: %zd",
-                            sizeof(jstring *) * cnt, errno, fd, options, sz);
-        goto out2;
-    }
+        if (cursor[1] + count >= maxent) {
+            e = ERANGE;
+            goto out;
+        }
 
-    cursor = namebuf;
-    for (i = 0; i < cnt; i++) {
-        jnamebuf[i] = (*env)->NewStringUTF(env, cursor);
-        if (jnamebuf[i] == NULL) {
-            throw_ioexc(env, "JNIEnv->NewStringUTF() fail  i: %zu cursor: %s fd: %d options: %#x sz: %zd",
-                                i, cursor, fd, options, sz);
-            while (i--) (*env)->DeleteLocalRef(env, jnamebuf[i]);
-            goto out3;
+        r.name = names + i;
+        sz = arena_read(&r, base + pos, (size_t) (cap - pos));
+        if (sz < 0) {
+            if (errno == ENOATTR) continue;
+            e = errno;
+            goto out;
         }
-        cursor += strlen(cursor) + 1;
-    }
 
-    arr = (*env)->NewObjectArray(env, cnt, java_lang_String, NULL);
-    if (arr == NULL) {
-        /* i must be cnt at this moment */
-        while (i--) (*env)->DeleteLocalRef(env, jnamebuf[i]);
-        throw_ioexc(env, "JNIEnv->NewObjectArray() fail  cnt: %zu fd: %d options: %#x sz: %zd",
-                            cnt, fd, options, sz);
-        goto out3;
-    }
+        ent[ARENA_SOURCE] = source;
+        ent[ARENA_NAME_OFF] = (jint) (names + i - base);
+        ent[ARENA_NAME_LEN] = (jint) strlen(names + i);
+        ent[ARENA_VALUE_OFF] = pos;
+        ent[ARENA_VALUE_LEN] = (jint) sz;
+        (*env)->SetIntArrayRegion(env, jindex, (cursor[1] + count) * ARENA_STRIDE, ARENA_STRIDE, ent);
 
-    for (i = 0; i < cnt; i++) {
-        (*env)->SetObjectArrayElement(env, arr, i, jnamebuf[i]);
-        /* see: https://stackoverflow.com/q/4369974/10725426 */
-        (*env)->DeleteLocalRef(env, jnamebuf[i]);
+        pos += (jint) sz;
+        count++;
     }
 
-out3:
-    free(jnamebuf);
-out2:
-    free(namebuf);
-out1:
-    return arr;
+    cursor[0] = pos;
+    cursor[1] += count;
+    (*env)->SetIntArrayRegion(env, jcursor, 0, 2, cursor);
+
+out:
+    if (path != NULL) put_cstr_bytes(path, pathstk);
+    return e == 0 ? count : -e;
 }
 
-/**
- * Fast wrapper of getxattr(2)
- * @return      size of the xattr value     possibly zero
- * @throws      IOException if I/O error or denoted xattr name do not exist
- *
- * This fast wrapper can be used to probe existence of a specific xattr
- *
- * ASK: use a jboolean to differentiate IOExceptions between
- *      denoted xattr do not exist and other IO errors
- */
-JNIEXPORT jlong JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1sizexattr(
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1setxattr0(
         JNIEnv *env,
         jclass cls,
         jbyteArray jbpath,
         jbyteArray jbname,
+        jbyteArray jbvalue,
         jint options)
 {
-    jlong sz = -1;  /* -1 isn't a valid size */
     char *path;
+    char pathstk[CSTR_STKSZ];
     char *name;
+    char namestk[CSTR_STKSZ];
+    jbyte *value;
+    jsize sz;
 
-    path = get_cstr_bytes(env, jbpath);
+    path = get_cstr_bytes(env, jbpath, pathstk);
     if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() path fail  errno: %d", errno);
-        goto out1;
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
     }
 
-    name = get_cstr_bytes(env, jbname);
+    name = get_cstr_bytes(env, jbname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() name fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
+    }
+
+    value = (*env)->GetByteArrayElements(env, jbvalue, NULL);
+    if (value == NULL) {
+        /* OutOfMemoryError is pending */
         goto out2;
     }
 
-    sz = (jlong) getxattr(path, name, NULL, 0, 0, options);
-    if (sz < 0) {
-        throw_ioexc(env, "getxattr(2) fail  errno: %d options: %#x name: %s path: %s", errno, options, name, path);
+    sz = (*env)->GetArrayLength(env, jbvalue);
+
+    if (x_setxattr(path, name, value, (size_t) sz, options) < 0) {
+        throw_xattr_exc(env, OP_SETXATTR, errno, jbpath, -1, jbname, options);
     }
 
-    free(name);
+    (*env)->ReleaseByteArrayElements(env, jbvalue, value, JNI_ABORT);
 out2:
-    free(path);
+    put_cstr_bytes(name, namestk);
 out1:
-    return sz;
+    put_cstr_bytes(path, pathstk);
 }
 
-JNIEXPORT jlong JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1fsizexattr(
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fsetxattr0(
         JNIEnv *env,
         jclass cls,
         jint fd,
         jbyteArray bname,
+        jbyteArray bvalue,
         jint options)
 {
-    jlong sz = -1;  /* -1 isn't a valid size */
     char *name;
+    char namestk[CSTR_STKSZ];
+    jbyte *value;
+    jsize sz;
 
-    name = get_cstr_bytes(env, bname);
+    name = get_cstr_bytes(env, bname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() `name' fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
+    }
+
+    value = (*env)->GetByteArrayElements(env, bvalue, NULL);
+    if (value == NULL) {
+        /* OutOfMemoryError is pending */
         goto out;
     }
 
-    sz = (jlong) fgetxattr(fd, name, NULL, 0, 0, options);
-    if (sz < 0) {
-        throw_ioexc(env, "fgetxattr(2) fail  errno: %d fd: %d name: %s options: %#x", errno, fd, name, options);
+    sz = (*env)->GetArrayLength(env, bvalue);
+    if (x_fsetxattr(fd, name, value, (size_t) sz, options) < 0) {
+        throw_xattr_exc(env, OP_FSETXATTR, errno, NULL, fd, bname, options);
     }
 
-    free(name);
+    (*env)->ReleaseByteArrayElements(env, bvalue, value, JNI_ABORT);
 out:
-    return sz;
+    put_cstr_bytes(name, namestk);
 }
 
-JNIEXPORT jboolean JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1existxattr(
+/**
+ * Set an extended attribute value directly from a direct buffer
+ */
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1setxattrbuf(
         JNIEnv *env,
         jclass cls,
         jbyteArray jbpath,
         jbyteArray jbname,
+        jobject jbuf,
+        jint pos,
+        jint len,
         jint options)
 {
-    jboolean exists = JNI_FALSE;
     char *path;
+    char pathstk[CSTR_STKSZ];
     char *name;
+    char namestk[CSTR_STKSZ];
+    char *addr;
+
+    addr = get_direct_addr(env, jbuf, pos, len);
+    if (addr == NULL) {
+        throw_ioexc(env, "JNIEnv->GetDirectBufferAddress() fail");
+        return;
+    }
 
-    path = get_cstr_bytes(env, jbpath);
+    path = get_cstr_bytes(env, jbpath, pathstk);
     if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() path fail  errno: %d", errno);
-        goto out1;
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
     }
 
-    name = get_cstr_bytes(env, jbname);
+    name = get_cstr_bytes(env, jbname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() name fail  errno: %d", errno);
-        goto out2;
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out;
     }
 
-    exists = getxattr(path, name, NULL, 0, 0, options) >= 0;
-    if (!exists && errno != ENOATTR) {
-        /* Throw if given `path' doesn't exist(ENOENT) */
-        throw_ioexc(env, "getxattr(2) fail  errno: %d options: %#x name: %s path: %s", errno, options, name, path);
+    if (x_setxattr(path, name, addr, (size_t) len, options) < 0) {
+        throw_xattr_exc(env, OP_SETXATTR, errno, jbpath, -1, jbname, options);
     }
 
-    free(name);
-out2:
-    free(path);
-out1:
-    return exists;
+    put_cstr_bytes(name, namestk);
+out:
+    put_cstr_bytes(path, pathstk);
 }
 
-JNIEXPORT jboolean JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1fexistxattr(
+/**
+ * see: Java_net_trineo_xattr4j_XAttr4J__1setxattrbuf()
+ */
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fsetxattrbuf(
         JNIEnv *env,
         jclass cls,
         jint fd,
         jbyteArray bname,
+        jobject jbuf,
+        jint pos,
+        jint len,
         jint options)
 {
-    jboolean exists = JNI_FALSE;
     char *name;
+    char namestk[CSTR_STKSZ];
+    char *addr;
+
+    addr = get_direct_addr(env, jbuf, pos, len);
+    if (addr == NULL) {
+        throw_ioexc(env, "JNIEnv->GetDirectBufferAddress() fail");
+        return;
+    }
 
-    name = get_cstr_bytes(env, bname);
+    name = get_cstr_bytes(env, bname, namestk);
     if (name == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() `name' fail  errno: %d", errno);
-        goto out;
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
     }
 
-    exists = fgetxattr(fd, name, NULL, 0, 0, options) >= 0;
-    if (!exists && errno != ENOATTR) {
-        /* Will throw if given `fd' isn't valid(EBADF) */
-        throw_ioexc(env, "fgetxattr(2) fail  errno: %d fd:%d name: %s options: %#x", errno, fd, name, options);
+    if (x_fsetxattr(fd, name, addr, (size_t) len, options) < 0) {
+        throw_xattr_exc(env, OP_FSETXATTR, errno, NULL, fd, bname, options);
     }
 
-    free(name);
-out:
-    return exists;
+    put_cstr_bytes(name, namestk);
 }
 
-JNIEXPORT jlong JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1xattrsizebits(
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1removexattr0(
         JNIEnv *env,
         jclass cls,
-        jbyteArray bpath)
+        jbyteArray jbpath,
+        jbyteArray jbname,
+        jint options,
+        jboolean force)
 {
-    long bits = -1;
+    int ok;
     char *path;
+    char pathstk[CSTR_STKSZ];
+    char *name;
+    char namestk[CSTR_STKSZ];
 
-    path = get_cstr_bytes(env, bpath);
+    path = get_cstr_bytes(env, jbpath, pathstk);
     if (path == NULL) {
-        throw_ioexc(env, "get_cstr_bytes() `path' fail  errno: %d", errno);
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
+    }
+
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
         goto out;
     }
 
-    errno = 0;
-    bits = pathconf(path, _PC_XATTR_SIZE_BITS);
-    /* see: pathconf(2) RETURN VALUES */
-    if (bits < 0 && errno != 0) {
-        throw_ioexc(env, "pathconf(2) fail  errno: %d path: %s", errno, path);
+    ok = !x_removexattr(path, name, options);
+    if (!ok && (!force || (errno != ENOENT && errno != ENOATTR))) {
+        throw_xattr_exc(env, OP_REMOVEXATTR, errno, jbpath, -1, jbname, options);
     }
 
-    free(path);
+    put_cstr_bytes(name, namestk);
 out:
-    return bits;    /* Possibly be -1? */
+    put_cstr_bytes(path, pathstk);
 }
 
-JNIEXPORT jlong JNICALL
-Java_net_trineo_xattr4j_XAttr4J__1fxattrsizebits(
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fremovexattr0(
         JNIEnv *env,
         jclass cls,
-        jint fd)
+        jint fd,
+        jbyteArray bname,
+        jint options,
+        jboolean force)
 {
-    long bits = -1;
+    int e;
+    char *name;
+    char namestk[CSTR_STKSZ];
 
-    errno = 0;
-    bits = fpathconf(fd, _PC_XATTR_SIZE_BITS);
-    /* see: fpathconf(2) RETURN VALUES */
+    name = get_cstr_bytes(env, bname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
+    }
+
+    e = x_fremovexattr(fd, name, options);
+    if (e != 0 && (!force || (errno != ENOENT && errno != ENOATTR))) {
+        throw_xattr_exc(env, OP_FREMOVEXATTR, errno, NULL, fd, bname, options);
+    }
+
+    put_cstr_bytes(name, namestk);
+}
+
+/**
+ * Copy a native buffer into a new Java byte array
+ * @return      NULL if JNIEnv->NewByteArray() failed(OutOfMemoryError pending)
+ */
+static jbyteArray new_byte_array(JNIEnv *env, const char *buf, ssize_t sz)
+{
+    jbyteArray out = (*env)->NewByteArray(env, sz);
+    if (out != NULL) (*env)->SetByteArrayRegion(env, out, 0, sz, (const jbyte *) buf);
+    return out;
+}
+
+/**
+ * @prefixes    NUL-separated name prefixes
+ * @psz         Size of prefixes
+ * @return      true if name starts with any of prefixes
+ */
+static int match_prefixes(const char *name, const char *prefixes, size_t psz)
+{
+    const char *p;
+    size_t plen;
+
+    for (p = prefixes; p < prefixes + psz; p += plen + 1) {
+        plen = strlen(p);
+        if (plen != 0 && strncmp(name, p, plen) == 0) return 1;
+    }
+
+    return 0;
+}
+
+/**
+ * Drop names not starting with any of given prefixes from a NUL-separated name buffer in place
+ * @return      Size of the compacted buffer
+ */
+static ssize_t filter_names(char *namebuf, ssize_t sz, const char *prefixes, size_t psz)
+{
+    char *cursor = namebuf;
+    char *end = namebuf + sz;
+    char *out = namebuf;
+    size_t len;
+
+    while (cursor < end) {
+        len = strlen(cursor) + 1;   /* +1 for trailing EOS(end-of-string) */
+        if (match_prefixes(cursor, prefixes, psz)) {
+            if (out != cursor) memmove(out, cursor, len);
+            out += len;
+        }
+        cursor += len;
+    }
+
+    return out - namebuf;
+}
+
+/**
+ * List names into a Java byte array  optionally filtered by prefixes
+ * @jbprefix    NUL-separated UTF-8 name prefixes  NULL if not filtered
+ * @return      NULL if failed(exception pending)
+ */
+static jbyteArray list_names(JNIEnv *env, struct xreq *r, jbyteArray jbpath, jbyteArray jbprefix)
+{
+    jbyteArray out = NULL;
+    char *prefix = NULL;
+    char prefixstk[CSTR_STKSZ];
+    char *namebuf;
+    ssize_t sz;
+
+    if (jbprefix != NULL) {
+        prefix = get_cstr_bytes(env, jbprefix, prefixstk);
+        if (prefix == NULL) {
+            throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+            goto out1;
+        }
+    }
+
+    sz = xattr_read_all(r, &namebuf);
+    if (sz < 0) {
+        if (r->path != NULL) {
+            throw_xattr_exc(env, OP_LISTXATTR, errno, jbpath, -1, NULL, r->options);
+        } else {
+            throw_xattr_exc(env, OP_FLISTXATTR, errno, NULL, r->fd, NULL, r->options);
+        }
+        goto out2;
+    }
+
+    /* Non-matching names never reach JVM */
+    /* +1 for the EOS appended by get_cstr_bytes() */
+    if (prefix != NULL) sz = filter_names(namebuf, sz, prefix, (*env)->GetArrayLength(env, jbprefix) + 1);
+
+    out = new_byte_array(env, namebuf, sz);
+    put_read_buf(namebuf);
+out2:
+    if (prefix != NULL) put_cstr_bytes(prefix, prefixstk);
+out1:
+    return out;
+}
+
+/**
+ * @jbprefix    NUL-separated UTF-8 name prefixes  NULL if not filtered
+ * @return      NUL-separated UTF-8 names as listxattr(2) returned
+ *              decoding is left to Java side(standard UTF-8  names can be interned)
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1listxattr0(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jbyteArray jbprefix,
+        jint options)
+{
+    jbyteArray out = NULL;
+    struct xreq r;
+    char *path;
+    char pathstk[CSTR_STKSZ];
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out;
+    }
+
+    r.path = path;
+    r.fd = -1;
+    r.name = NULL;
+    r.options = options;
+
+    out = list_names(env, &r, jbpath, jbprefix);
+
+    put_cstr_bytes(path, pathstk);
+out:
+    return out;
+}
+
+/**
+ * see: Java_net_trineo_xattr4j_XAttr4J__1listxattr0()
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1flistxattr0(
+        JNIEnv *env,
+        jclass cls,
+        jint fd,
+        jbyteArray jbprefix,
+        jint options)
+{
+    struct xreq r;
+
+    r.path = NULL;
+    r.fd = fd;
+    r.name = NULL;
+    r.options = options;
+
+    return list_names(env, &r, NULL, jbprefix);
+}
+
+/*
+ * Packed layout of all extended attributes of a file
+ *  each entry is laid out as
+ *      name(UTF-8)  NUL  value length(4 bytes, big-endian)  value
+ *  see: XAttr4J#unpackAll()
+ */
+#define PACK_HDRSZ      4
+
+/**
+ * Append a value entry to packed buffer  grow it if necessary
+ * @bufp        [in, out] packed buffer(malloc(3)ed)
+ * @capp        [in, out] capacity of the packed buffer
+ * @off         Current length of the packed buffer
+ * @return      New length  -1 if failed(errno will set)
+ *              ENOATTR if the attribute vanished in the meantime
+ */
+static ssize_t pack_value(const struct xreq *r, char **bufp, size_t *capp, size_t off)
+{
+    size_t namesz = strlen(r->name) + 1;
+    size_t hdr = off + namesz + PACK_HDRSZ;
+    size_t cap;
+    char *buf;
+    ssize_t len = -1;
+    int i;
+
+    for (i = 0; i < REPLAY_MAX; i++) {
+        if (*capp > hdr) {
+            len = xattr_read(r, *bufp + hdr, *capp - hdr);
+            if (len >= 0 || errno != ERANGE) break;
+        }
+
+        /* Probe size then grow the packed buffer geometrically */
+        len = xattr_read(r, NULL, 0);
+        if (len < 0) break;
+
+        cap = *capp << 1;
+        if (cap < hdr + len) cap = hdr + len;
+
+        buf = (char *) realloc(*bufp, cap);
+        if (buf == NULL) return -1;
+        *bufp = buf;
+        *capp = cap;
+        len = -1;
+        errno = ERANGE;
+    }
+
+    if (len < 0) return -1;
+
+    buf = *bufp + off;
+    (void) memcpy(buf, r->name, namesz);
+    buf += namesz;
+    buf[0] = (char) (len >> 24);
+    buf[1] = (char) (len >> 16);
+    buf[2] = (char) (len >> 8);
+    buf[3] = (char) len;
+
+    return hdr + len;
+}
+
+/**
+ * Read all extended attributes(names and values) into a packed buffer
+ * @r           Request  name will be overwritten
+ * @prefixes    NUL-separated name prefixes  NULL if not filtered
+ * @psz         Size of prefixes
+ * @bufp        [out] packed buffer  must be free via free(3)
+ * @return      Length of packed buffer  -1 if failed(errno will set)
+ */
+static ssize_t pack_all(struct xreq *r, const char *prefixes, size_t psz, char **bufp)
+{
+    char *namebuf;
+    char *names;
+    char *cursor;
+    char *buf;
+    size_t cap;
+    ssize_t sz;
+    ssize_t off = 0;
+    ssize_t n;
+    int e;
+
+    *bufp = NULL;
+    r->name = NULL;
+
+    sz = xattr_read_all(r, &namebuf);
+    if (sz <= 0) return sz;
+
+    /* namebuf may reside in scratch buffer  which is also used by xattr_read() callers */
+    names = (char *) malloc(sz);
+    if (names == NULL) {
+        e = errno;
+        put_read_buf(namebuf);
+        errno = e;
+        return -1;
+    }
+    (void) memcpy(names, namebuf, sz);
+    put_read_buf(namebuf);
+
+    if (prefixes != NULL) {
+        sz = filter_names(names, sz, prefixes, psz);
+        if (sz == 0) {
+            free(names);
+            return 0;
+        }
+    }
+
+    /* Guess: names plus headers plus some room for values */
+    cap = sz * 2 + 4096;
+    buf = (char *) malloc(cap);
+    if (buf == NULL) goto out_fail;
+
+    for (cursor = names; cursor - names < sz; cursor += strlen(cursor) + 1) {
+        r->name = cursor;
+        n = pack_value(r, &buf, &cap, off);
+        if (n < 0) {
+            if (errno != ENOATTR) goto out_fail;
+            /* Removed after listxattr(2)  simply skip it */
+            LOG("xattr vanished  name: %s path: %s fd: %d", cursor, r->path != NULL ? r->path : "(fd)", r->fd);
+            continue;
+        }
+        off = n;
+    }
+
+    r->name = NULL;
+    free(names);
+    *bufp = buf;
+    return off;
+
+out_fail:
+    e = errno;
+    r->name = NULL;
+    free(buf);
+    free(names);
+    errno = e;
+    return -1;
+}
+
+/**
+ * Open a regular file or directory for fd-oriented xattr syscalls
+ *  other types are never opened  since opening devices may have side effects
+ *  e.g. a tape rewinds on close  a watchdog gets armed  FIFOs and ttys block or take over
+ * @options     XATTR_NOFOLLOW to fail rather than follow a symlink
+ * @return      fd  -1 if the file cannot(or should not) be opened  errno is meaningless
+ */
+static int open_regdir(const char *path, int options)
+{
+    struct stat st;
+    int flags;
+    int fd;
+
+    if (((options & X4J_NOFOLLOW) ? lstat(path, &st) : stat(path, &st)) != 0) return -1;
+    if (!S_ISREG(st.st_mode) && !S_ISDIR(st.st_mode)) return -1;
+
+    flags = O_RDONLY | O_NONBLOCK | O_NOCTTY;
+#ifdef O_CLOEXEC
+    flags |= O_CLOEXEC;
+#endif
+    if (options & X4J_NOFOLLOW) flags |= O_NOFOLLOW;
+    fd = open(path, flags);
+
+    /* Replaced in between */
+    if (fd >= 0 && (fstat(fd, &st) != 0 || (!S_ISREG(st.st_mode) && !S_ISDIR(st.st_mode)))) {
+        (void) close(fd);
+        fd = -1;
+    }
+
+    return fd;
+}
+
+/**
+ * Read all extended attributes of a given path
+ *  the file will be opened once so that following syscalls won't resolve path again
+ *  only regular files and directories are opened  see: open_regdir()
+ * @return      Packed byte[] array  see: pack_value()
+ * @throws      IOException if operation cannot complete or failed
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1getallxattrs(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jint options)
+{
+    jbyteArray out = NULL;
+    struct xreq r;
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    char *buf;
+    ssize_t sz;
+    int fd;
+    int e;
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
+    }
+
+    /*
+     * Fallback to path-oriented syscalls if the file cannot(or should not) be opened
+     *  e.g. EACCES  a symlink while XATTR_NOFOLLOW is requested  devices, FIFOs, sockets
+     */
+    fd = open_regdir(path, options);
+    r.path = fd < 0 ? path : NULL;
+    r.fd = fd;
+    r.options = fd < 0 ? options : options & ~X4J_NOFOLLOW;
+
+    sz = pack_all(&r, NULL, 0, &buf);
+    e = errno;
+    if (fd >= 0) (void) close(fd);
+
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_GETALLXATTRS, e, jbpath, -1, NULL, options);
+        goto out2;
+    }
+
+    out = (*env)->NewByteArray(env, sz);
+    /* OutOfMemoryError is pending if JNIEnv->NewByteArray() failed */
+    if (out != NULL) (*env)->SetByteArrayRegion(env, out, 0, sz, (jbyte *) buf);
+
+    free(buf);
+out2:
+    put_cstr_bytes(path, pathstk);
+out1:
+    return out;
+}
+
+/**
+ * see: Java_net_trineo_xattr4j_XAttr4J__1getallxattrs()
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fgetallxattrs(
+        JNIEnv *env,
+        jclass cls,
+        jint fd,
+        jint options)
+{
+    jbyteArray out = NULL;
+    struct xreq r;
+    char *buf;
+    ssize_t sz;
+
+    r.path = NULL;
+    r.fd = fd;
+    r.options = options;
+
+    sz = pack_all(&r, NULL, 0, &buf);
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_FGETALLXATTRS, errno, NULL, fd, NULL, options);
+        goto out;
+    }
+
+    out = (*env)->NewByteArray(env, sz);
+    /* OutOfMemoryError is pending if JNIEnv->NewByteArray() failed */
+    if (out != NULL) (*env)->SetByteArrayRegion(env, out, 0, sz, (jbyte *) buf);
+
+    free(buf);
+out:
+    return out;
+}
+
+/**
+ * Fast wrapper of getxattr(2)
+ * @return      size of the xattr value     possibly zero
+ * @throws      IOException if I/O error or denoted xattr name do not exist
+ *
+ * This fast wrapper can be used to probe existence of a specific xattr
+ *
+ * ASK: use a jboolean to differentiate IOExceptions between
+ *      denoted xattr do not exist and other IO errors
+ */
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1sizexattr0(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jbyteArray jbname,
+        jint options)
+{
+    jlong sz = -1;  /* -1 isn't a valid size */
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    char *name;
+    char namestk[CSTR_STKSZ];
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
+    }
+
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out2;
+    }
+
+    sz = (jlong) x_getxattr(path, name, NULL, 0, options);
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_GETXATTR, errno, jbpath, -1, jbname, options);
+    }
+
+    put_cstr_bytes(name, namestk);
+out2:
+    put_cstr_bytes(path, pathstk);
+out1:
+    return sz;
+}
+
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fsizexattr0(
+        JNIEnv *env,
+        jclass cls,
+        jint fd,
+        jbyteArray bname,
+        jint options)
+{
+    jlong sz = -1;  /* -1 isn't a valid size */
+    char *name;
+    char namestk[CSTR_STKSZ];
+
+    name = get_cstr_bytes(env, bname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out;
+    }
+
+    sz = (jlong) x_fgetxattr(fd, name, NULL, 0, options);
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_FGETXATTR, errno, NULL, fd, bname, options);
+    }
+
+    put_cstr_bytes(name, namestk);
+out:
+    return sz;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1existxattr0(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jbyteArray jbname,
+        jint options,
+        jboolean force)
+{
+    jboolean exists = JNI_FALSE;
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    char *name;
+    char namestk[CSTR_STKSZ];
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
+    }
+
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out2;
+    }
+
+    exists = x_getxattr(path, name, NULL, 0, options) >= 0;
+    if (!exists && errno != ENOATTR && (!force || !is_absent(errno))) {
+        /* Throw if given `path' doesn't exist(ENOENT) unless forced */
+        throw_xattr_exc(env, OP_GETXATTR, errno, jbpath, -1, jbname, options);
+    }
+
+    put_cstr_bytes(name, namestk);
+out2:
+    put_cstr_bytes(path, pathstk);
+out1:
+    return exists;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fexistxattr0(
+        JNIEnv *env,
+        jclass cls,
+        jint fd,
+        jbyteArray bname,
+        jint options)
+{
+    jboolean exists = JNI_FALSE;
+    char *name;
+    char namestk[CSTR_STKSZ];
+
+    name = get_cstr_bytes(env, bname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out;
+    }
+
+    exists = x_fgetxattr(fd, name, NULL, 0, options) >= 0;
+    if (!exists && errno != ENOATTR) {
+        /* Will throw if given `fd' isn't valid(EBADF) */
+        throw_xattr_exc(env, OP_FGETXATTR, errno, NULL, fd, bname, options);
+    }
+
+    put_cstr_bytes(name, namestk);
+out:
+    return exists;
+}
+
+/**
+ * Non-throwing variant of sizexattr
+ * @return      size of the xattr value  negated errno if failed
+ *
+ * Never throws  so that miss-heavy probes cost no more than the syscall
+ */
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1trysizexattr0(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jbyteArray jbname,
+        jint options)
+{
+    jlong sz;
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    char *name;
+    char namestk[CSTR_STKSZ];
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        sz = -errno;
+        goto out1;
+    }
+
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        sz = -errno;
+        goto out2;
+    }
+
+    sz = (jlong) x_getxattr(path, name, NULL, 0, options);
+    if (sz < 0) sz = -errno;
+
+    put_cstr_bytes(name, namestk);
+out2:
+    put_cstr_bytes(path, pathstk);
+out1:
+    return sz;
+}
+
+/**
+ * see: Java_net_trineo_xattr4j_XAttr4J__1trysizexattr0()
+ */
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1ftrysizexattr0(
+        JNIEnv *env,
+        jclass cls,
+        jint fd,
+        jbyteArray bname,
+        jint options)
+{
+    jlong sz;
+    char *name;
+    char namestk[CSTR_STKSZ];
+
+    name = get_cstr_bytes(env, bname, namestk);
+    if (name == NULL) {
+        sz = -errno;
+        goto out;
+    }
+
+    sz = (jlong) x_fgetxattr(fd, name, NULL, 0, options);
+    if (sz < 0) sz = -errno;
+
+    put_cstr_bytes(name, namestk);
+out:
+    return sz;
+}
+
+/**
+ * @return      ENOATTR of current platform
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1enoattr(
+        JNIEnv *env,
+        jclass cls)
+{
+    return ENOATTR;
+}
+
+/**
+ * Fill jstats[] with slow path statistics of getxattr(2)/listxattr(2) reads
+ *  [0] scratch misses  [1] TOCTTOU replays
+ * @reset       Zero counters after read
+ */
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1readstats(
+        JNIEnv *env,
+        jclass cls,
+        jlongArray jstats,
+        jboolean reset)
+{
+    jlong stats[2];
+
+    stats[0] = STAT_GET(stat_scratch_miss, reset);
+    stats[1] = STAT_GET(stat_replay, reset);
+    (*env)->SetLongArrayRegion(env, jstats, 0, 2, stats);
+}
+
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1xattrsizebits(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray bpath)
+{
+    long bits = -1;
+    char *path;
+    char pathstk[CSTR_STKSZ];
+
+    path = get_cstr_bytes(env, bpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out;
+    }
+
+    errno = 0;
+    bits = x_pathconf_sizebits(path);
+    /* see: pathconf(2) RETURN VALUES */
+    if (bits < 0 && errno != 0) {
+        throw_xattr_exc(env, OP_PATHCONF, errno, bpath, -1, NULL, 0);
+    }
+
+    put_cstr_bytes(path, pathstk);
+out:
+    return bits;    /* Possibly be -1? */
+}
+
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fxattrsizebits(
+        JNIEnv *env,
+        jclass cls,
+        jint fd)
+{
+    long bits = -1;
+
+    errno = 0;
+    bits = x_fpathconf_sizebits(fd);
+    /* see: fpathconf(2) RETURN VALUES */
     if (bits < 0 && errno != 0) {
-        throw_ioexc(env, "fpathconf(2) fail  errno: %d fd: %d", errno, fd);
+        throw_xattr_exc(env, OP_FPATHCONF, errno, NULL, fd, NULL, 0);
+    }
+
+    return bits;    /* Possibly be -1? */
+}
+
+#ifdef __APPLE__
+#define ST_CTIME_NSEC(st)   ((st)->st_ctimespec.tv_nsec)
+#else
+#define ST_CTIME_NSEC(st)   ((st)->st_ctim.tv_nsec)
+#endif
+
+/* Layout of jst[]  see: XAttrCache */
+#define STAT_DEV            0
+#define STAT_INO            1
+#define STAT_CTIME_SEC      2
+#define STAT_CTIME_NSEC     3
+#define STAT_MAX            4
+
+static void put_stat(JNIEnv *env, jlongArray jst, const struct stat *st)
+{
+    jlong buf[STAT_MAX];
+
+    buf[STAT_DEV] = (jlong) st->st_dev;
+    buf[STAT_INO] = (jlong) st->st_ino;
+    buf[STAT_CTIME_SEC] = (jlong) st->st_ctime;
+    buf[STAT_CTIME_NSEC] = (jlong) ST_CTIME_NSEC(st);
+
+    (*env)->SetLongArrayRegion(env, jst, 0, STAT_MAX, buf);
+}
+
+/**
+ * Fill jst[] with device  inode number and ctime of a file
+ *  any xattr change bumps ctime  thus it can be used to validate cached xattrs
+ * @options     XATTR_NOFOLLOW to stat a symlink itself
+ */
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1stat(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jint options,
+        jlongArray jst)
+{
+    struct stat st;
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    int e;
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
+    }
+
+    e = (options & X4J_NOFOLLOW) ? lstat(path, &st) : stat(path, &st);
+    if (e != 0) {
+        throw_xattr_exc(env, OP_STAT, errno, jbpath, -1, NULL, options);
+    } else {
+        put_stat(env, jst, &st);
+    }
+
+    put_cstr_bytes(path, pathstk);
+}
+
+/**
+ * see: Java_net_trineo_xattr4j_XAttr4J__1stat()
+ */
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fstat(
+        JNIEnv *env,
+        jclass cls,
+        jint fd,
+        jlongArray jst)
+{
+    struct stat st;
+
+    if (fstat(fd, &st) != 0) {
+        throw_xattr_exc(env, OP_FSTAT, errno, NULL, fd, NULL, 0);
+    } else {
+        put_stat(env, jst, &st);
     }
+}
 
-    return bits;    /* Possibly be -1? */
+/*
+ * Directory-relative syscalls for XAttrWalker
+ *  each directory is opened once  its entries are accessed relative to the directory fd
+ *  so that kernel never resolves full paths from the root
+ */
+
+#ifndef O_CLOEXEC
+#define O_CLOEXEC           0
+#endif
+
+/* Entry types of _readdir() output  see: XAttrWalker */
+#define DENT_DIR            'd'
+#define DENT_REG            'f'
+#define DENT_OTHER          'o'     /* Symlinks, devices, FIFOs, sockets  never opened */
+
+/**
+ * Open a directory relative to a directory fd  symlinks are never followed
+ * @dirfd       Directory fd  negative for current working directory
+ * @return      Directory fd  -1 if failed(exception pending)
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1opendirat(
+        JNIEnv *env,
+        jclass cls,
+        jint dirfd,
+        jbyteArray jbname)
+{
+    char *name;
+    char namestk[CSTR_STKSZ];
+    int fd;
+
+    name = get_cstr_bytes(env, jbname, namestk);
+    if (name == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return -1;
+    }
+
+    fd = openat(dirfd < 0 ? AT_FDCWD : dirfd, name, O_RDONLY | O_DIRECTORY | O_NOFOLLOW | O_CLOEXEC);
+    if (fd < 0) {
+        throw_xattr_exc(env, OP_OPENAT, errno, jbname, dirfd, NULL, 0);
+    }
+
+    put_cstr_bytes(name, namestk);
+    return fd;
+}
+
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1close(
+        JNIEnv *env,
+        jclass cls,
+        jint fd)
+{
+    (void) close(fd);
+}
+
+/**
+ * Open a file for fd-oriented xattr syscalls  see: XAttrFdCache
+ *  only regular files and directories are opened  so that opening devices has no side effect
+ * @options     XATTR_NOFOLLOW to fail rather than follow a symlink
+ * @return      fd  -1 if the file cannot(or should not) be opened  no exception thrown
+ *              the caller falls back to path-oriented syscalls
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1openattr(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jint options)
+{
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    int fd;
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) return -1;
+
+    fd = open_regdir(path, options);
+
+    put_cstr_bytes(path, pathstk);
+    return fd;
+}
+
+/**
+ * Read the fd of a java.io.FileDescriptor or a FileChannel of the default file system
+ *  field IDs are cached by init()  the file is never looked up by path
+ * @obj         FileDescriptor or FileChannel(nonnull)
+ * @return      fd  -1 if closed
+ *              -2 if obj is neither a FileDescriptor nor a FileChannelImpl  or its field is unknown
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1fileno(
+        JNIEnv *env,
+        jclass cls,
+        jobject obj)
+{
+    jobject fdobj;
+    jint fd;
+
+    if (file_descriptor_fd == NULL) return -2;
+
+    if ((*env)->IsInstanceOf(env, obj, file_descriptor)) {
+        fd = (*env)->GetIntField(env, obj, file_descriptor_fd);
+    } else if (file_channel_impl_fd != NULL && (*env)->IsInstanceOf(env, obj, file_channel_impl)) {
+        fdobj = (*env)->GetObjectField(env, obj, file_channel_impl_fd);
+        if (fdobj == NULL) return -1;
+        fd = (*env)->GetIntField(env, fdobj, file_descriptor_fd);
+        (*env)->DeleteLocalRef(env, fdobj);
+    } else {
+        return -2;
+    }
+
+    return fd >= 0 ? fd : -1;
+}
+
+#ifdef O_PATH
+/* Whether f*xattr(2) accept O_PATH fds  -1 if not yet probed */
+static volatile int opath_xattr = -1;
+
+static int probe_opath_xattr(int fd)
+{
+    int ok = opath_xattr;
+    if (ok < 0) {
+        ok = fgetxattr(fd, "user.xattr4j.probe", NULL, 0) >= 0 || errno != EBADF;
+        opath_xattr = ok;
+    }
+    return ok;
+}
+#endif
+
+/**
+ * Open a long-lived handle of XAttrFile
+ *
+ * Linux: open(2) with O_PATH  which needs no read permission and has no side effect on any file type
+ *  f*xattr(2) reject O_PATH fds on older kernels(EBADF)  in which case
+ *  a regular file or directory is reopened O_RDONLY via /proc/self/fd  i.e. the very same inode
+ *  otherwise the O_PATH fd is kept and operations go through /proc/self/fd/<fd>
+ * Elsewhere: open(2) with O_RDONLY
+ *
+ * @options     XATTR_NOFOLLOW to open a symlink itself(or fail with ELOOP without O_PATH)
+ * @kind        [out] kind[0] FILE_FD if fd-oriented syscalls apply  FILE_PROC if via /proc/self/fd
+ * @return      fd  -1 if failed  in which case XAttrException thrown
+ */
+JNIEXPORT jint JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1openfile(
+        JNIEnv *env,
+        jclass cls,
+        jbyteArray jbpath,
+        jint options,
+        jintArray jkind)
+{
+    char *path;
+    char pathstk[CSTR_STKSZ];
+    int flags = O_NONBLOCK | O_NOCTTY;
+    jint kind = net_trineo_xattr4j_XAttr4J_FILE_FD;
+    int fd;
+    int e;
+#ifdef O_PATH
+    struct stat st;
+    char proc[32];
+    int fd2;
+#endif
+
+    path = get_cstr_bytes(env, jbpath, pathstk);
+    if (path == NULL) return -1;
+
+#ifdef O_CLOEXEC
+    flags |= O_CLOEXEC;
+#endif
+    if (options & X4J_NOFOLLOW) flags |= O_NOFOLLOW;
+
+#ifdef O_PATH
+    fd = open(path, O_PATH | (flags & ~O_NONBLOCK));
+    if (fd < 0 || probe_opath_xattr(fd)) goto out;
+
+    (void) snprintf(proc, sizeof(proc), "/proc/self/fd/%d", fd);
+    e = 0;
+    if (fstat(fd, &st) == 0 && (S_ISREG(st.st_mode) || S_ISDIR(st.st_mode))) {
+        fd2 = open(proc, O_RDONLY | (flags & ~O_NOFOLLOW));
+        if (fd2 >= 0) {
+            (void) close(fd);
+            fd = fd2;
+            goto out;
+        }
+        e = errno;
+    }
+
+    if (access("/proc/self/fd", F_OK) == 0) {
+        kind = net_trineo_xattr4j_XAttr4J_FILE_PROC;
+    } else {
+        (void) close(fd);
+        fd = -1;
+        errno = e != 0 ? e : EBADF;
+    }
+#else
+    fd = open(path, O_RDONLY | flags);
+#endif
+
+out:
+    e = errno;
+    if (fd >= 0) {
+        (*env)->SetIntArrayRegion(env, jkind, 0, 1, &kind);
+    } else {
+        throw_xattr_exc(env, OP_OPEN, e, jbpath, -1, NULL, options);
+    }
+    put_cstr_bytes(path, pathstk);
+    return fd;
+}
+
+static char dent_type(int dirfd, const struct dirent *d)
+{
+    struct stat st;
+
+#ifdef DT_UNKNOWN
+    switch (d->d_type) {
+    case DT_DIR:
+        return DENT_DIR;
+    case DT_REG:
+        return DENT_REG;
+    case DT_UNKNOWN:
+        break;
+    default:
+        return DENT_OTHER;
+    }
+#endif
+
+    /* File system doesn't fill d_type */
+    if (fstatat(dirfd, d->d_name, &st, AT_SYMLINK_NOFOLLOW) != 0) return DENT_OTHER;
+    if (S_ISDIR(st.st_mode)) return DENT_DIR;
+    if (S_ISREG(st.st_mode)) return DENT_REG;
+    return DENT_OTHER;
+}
+
+/**
+ * Read all entries of a directory  "." and ".." excluded
+ * @return      Packed entries  each laid out as type(1 byte)  name(UTF-8)  NUL
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1readdir(
+        JNIEnv *env,
+        jclass cls,
+        jint dirfd)
+{
+    jbyteArray out = NULL;
+    DIR *dir;
+    struct dirent *d;
+    char *buf = NULL;
+    char *p;
+    size_t cap = 4096;
+    size_t off = 0;
+    size_t len;
+    int fd;
+    int e;
+
+    /* closedir(3) closes the fd given to fdopendir(3)  caller still owns dirfd */
+    fd = dup(dirfd);
+    if (fd < 0) {
+        throw_xattr_exc(env, OP_READDIR, errno, NULL, dirfd, NULL, 0);
+        goto out1;
+    }
+
+    dir = fdopendir(fd);
+    if (dir == NULL) {
+        e = errno;
+        (void) close(fd);
+        throw_xattr_exc(env, OP_READDIR, e, NULL, dirfd, NULL, 0);
+        goto out1;
+    }
+    /* The duplicated fd shares file offset with dirfd */
+    rewinddir(dir);
+
+    buf = (char *) malloc(cap);
+    if (buf == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out2;
+    }
+
+    for (;;) {
+        errno = 0;
+        d = readdir(dir);
+        if (d == NULL) {
+            if (errno != 0) {
+                throw_xattr_exc(env, OP_READDIR, errno, NULL, dirfd, NULL, 0);
+                goto out2;
+            }
+            break;
+        }
+
+        if (d->d_name[0] == '.' && (d->d_name[1] == '\0' ||
+                (d->d_name[1] == '.' && d->d_name[2] == '\0'))) continue;
+
+        len = strlen(d->d_name) + 1;
+        if (off + 1 + len > cap) {
+            cap = (cap << 1) + len;
+            p = (char *) realloc(buf, cap);
+            if (p == NULL) {
+                throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+                goto out2;
+            }
+            buf = p;
+        }
+
+        buf[off] = dent_type(dirfd, d);
+        (void) memcpy(buf + off + 1, d->d_name, len);
+        off += 1 + len;
+    }
+
+    out = new_byte_array(env, buf, off);
+out2:
+    free(buf);
+    (void) closedir(dir);
+out1:
+    return out;
+}
+
+/**
+ * Read all extended attributes of a directory entry  see: Java_net_trineo_xattr4j_XAttr4J__1getallxattrs()
+ * @dirfd       Directory fd
+ * @jbname      Entry name relative to dirfd  NULL for dirfd itself
+ * @jbprefix    NUL-separated UTF-8 name prefixes  NULL if not filtered
+ * @return      Packed byte[] array  see: pack_value()
+ * @throws      XAttrException if the entry cannot be opened(symlinks never followed)
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1getallxattrsat(
+        JNIEnv *env,
+        jclass cls,
+        jint dirfd,
+        jbyteArray jbname,
+        jbyteArray jbprefix,
+        jint options)
+{
+    jbyteArray out = NULL;
+    struct xreq r;
+    char *name = NULL;
+    char namestk[CSTR_STKSZ];
+    char *prefix = NULL;
+    char prefixstk[CSTR_STKSZ];
+    size_t psz = 0;
+    char *buf;
+    ssize_t sz;
+    int fd = dirfd;
+    int e;
+
+    if (jbprefix != NULL) {
+        prefix = get_cstr_bytes(env, jbprefix, prefixstk);
+        if (prefix == NULL) {
+            throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+            goto out1;
+        }
+        /* +1 for the EOS appended by get_cstr_bytes() */
+        psz = (*env)->GetArrayLength(env, jbprefix) + 1;
+    }
+
+    if (jbname != NULL) {
+        name = get_cstr_bytes(env, jbname, namestk);
+        if (name == NULL) {
+            throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+            goto out2;
+        }
+
+        /* O_NONBLOCK|O_NOCTTY so that opening FIFOs, ttys won't block nor take over */
+        fd = openat(dirfd, name, O_RDONLY | O_NONBLOCK | O_NOCTTY | O_NOFOLLOW | O_CLOEXEC);
+        if (fd < 0) {
+            throw_xattr_exc(env, OP_OPENAT, errno, jbname, dirfd, NULL, options);
+            goto out3;
+        }
+    }
+
+    r.path = NULL;
+    r.fd = fd;
+    r.options = options & ~X4J_NOFOLLOW;
+
+    sz = pack_all(&r, prefix, psz, &buf);
+    e = errno;
+    if (fd != dirfd) (void) close(fd);
+
+    if (sz < 0) {
+        throw_xattr_exc(env, OP_FGETALLXATTRS, e, jbname, dirfd, NULL, options);
+        goto out3;
+    }
+
+    out = new_byte_array(env, buf, sz);
+    free(buf);
+out3:
+    if (name != NULL) put_cstr_bytes(name, namestk);
+out2:
+    if (prefix != NULL) put_cstr_bytes(prefix, prefixstk);
+out1:
+    return out;
+}
+
+/*
+ * io_uring engine  submits a whole batch of [f]getxattr/[f]setxattr in one io_uring_enter(2)
+ *  raw syscalls are used  thus no liburing dependency
+ * Ops of the batch come from XAttrRing  which never passes XATTR_NOFOLLOW nor unknown options
+ *  since io_uring xattr ops always follow symlinks
+ * see: io_uring(7)  linux/io_uring/xattr.c
+ */
+
+#define URING_GETXATTR      net_trineo_xattr4j_XAttr4J_URING_GETXATTR
+#define URING_FGETXATTR     net_trineo_xattr4j_XAttr4J_URING_FGETXATTR
+#define URING_SETXATTR      net_trineo_xattr4j_XAttr4J_URING_SETXATTR
+#define URING_FSETXATTR     net_trineo_xattr4j_XAttr4J_URING_FSETXATTR
+
+#ifdef X4J_URING
+
+struct x_uring {
+    int fd;
+    unsigned sq_entries;
+    unsigned *sq_head;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+    struct io_uring_sqe *sqes;
+    void *sq_ptr;
+    size_t sq_sz;
+    void *cq_ptr;           /* Same as sq_ptr if IORING_FEAT_SINGLE_MMAP */
+    size_t cq_sz;
+    size_t sqes_sz;
+};
+
+static const unsigned char uring_opcodes[] = {
+    [URING_GETXATTR] = IORING_OP_GETXATTR,
+    [URING_FGETXATTR] = IORING_OP_FGETXATTR,
+    [URING_SETXATTR] = IORING_OP_SETXATTR,
+    [URING_FSETXATTR] = IORING_OP_FSETXATTR,
+};
+
+/**
+ * @return      1 if all xattr opcodes supported  0 o.w.
+ */
+static int uring_probe(int fd)
+{
+    struct io_uring_probe *p;
+    size_t i;
+    int ok = 0;
+
+    p = (struct io_uring_probe *) calloc(1, sizeof(*p) + 256 * sizeof(struct io_uring_probe_op));
+    if (p == NULL) return 0;
+
+    if (syscall(__NR_io_uring_register, fd, IORING_REGISTER_PROBE, p, 256) < 0) goto out;
+
+    for (i = 0; i < sizeof(uring_opcodes) / sizeof(*uring_opcodes); i++) {
+        if (uring_opcodes[i] > p->last_op) goto out;
+        if (!(p->ops[uring_opcodes[i]].flags & IO_URING_OP_SUPPORTED)) goto out;
+    }
+    ok = 1;
+out:
+    free(p);
+    return ok;
+}
+
+static void uring_free(struct x_uring *u)
+{
+    if (u->sqes != NULL) (void) munmap(u->sqes, u->sqes_sz);
+    if (u->cq_ptr != NULL && u->cq_ptr != u->sq_ptr) (void) munmap(u->cq_ptr, u->cq_sz);
+    if (u->sq_ptr != NULL) (void) munmap(u->sq_ptr, u->sq_sz);
+    if (u->fd >= 0) (void) close(u->fd);
+    free(u);
+}
+
+static struct x_uring *uring_open(unsigned entries)
+{
+    struct io_uring_params p;
+    struct x_uring *u;
+    char *sq, *cq;
+    unsigned i;
+
+    u = (struct x_uring *) calloc(1, sizeof(*u));
+    if (u == NULL) return NULL;
+
+    memset(&p, 0, sizeof(p));
+    p.flags = IORING_SETUP_CLAMP;
+    /* ENOSYS if kernel lacks io_uring  EPERM if disabled(kernel.io_uring_disabled or seccomp) */
+    u->fd = (int) syscall(__NR_io_uring_setup, entries, &p);
+    if (u->fd < 0) {
+        LOG("io_uring_setup() fail  errno: %d", errno);
+        goto out_fail;
+    }
+    (void) fcntl(u->fd, F_SETFD, FD_CLOEXEC);
+
+    if (!uring_probe(u->fd)) {
+        LOG("io_uring xattr opcodes not supported");
+        goto out_fail;
+    }
+
+    u->sq_sz = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    u->cq_sz = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        if (u->cq_sz > u->sq_sz) u->sq_sz = u->cq_sz;
+        u->cq_sz = u->sq_sz;
+    }
+
+    u->sq_ptr = mmap(NULL, u->sq_sz, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, u->fd, IORING_OFF_SQ_RING);
+    if (u->sq_ptr == MAP_FAILED) {
+        u->sq_ptr = NULL;
+        goto out_fail;
+    }
+
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        u->cq_ptr = u->sq_ptr;
+    } else {
+        u->cq_ptr = mmap(NULL, u->cq_sz, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, u->fd, IORING_OFF_CQ_RING);
+        if (u->cq_ptr == MAP_FAILED) {
+            u->cq_ptr = NULL;
+            goto out_fail;
+        }
+    }
+
+    u->sqes_sz = p.sq_entries * sizeof(struct io_uring_sqe);
+    u->sqes = (struct io_uring_sqe *) mmap(NULL, u->sqes_sz, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, u->fd, IORING_OFF_SQES);
+    if (u->sqes == MAP_FAILED) {
+        u->sqes = NULL;
+        goto out_fail;
+    }
+
+    sq = (char *) u->sq_ptr;
+    cq = (char *) u->cq_ptr;
+    u->sq_entries = p.sq_entries;
+    u->sq_head = (unsigned *) (sq + p.sq_off.head);
+    u->sq_tail = (unsigned *) (sq + p.sq_off.tail);
+    u->sq_mask = (unsigned *) (sq + p.sq_off.ring_mask);
+    u->sq_array = (unsigned *) (sq + p.sq_off.array);
+    u->cq_head = (unsigned *) (cq + p.cq_off.head);
+    u->cq_tail = (unsigned *) (cq + p.cq_off.tail);
+    u->cq_mask = (unsigned *) (cq + p.cq_off.ring_mask);
+    u->cqes = (struct io_uring_cqe *) (cq + p.cq_off.cqes);
+
+    /* SQ array maps ring slots to SQEs one to one */
+    for (i = 0; i < p.sq_entries; i++) u->sq_array[i] = i;
+
+    return u;
+
+out_fail:
+    uring_free(u);
+    return NULL;
+}
+
+static int uring_enter(int fd, unsigned to_submit, unsigned min_complete)
+{
+    return (int) syscall(__NR_io_uring_enter, fd, to_submit, min_complete, IORING_ENTER_GETEVENTS, NULL, 0);
 }
 
+/**
+ * Submit k prepared SQEs and reap all of their completions
+ * @res         [out] res[user_data] = cqe->res
+ * @return      0 if succeeded  errno o.w.
+ */
+static int uring_run(struct x_uring *u, unsigned k, jint *res)
+{
+    unsigned submitted = 0, completed = 0;
+    unsigned head, tail;
+    int e = 0;
+    int n;
+
+    /* Once failed  only wait for in-flight SQEs  they reference buffers of this round */
+    while (completed < (e ? submitted : k)) {
+        n = uring_enter(u->fd, e ? 0 : k - submitted, (e ? submitted : k) - completed);
+        if (n < 0) {
+            if (errno == EINTR || errno == EAGAIN || errno == EBUSY) continue;
+            if (e != 0) return e;
+            e = errno;
+            /* Take back SQEs kernel hasn't consumed  lest next round submit them */
+            __atomic_store_n(u->sq_tail, __atomic_load_n(u->sq_head, __ATOMIC_ACQUIRE), __ATOMIC_RELEASE);
+            continue;
+        }
+        if (e == 0) submitted += (unsigned) n;
+
+        head = *u->cq_head;
+        tail = __atomic_load_n(u->cq_tail, __ATOMIC_ACQUIRE);
+        while (head != tail) {
+            struct io_uring_cqe *cqe = &u->cqes[head & *u->cq_mask];
+            res[cqe->user_data] = cqe->res;
+            head++;
+            completed++;
+        }
+        __atomic_store_n(u->cq_head, head, __ATOMIC_RELEASE);
+    }
+
+    return e;
+}
+
+#endif  /* X4J_URING */
+
+/**
+ * @entries     Requested submission queue size(clamped by kernel)
+ * @return      Ring handle  0 if io_uring or its xattr opcodes unavailable
+ */
+JNIEXPORT jlong JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1uringopen(
+        JNIEnv *env,
+        jclass cls,
+        jint entries)
+{
+#ifdef X4J_URING
+    assert(entries > 0);
+    return (jlong) (uintptr_t) uring_open((unsigned) entries);
+#else
+    UNUSED(entries);
+    return 0;
+#endif
+}
+
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1uringclose(
+        JNIEnv *env,
+        jclass cls,
+        jlong ring)
+{
+#ifdef X4J_URING
+    if (ring != 0) uring_free((struct x_uring *) (uintptr_t) ring);
+#else
+    UNUSED(ring);
+#endif
+}
+
+/**
+ * Run a batch through io_uring  in rounds of at most sq_entries operations
+ * @jops        URING_* of each operation
+ * @jbpaths     NUL-terminated UTF-8 paths  NULL entries for fd-oriented ones
+ * @jfds        fds of fd-oriented operations
+ * @jbnames     NUL-terminated UTF-8 names
+ * @values      Values of set operations  [out] values of succeeded get operations
+ * @jsizes      Buffer sizes of get operations
+ * @joptions    Options of each operation
+ * @jerrnos     [out] errno of each operation  0 if succeeded
+ *              ERANGE if a value exceeds its buffer size
+ * @throws      XAttrException if the batch itself cannot complete
+ */
+JNIEXPORT void JNICALL
+Java_net_trineo_xattr4j_XAttr4J__1uringsubmit(
+        JNIEnv *env,
+        jclass cls,
+        jlong ring,
+        jintArray jops,
+        jobjectArray jbpaths,
+        jintArray jfds,
+        jobjectArray jbnames,
+        jobjectArray values,
+        jintArray jsizes,
+        jintArray joptions,
+        jintArray jerrnos)
+{
+#ifdef X4J_URING
+    struct x_uring *u = (struct x_uring *) (uintptr_t) ring;
+    jint *ops, *fds, *sizes, *options, *res;
+    char **bufs;
+    char *arena;
+    size_t arena_sz;
+    jsize n, base, k, i;
+    jbyteArray jb;
+    jbyteArray out;
+    int e;
+
+    assert_nonnull(u);
+
+    n = (*env)->GetArrayLength(env, jops);
+    if (n == 0) return;
+
+    /* ops, fds, sizes, options, res  in one allocation */
+    ops = (jint *) malloc(sizeof(jint) * n * 5);
+    if (ops == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        return;
+    }
+    fds = ops + n;
+    sizes = fds + n;
+    options = sizes + n;
+    res = options + n;
+
+    /* bufs[i] of a get operation points to its value buffer in arena */
+    bufs = (char **) malloc(sizeof(*bufs) * u->sq_entries);
+    if (bufs == NULL) {
+        throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+        goto out1;
+    }
+
+    (*env)->GetIntArrayRegion(env, jops, 0, n, ops);
+    (*env)->GetIntArrayRegion(env, jfds, 0, n, fds);
+    (*env)->GetIntArrayRegion(env, jsizes, 0, n, sizes);
+    (*env)->GetIntArrayRegion(env, joptions, 0, n, options);
+
+    for (base = 0; base < n; base += k) {
+        unsigned tail = *u->sq_tail;
+        char *p;
+
+        k = n - base;
+        if ((unsigned) k > u->sq_entries) k = (jsize) u->sq_entries;
+
+        /* Size the round  path, name and value bytes of all operations */
+        arena_sz = 0;
+        for (i = base; i < base + k; i++) {
+            jb = (jbyteArray) (*env)->GetObjectArrayElement(env, jbnames, i);
+            arena_sz += (*env)->GetArrayLength(env, jb) + 1;
+            (*env)->DeleteLocalRef(env, jb);
+
+            if (ops[i] == URING_GETXATTR || ops[i] == URING_SETXATTR) {
+                jb = (jbyteArray) (*env)->GetObjectArrayElement(env, jbpaths, i);
+                arena_sz += (*env)->GetArrayLength(env, jb) + 1;
+                (*env)->DeleteLocalRef(env, jb);
+            }
+
+            if (ops[i] == URING_GETXATTR || ops[i] == URING_FGETXATTR) {
+                arena_sz += sizes[i];
+            } else {
+                jb = (jbyteArray) (*env)->GetObjectArrayElement(env, values, i);
+                arena_sz += (*env)->GetArrayLength(env, jb);
+                (*env)->DeleteLocalRef(env, jb);
+            }
+        }
+
+        arena = (char *) malloc(arena_sz ? arena_sz : 1);
+        if (arena == NULL) {
+            throw_xattr_exc(env, OP_MALLOC, errno, NULL, -1, NULL, 0);
+            goto out2;
+        }
+
+        p = arena;
+        for (i = base; i < base + k; i++) {
+            struct io_uring_sqe *sqe = &u->sqes[(tail + (unsigned) (i - base)) & *u->sq_mask];
+            jsize len;
+
+            memset(sqe, 0, sizeof(*sqe));
+            sqe->opcode = uring_opcodes[ops[i]];
+            sqe->user_data = (__u64) (i - base);
+
+            jb = (jbyteArray) (*env)->GetObjectArrayElement(env, jbnames, i);
+            len = (*env)->GetArrayLength(env, jb);
+            (*env)->GetByteArrayRegion(env, jb, 0, len, (jbyte *) p);
+            (*env)->DeleteLocalRef(env, jb);
+            /* Trailing NUL of a pre-encoded name is harmless */
+            p[len] = '\0';
+            sqe->addr = (__u64) (uintptr_t) p;
+            p += len + 1;
+
+            if (ops[i] == URING_GETXATTR || ops[i] == URING_SETXATTR) {
+                jb = (jbyteArray) (*env)->GetObjectArrayElement(env, jbpaths, i);
+                len = (*env)->GetArrayLength(env, jb);
+                (*env)->GetByteArrayRegion(env, jb, 0, len, (jbyte *) p);
+                (*env)->DeleteLocalRef(env, jb);
+                p[len] = '\0';
+                sqe->addr3 = (__u64) (uintptr_t) p;
+                p += len + 1;
+            } else {
+                sqe->fd = fds[i];
+            }
+
+            if (ops[i] == URING_GETXATTR || ops[i] == URING_FGETXATTR) {
+                bufs[i - base] = p;
+                sqe->addr2 = (__u64) (uintptr_t) p;
+                sqe->len = (__u32) sizes[i];
+                p += sizes[i];
+            } else {
+                jb = (jbyteArray) (*env)->GetObjectArrayElement(env, values, i);
+                len = (*env)->GetArrayLength(env, jb);
+                (*env)->GetByteArrayRegion(env, jb, 0, len, (jbyte *) p);
+                (*env)->DeleteLocalRef(env, jb);
+                bufs[i - base] = NULL;
+                sqe->addr2 = (__u64) (uintptr_t) p;
+                sqe->len = (__u32) len;
+                sqe->xattr_flags = (__u32) x_setflags(options[i]);
+                p += len;
+            }
+        }
+
+        __atomic_store_n(u->sq_tail, tail + (unsigned) k, __ATOMIC_RELEASE);
+
+        e = uring_run(u, (unsigned) k, res + base);
+        if (e != 0) {
+            free(arena);
+            throw_xattr_exc(env, OP_IO_URING_ENTER, e, NULL, u->fd, NULL, 0);
+            goto out2;
+        }
+
+        for (i = base; i < base + k; i++) {
+            if (res[i] < 0) {
+                res[i] = -res[i];
+                continue;
+            }
+
+            /* Never trust a length beyond the buffer */
+            if (bufs[i - base] != NULL && res[i] > sizes[i]) {
+                res[i] = ERANGE;
+                continue;
+            }
+
+            if (bufs[i - base] != NULL) {
+                out = new_byte_array(env, bufs[i - base], res[i]);
+                if (out == NULL) {
+                    /* OutOfMemoryError is pending */
+                    free(arena);
+                    goto out2;
+                }
+                (*env)->SetObjectArrayElement(env, values, i, out);
+                (*env)->DeleteLocalRef(env, out);
+            }
+            res[i] = 0;
+        }
+
+        free(arena);
+    }
+
+    (*env)->SetIntArrayRegion(env, jerrnos, 0, n, res);
+
+out2:
+    free(bufs);
+out1:
+    free(ops);
+#else
+    UNUSED(ring, jops, jbpaths, jfds, jbnames, values, jsizes, joptions);
+    UNUSED(jerrnos);
+    throw_ioexc(env, "io_uring not supported");
+#endif
+}
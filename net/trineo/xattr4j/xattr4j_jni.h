@@ -7,6 +7,8 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef net_trineo_xattr4j_XAttr4J_DEFAULT_SCRATCH_SIZE
+#define net_trineo_xattr4j_XAttr4J_DEFAULT_SCRATCH_SIZE 4096L
 #undef net_trineo_xattr4j_XAttr4J_XATTR_NOFOLLOW
 #define net_trineo_xattr4j_XAttr4J_XATTR_NOFOLLOW 1L
 #undef net_trineo_xattr4j_XAttr4J_XATTR_CREATE
@@ -15,110 +17,256 @@ extern "C" {
 #define net_trineo_xattr4j_XAttr4J_XATTR_REPLACE 4L
 #undef net_trineo_xattr4j_XAttr4J_XATTR_SHOWCOMPRESSION
 #define net_trineo_xattr4j_XAttr4J_XATTR_SHOWCOMPRESSION 32L
+#undef net_trineo_xattr4j_XAttr4J_EPERM
+#define net_trineo_xattr4j_XAttr4J_EPERM 1L
+#undef net_trineo_xattr4j_XAttr4J_ENOENT
+#define net_trineo_xattr4j_XAttr4J_ENOENT 2L
+#undef net_trineo_xattr4j_XAttr4J_E2BIG
+#define net_trineo_xattr4j_XAttr4J_E2BIG 7L
+#undef net_trineo_xattr4j_XAttr4J_EBADF
+#define net_trineo_xattr4j_XAttr4J_EBADF 9L
+#undef net_trineo_xattr4j_XAttr4J_EACCES
+#define net_trineo_xattr4j_XAttr4J_EACCES 13L
+#undef net_trineo_xattr4j_XAttr4J_EEXIST
+#define net_trineo_xattr4j_XAttr4J_EEXIST 17L
+#undef net_trineo_xattr4j_XAttr4J_ENOSPC
+#define net_trineo_xattr4j_XAttr4J_ENOSPC 28L
+#undef net_trineo_xattr4j_XAttr4J_ERANGE
+#define net_trineo_xattr4j_XAttr4J_ERANGE 34L
+#undef net_trineo_xattr4j_XAttr4J_STAT_DEV
+#define net_trineo_xattr4j_XAttr4J_STAT_DEV 0L
+#undef net_trineo_xattr4j_XAttr4J_STAT_INO
+#define net_trineo_xattr4j_XAttr4J_STAT_INO 1L
+#undef net_trineo_xattr4j_XAttr4J_STAT_CTIME_SEC
+#define net_trineo_xattr4j_XAttr4J_STAT_CTIME_SEC 2L
+#undef net_trineo_xattr4j_XAttr4J_STAT_CTIME_NSEC
+#define net_trineo_xattr4j_XAttr4J_STAT_CTIME_NSEC 3L
+#undef net_trineo_xattr4j_XAttr4J_STAT_MAX
+#define net_trineo_xattr4j_XAttr4J_STAT_MAX 4L
+#undef net_trineo_xattr4j_XAttr4J_FILE_FD
+#define net_trineo_xattr4j_XAttr4J_FILE_FD 0L
+#undef net_trineo_xattr4j_XAttr4J_FILE_PROC
+#define net_trineo_xattr4j_XAttr4J_FILE_PROC 1L
+#undef net_trineo_xattr4j_XAttr4J_ARENA_SOURCE
+#define net_trineo_xattr4j_XAttr4J_ARENA_SOURCE 0L
+#undef net_trineo_xattr4j_XAttr4J_ARENA_NAME_OFF
+#define net_trineo_xattr4j_XAttr4J_ARENA_NAME_OFF 1L
+#undef net_trineo_xattr4j_XAttr4J_ARENA_NAME_LEN
+#define net_trineo_xattr4j_XAttr4J_ARENA_NAME_LEN 2L
+#undef net_trineo_xattr4j_XAttr4J_ARENA_VALUE_OFF
+#define net_trineo_xattr4j_XAttr4J_ARENA_VALUE_OFF 3L
+#undef net_trineo_xattr4j_XAttr4J_ARENA_VALUE_LEN
+#define net_trineo_xattr4j_XAttr4J_ARENA_VALUE_LEN 4L
+#undef net_trineo_xattr4j_XAttr4J_ARENA_STRIDE
+#define net_trineo_xattr4j_XAttr4J_ARENA_STRIDE 5L
+#undef net_trineo_xattr4j_XAttr4J_URING_GETXATTR
+#define net_trineo_xattr4j_XAttr4J_URING_GETXATTR 0L
+#undef net_trineo_xattr4j_XAttr4J_URING_FGETXATTR
+#define net_trineo_xattr4j_XAttr4J_URING_FGETXATTR 1L
+#undef net_trineo_xattr4j_XAttr4J_URING_SETXATTR
+#define net_trineo_xattr4j_XAttr4J_URING_SETXATTR 2L
+#undef net_trineo_xattr4j_XAttr4J_URING_FSETXATTR
+#define net_trineo_xattr4j_XAttr4J_URING_FSETXATTR 3L
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
  * Method:    init
- * Signature: ()V
+ * Signature: (I)V
  */
 JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J_init
-  (JNIEnv *, jclass);
+  (JNIEnv *, jclass, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _getxattr
- * Signature: ([B[BI)[B
+ * Method:    _getxattr0
+ * Signature: ([B[BIZ)[B
  */
-JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1getxattr
-  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint);
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1getxattr0
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint, jboolean);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _fgetxattr
- * Signature: (I[BI)[B
+ * Method:    _fgetxattr0
+ * Signature: (I[BIZ)[B
  */
-JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1fgetxattr
-  (JNIEnv *, jclass, jint, jbyteArray, jint);
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1fgetxattr0
+  (JNIEnv *, jclass, jint, jbyteArray, jint, jboolean);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _setxattr
+ * Method:    _getxattrbatch
+ * Signature: ([[B[BI[[B[I)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1getxattrbatch
+  (JNIEnv *, jclass, jobjectArray, jbyteArray, jint, jobjectArray, jintArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _fgetxattrbatch
+ * Signature: ([I[BI[[B[I)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fgetxattrbatch
+  (JNIEnv *, jclass, jintArray, jbyteArray, jint, jobjectArray, jintArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _getxattrbuf
+ * Signature: ([B[BLjava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1getxattrbuf
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jobject, jint, jint, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _fgetxattrbuf
+ * Signature: (I[BLjava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1fgetxattrbuf
+  (JNIEnv *, jclass, jint, jbyteArray, jobject, jint, jint, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _setxattr0
  * Signature: ([B[B[BI)V
  */
-JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1setxattr
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1setxattr0
   (JNIEnv *, jclass, jbyteArray, jbyteArray, jbyteArray, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _fsetxattr
+ * Method:    _fsetxattr0
  * Signature: (I[B[BI)V
  */
-JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fsetxattr
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fsetxattr0
   (JNIEnv *, jclass, jint, jbyteArray, jbyteArray, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _removexattr
+ * Method:    _setxattrbuf
+ * Signature: ([B[BLjava/nio/ByteBuffer;III)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1setxattrbuf
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jobject, jint, jint, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _fsetxattrbuf
+ * Signature: (I[BLjava/nio/ByteBuffer;III)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fsetxattrbuf
+  (JNIEnv *, jclass, jint, jbyteArray, jobject, jint, jint, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _removexattr0
  * Signature: ([B[BIZ)V
  */
-JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1removexattr
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1removexattr0
   (JNIEnv *, jclass, jbyteArray, jbyteArray, jint, jboolean);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _fremovexattr
+ * Method:    _fremovexattr0
  * Signature: (I[BIZ)V
  */
-JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fremovexattr
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fremovexattr0
   (JNIEnv *, jclass, jint, jbyteArray, jint, jboolean);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _listxattr
- * Signature: ([BI)[Ljava/lang/String;
+ * Method:    _listxattr0
+ * Signature: ([B[BI)[B
  */
-JNIEXPORT jobjectArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1listxattr
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1listxattr0
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _flistxattr0
+ * Signature: (I[BI)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1flistxattr0
+  (JNIEnv *, jclass, jint, jbyteArray, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _getallxattrs
+ * Signature: ([BI)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1getallxattrs
   (JNIEnv *, jclass, jbyteArray, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _flistxattr
- * Signature: (II)[Ljava/lang/String;
+ * Method:    _fgetallxattrs
+ * Signature: (II)[B
  */
-JNIEXPORT jobjectArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1flistxattr
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1fgetallxattrs
   (JNIEnv *, jclass, jint, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _sizexattr
+ * Method:    _sizexattr0
  * Signature: ([B[BI)J
  */
-JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1sizexattr
+JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1sizexattr0
   (JNIEnv *, jclass, jbyteArray, jbyteArray, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _fsizexattr
+ * Method:    _fsizexattr0
  * Signature: (I[BI)J
  */
-JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1fsizexattr
+JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1fsizexattr0
   (JNIEnv *, jclass, jint, jbyteArray, jint);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _existxattr
- * Signature: ([B[BI)Z
+ * Method:    _existxattr0
+ * Signature: ([B[BIZ)Z
  */
-JNIEXPORT jboolean JNICALL Java_net_trineo_xattr4j_XAttr4J__1existxattr
-  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint);
+JNIEXPORT jboolean JNICALL Java_net_trineo_xattr4j_XAttr4J__1existxattr0
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint, jboolean);
 
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
- * Method:    _fexistxattr
+ * Method:    _fexistxattr0
  * Signature: (I[BI)Z
  */
-JNIEXPORT jboolean JNICALL Java_net_trineo_xattr4j_XAttr4J__1fexistxattr
+JNIEXPORT jboolean JNICALL Java_net_trineo_xattr4j_XAttr4J__1fexistxattr0
+  (JNIEnv *, jclass, jint, jbyteArray, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _trysizexattr0
+ * Signature: ([B[BI)J
+ */
+JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1trysizexattr0
+  (JNIEnv *, jclass, jbyteArray, jbyteArray, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _ftrysizexattr0
+ * Signature: (I[BI)J
+ */
+JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1ftrysizexattr0
   (JNIEnv *, jclass, jint, jbyteArray, jint);
 
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _enoattr
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1enoattr
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _readstats
+ * Signature: ([JZ)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1readstats
+  (JNIEnv *, jclass, jlongArray, jboolean);
+
 /*
  * Class:     net_trineo_xattr4j_XAttr4J
  * Method:    _xattrsizebits
@@ -135,6 +283,118 @@ JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1xattrsizebits
 JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1fxattrsizebits
   (JNIEnv *, jclass, jint);
 
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _stat
+ * Signature: ([BI[J)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1stat
+  (JNIEnv *, jclass, jbyteArray, jint, jlongArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _fstat
+ * Signature: (I[J)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1fstat
+  (JNIEnv *, jclass, jint, jlongArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _opendirat
+ * Signature: (I[B)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1opendirat
+  (JNIEnv *, jclass, jint, jbyteArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _readdir
+ * Signature: (I)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1readdir
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _close
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1close
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _openattr
+ * Signature: ([BI)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1openattr
+  (JNIEnv *, jclass, jbyteArray, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _openfile
+ * Signature: ([BI[I)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1openfile
+  (JNIEnv *, jclass, jbyteArray, jint, jintArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _arenaget
+ * Signature: ([[B[IIII[BILjava/nio/ByteBuffer;[I[I)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1arenaget
+  (JNIEnv *, jclass, jobjectArray, jintArray, jint, jint, jint, jbyteArray, jint, jobject, jintArray, jintArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _arenagetall
+ * Signature: ([BI[BIILjava/nio/ByteBuffer;[I[I)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1arenagetall
+  (JNIEnv *, jclass, jbyteArray, jint, jbyteArray, jint, jint, jobject, jintArray, jintArray);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _fileno
+ * Signature: (Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_net_trineo_xattr4j_XAttr4J__1fileno
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _getallxattrsat
+ * Signature: (I[B[BI)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_net_trineo_xattr4j_XAttr4J__1getallxattrsat
+  (JNIEnv *, jclass, jint, jbyteArray, jbyteArray, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _uringopen
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_net_trineo_xattr4j_XAttr4J__1uringopen
+  (JNIEnv *, jclass, jint);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _uringclose
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1uringclose
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     net_trineo_xattr4j_XAttr4J
+ * Method:    _uringsubmit
+ * Signature: (J[I[[B[I[[B[[B[I[I[I)V
+ */
+JNIEXPORT void JNICALL Java_net_trineo_xattr4j_XAttr4J__1uringsubmit
+  (JNIEnv *, jclass, jlong, jintArray, jobjectArray, jintArray, jobjectArray, jobjectArray, jintArray, jintArray, jintArray);
+
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,55 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrBatchResult;
+
+import com.google.common.base.Preconditions;
+
+class BatchTest {
+    private static final String NAME = "user.xattr4j.batch";
+
+    public static void main(String[] args) throws IOException {
+        File[] files = new File[8];
+        String[] paths = new String[files.length + 1];
+
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+            Preconditions.checkState(files[i].createNewFile(), "%s cannot be created", files[i]);
+            paths[i] = files[i].getAbsolutePath();
+            /* Leave odd files without the attribute */
+            if (i % 2 == 0) XAttr4J.setxattr(files[i], NAME, "value" + i, 0);
+        }
+        /* A path which doesn't exist */
+        paths[files.length] = String.format("/tmp/uuid_%s", UUID.randomUUID().toString());
+
+        XAttrBatchResult r = XAttr4J.getxattrBatch(paths, NAME, 0);
+        Preconditions.checkState(r.size() == paths.length, "Bad batch size %s", r.size());
+        for (int i = 0; i < files.length; i++) {
+            if (i % 2 == 0) {
+                Preconditions.checkState(r.isSuccess(i), "Entry %s failed  errno: %s", i, r.errno(i));
+                String str = new String(r.value(i), StandardCharsets.UTF_8);
+                Preconditions.checkState(str.equals("value" + i), "Bad xattr value %s", str);
+            } else {
+                Preconditions.checkState(!r.isSuccess(i) && r.value(i) == null, "Entry %s should fail", i);
+            }
+        }
+        /* Expect errno 2(ENOENT) */
+        Preconditions.checkState(r.errno(files.length) == 2, "Unexpected errno %s", r.errno(files.length));
+
+        r = XAttr4J.fgetxattrBatch(new int[]{-1}, NAME, 0);
+        /* Expect errno 9(EBADF) */
+        Preconditions.checkState(r.errno(0) == 9, "Unexpected errno %s", r.errno(0));
+
+        r = XAttr4J.getxattrBatch(new String[0], NAME, 0);
+        Preconditions.checkState(r.size() == 0, "Expect empty batch");
+
+        for (File f : files) Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,96 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+
+import net.trineo.xattr4j.XAttr4J;
+
+import com.google.common.base.Preconditions;
+
+class ByteBufferTest {
+    /* Namespace prefix is mandatory on Linux  also a valid name on macOS */
+    private static final String NAME = "user.xattr4j.bytebuffer";
+
+    public static void main(String[] args) throws IOException {
+        test1(ByteBuffer.allocateDirect(64));
+        test1(ByteBuffer.allocate(64));
+
+        System.out.println("\nPass!");
+    }
+
+    private static void assertExMsgContains(Exception e, String str) {
+        Preconditions.checkState(e.getMessage().contains(str),
+                "Unexpected exception message: %s", e);
+        e.printStackTrace();
+    }
+
+    private static void noFail(boolean expr) {
+        Preconditions.checkState(expr, "Operation failed  cannot proceed");
+    }
+
+    private static void test1(ByteBuffer buf) throws IOException {
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        noFail(f.createNewFile());
+
+        byte[] value = "deadbeef".getBytes(StandardCharsets.UTF_8);
+        buf.clear();
+        buf.position(3);
+        buf.put(value);
+        buf.flip();
+        buf.position(3);
+
+        int n = XAttr4J.setxattr(f, NAME, buf, 0);
+        Preconditions.checkState(n == value.length, "Expect %s bytes written  got %s", value.length, n);
+        Preconditions.checkState(!buf.hasRemaining(), "Source buffer should be drained");
+
+        String str = new String(XAttr4J.getxattr(f, NAME, 0), StandardCharsets.UTF_8);
+        Preconditions.checkState(str.equals("deadbeef"), "Bad xattr value %s", str);
+
+        buf.clear();
+        buf.position(5);
+        n = XAttr4J.getxattr(f, NAME, buf, 0);
+        Preconditions.checkState(n == value.length, "Expect %s bytes read  got %s", value.length, n);
+        Preconditions.checkState(buf.position() == 5 + n, "Bad position %s", buf.position());
+
+        byte[] got = new byte[n];
+        buf.position(5);
+        buf.get(got);
+        str = new String(got, StandardCharsets.UTF_8);
+        Preconditions.checkState(str.equals("deadbeef"), "Bad xattr value %s", str);
+
+        /* Insufficient remaining space */
+        buf.clear();
+        buf.limit(value.length - 1);
+        try {
+            XAttr4J.getxattr(f, NAME, buf, 0);
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException e) {
+            /* Expect errno 34(ERANGE) */
+            assertExMsgContains(e, " errno: 34 ");
+        }
+
+        buf.clear();
+        buf.limit(0);
+        try {
+            XAttr4J.getxattr(f, NAME, buf, 0);
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException e) {
+            assertExMsgContains(e, " errno: 34 ");
+        }
+
+        /* Empty value */
+        buf.clear();
+        buf.limit(0);
+        n = XAttr4J.setxattr(f, NAME, buf, XAttr4J.XATTR_REPLACE);
+        Preconditions.checkState(n == 0, "Expect zero bytes written  got %s", n);
+        buf.clear();
+        n = XAttr4J.getxattr(f, NAME, buf, 0);
+        Preconditions.checkState(n == 0, "Expect zero bytes read  got %s", n);
+
+        XAttr4J.removexattr(f, NAME, 0);
+        noFail(f.delete());
+    }
+}
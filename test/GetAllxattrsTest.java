@@ -0,0 +1,51 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+
+import net.trineo.xattr4j.XAttr4J;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+
+class GetAllxattrsTest {
+    private static final String PREFIX = "user.xattr4j.all.";
+
+    public static void main(String[] args) throws IOException {
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+
+        try {
+            XAttr4J.getAllxattrs(f, 0);
+        } catch (IOException e) {
+            /* Expect errno 2(ENOENT) */
+            Preconditions.checkState(e.getMessage().contains(" errno: 2 "), "Unexpected exception message: %s", e.getMessage());
+            e.printStackTrace();
+        }
+
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+
+        Map<String, byte[]> map = XAttr4J.getAllxattrs(f, 0);
+        Preconditions.checkState(map.isEmpty(), "Expect empty map  got %s", map.keySet());
+
+        /* Keep total size small  ext4 only have one block for all xattrs */
+        for (int i = 0; i < 8; i++) {
+            XAttr4J.setxattr(f, PREFIX + i, Strings.repeat("x", i * 100), 0);
+        }
+
+        map = XAttr4J.getAllxattrs(f, XAttr4J.XATTR_NOFOLLOW);
+        Preconditions.checkState(map.size() == 8, "Expect 8 xattrs  got %s", map.keySet());
+        for (int i = 0; i < 8; i++) {
+            byte[] val = map.get(PREFIX + i);
+            Preconditions.checkState(val != null, "Missing xattr %s", PREFIX + i);
+            Preconditions.checkState(Arrays.equals(val, XAttr4J.getxattr(f, PREFIX + i, 0)), "Bad xattr value of %s", PREFIX + i);
+        }
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,56 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrNameList;
+
+import com.google.common.base.Preconditions;
+
+class ListxattrTest {
+    /* U+1F600 is a supplementary character  mangled by modified UTF-8 */
+    private static final String SUPPLEMENTARY = "user.myapp.\ud83d\ude00";
+
+    public static void main(String[] args) throws IOException {
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+
+        String[] names = {"user.myapp.a", "user.other", "user.myapp.b", SUPPLEMENTARY, "user.myap"};
+        for (String name : names) XAttr4J.setxattr(f, name, "x", 0);
+
+        Set<String> all = new HashSet<String>(Arrays.asList(XAttr4J.listxattr(f, 0)));
+        Preconditions.checkState(all.equals(new HashSet<String>(Arrays.asList(names))), "Bad names %s", all);
+
+        XAttrNameList list = XAttr4J.listxattr(f, "user.myapp.", 0);
+        Preconditions.checkState(list.size() == 3, "Expect 3 names  got %s", list.size());
+        Set<String> got = new HashSet<String>();
+        for (String name : list) got.add(name);
+        Preconditions.checkState(got.equals(new HashSet<String>(Arrays.asList("user.myapp.a", "user.myapp.b", SUPPLEMENTARY))),
+                "Bad filtered names %s", got);
+
+        for (Iterator<XAttrName> it = list.xattrNames(); it.hasNext(); ) {
+            XAttrName x = it.next();
+            Preconditions.checkState(x == XAttrName.of(x.getName()), "Expect interned instance");
+        }
+
+        ByteBuffer buf = list.asByteBuffer();
+        int nul = 0;
+        while (buf.hasRemaining()) if (buf.get() == 0) nul++;
+        Preconditions.checkState(nul == 3 && list.asByteBuffer().isReadOnly(), "Bad raw buffer");
+
+        Preconditions.checkState(XAttr4J.listxattr(f, "security.", 0).isEmpty(), "Expect no name");
+        Preconditions.checkState(XAttr4J.listxattr(f, "", 0).size() == names.length, "Empty prefix should match all");
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
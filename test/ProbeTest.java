@@ -0,0 +1,74 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrException;
+import net.trineo.xattr4j.XAttrPath;
+
+import com.google.common.base.Preconditions;
+
+class ProbeTest {
+    private static final String NAME = "user.xattr4j.probe";
+
+    public static void main(String[] args) throws IOException {
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        File nonexist = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+
+        /* Attribute missing */
+        Preconditions.checkState(XAttr4J.getxattrOrNull(f, NAME, 0) == null, "Expect null");
+        Preconditions.checkState(XAttr4J.getxattrOrNull(new XAttrPath(f), NAME, 0) == null, "Expect null");
+        long n = XAttr4J.trySizexattr(f, NAME, 0);
+        Preconditions.checkState(n == -XAttr4J.ENOATTR, "Expect -ENOATTR  got %s", n);
+        Preconditions.checkState(!XAttr4J.existxattr(f, NAME, 0, true), "Expect nonexistence");
+
+        /* File missing */
+        Preconditions.checkState(XAttr4J.getxattrOrNull(nonexist, NAME, 0) == null, "Expect null");
+        n = XAttr4J.trySizexattr(nonexist, NAME, 0);
+        /* Expect errno 2(ENOENT) */
+        Preconditions.checkState(n == -2, "Expect -ENOENT  got %s", n);
+        Preconditions.checkState(!XAttr4J.existxattr(nonexist, NAME, 0, true), "Expect nonexistence");
+        try {
+            XAttr4J.existxattr(nonexist, NAME, 0);
+            Preconditions.checkState(false, "Expect XAttrException");
+        } catch (XAttrException e) {
+            Preconditions.checkState(e.getErrno() == 2, "Unexpected errno %s", e.getErrno());
+        }
+
+        /* Attribute present */
+        XAttr4J.setxattr(f, NAME, "deadbeef", 0);
+        String str = new String(XAttr4J.getxattrOrNull(f, NAME, 0), StandardCharsets.UTF_8);
+        Preconditions.checkState(str.equals("deadbeef"), "Bad xattr value %s", str);
+        n = XAttr4J.trySizexattr(f, NAME, 0);
+        Preconditions.checkState(n == 8, "Expect size 8  got %s", n);
+        Preconditions.checkState(XAttr4J.existxattr(f, NAME, 0, true), "Expect existence");
+
+        /* fd-oriented: bad fd is never treated as a miss */
+        n = XAttr4J.ftrySizexattr(-1, NAME, 0);
+        /* Expect errno 9(EBADF) */
+        Preconditions.checkState(n == -9, "Expect -EBADF  got %s", n);
+        try {
+            XAttr4J.fgetxattrOrNull(-1, NAME, 0);
+            Preconditions.checkState(false, "Expect XAttrException");
+        } catch (XAttrException e) {
+            Preconditions.checkState(e.getErrno() == 9, "Unexpected errno %s", e.getErrno());
+        }
+
+        /* Unexpected failures still throw  e.g. empty name */
+        try {
+            XAttr4J.getxattrOrNull(f, "", 0);
+            Preconditions.checkState(false, "Expect XAttrException");
+        } catch (XAttrException e) {
+            e.printStackTrace();
+        }
+
+        XAttr4J.removexattr(f, NAME, 0);
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
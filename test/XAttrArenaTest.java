@@ -0,0 +1,159 @@
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrArena;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+import com.google.common.base.Preconditions;
+
+class XAttrArenaTest {
+    private static final int N = 50;
+    private static final int ERANGE = 34;
+    private static final XAttrName NAME = XAttrName.of("user.arena.k");
+
+    private static byte[] value(int i) {
+        return ("value-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* Every 7th file has no attribute */
+    private static boolean absent(int i) {
+        return i % 7 == 3;
+    }
+
+    /**
+     * Read all files through a small arena  which fills up and resumes
+     */
+    private static void scan(XAttrArena a, XAttrPath[] paths, int[] fds) throws IOException {
+        int seen = 0;
+        int resumes = 0;
+        for (int next = 0; next < N; resumes++) {
+            a.reset();
+            next = fds == null ? a.getxattr(paths, next, N, NAME, 0) : a.fgetxattr(fds, next, N, NAME, 0);
+            for (int i = 0; i < a.size(); i++) {
+                int src = a.source(i);
+                Preconditions.checkState(src == seen++, "Bad source %s", src);
+                if (absent(src)) {
+                    Preconditions.checkState(a.errno(i) == XAttr4J.ENOATTR && a.valueLength(i) == -1, "Expect ENOATTR");
+                } else {
+                    Preconditions.checkState(a.errno(i) == 0 && a.valueEquals(i, value(src)), "Bad value of %s", src);
+                    Preconditions.checkState(a.valueHashCode(i) == Arrays.hashCode(value(src)), "Bad hash");
+                    Preconditions.checkState(Arrays.equals(a.value(i), value(src)), "Bad copy");
+                }
+                Preconditions.checkState(a.nameOffset(i) == -1 && a.name(i) == null, "Expect no name");
+            }
+        }
+        Preconditions.checkState(seen == N && resumes > 1, "Expect resumed scan  %s entries %s resumes", seen, resumes);
+    }
+
+    private static void all(File f) throws IOException {
+        XAttrPath p = new XAttrPath(f);
+        XAttr4J.setxattr(f, "user.a", "1", 0);
+        XAttr4J.setxattr(f, "user.b", "22", 0);
+        XAttr4J.setxattr(f, "user.other.c", "333", 0);
+
+        /* Along with user.arena.k */
+        XAttrArena a = new XAttrArena(4096, 16);
+        Preconditions.checkState(a.getAllxattrs(p, "user.", 0, 7) == 4, "Expect 4 entries");
+        XAttrName b = XAttrName.of("user.b");
+        int hits = 0;
+        for (int i = 0; i < a.size(); i++) {
+            Preconditions.checkState(a.source(i) == 7 && a.name(i).startsWith("user."), "Bad entry %s", a.name(i));
+            Preconditions.checkState(Arrays.equals(a.value(i), XAttr4J.getxattr(f, a.name(i), 0)), "Bad value of %s", a.name(i));
+            if (a.nameEquals(i, b)) {
+                Preconditions.checkState(a.valueEquals(i, "22".getBytes(StandardCharsets.UTF_8)), "Bad value");
+                hits++;
+            }
+        }
+        Preconditions.checkState(hits == 1, "Expect user.b");
+
+        /* Appended after the previous entries  filtered by prefix */
+        try (FileInputStream in = new FileInputStream(f)) {
+            Preconditions.checkState(a.fgetAllxattrs(XAttr4J.fileno(in), "user.other.", 0, 8) == 1, "Expect 1 entry");
+        }
+        Preconditions.checkState(a.size() == 5 && a.name(4).equals("user.other.c") && a.source(4) == 8, "Bad entry");
+        Preconditions.checkState(a.compareValues(0, 4) != 0 && a.compareValues(4, 4) == 0, "Bad compare");
+
+        /* Doesn't fit  nothing appended */
+        XAttrArena small = new XAttrArena(16, 16);
+        Preconditions.checkState(small.getAllxattrs(p, null, 0, 0) == -ERANGE && small.size() == 0 && small.used() == 0, "Expect -ERANGE");
+        XAttrArena few = new XAttrArena(4096, 2);
+        Preconditions.checkState(few.getAllxattrs(p, "user.", 0, 0) == -ERANGE && few.size() == 0, "Expect -ERANGE");
+
+        Preconditions.checkState(a.getAllxattrs(new XAttrPath(f.getPath() + "_absent"), null, 0, 0) == -2, "Expect -ENOENT");
+
+        /* A value larger than the whole arena is an ERANGE entry */
+        XAttrArena tiny = new XAttrArena(2, 4);
+        Preconditions.checkState(tiny.getxattr(new XAttrPath[]{p}, 0, 1, XAttrName.of("user.other.c"), 0) == 1, "Expect read");
+        Preconditions.checkState(tiny.size() == 1 && tiny.errno(0) == ERANGE, "Expect ERANGE entry");
+    }
+
+    /**
+     * Bulk reads allocate nothing per attribute
+     */
+    private static void garbage(XAttrPath[] paths) throws IOException {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean) mx;
+        long tid = Thread.currentThread().getId();
+
+        XAttrArena a = new XAttrArena(64 * 1024, N);
+        long h = 0;
+        for (int round = 0; round < 2; round++) {
+            long before = tmx.getThreadAllocatedBytes(tid);
+            for (int k = 0; k < 200; k++) {
+                a.reset();
+                a.getxattr(paths, 0, N, NAME, 0);
+                for (int i = 0; i < a.size(); i++) h += a.valueHashCode(i);
+            }
+            long allocated = tmx.getThreadAllocatedBytes(tid) - before;
+            /* First round warms up class loading and such */
+            if (round == 1) {
+                Preconditions.checkState(allocated < 4096, "Allocated %s bytes for %s reads", allocated, 200 * N);
+            }
+        }
+        Preconditions.checkState(h != 0, "Expect values");
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File("/tmp", "uuid_" + UUID.randomUUID().toString());
+        Preconditions.checkState(dir.mkdir(), "Cannot create %s", dir);
+        File[] files = new File[N];
+        XAttrPath[] paths = new XAttrPath[N];
+        FileInputStream[] ins = new FileInputStream[N];
+        int[] fds = new int[N];
+        try {
+            for (int i = 0; i < N; i++) {
+                files[i] = new File(dir, "f" + i);
+                Preconditions.checkState(files[i].createNewFile(), "Cannot create %s", files[i]);
+                if (!absent(i)) XAttr4J.setxattr(files[i], NAME.toString(), value(i), 0);
+                paths[i] = new XAttrPath(files[i]);
+                ins[i] = new FileInputStream(files[i]);
+                fds[i] = XAttr4J.fileno(ins[i]);
+            }
+
+            scan(new XAttrArena(64, 64), paths, null);
+            scan(new XAttrArena(4096, 8), paths, null);
+            scan(new XAttrArena(64, 64), null, fds);
+            all(files[0]);
+            garbage(paths);
+        } finally {
+            for (int i = 0; i < N; i++) {
+                if (ins[i] != null) ins[i].close();
+                if (files[i] != null) files[i].delete();
+            }
+            dir.delete();
+        }
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,134 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrAsync;
+import net.trineo.xattr4j.XAttrException;
+
+import com.google.common.base.Preconditions;
+
+class XAttrAsyncTest {
+    private static final int FILES = 200;
+    private static final String NAME = "user.xattr4j.async";
+
+    private static Throwable cause(CompletableFuture<?> f) {
+        try {
+            f.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(dir.mkdir(), "%s cannot be created", dir);
+        File[] files = new File[FILES];
+        for (int i = 0; i < FILES; i++) {
+            files[i] = new File(dir, "f" + i);
+            Preconditions.checkState(files[i].createNewFile(), "%s cannot be created", files[i]);
+        }
+
+        try (XAttrAsync async = new XAttrAsync(2, 10000)) {
+            /* Even files get the attribute */
+            List<CompletableFuture<Void>> sets = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < FILES; i += 2) {
+                sets.add(async.setxattr(files[i], NAME, ("v" + i).getBytes(StandardCharsets.UTF_8), 0));
+            }
+            CompletableFuture.allOf(sets.toArray(new CompletableFuture<?>[0])).join();
+
+            /* Fired at once  coalesced into batches */
+            List<CompletableFuture<byte[]>> gets = new ArrayList<CompletableFuture<byte[]>>();
+            List<CompletableFuture<byte[]>> nullables = new ArrayList<CompletableFuture<byte[]>>();
+            for (int i = 0; i < FILES; i++) {
+                gets.add(async.getxattr(files[i], NAME, 0));
+                nullables.add(async.getxattrOrNull(files[i].getAbsolutePath(), NAME, 0));
+            }
+
+            for (int i = 0; i < FILES; i++) {
+                if (i % 2 == 0) {
+                    byte[] expected = ("v" + i).getBytes(StandardCharsets.UTF_8);
+                    Preconditions.checkState(Arrays.equals(gets.get(i).join(), expected), "Bad value of %s", files[i]);
+                    Preconditions.checkState(Arrays.equals(nullables.get(i).join(), expected), "Bad value of %s", files[i]);
+                } else {
+                    Throwable e = cause(gets.get(i));
+                    Preconditions.checkState(e instanceof XAttrException, "Expect XAttrException  got %s", e);
+                    XAttrException xe = (XAttrException) e;
+                    Preconditions.checkState(xe.getErrno() == XAttr4J.ENOATTR, "Expect ENOATTR  got %s", xe.getErrno());
+                    Preconditions.checkState(xe.getPath().equals(files[i].getAbsolutePath()), "Bad path %s", xe.getPath());
+                    Preconditions.checkState(nullables.get(i).join() == null, "Expect null of %s", files[i]);
+                }
+            }
+
+            Preconditions.checkState(async.sizexattr(files[0], NAME, 0).join() == 2, "Bad size");
+            Preconditions.checkState(async.existxattr(files[0], NAME, 0, false).join(), "Expect existence");
+            Preconditions.checkState(!async.existxattr(files[1], NAME, 0, false).join(), "Expect absence");
+            String[] names = async.listxattr(files[0], 0).join();
+            Preconditions.checkState(Arrays.asList(names).contains(NAME), "%s not listed", NAME);
+
+            async.removexattr(files[0], NAME, 0, false).join();
+            Preconditions.checkState(async.getxattrOrNull(files[0], NAME, 0).join() == null, "Expect null after removal");
+            Preconditions.checkState(cause(async.removexattr(files[0], NAME, 0, false)) instanceof XAttrException, "Expect failure");
+            async.removexattr(files[0], NAME, 0, true).join();
+
+            /* Cancelled requests either completed before cancellation or are skipped */
+            List<CompletableFuture<byte[]>> cancelled = new ArrayList<CompletableFuture<byte[]>>();
+            for (int i = 2; i < FILES; i += 2) cancelled.add(async.getxattr(files[i], NAME, 0));
+            for (CompletableFuture<byte[]> f : cancelled) f.cancel(true);
+            for (CompletableFuture<byte[]> f : cancelled) {
+                Throwable e = cause(f);
+                Preconditions.checkState(e == null || e instanceof CancellationException, "Unexpected %s", e);
+            }
+        }
+
+        /* Capacity exceeded */
+        try (XAttrAsync async = new XAttrAsync(1, 1)) {
+            int rejected = 0;
+            List<CompletableFuture<byte[]>> fs = new ArrayList<CompletableFuture<byte[]>>();
+            for (int i = 0; i < FILES; i++) fs.add(async.getxattrOrNull(files[i], NAME, 0));
+            for (CompletableFuture<byte[]> f : fs) {
+                Throwable e = cause(f);
+                if (e instanceof RejectedExecutionException) rejected++;
+                else Preconditions.checkState(e == null, "Unexpected %s", e);
+            }
+            Preconditions.checkState(rejected > 0, "Expect rejections");
+            Preconditions.checkState(async.pendingCount() == 0, "Bad pending count %s", async.pendingCount());
+        }
+
+        /* Timed out requests never hang */
+        try (XAttrAsync async = new XAttrAsync(1, 10000, 1, TimeUnit.NANOSECONDS)) {
+            List<CompletableFuture<byte[]>> fs = new ArrayList<CompletableFuture<byte[]>>();
+            for (int i = 0; i < FILES; i++) fs.add(async.getxattrOrNull(files[i], NAME, 0));
+            for (CompletableFuture<byte[]> f : fs) {
+                Throwable e = cause(f);
+                Preconditions.checkState(e == null || e instanceof TimeoutException, "Unexpected %s", e);
+            }
+        }
+
+        /* Closed */
+        XAttrAsync async = new XAttrAsync(1, 1);
+        async.close();
+        Preconditions.checkState(cause(async.getxattr(files[0], NAME, 0)) instanceof RejectedExecutionException, "Expect rejection");
+        Preconditions.checkState(cause(async.listxattr(files[0], 0)) instanceof RejectedExecutionException, "Expect rejection");
+
+        for (File f : files) Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+        Preconditions.checkState(dir.delete(), "%s cannot be deleted", dir);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,84 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrCache;
+import net.trineo.xattr4j.XAttrException;
+
+import com.google.common.base.Preconditions;
+
+class XAttrCacheTest {
+    private static final String NAME = "user.xattr4j.cache";
+
+    private static String str(byte[] b) {
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+
+        XAttrCache cache = new XAttrCache(1 << 20);
+        XAttr4J.setxattr(f, NAME, "v1", 0);
+        /* Let ctime age so that entries are trusted  see: XAttrCache#RACY_NANOS */
+        Thread.sleep(1100);
+
+        Preconditions.checkState(str(cache.getxattr(f, NAME, 0)).equals("v1"), "Bad value");
+        Preconditions.checkState(str(cache.getxattr(f, NAME, 0)).equals("v1"), "Bad value");
+        Preconditions.checkState(cache.missCount() == 1 && cache.hitCount() == 1,
+                "Unexpected hits %s misses %s", cache.hitCount(), cache.missCount());
+
+        /* Write bypassing cache bumps ctime  next lookup reloads */
+        XAttr4J.setxattr(f, NAME, "v2", 0);
+        Preconditions.checkState(str(cache.getxattr(f, NAME, 0)).equals("v2"), "Stale value");
+
+        /* Write through cache invalidates */
+        cache.setxattr(f, NAME, "v3".getBytes(StandardCharsets.UTF_8), 0);
+        Preconditions.checkState(str(cache.getxattr(f, NAME, 0)).equals("v3"), "Stale value");
+
+        cache.removexattr(f, NAME, 0, false);
+        Preconditions.checkState(cache.getxattrOrNull(f, NAME, 0) == null, "Expect null");
+        try {
+            cache.getxattr(f, NAME, 0);
+            Preconditions.checkState(false, "Expect XAttrException");
+        } catch (XAttrException e) {
+            Preconditions.checkState(e.getErrno() == XAttr4J.ENOATTR, "Unexpected errno %s", e.getErrno());
+        }
+
+        /* Staleness window serves without syscalls  even if changed behind */
+        XAttrCache stale = new XAttrCache(1 << 20, 1, TimeUnit.HOURS);
+        XAttr4J.setxattr(f, NAME, "v4", 0);
+        Thread.sleep(1100);
+        Preconditions.checkState(str(stale.getxattr(f, NAME, 0)).equals("v4"), "Bad value");
+        XAttr4J.setxattr(f, NAME, "v5", 0);
+        Preconditions.checkState(str(stale.getxattr(f, NAME, 0)).equals("v4"), "Expect value within staleness window");
+        stale.invalidate(f.getAbsolutePath());
+        Preconditions.checkState(str(stale.getxattr(f, NAME, 0)).equals("v5"), "Bad value");
+
+        /* Write through cache invalidates entries of either options  but no other name */
+        Preconditions.checkState(str(stale.getxattr(f, NAME, XAttr4J.XATTR_NOFOLLOW)).equals("v5"), "Bad value");
+        Preconditions.checkState(stale.getxattrOrNull(f, NAME + ".other", 0) == null, "Expect null");
+        Preconditions.checkState(stale.size() == 3, "Unexpected size %s", stale.size());
+        stale.setxattr(f, NAME, "v6".getBytes(StandardCharsets.UTF_8), 0);
+        Preconditions.checkState(stale.size() == 1, "Unexpected size %s", stale.size());
+        Preconditions.checkState(str(stale.getxattr(f, NAME, XAttr4J.XATTR_NOFOLLOW)).equals("v6"), "Stale value");
+
+        /* Size-weighted eviction */
+        XAttrCache small = new XAttrCache(400);
+        for (int i = 0; i < 8; i++) small.getxattrOrNull(f, NAME + i, 0);
+        Preconditions.checkState(small.evictionCount() > 0 && small.weight() <= 400,
+                "Expect evictions  weight %s", small.weight());
+
+        /* Nonexistent file */
+        Preconditions.checkState(cache.getxattrOrNull(f.getAbsolutePath() + ".nonexist", NAME, 0) == null, "Expect null");
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
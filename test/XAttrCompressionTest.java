@@ -0,0 +1,129 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrCompression;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+import com.google.common.base.Preconditions;
+
+class XAttrCompressionTest {
+    private static final XAttrName JSON = XAttrName.of("user.app.json");
+    private static final XAttrName BLOB = XAttrName.of("user.blob.raw");
+    private static final XAttrName INLINE = XAttrName.of("user.inline.json");
+
+    private static byte[] json(int entries) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("\"key").append(i).append("\":{\"owner\":\"lynnl\",\"rev\":").append(i).append(",\"tags\":[\"a\",\"b\"]}");
+        }
+        return sb.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void roundTrip(XAttrCompression c, XAttrName name, byte[] v) {
+        byte[] e = c.encode(name, v);
+        Preconditions.checkState(Arrays.equals(XAttrCompression.decode(e), v), "Bad round trip of %s bytes", v.length);
+    }
+
+    private static void expectMalformed(byte[] b) {
+        try {
+            XAttrCompression.decode(b);
+            Preconditions.checkState(false, "Expect IllegalArgumentException  %s", Arrays.toString(b));
+        } catch (IllegalArgumentException expected) {
+            /* Pass */
+        }
+    }
+
+    private static void codec() {
+        XAttrCompression c = new XAttrCompression()
+                .policy("user.blob.", XAttrCompression.Policy.NONE)
+                .policy("user.inline.", new XAttrCompression.Policy(0, 200, 9));
+
+        byte[] small = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+        byte[] big = json(100);
+        byte[] noise = new byte[2000];
+        new Random(1).nextBytes(noise);
+
+        /* Below threshold  stored as is */
+        Preconditions.checkState(c.encode(JSON, small) == small, "Expect small value untouched");
+        byte[] e = c.encode(JSON, big);
+        Preconditions.checkState(e.length < big.length / 4, "Poorly compressed %s -> %s", big.length, e.length);
+        roundTrip(c, JSON, big);
+
+        /* Per-name policy */
+        Preconditions.checkState(c.encode(BLOB, big) == big, "Expect NONE policy");
+        Preconditions.checkState(c.policyOf(XAttrName.of("user.blob")) == XAttrCompression.Policy.DEFAULT, "Bad prefix match");
+
+        /* Incompressible  stored as is */
+        Preconditions.checkState(c.encode(JSON, noise) == noise, "Expect noise untouched");
+
+        /* Fits-in mode */
+        byte[] mid = json(4);
+        Preconditions.checkState(c.encode(INLINE, mid).length <= 200, "Expect compressed into 200 bytes");
+        roundTrip(c, INLINE, mid);
+        Preconditions.checkState(c.encode(INLINE, big) == big, "Expect left as is when not fitting");
+
+        /* Untagged values which look tagged are escaped */
+        byte[] lookalike = {0x00, (byte) 0xC3, 1, 1, 0, 0, 0, 9, 1, 2};
+        byte[] le = c.encode(BLOB, lookalike);
+        Preconditions.checkState(le.length == lookalike.length + XAttrCompression.HEADER, "Expect escaped");
+        roundTrip(c, BLOB, lookalike);
+        byte[] empty = new byte[0];
+        roundTrip(c, JSON, empty);
+
+        /* Malformed */
+        byte[] bad = e.clone();
+        bad[bad.length - 1] ^= 1;
+        expectMalformed(bad);
+        expectMalformed(Arrays.copyOf(e, e.length - 2));
+        byte[] longer = e.clone();
+        longer[7]++;
+        expectMalformed(longer);
+        byte[] shorter = e.clone();
+        shorter[7]--;
+        expectMalformed(shorter);
+        byte[] method = e.clone();
+        method[3] = 7;
+        expectMalformed(method);
+    }
+
+    public static void main(String[] args) throws IOException {
+        codec();
+
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+        XAttrPath p = new XAttrPath(f);
+        XAttrCompression c = new XAttrCompression();
+
+        /* 6 KiB of JSON does not fit ext4 without ea_inode uncompressed */
+        byte[] big = json(100);
+        c.setxattr(p, JSON, big, 0);
+        Preconditions.checkState(XAttr4J.sizexattr(p, JSON, 0) < big.length, "Expect stored compressed");
+        Preconditions.checkState(Arrays.equals(XAttrCompression.getxattr(p, JSON, 0), big), "Bad read back");
+
+        /* Plain values read through unchanged */
+        XAttr4J.setxattr(f, BLOB.toString(), "plain", 0);
+        Preconditions.checkState(new String(XAttrCompression.getxattr(p, BLOB, 0), StandardCharsets.UTF_8).equals("plain"), "Bad plain read");
+        Preconditions.checkState(XAttrCompression.getxattrOrNull(p, INLINE, 0) == null, "Expect null");
+
+        XAttr4J.setxattr(p, BLOB, new byte[]{0x00, (byte) 0xC3, 9, 9, 9, 9, 9, 9}, 0);
+        try {
+            XAttrCompression.getxattr(p, BLOB, 0);
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException e) {
+            Preconditions.checkState(e.getCause() instanceof IllegalArgumentException, "Unexpected cause %s", e.getCause());
+        }
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
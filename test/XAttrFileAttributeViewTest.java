@@ -0,0 +1,182 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrFileAttributeView;
+import net.trineo.xattr4j.XAttrFileSystemProvider;
+import net.trineo.xattr4j.XAttrMetrics;
+
+import com.google.common.base.Preconditions;
+
+class XAttrFileAttributeViewTest {
+    private static UserDefinedFileAttributeView view(Path p) {
+        UserDefinedFileAttributeView v = Files.getFileAttributeView(p, UserDefinedFileAttributeView.class);
+        Preconditions.checkState(v instanceof XAttrFileAttributeView, "Unexpected view %s", v);
+        return v;
+    }
+
+    private static String read(UserDefinedFileAttributeView v, String name) throws IOException {
+        ByteBuffer b = ByteBuffer.allocateDirect(v.size(name));
+        v.read(name, b);
+        b.flip();
+        return StandardCharsets.UTF_8.decode(b).toString();
+    }
+
+    private static long fds() throws IOException {
+        try (Stream<Path> s = Files.list(new File("/proc/self/fd").toPath())) {
+            return s.count();
+        }
+    }
+
+    private static void test(FileSystem fs) throws IOException, InterruptedException {
+        Path p = fs.getPath("/tmp", "uuid_" + UUID.randomUUID().toString());
+        Files.write(p, "content".getBytes(StandardCharsets.UTF_8));
+        File f = p.toFile();
+
+        UserDefinedFileAttributeView v = view(p);
+        Preconditions.checkState(v.name().equals("user") && v.list().isEmpty(), "Expect no attributes");
+
+        /* Names live in the user namespace as with the JDK's view */
+        Preconditions.checkState(v.write("a", StandardCharsets.UTF_8.encode("\u4f60\u597d")) == 6, "Bad write");
+        Preconditions.checkState(new String(XAttr4J.getxattr(f, "user.a", 0), StandardCharsets.UTF_8).equals("\u4f60\u597d"), "Bad namespace");
+        XAttr4J.setxattr(f, "user.b", "bee", 0);
+        Preconditions.checkState(v.list().size() == 2 && v.list().contains("b"), "Bad list %s", v.list());
+        Preconditions.checkState(v.size("b") == 3 && read(v, "b").equals("bee"), "Bad read");
+
+        ByteBuffer heap = ByteBuffer.allocate(16);
+        heap.position(4);
+        Preconditions.checkState(v.read("a", heap) == 6 && heap.position() == 10, "Bad heap read");
+
+        try {
+            v.read("a", ByteBuffer.allocate(2));
+            Preconditions.checkState(false, "Expect FileSystemException");
+        } catch (FileSystemException expected) {
+            /* Pass */
+        }
+
+        /* Attributes by name */
+        Files.setAttribute(p, "user:c", "sea".getBytes(StandardCharsets.UTF_8));
+        Preconditions.checkState(Arrays.equals((byte[]) Files.getAttribute(p, "user:c"), "sea".getBytes(StandardCharsets.UTF_8)), "Bad getAttribute");
+        Map<String, Object> all = Files.readAttributes(p, "user:*");
+        Preconditions.checkState(all.size() == 3 && Arrays.equals((byte[]) all.get("b"), "bee".getBytes(StandardCharsets.UTF_8)), "Bad readAttributes %s", all);
+
+        v.delete("c");
+        try {
+            v.delete("c");
+            Preconditions.checkState(false, "Expect FileSystemException");
+        } catch (FileSystemException e) {
+            Preconditions.checkState(!(e instanceof NoSuchFileException), "Unexpected %s", e);
+        }
+
+        try {
+            view(fs.getPath(p.toString() + "_absent")).list();
+            Preconditions.checkState(false, "Expect NoSuchFileException");
+        } catch (NoSuchFileException expected) {
+            /* Pass */
+        }
+
+        /* One fd-oriented syscall per call */
+        XAttrMetrics.setEnabled(true);
+        XAttrMetrics.reset();
+        for (int i = 0; i < 3; i++) read(view(p), "a");
+        XAttrMetrics.Snapshot s = XAttrMetrics.reset();
+        XAttrMetrics.setEnabled(false);
+        Preconditions.checkState(s.calls("fgetxattr") == 3 && s.calls("getxattr") == 0, "Expect cached fd  fgetxattr: %s", s.calls("fgetxattr"));
+
+        /* Renamed over through the provider  the new file is seen at once */
+        Path q = fs.getPath(p.toString() + "_new");
+        Files.write(q, new byte[0]);
+        view(q).write("a", StandardCharsets.UTF_8.encode("new"));
+        Files.move(q, p, StandardCopyOption.REPLACE_EXISTING);
+        Preconditions.checkState(read(view(p), "a").equals("new") && view(p).list().size() == 1, "Stale fd");
+
+        /* Other operations go through the delegate */
+        Preconditions.checkState(new String(Files.readAllBytes(p), StandardCharsets.UTF_8).isEmpty(), "Bad content");
+        try (Stream<Path> l = Files.list(p.getParent())) {
+            Preconditions.checkState(l.anyMatch(x -> x.equals(p)), "Not listed");
+        }
+        Preconditions.checkState(p.getFileSystem() == fs && p.getParent().getFileSystem() == fs, "Path escaped");
+
+        Files.delete(p);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        FileSystem fs = FileSystems.getDefault();
+        if (fs.provider() instanceof XAttrFileSystemProvider) {
+            System.out.println("Installed as the default provider");
+            Preconditions.checkState(new File("/tmp").toPath().getFileSystem() == fs, "Bad default file system");
+        } else {
+            fs = new XAttrFileSystemProvider(fs.provider()).getFileSystem(URI.create("file:///"));
+        }
+        test(fs);
+
+        /* Idle fds closed */
+        if (new File("/proc/self/fd").isDirectory()) {
+            FileSystem fs2 = new XAttrFileSystemProvider(FileSystems.getDefault().provider(), 50, TimeUnit.MILLISECONDS)
+                    .getFileSystem(URI.create("file:///"));
+            Path p = fs2.getPath("/tmp", "uuid_" + UUID.randomUUID().toString());
+            Files.write(p, new byte[0]);
+            long n = fds();
+            view(p).list();
+            Preconditions.checkState(fds() == n + 1, "Expect a cached fd");
+            Thread.sleep(500);
+            Preconditions.checkState(fds() == n, "Expect idle fd closed");
+            Files.delete(p);
+        }
+
+        /* Renamed over bypassing the provider  seen within the timeout even though never idle */
+        FileSystem fs3 = new XAttrFileSystemProvider(FileSystems.getDefault().provider(), 50, TimeUnit.MILLISECONDS)
+                .getFileSystem(URI.create("file:///"));
+        Path p = fs3.getPath("/tmp", "uuid_" + UUID.randomUUID().toString());
+        Files.write(p, new byte[0]);
+        view(p).write("a", StandardCharsets.UTF_8.encode("old"));
+        Preconditions.checkState(read(view(p), "a").equals("old"), "Bad value");
+        File q = new File(p.toString() + "_new");
+        Preconditions.checkState(q.createNewFile(), "%s cannot be created", q);
+        XAttr4J.setxattr(q, "user.a", "new", 0);
+        Preconditions.checkState(q.renameTo(new File(p.toString())), "%s cannot be renamed", q);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (read(view(p), "a").equals("old")) {
+            Preconditions.checkState(System.nanoTime() < deadline, "Stale fd in steady use");
+            Thread.sleep(5);
+        }
+        Files.delete(p);
+
+        /* Writes and deletes land on the renamed-over file at once  even with the fd cached for long */
+        FileSystem fs4 = new XAttrFileSystemProvider(FileSystems.getDefault().provider(), 1, TimeUnit.HOURS)
+                .getFileSystem(URI.create("file:///"));
+        Path r = fs4.getPath(p.toString());
+        Files.write(r, new byte[0]);
+        Preconditions.checkState(view(r).list().isEmpty(), "Expect no attributes");
+        Preconditions.checkState(q.createNewFile(), "%s cannot be created", q);
+        Preconditions.checkState(q.renameTo(r.toFile()), "%s cannot be renamed", q);
+        view(r).write("b", StandardCharsets.UTF_8.encode("bee"));
+        Preconditions.checkState(new String(XAttr4J.getxattr(r.toFile(), "user.b", 0), StandardCharsets.UTF_8).equals("bee"), "Write lost");
+        Preconditions.checkState(q.createNewFile(), "%s cannot be created", q);
+        XAttr4J.setxattr(q, "user.b", "sea", 0);
+        Preconditions.checkState(q.renameTo(r.toFile()), "%s cannot be renamed", q);
+        view(r).delete("b");
+        Preconditions.checkState(XAttr4J.listxattr(r.toFile(), 0).length == 0, "Delete lost");
+        Files.delete(r);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,147 @@
+package test;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrMetrics;
+import net.trineo.xattr4j.XAttrName;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Bytes;
+
+class XAttrFileDescriptorTest {
+    private static final byte[] VALUE = "tagged".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * fd must name the file itself
+     */
+    private static void checkFileno(int fd, File f) throws IOException {
+        File link = new File("/proc/self/fd/" + fd);
+        if (!link.exists()) return;
+        Preconditions.checkState(Files.isSameFile(link.toPath(), f.toPath()), "fd %s isn't %s", fd, f);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String backend = System.getProperty(XAttr4J.BACKEND_PROPERTY);
+        Preconditions.checkState(backend == null || XAttr4J.backend().equals(backend), "Backend %s not in use", backend);
+
+        File f = new File("/tmp", "uuid_" + UUID.randomUUID().toString());
+
+        /* Tag a file just written  no path-oriented syscall */
+        XAttrMetrics.setEnabled(true);
+        XAttrMetrics.reset();
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write("content".getBytes(StandardCharsets.UTF_8));
+            checkFileno(XAttr4J.fileno(out), f);
+            XAttr4J.fsetxattr(out.getFD(), "user.fd", VALUE, 0);
+            XAttr4J.fsetxattr(out.getChannel(), "user.ch", ByteBuffer.wrap(VALUE), 0);
+        }
+        XAttrMetrics.Snapshot s = XAttrMetrics.reset();
+        XAttrMetrics.setEnabled(false);
+        Preconditions.checkState(s.calls("fsetxattr") == 2 && s.calls("setxattr") == 0, "Expect fsetxattr only");
+        Preconditions.checkState(Arrays.equals(XAttr4J.getxattr(f, "user.fd", 0), VALUE), "Bad value");
+        Preconditions.checkState(Arrays.equals(XAttr4J.getxattr(f, "user.ch", 0), VALUE), "Bad value");
+
+        try (FileInputStream in = new FileInputStream(f)) {
+            checkFileno(XAttr4J.fileno(in), f);
+            FileDescriptor fd = in.getFD();
+            Preconditions.checkState(Arrays.equals(XAttr4J.fgetxattr(fd, "user.fd", 0), VALUE), "Bad fgetxattr");
+            Preconditions.checkState(XAttr4J.fsizexattr(fd, "user.fd", 0) == VALUE.length, "Bad fsizexattr");
+            Preconditions.checkState(XAttr4J.fexistxattr(fd, "user.ch", 0), "Expect existing");
+            Preconditions.checkState(XAttr4J.flistxattr(fd, 0).length == 2, "Bad flistxattr");
+
+            ByteBuffer dst = ByteBuffer.allocateDirect(2 * VALUE.length);
+            Preconditions.checkState(XAttr4J.fgetxattr(fd, "user.fd", dst, 0) == VALUE.length, "Bad fgetxattr");
+            Preconditions.checkState(XAttr4J.fgetxattr(in.getChannel(), "user.ch", dst, 0) == VALUE.length, "Bad fgetxattr");
+            dst.flip();
+            byte[] b = new byte[dst.remaining()];
+            dst.get(b);
+            Preconditions.checkState(Arrays.equals(b, Bytes.concat(VALUE, VALUE)), "Bad fgetxattr");
+            Preconditions.checkState(XAttr4J.fgetxattrOrNull(XAttr4J.fileno(in), "user.absent", 0) == null, "Expect null");
+
+            /* Interned names */
+            XAttrName x = XAttrName.of("user.fd");
+            Preconditions.checkState(Arrays.equals(XAttr4J.fgetxattr(fd, x, 0), VALUE), "Bad fgetxattr");
+            Preconditions.checkState(XAttr4J.fsizexattr(in.getChannel(), x, 0) == VALUE.length, "Bad fsizexattr");
+            Preconditions.checkState(XAttr4J.fexistxattr(fd, x, 0), "Expect existing");
+            dst.clear();
+            Preconditions.checkState(XAttr4J.fgetxattr(in.getChannel(), x, dst, 0) == VALUE.length, "Bad fgetxattr");
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            checkFileno(XAttr4J.fileno(raf), f);
+            Preconditions.checkState(XAttr4J.fileno(raf) == XAttr4J.fileno(raf.getChannel()), "Channel of another fd");
+            XAttr4J.fremovexattr(raf.getFD(), "user.fd", 0);
+            Preconditions.checkState(!XAttr4J.fexistxattr(raf.getChannel(), "user.fd", 0), "Expect removed");
+
+            XAttrName x = XAttrName.of("user.raf");
+            XAttr4J.fsetxattr(raf.getFD(), x, VALUE, 0);
+            XAttr4J.fsetxattr(raf.getChannel(), x, ByteBuffer.wrap(VALUE), XAttr4J.XATTR_REPLACE);
+            Preconditions.checkState(Arrays.equals(XAttr4J.fgetxattr(raf.getChannel(), x, 0), VALUE), "Bad fgetxattr");
+            XAttr4J.fremovexattr(raf.getChannel(), x, 0);
+            Preconditions.checkState(!XAttr4J.fexistxattr(raf.getChannel(), x, 0), "Expect removed");
+        }
+
+        FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+        try {
+            checkFileno(XAttr4J.fileno(ch), f);
+            Preconditions.checkState(Arrays.equals(XAttr4J.fgetxattr(ch, "user.ch", 0), VALUE), "Bad fgetxattr");
+            Preconditions.checkState(XAttr4J.fsizexattr(ch, "user.ch", 0) == VALUE.length, "Bad fsizexattr");
+            Preconditions.checkState(Arrays.equals(XAttr4J.flistxattr(ch, 0), new String[]{"user.ch"}), "Bad flistxattr");
+            XAttr4J.fremovexattr(ch, "user.ch", 0);
+        } finally {
+            ch.close();
+        }
+
+        /* Closed files are refused  not passed down as fd -1 */
+        try {
+            XAttr4J.fexistxattr(ch, "user.ch", 0);
+            Preconditions.checkState(false, "Expect ClosedChannelException");
+        } catch (ClosedChannelException expected) {
+            /* Pass */
+        }
+
+        FileInputStream in = new FileInputStream(f);
+        FileDescriptor fd = in.getFD();
+        int n = XAttr4J.fileno(in);
+        in.close();
+        try {
+            XAttr4J.fgetxattr(fd, "user.ch", 0);
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException expected) {
+            /* Pass */
+        }
+        /* EBADF isn't a miss */
+        try {
+            XAttr4J.fgetxattrOrNull(n, "user.ch", 0);
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException expected) {
+            /* Pass */
+        }
+
+        try {
+            XAttr4J.fileno(new FileDescriptor());
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException expected) {
+            /* Pass */
+        }
+
+        Preconditions.checkState(XAttr4J.listxattr(f, 0).length == 0, "Expect no attributes");
+        Preconditions.checkState(f.delete(), "Cannot delete %s", f);
+
+        System.out.println("\nPass!");
+    }
+}
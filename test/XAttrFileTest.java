@@ -0,0 +1,167 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrException;
+import net.trineo.xattr4j.XAttrFile;
+import net.trineo.xattr4j.XAttrMetrics;
+
+import com.google.common.base.Preconditions;
+
+class XAttrFileTest {
+    private static final byte[] V1 = "v1".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] V2 = "v2".getBytes(StandardCharsets.UTF_8);
+
+    private static int fds() {
+        String[] l = new File("/proc/self/fd").list();
+        return l != null ? l.length : -1;
+    }
+
+    private static File newFile() throws IOException {
+        File f = new File("/tmp", "uuid_" + UUID.randomUUID().toString());
+        Preconditions.checkState(f.createNewFile(), "Cannot create %s", f);
+        return f;
+    }
+
+    private static void ops(File f) throws IOException {
+        XAttrMetrics.setEnabled(true);
+        XAttrMetrics.reset();
+        try (XAttrFile x = XAttrFile.open(f, 0)) {
+            x.setxattr("user.lease.owner", V1);
+            x.setxattr("user.lease.epoch", ByteBuffer.wrap(V2), XAttr4J.XATTR_CREATE);
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.lease.owner"), V1), "Bad getxattr");
+            Preconditions.checkState(x.getxattrOrNull("user.absent") == null, "Expect null");
+            Preconditions.checkState(x.sizexattr("user.lease.epoch") == V2.length, "Bad sizexattr");
+            Preconditions.checkState(x.trySizexattr("user.absent") == -XAttr4J.ENOATTR, "Bad trySizexattr");
+            Preconditions.checkState(x.existxattr("user.lease.owner") && !x.existxattr("user.absent"), "Bad existxattr");
+            Preconditions.checkState(x.listxattr().length == 2 && x.listxattr("user.lease.e").size() == 1, "Bad listxattr");
+
+            ByteBuffer b = ByteBuffer.allocateDirect(8);
+            Preconditions.checkState(x.getxattr("user.lease.epoch", b) == V2.length, "Bad ByteBuffer getxattr");
+
+            try {
+                x.setxattr("user.lease.epoch", V1, XAttr4J.XATTR_CREATE);
+                Preconditions.checkState(false, "Expect XAttrException");
+            } catch (XAttrException expected) {
+                /* Pass */
+            }
+
+            x.removexattr("user.lease.epoch");
+            x.removexattr("user.lease.epoch", true);
+            try {
+                x.getxattr("user.lease.epoch");
+                Preconditions.checkState(false, "Expect XAttrException");
+            } catch (XAttrException e) {
+                Preconditions.checkState(e.getErrno() == XAttr4J.ENOATTR, "Unexpected %s", e);
+            }
+
+            /* The handle follows the file  not the path */
+            File g = new File(f.getPath() + "_renamed");
+            Preconditions.checkState(f.renameTo(g), "Cannot rename");
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.lease.owner"), V1), "Lost the file");
+            Preconditions.checkState(g.renameTo(f), "Cannot rename");
+        }
+        XAttrMetrics.Snapshot s = XAttrMetrics.reset();
+        XAttrMetrics.setEnabled(false);
+
+        /* Linux without O_PATH xattr support reopens the file O_RDONLY  fd-oriented either way */
+        Preconditions.checkState(s.calls("getxattr") == 0 && s.calls("setxattr") == 0, "Expect no path-oriented calls");
+        Preconditions.checkState(s.calls("fgetxattr") == 5, "Bad fgetxattr calls %s", s.calls("fgetxattr"));
+    }
+
+    private static void cache(File f) throws IOException, InterruptedException {
+        try (XAttrFile x = XAttrFile.open(f.getPath(), 0, 4)) {
+            x.setxattr("user.c", V1);
+            /* Let ctime age so that entries are trusted  see: XAttrCache#RACY_NANOS */
+            Thread.sleep(1100);
+
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.c"), V1), "Bad value");
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.c"), V1) && x.cacheHitCount() == 1, "Expect a hit");
+            Preconditions.checkState(x.getxattrOrNull("user.absent") == null && x.getxattrOrNull("user.absent") == null, "Expect null");
+            Preconditions.checkState(x.cacheHitCount() == 2, "Expect absence cached");
+
+            /* Returned arrays are copies */
+            x.getxattr("user.c")[0] = 0;
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.c"), V1), "Cache corrupted");
+
+            /* Written bypassing the handle  noticed via ctime */
+            XAttr4J.setxattr(f, "user.c", V2, 0);
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.c"), V2), "Stale value");
+
+            /* Written through the handle */
+            x.setxattr("user.c", V1);
+            Preconditions.checkState(Arrays.equals(x.getxattr("user.c"), V1), "Stale value");
+        }
+    }
+
+    private static void nofollow(File f) throws IOException {
+        File l = new File(f.getPath() + "_link");
+        Files.createSymbolicLink(l.toPath(), f.toPath());
+        try {
+            XAttr4J.setxattr(f, "user.t", V1, 0);
+            try (XAttrFile x = XAttrFile.open(l.getPath(), XAttr4J.XATTR_NOFOLLOW)) {
+                Preconditions.checkState(!x.existxattr("user.t"), "Expect the link itself");
+            }
+            try (XAttrFile x = XAttrFile.open(l.getPath(), 0)) {
+                Preconditions.checkState(x.existxattr("user.t"), "Expect the target");
+            }
+        } finally {
+            Preconditions.checkState(l.delete(), "Cannot delete %s", l);
+        }
+    }
+
+    private static void close(File f) throws IOException, InterruptedException {
+        int n = fds();
+        XAttrFile x = XAttrFile.open(f, 0);
+        Preconditions.checkState(n < 0 || fds() == n + 1, "Expect an fd");
+        x.close();
+        x.close();
+        Preconditions.checkState(!x.isOpen() && (n < 0 || fds() == n), "Expect fd closed");
+        Preconditions.checkState(x.trySizexattr("user.c") < 0, "Expect failure");
+        try {
+            x.listxattr();
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException expected) {
+            /* Pass */
+        }
+
+        /* Cleaner closes a handle left unclosed */
+        if (n < 0) return;
+        x = XAttrFile.open(f, 0);
+        Preconditions.checkState(fds() == n + 1, "Expect an fd");
+        x = null;
+        for (int i = 0; i < 100 && fds() != n; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Preconditions.checkState(fds() == n, "Expect fd cleaned");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File f = newFile();
+        try {
+            ops(f);
+            cache(f);
+            nofollow(f);
+            close(f);
+
+            try {
+                XAttrFile.open(f.getPath() + "_absent", 0);
+                Preconditions.checkState(false, "Expect XAttrException");
+            } catch (XAttrException e) {
+                Preconditions.checkState(e.getErrno() == 2, "Expect ENOENT %s", e);
+            }
+        } finally {
+            Preconditions.checkState(f.delete(), "Cannot delete %s", f);
+        }
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,240 @@
+package test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrIndex;
+import net.trineo.xattr4j.XAttrMetrics;
+import net.trineo.xattr4j.XAttrName;
+
+import com.google.common.base.Preconditions;
+
+class XAttrIndexTest {
+    private static final int DIRS = 3;
+    private static final int FILES = 100;
+
+    private static String tier(int f) {
+        return f % 3 == 0 ? "cold" : "hot";
+    }
+
+    private static void delete(File f) {
+        File[] l = f.listFiles();
+        if (l != null) for (File c : l) delete(c);
+        f.delete();
+    }
+
+    private static void query(XAttrIndex x, String root) {
+        Preconditions.checkState(x.fileCount() == DIRS * FILES + DIRS, "Bad file count %s", x.fileCount());
+        /* user.tier x2  user.app.id per file  user.app.dir per directory */
+        Preconditions.checkState(x.keyCount() == 2 + DIRS * FILES + DIRS, "Bad key count %s", x.keyCount());
+        Preconditions.checkState(x.failureCount() == 0, "Unexpected failures");
+
+        List<String> cold = x.find("user.tier", "cold");
+        Preconditions.checkState(cold.size() == DIRS * 34, "Bad cold files %s", cold.size());
+        List<String> sorted = new ArrayList<String>(cold);
+        Collections.sort(sorted);
+        Preconditions.checkState(sorted.equals(cold), "Expect path order");
+        Preconditions.checkState(cold.contains(root + "/d1/f99") && !cold.contains(root + "/d1/f98"), "Bad cold files");
+
+        Preconditions.checkState(x.find("user.tier", "warm").isEmpty(), "Expect no hit");
+        Preconditions.checkState(x.find("user.tie", "cold").isEmpty(), "Expect no hit");
+        Preconditions.checkState(x.find("user.other", "x").isEmpty(), "Expect filtered out");
+        Preconditions.checkState(x.find("user.app.id", "2/57").equals(Collections.singletonList(root + "/d2/f57")), "Bad hit");
+        Preconditions.checkState(x.find("user.app.dir", "d0").equals(Collections.singletonList(root + "/d0")), "Bad hit");
+
+        final AtomicInteger ids = new AtomicInteger();
+        int hits = x.findByPrefix("user.app.", new XAttrIndex.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                String v = new String(value, StandardCharsets.UTF_8);
+                if (name.getName().equals("user.app.id")) {
+                    Preconditions.checkState(path.endsWith("/d" + v.replace("/", "/f")), "Bad value %s of %s", v, path);
+                    ids.incrementAndGet();
+                } else {
+                    Preconditions.checkState(name.getName().equals("user.app.dir") && path.endsWith("/" + v), "Bad hit %s", path);
+                }
+            }
+        });
+        Preconditions.checkState(hits == DIRS * FILES + DIRS && ids.get() == DIRS * FILES, "Bad prefix hits %s", hits);
+        Preconditions.checkState(x.findByPrefix("user.t", new XAttrIndex.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                Preconditions.checkState(name.getName().equals("user.tier"), "Bad name %s", name);
+            }
+        }) == DIRS * FILES, "Bad prefix hits");
+        Preconditions.checkState(x.findByPrefix("user.z", new XAttrIndex.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                throw new IllegalStateException(path);
+            }
+        }) == 0, "Expect no hit");
+    }
+
+    private static List<String> dump(XAttrIndex x) {
+        final List<String> l = new ArrayList<String>();
+        x.findByPrefix("", new XAttrIndex.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                l.add(name.getName() + "=" + new String(value, StandardCharsets.UTF_8) + " " + path);
+            }
+        });
+        return l;
+    }
+
+    /**
+     * Same view as a fresh build of the tree
+     */
+    private static void checkRebuilt(XAttrIndex x, File rootDir) throws IOException {
+        File f = new File(x.getFile().getPath() + ".check");
+        try {
+            XAttrIndex y = XAttrIndex.build(f, rootDir.getAbsolutePath(), 2, "user.tier", "user.app.");
+            Preconditions.checkState(x.fileCount() == y.fileCount(), "Bad file count %s vs %s", x.fileCount(), y.fileCount());
+            Preconditions.checkState(x.keyCount() == y.keyCount(), "Bad key count %s vs %s", x.keyCount(), y.keyCount());
+            Preconditions.checkState(dump(x).equals(dump(y)), "Diverged from a rebuild");
+            Preconditions.checkState(x.find("user.tier", "hot").equals(y.find("user.tier", "hot")), "Diverged from a rebuild");
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static void update(XAttrIndex x, File rootDir) throws IOException {
+        String root = rootDir.getAbsolutePath();
+        File f0 = new File(rootDir, "d0/f0");
+        File f1 = new File(rootDir, "d0/f1");
+        File f2 = new File(rootDir, "d0/f2");
+        File f4 = new File(rootDir, "d0/f4");
+        File nf = new File(rootDir, "d0/new");
+
+        XAttr4J.setxattr(f0, "user.tier", "hot", 0);
+        XAttr4J.removexattr(f1, "user.tier", 0);
+        XAttr4J.removexattr(f1, "user.app.id", 0);
+        Preconditions.checkState(f2.delete(), "Cannot delete %s", f2);
+        Preconditions.checkState(nf.createNewFile(), "Cannot create %s", nf);
+        XAttr4J.setxattr(nf, "user.tier", "cold", 0);
+        XAttr4J.setxattr(nf, "user.other", "x", 0);
+
+        XAttrMetrics.setEnabled(true);
+        XAttrMetrics.reset();
+        List<String> paths = Arrays.asList(f0.getPath(), f1.getPath(), f2.getPath(), f4.getPath(), nf.getPath());
+        XAttrIndex y = x.update(paths, 2);
+        XAttrMetrics.Snapshot s = XAttrMetrics.reset();
+        XAttrMetrics.setEnabled(false);
+
+        /* f4 is unchanged  f2 vanished  neither is read */
+        Preconditions.checkState(s.calls("getallxattrs") == 3, "Bad getallxattrs calls %s", s.calls("getallxattrs"));
+
+        Preconditions.checkState(y.fileCount() == x.fileCount() - 1, "Bad file count %s", y.fileCount());
+        List<String> cold = y.find("user.tier", "cold");
+        Preconditions.checkState(!cold.contains(root + "/d0/f0") && cold.contains(root + "/d0/new"), "Bad update");
+        Preconditions.checkState(y.find("user.tier", "hot").contains(root + "/d0/f0"), "Bad update");
+        Preconditions.checkState(y.find("user.app.id", "0/1").isEmpty() && y.find("user.app.id", "0/2").isEmpty(), "Expect dropped");
+        Preconditions.checkState(y.find("user.app.id", "0/4").size() == 1, "Expect unchanged");
+        Preconditions.checkState(y.find("user.other", "x").isEmpty(), "Expect filtered out");
+
+        /* The old index still reads the replaced file */
+        Preconditions.checkState(x.find("user.tier", "cold").contains(root + "/d0/f0"), "Old index changed");
+
+        /* Changed bypassing update()  noticed by refresh() */
+        XAttr4J.setxattr(f4, "user.tier", "warm", 0);
+        XAttrIndex z = y.refresh(4);
+        Preconditions.checkState(z.find("user.tier", "warm").equals(Collections.singletonList(f4.getPath())), "Bad refresh");
+        Preconditions.checkState(z.fileCount() == y.fileCount() && z.createdMillis() >= y.createdMillis(), "Bad refresh");
+
+        XAttrIndex reopened = XAttrIndex.open(z.getFile());
+        Preconditions.checkState(reopened.keyCount() == z.keyCount() && reopened.find("user.tier", "warm").size() == 1, "Bad reopen");
+
+        /* Few changes go to the delta segment */
+        File delta = new File(z.getFile().getPath() + ".delta");
+        Preconditions.checkState(delta.isFile() && delta.length() < z.getFile().length(), "Expect a small delta");
+        checkRebuilt(z, rootDir);
+
+        /* Many changes fold it into the base */
+        List<String> warm = new ArrayList<String>();
+        for (int f = 0; f < FILES / 2; f++) {
+            File file = new File(rootDir, "d1/f" + f);
+            XAttr4J.setxattr(file, "user.tier", "warm", 0);
+            warm.add(file.getPath());
+        }
+        XAttrIndex w = z.update(warm, 2);
+        Preconditions.checkState(!delta.exists(), "Expect compacted");
+        Preconditions.checkState(w.find("user.tier", "warm").size() == FILES / 2 + 1, "Bad compaction");
+        Preconditions.checkState(z.find("user.tier", "warm").size() == 1, "Old index changed");
+        checkRebuilt(w, rootDir);
+        checkRebuilt(XAttrIndex.open(w.getFile()), rootDir);
+    }
+
+    /**
+     * Names read once the intern table is full are distinct instances  keys must still merge
+     */
+    private static void saturated(File rootDir, File index) throws IOException {
+        for (int i = 0; i < 5000; i++) XAttrName.of("user.fill." + i);
+
+        File dir = new File(rootDir, "sat");
+        Preconditions.checkState(dir.mkdir(), "Cannot create %s", dir);
+        for (int f = 0; f < 3; f++) {
+            File file = new File(dir, "f" + f);
+            Preconditions.checkState(file.createNewFile(), "Cannot create %s", file);
+            XAttr4J.setxattr(file, "user.sat.tier", "cold", 0);
+        }
+
+        XAttrIndex x = XAttrIndex.build(index, dir.getAbsolutePath(), 2, "user.sat.");
+        Preconditions.checkState(x.keyCount() == 1, "Bad key count %s", x.keyCount());
+        Preconditions.checkState(x.find("user.sat.tier", "cold").size() == 3, "Bad hits");
+        Preconditions.checkState(XAttrIndex.open(index).find("user.sat.tier", "cold").size() == 3, "Bad reopen");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File root = new File("/tmp", "uuid_" + UUID.randomUUID().toString());
+        Preconditions.checkState(root.mkdir(), "Cannot create %s", root);
+        File index = new File("/tmp", "uuid_" + UUID.randomUUID().toString() + ".xidx");
+        try {
+            for (int d = 0; d < DIRS; d++) {
+                File dir = new File(root, "d" + d);
+                Preconditions.checkState(dir.mkdir(), "Cannot create %s", dir);
+                XAttr4J.setxattr(dir, "user.app.dir", "d" + d, 0);
+                for (int f = 0; f < FILES; f++) {
+                    File file = new File(dir, "f" + f);
+                    Preconditions.checkState(file.createNewFile(), "Cannot create %s", file);
+                    XAttr4J.setxattr(file, "user.tier", tier(f), 0);
+                    XAttr4J.setxattr(file, "user.app.id", d + "/" + f, 0);
+                    XAttr4J.setxattr(file, "user.other", "x", 0);
+                }
+            }
+            /* Let ctime age so that entries are verified  see: XAttrCache#RACY_NANOS */
+            Thread.sleep(1100);
+
+            XAttrIndex x = XAttrIndex.build(index, root.getAbsolutePath(), 4, "user.tier", "user.app.");
+            query(x, root.getAbsolutePath());
+            query(XAttrIndex.open(index), root.getAbsolutePath());
+            update(x, root);
+
+            try (FileOutputStream out = new FileOutputStream(index)) {
+                out.write(new byte[100]);
+            }
+            try {
+                XAttrIndex.open(index);
+                Preconditions.checkState(false, "Expect IOException");
+            } catch (IOException expected) {
+                /* Pass */
+            }
+
+            /* Last  it fills the process-wide intern table */
+            saturated(root, index);
+        } finally {
+            delete(root);
+            index.delete();
+            new File(index.getPath() + ".delta").delete();
+        }
+
+        System.out.println("\nPass!");
+    }
+}
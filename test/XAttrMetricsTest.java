@@ -0,0 +1,113 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrException;
+import net.trineo.xattr4j.XAttrMetrics;
+
+import com.google.common.base.Preconditions;
+
+class XAttrMetricsTest {
+    private static final String NAME = "user.xattr4j.metrics";
+    private static final String MISSING = "user.xattr4j.missing";
+    private static final int ENOENT = 2;
+
+    private static long sum(long[] a) {
+        long n = 0;
+        for (long x : a) n += x;
+        return n;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, JMException {
+        /* Small scratch so that a value fitting in ext4 misses it  must be set before XAttr4J initialized */
+        System.setProperty(XAttr4J.SCRATCH_SIZE_PROPERTY, "1024");
+
+        final File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+        File absent = new File(f.getPath() + "_absent");
+
+        /* Disabled by default  nothing recorded */
+        Preconditions.checkState(!XAttrMetrics.isEnabled(), "Expect disabled by default");
+        XAttr4J.setxattr(f, NAME, "v", 0);
+        XAttrMetrics.Snapshot s = XAttrMetrics.reset();
+        Preconditions.checkState(s.calls("setxattr") == 0, "Recorded while disabled");
+
+        XAttrMetrics.setEnabled(true);
+        XAttr4J.setxattr(f, NAME, "value", 0);
+        Preconditions.checkState(XAttr4J.getxattr(f, NAME, 0).length == 5, "Bad value");
+        Preconditions.checkState(XAttr4J.getxattrOrNull(f, MISSING, 0) == null, "Expect null");
+        Preconditions.checkState(!XAttr4J.existxattr(f, MISSING, 0), "Expect absent");
+        Preconditions.checkState(XAttr4J.trySizexattr(f, MISSING, 0) == -XAttr4J.ENOATTR, "Expect -ENOATTR");
+        XAttr4J.listxattr(f, 0);
+        try {
+            XAttr4J.getxattr(absent, NAME, 0);
+            Preconditions.checkState(false, "Expect XAttrException");
+        } catch (XAttrException e) {
+            Preconditions.checkState(e.getErrno() == ENOENT, "Unexpected errno %s", e.getErrno());
+        }
+        XAttr4J.removexattr(f, NAME, 0);
+
+        s = XAttrMetrics.snapshot();
+        Preconditions.checkState(s.calls("setxattr") == 1 && s.bytes("setxattr") == 5, "Bad setxattr metrics");
+        Preconditions.checkState(s.calls("getxattr") == 3, "Expect 3 getxattr  got %s", s.calls("getxattr"));
+        Preconditions.checkState(s.bytes("getxattr") == 5, "Bad getxattr bytes %s", s.bytes("getxattr"));
+        Preconditions.checkState(s.misses("getxattr") == 1 && s.errors("getxattr") == 1, "Bad getxattr misses/errors");
+        Preconditions.checkState(s.misses("existxattr") == 1 && s.misses("sizexattr") == 1, "Bad probe misses");
+        Preconditions.checkState(s.calls("listxattr") == 1 && s.calls("removexattr") == 1, "Bad list/remove metrics");
+        Preconditions.checkState(s.errnos().get(ENOENT) == 1, "Bad ENOENT count %s", s.errnos());
+        Preconditions.checkState(s.errnos().get(XAttr4J.ENOATTR) == 3, "Bad ENOATTR count %s", s.errnos());
+        for (String op : XAttrMetrics.operations()) {
+            Preconditions.checkState(sum(s.histogram(op)) == s.calls(op), "Histogram of %s mismatch", op);
+        }
+        long p50 = s.percentile("getxattr", 50);
+        Preconditions.checkState(p50 > 0 && p50 <= s.percentile("getxattr", 100), "Bad percentile %s", p50);
+
+        /* Values beyond the initial scratch size miss it once per thread */
+        XAttr4J.setxattr(f, NAME, new byte[3000], 0);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    XAttr4J.getxattr(f, NAME, 0);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        t.start();
+        t.join();
+        Preconditions.checkState(XAttrMetrics.snapshot().scratchMisses() >= 1, "Expect a scratch miss");
+
+        /* MBean */
+        XAttrMetrics.registerMBean();
+        XAttrMetrics.registerMBean();
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName on = new ObjectName(XAttrMetrics.OBJECT_NAME);
+        TabularData calls = (TabularData) mbs.getAttribute(on, "Calls");
+        Preconditions.checkState(calls.size() == XAttrMetrics.operations().size(), "Bad Calls attribute");
+        Preconditions.checkState(((TabularData) mbs.getAttribute(on, "Errnos")).size() == 2, "Bad Errnos attribute");
+        mbs.invoke(on, "reset", null, null);
+        Preconditions.checkState(XAttrMetrics.snapshot().calls("setxattr") == 0, "Expect reset");
+        Preconditions.checkState(XAttrMetrics.snapshot().errnos().isEmpty(), "Expect reset");
+        XAttrMetrics.unregisterMBean();
+        Preconditions.checkState(!mbs.isRegistered(on), "Expect unregistered");
+
+        XAttrMetrics.setEnabled(false);
+        XAttr4J.getxattr(f, NAME, 0);
+        Map<Integer, Long> errnos = XAttrMetrics.snapshot().errnos();
+        Preconditions.checkState(XAttrMetrics.snapshot().calls("getxattr") == 0 && errnos.isEmpty(), "Recorded while disabled");
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
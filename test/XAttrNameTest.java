@@ -0,0 +1,55 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.nio.charset.StandardCharsets;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+
+import com.google.common.base.Preconditions;
+
+class XAttrNameTest {
+    private static final XAttrName OWNER = XAttrName.of("user.owner");
+    private static final XAttrName ETAG = XAttrName.of("user.etag");
+
+    public static void main(String[] args) throws IOException {
+        Preconditions.checkState(XAttrName.of("user.owner") == OWNER, "Expect interned instance");
+        Preconditions.checkState(OWNER.getName().equals("user.owner"), "Bad name %s", OWNER);
+
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+        XAttrPath p = new XAttrPath(f);
+
+        XAttr4J.setxattr(p, OWNER, "alice".getBytes(StandardCharsets.UTF_8), 0);
+        XAttr4J.setxattr(f.getAbsolutePath(), ETAG, ByteBuffer.wrap("deadbeef".getBytes(StandardCharsets.UTF_8)), 0);
+        /* Non-ASCII name */
+        XAttr4J.setxattr(p, XAttrName.of("user.\u540d\u524d"), "x".getBytes(StandardCharsets.UTF_8), 0);
+
+        String str = new String(XAttr4J.getxattr(p, OWNER, 0), StandardCharsets.UTF_8);
+        Preconditions.checkState(str.equals("alice"), "Bad xattr value %s", str);
+        Preconditions.checkState(XAttr4J.sizexattr(p, ETAG, 0) == 8, "Bad xattr size");
+        Preconditions.checkState(XAttr4J.existxattr(p, ETAG, 0), "Expect existence");
+
+        XAttrName[] names = XAttr4J.listxattrNames(p, 0);
+        Preconditions.checkState(names.length == 3, "Expect 3 names  got %s", names.length);
+        boolean seenOwner = false, seenEtag = false, seenNonAscii = false;
+        for (XAttrName n : names) {
+            if (n == OWNER) seenOwner = true;
+            if (n == ETAG) seenEtag = true;
+            if (n.getName().equals("user.\u540d\u524d")) seenNonAscii = n == XAttrName.of("user.\u540d\u524d");
+        }
+        Preconditions.checkState(seenOwner && seenEtag && seenNonAscii, "Listed names aren't interned");
+
+        XAttr4J.removexattr(p, OWNER, 0);
+        Preconditions.checkState(XAttr4J.getxattrOrNull(p, OWNER, 0) == null, "Expect null");
+        XAttr4J.removexattr(p, OWNER, 0, true);
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,147 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrMetrics;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+import net.trineo.xattr4j.XAttrRecord;
+
+import com.google.common.base.Preconditions;
+
+class XAttrRecordTest {
+    private static final XAttrName NAME = XAttrName.of("user.xattr4j.record");
+
+    private static void expectMalformed(byte[] b) {
+        try {
+            XAttrRecord.decode(b);
+            Preconditions.checkState(false, "Expect IllegalArgumentException  %s", Arrays.toString(b));
+        } catch (IllegalArgumentException expected) {
+            /* Pass */
+        }
+    }
+
+    private static void codec() {
+        Preconditions.checkState(XAttrRecord.EMPTY.size() == 0 && XAttrRecord.EMPTY.encodedSize() == 4, "Bad empty record");
+
+        long[] longs = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE};
+        XAttrRecord.Builder bd = new XAttrRecord.Builder();
+        for (int i = 0; i < longs.length; i++) bd.put("l" + i, longs[i]);
+        bd.put("s", "\u4f60\u597d")
+          .put("b", new byte[]{1, 2, 3})
+          .put("t", true)
+          .put("f", false)
+          .put("d", Math.PI)
+          .put("\u00e9", "non-ASCII key")
+          .put("z", 1L)
+          .remove("z");
+        XAttrRecord r = XAttrRecord.decode(bd.build().encode());
+
+        Preconditions.checkState(r.size() == longs.length + 6, "Bad size %s", r.size());
+        for (int i = 0; i < longs.length; i++) {
+            Preconditions.checkState(r.getLong("l" + i, 42) == longs[i], "Bad long #%s", i);
+        }
+        Preconditions.checkState(r.getString("s").equals("\u4f60\u597d"), "Bad string");
+        Preconditions.checkState(Arrays.equals(r.getBytes("b"), new byte[]{1, 2, 3}), "Bad bytes");
+        Preconditions.checkState(r.getBoolean("t", false) && !r.getBoolean("f", true), "Bad booleans");
+        Preconditions.checkState(r.getDouble("d", 0) == Math.PI, "Bad double");
+        Preconditions.checkState(r.getString("\u00e9").equals("non-ASCII key"), "Bad non-ASCII key");
+        Preconditions.checkState(!r.contains("z") && r.getLong("z", 42) == 42 && r.getString("z") == null, "Expect absent");
+        Preconditions.checkState(r.type("d") == XAttrRecord.TYPE_DOUBLE && r.type("z") == -1, "Bad type");
+        /* Small longs take a single byte */
+        Preconditions.checkState(r.getBytes("l1").length == 1 && r.getBytes("l0").length == 0, "Bad varint size");
+
+        try {
+            r.getLong("s", 0);
+            Preconditions.checkState(false, "Expect IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            /* Pass */
+        }
+
+        /* Index sorted by UTF-8 bytes  non-ASCII keys last */
+        Preconditions.checkState(r.keys().get(r.size() - 1).equals("\u00e9"), "Bad key order %s", r.keys());
+        Map<String, Object> m = r.toMap();
+        Preconditions.checkState(m.get("l7").equals(Long.MIN_VALUE) && m.get("t").equals(true), "Bad map %s", m);
+
+        /* Edit keeps other fields  equal records encode equally */
+        XAttrRecord r2 = r.edit().put("s", "x").build();
+        Preconditions.checkState(r2.getString("s").equals("x") && r2.getDouble("d", 0) == Math.PI, "Bad edit");
+        Preconditions.checkState(r2.edit().put("s", "\u4f60\u597d").build().equals(r), "Expect equal records");
+
+        /* Unknown types of newer writers are kept through edit() */
+        byte[] b = new XAttrRecord.Builder().put("u", new byte[]{9}).put("v", 1).build().encode();
+        b[4 + 1 + 1] = 99;
+        XAttrRecord u = XAttrRecord.decode(b).edit().put("w", "w").build();
+        Preconditions.checkState(u.type("u") == 99 && Arrays.equals(u.getBytes("u"), new byte[]{9}), "Unknown type lost");
+
+        expectMalformed(new byte[0]);
+        expectMalformed(new byte[]{0, 1, 0, 0});
+        byte[] good = r.encode();
+        expectMalformed(Arrays.copyOf(good, good.length - 1));
+        byte[] newer = good.clone();
+        newer[1] = (byte) (XAttrRecord.VERSION + 1);
+        expectMalformed(newer);
+        byte[] badBool = new XAttrRecord.Builder().put("t", true).build().encode();
+        /* Value length(low byte) of the only entry */
+        badBool[4 + 1 + 1 + 1 + 2 + 1] = 0;
+        expectMalformed(badBool);
+
+        try {
+            new XAttrRecord.Builder().put("big", new byte[XAttrRecord.MAX_SIZE]).build();
+            Preconditions.checkState(false, "Expect IllegalStateException");
+        } catch (IllegalStateException expected) {
+            /* Pass */
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        codec();
+
+        File f = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+        XAttrPath p = new XAttrPath(f);
+
+        Preconditions.checkState(XAttrRecord.getxattrOrNull(p, NAME, 0) == null, "Expect null");
+
+        /* Twelve fields  a single attribute */
+        XAttrRecord r = XAttrRecord.update(p, NAME, 0, bd -> {
+            for (int i = 0; i < 12; i++) bd.put("field" + i, (long) i * 1000);
+        });
+        Preconditions.checkState(r.size() == 12, "Bad size");
+        Preconditions.checkState(XAttr4J.listxattr(f, 0).length == 1, "Expect one attribute");
+
+        XAttrRecord r2 = XAttrRecord.update(p, NAME, XAttr4J.XATTR_CREATE, bd -> bd.put("owner", "me").remove("field0"));
+        Preconditions.checkState(r2.size() == 12 && r2.getString("owner").equals("me"), "Bad update");
+
+        /* Reading every field takes one getxattr(2) */
+        XAttrMetrics.setEnabled(true);
+        XAttrMetrics.reset();
+        XAttrRecord r3 = XAttrRecord.getxattr(p, NAME, 0);
+        Preconditions.checkState(r3.equals(r2) && r3.getLong("field11", 0) == 11000, "Bad read back");
+        Preconditions.checkState(XAttrMetrics.snapshot().calls("getxattr") == 1, "Expect one getxattr");
+
+        /* No-op update writes nothing */
+        XAttrMetrics.reset();
+        XAttrRecord.update(p, NAME, 0, bd -> bd.put("owner", "me"));
+        Preconditions.checkState(XAttrMetrics.snapshot().calls("setxattr") == 0, "Expect no setxattr");
+        XAttrMetrics.setEnabled(false);
+
+        /* Not a record */
+        XAttr4J.setxattr(f, NAME.toString(), "plain", 0);
+        try {
+            XAttrRecord.getxattr(p, NAME, 0);
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (IOException e) {
+            Preconditions.checkState(e.getCause() instanceof IllegalArgumentException, "Unexpected cause %s", e.getCause());
+        }
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,122 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrBatchResult;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrPath;
+import net.trineo.xattr4j.XAttrRing;
+
+import com.google.common.base.Preconditions;
+
+class XAttrRingTest {
+    private static final int FILES = 300;
+    private static final XAttrName NAME = XAttrName.of("user.xattr4j.ring");
+    private static final XAttrName BIG = XAttrName.of("user.xattr4j.big");
+
+    private static byte[] value(int i) {
+        return ("v" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void run(XAttrPath[] paths) throws IOException {
+        /* Ring smaller than batch  submitted in rounds  small value buffer  big values replayed */
+        try (XAttrRing ring = new XAttrRing(64, 16)) {
+            System.out.printf("native: %s%n", ring.isNative());
+
+            for (int i = 0; i < FILES; i += 2) {
+                Preconditions.checkState(ring.setxattr(paths[i], NAME, value(i), 0) == i / 2, "Bad index");
+            }
+            /* XATTR_CREATE on an existing attribute */
+            int dup = ring.setxattr(paths[0], NAME, value(0), XAttr4J.XATTR_CREATE);
+            byte[] big = new byte[1000];
+            Arrays.fill(big, (byte) 'x');
+            int bigSet = ring.setxattr(paths[1], BIG, big, 0);
+
+            XAttrBatchResult r = ring.submit();
+            Preconditions.checkState(ring.size() == 0, "Queue not emptied");
+            for (int i = 0; i < FILES / 2; i++) {
+                Preconditions.checkState(r.isSuccess(i), "setxattr #%s fail  errno: %s", i, r.errno(i));
+                Preconditions.checkState(r.value(i) == null, "Expect no value of setxattr");
+            }
+            Preconditions.checkState(r.errno(dup) == 17, "Expect EEXIST  got %s", r.errno(dup));
+            Preconditions.checkState(r.isSuccess(bigSet), "Big setxattr fail  errno: %s", r.errno(bigSet));
+
+            for (int i = 0; i < FILES; i++) ring.getxattr(paths[i], NAME, 0);
+            int bigGet = ring.getxattr(paths[1], BIG, 0);
+            int nofollow = ring.getxattr(paths[2], NAME, XAttr4J.XATTR_NOFOLLOW);
+            int badopt = ring.getxattr(paths[2], NAME, 0x8000);
+
+            int fgets = -1;
+            try (RandomAccessFile raf = new RandomAccessFile(new File(paths[4].toString()), "rw")) {
+                int fd = fd(raf);
+                if (fd >= 0) {
+                    fgets = ring.fgetxattr(fd, NAME, 0);
+                    ring.fsetxattr(fd, BIG, value(-1), 0);
+                }
+                r = ring.submit();
+            }
+
+            for (int i = 0; i < FILES; i++) {
+                if (i % 2 == 0) {
+                    Preconditions.checkState(Arrays.equals(r.value(i), value(i)), "Bad value #%s", i);
+                } else {
+                    Preconditions.checkState(r.errno(i) == XAttr4J.ENOATTR, "Expect ENOATTR  got %s", r.errno(i));
+                    Preconditions.checkState(r.value(i) == null, "Expect null");
+                }
+            }
+            Preconditions.checkState(Arrays.equals(r.value(bigGet), big), "Bad big value");
+            Preconditions.checkState(Arrays.equals(r.value(nofollow), value(2)), "Bad nofollow value");
+            Preconditions.checkState(r.errno(badopt) == 22, "Expect EINVAL  got %s", r.errno(badopt));
+            if (fgets >= 0) {
+                Preconditions.checkState(Arrays.equals(r.value(fgets), value(4)), "Bad fgetxattr value");
+                Preconditions.checkState(r.isSuccess(fgets + 1), "fsetxattr fail  errno: %s", r.errno(fgets + 1));
+                Preconditions.checkState(Arrays.equals(XAttr4J.getxattr(paths[4], BIG, 0), value(-1)), "Bad fsetxattr value");
+            }
+
+            Preconditions.checkState(ring.submit().size() == 0, "Expect empty result");
+        }
+
+        for (XAttrPath p : paths) {
+            XAttr4J.removexattr(p, NAME, 0, true);
+            XAttr4J.removexattr(p, BIG, 0, true);
+        }
+    }
+
+    /* No public fd accessor before Java 9  fd-oriented operations are skipped if inaccessible */
+    private static int fd(RandomAccessFile raf) throws IOException {
+        try {
+            java.lang.reflect.Field f = java.io.FileDescriptor.class.getDeclaredField("fd");
+            f.setAccessible(true);
+            return f.getInt(raf.getFD());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(dir.mkdir(), "%s cannot be created", dir);
+        XAttrPath[] paths = new XAttrPath[FILES];
+        for (int i = 0; i < FILES; i++) {
+            File f = new File(dir, "f" + i);
+            Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+            paths[i] = new XAttrPath(f);
+        }
+
+        run(paths);
+        /* Same results via plain syscalls */
+        System.setProperty(XAttrRing.URING_PROPERTY, "false");
+        run(paths);
+
+        for (XAttrPath p : paths) Preconditions.checkState(new File(p.toString()).delete(), "%s cannot be deleted", p);
+        Preconditions.checkState(dir.delete(), "%s cannot be deleted", dir);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,144 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrException;
+import net.trineo.xattr4j.XAttrInputStream;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrOutputStream;
+import net.trineo.xattr4j.XAttrPath;
+
+import com.google.common.base.Preconditions;
+
+class XAttrStreamTest {
+    private static final XAttrName NAME = XAttrName.of("user.xattr4j.manifest");
+
+    private static byte[] random(int n, long seed) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static void write(XAttrPath p, byte[] v, int chunkSize) throws IOException {
+        try (OutputStream out = new XAttrOutputStream(p, NAME, 0, chunkSize)) {
+            /* Odd sized writes straddle chunk boundaries */
+            for (int off = 0; off < v.length; off += 777) out.write(v, off, Math.min(777, v.length - off));
+        }
+    }
+
+    private static byte[] read(XAttrPath p) throws IOException {
+        try (XAttrInputStream in = new XAttrInputStream(p, NAME, 0)) {
+            byte[] b = new byte[(int) in.length()];
+            int off = 0;
+            for (int n; (n = in.read(b, off, Math.min(1000, b.length - off))) > 0; ) off += n;
+            Preconditions.checkState(off == b.length && in.read() == -1, "Short read %s", off);
+            return b;
+        }
+    }
+
+    private static int attributes(File f) throws IOException {
+        return XAttr4J.listxattr(f, 0).length;
+    }
+
+    /**
+     * @param dir   Directory  large values need a file system taking them(e.g. tmpfs  XFS  ext4 with ea_inode)
+     */
+    private static void test(File dir, int large, int small) throws IOException {
+        File f = new File(dir, "uuid_" + UUID.randomUUID().toString());
+        Preconditions.checkState(f.createNewFile(), "%s cannot be created", f);
+        XAttrPath p = new XAttrPath(f);
+
+        /* Absent */
+        try {
+            new XAttrInputStream(p, NAME, 0).close();
+            Preconditions.checkState(false, "Expect XAttrException");
+        } catch (XAttrException e) {
+            Preconditions.checkState(e.getErrno() == XAttr4J.ENOATTR, "Unexpected errno %s", e.getErrno());
+        }
+        Preconditions.checkState(!XAttrOutputStream.removexattr(p, NAME, 0), "Expect absent");
+
+        /* Empty value  header only */
+        write(p, new byte[0], 0);
+        Preconditions.checkState(read(p).length == 0 && attributes(f) == 1, "Bad empty value");
+
+        /* Chunk size from the file system  shrinks on ext4 without ea_inode */
+        byte[] v = random(large, 1);
+        XAttrOutputStream out = new XAttrOutputStream(p, NAME, 0);
+        out.write(v);
+        int cs = out.chunkSize();
+        out.close();
+        Preconditions.checkState(Arrays.equals(read(p), v), "Bad value of %s bytes", v.length);
+        Preconditions.checkState(attributes(f) == 1 + (v.length + cs - 1) / cs, "Bad attribute count");
+
+        /* Rewrite shorter with explicit chunks  old generation removed */
+        byte[] v2 = random(small, 2);
+        write(p, v2, 512);
+        Preconditions.checkState(Arrays.equals(read(p), v2), "Bad rewrite");
+        Preconditions.checkState(attributes(f) == 1 + (small + 511) / 512, "Stale chunks left %s", attributes(f));
+
+        /* Byte-wise I/O and skip */
+        try (OutputStream o = new XAttrOutputStream(p, NAME, 0, 256)) {
+            for (byte b : v2) o.write(b);
+        }
+        try (InputStream in = new XAttrInputStream(p, NAME, 0)) {
+            Preconditions.checkState(in.read() == (v2[0] & 0xff), "Bad first byte");
+            Preconditions.checkState(in.skip(600) == 600 && in.read() == (v2[601] & 0xff), "Bad skip");
+            Preconditions.checkState(in.skip(10000) == v2.length - 602 && in.read() == -1, "Bad skip to end");
+        }
+
+        /* Abort keeps the previous value */
+        XAttrOutputStream o = new XAttrOutputStream(p, NAME, 0, 256);
+        o.write(new byte[small]);
+        o.abort();
+        o.close();
+        Preconditions.checkState(Arrays.equals(read(p), v2) && attributes(f) == 1 + (small + 255) / 256, "Abort leaked");
+
+        /* Rewritten under a reader */
+        try (InputStream in = new XAttrInputStream(p, NAME, 0)) {
+            in.read(new byte[100]);
+            write(p, random(small, 3), 256);
+            write(p, random(small, 4), 256);
+            /* Same generation again  caught by the CRC */
+            while (in.read(new byte[small]) >= 0) continue;
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (XAttrException e) {
+            throw e;
+        } catch (IOException expected) {
+            /* Pass */
+        }
+
+        /* Not chunked */
+        XAttr4J.setxattr(p, NAME, new byte[]{1, 2, 3}, 0);
+        try {
+            new XAttrOutputStream(p, NAME, 0).close();
+            Preconditions.checkState(false, "Expect IOException");
+        } catch (XAttrException e) {
+            throw e;
+        } catch (IOException expected) {
+            /* Pass */
+        }
+        XAttr4J.removexattr(p, NAME, 0);
+
+        write(p, v2, 512);
+        Preconditions.checkState(XAttrOutputStream.removexattr(p, NAME, 0) && attributes(f) == 0, "Bad remove");
+
+        Preconditions.checkState(f.delete(), "%s cannot be deleted", f);
+    }
+
+    public static void main(String[] args) throws IOException {
+        /* ext4 without ea_inode takes ~4 KiB per inode in total  rewrites need room for both values */
+        test(new File("/tmp"), 1500, 1000);
+
+        File shm = new File("/dev/shm");
+        if (shm.isDirectory()) test(shm, 1 << 20, 3000);
+
+        System.out.println("\nPass!");
+    }
+}
@@ -0,0 +1,120 @@
+package test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import net.trineo.xattr4j.XAttr4J;
+import net.trineo.xattr4j.XAttrName;
+import net.trineo.xattr4j.XAttrWalker;
+
+import com.google.common.base.Preconditions;
+
+class XAttrWalkerTest {
+    /**
+     * A writer blocks in open(2) until the FIFO is opened for reading
+     *  it's still blocked after the walk iff the walker never opened the FIFO
+     */
+    private static Thread fifoWriter(final File fifo) throws IOException, InterruptedException {
+        Process p = new ProcessBuilder("mkfifo", fifo.getPath()).start();
+        Preconditions.checkState(p.waitFor() == 0, "%s cannot be created", fifo);
+
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    new FileOutputStream(fifo).close();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        Thread.sleep(200);
+        Preconditions.checkState(t.isAlive(), "Writer of %s isn't blocked", fifo);
+        return t;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File root = new File(String.format("/tmp/uuid_%s", UUID.randomUUID().toString()));
+        Preconditions.checkState(root.mkdir(), "%s cannot be created", root);
+
+        /* root/d0..d3/f0..f299  every file carries 2 attributes  one of them filtered out */
+        int expected = 0;
+        for (int d = 0; d < 4; d++) {
+            File dir = new File(root, "d" + d);
+            Preconditions.checkState(dir.mkdir(), "%s cannot be created", dir);
+            XAttr4J.setxattr(dir, "user.app.dir", "d" + d, 0);
+            expected++;
+            for (int f = 0; f < 300; f++) {
+                File file = new File(dir, "f" + f);
+                Preconditions.checkState(file.createNewFile(), "%s cannot be created", file);
+                XAttr4J.setxattr(file, "user.app.id", d + "/" + f, 0);
+                XAttr4J.setxattr(file, "user.other", "x", 0);
+                expected++;
+            }
+        }
+        Files.createSymbolicLink(new File(root, "link").toPath(), new File(root, "d0").toPath());
+        File fifo = new File(root, "d1/fifo");
+        Thread writer = fifoWriter(fifo);
+
+        final Map<String, String> got = new ConcurrentHashMap<String, String>();
+        XAttrWalker walker = new XAttrWalker(4, 0, "user.app.");
+        walker.walk(root.getAbsolutePath(), new XAttrWalker.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                Preconditions.checkState(name.getName().startsWith("user.app."), "Unfiltered name %s", name);
+                String old = got.put(path + ":" + name, new String(value, StandardCharsets.UTF_8));
+                Preconditions.checkState(old == null, "Duplicated record %s:%s", path, name);
+            }
+
+            @Override
+            public void failed(String path, IOException e) {
+                throw new IllegalStateException(path, e);
+            }
+        });
+
+        Preconditions.checkState(got.size() == expected, "Expect %s records  got %s", expected, got.size());
+        String v = got.get(root.getAbsolutePath() + "/d2/f123:user.app.id");
+        Preconditions.checkState("2/123".equals(v), "Bad value %s", v);
+        v = got.get(root.getAbsolutePath() + "/d3:user.app.dir");
+        Preconditions.checkState("d3".equals(v), "Bad value %s", v);
+
+        /* Unfiltered */
+        final int[] n = new int[1];
+        new XAttrWalker(1, 0).walk(root.getAbsolutePath(), new XAttrWalker.Visitor() {
+            @Override
+            public void visit(String path, XAttrName name, byte[] value) {
+                n[0]++;
+            }
+
+            @Override
+            public void failed(String path, IOException e) {
+                throw new IllegalStateException(path, e);
+            }
+        });
+        Preconditions.checkState(n[0] == expected + 4 * 300, "Unexpected record count %s", n[0]);
+
+        Preconditions.checkState(writer.isAlive(), "%s was opened by the walker", fifo);
+        new FileInputStream(fifo).close();
+        writer.join();
+        Preconditions.checkState(fifo.delete(), "%s cannot be deleted", fifo);
+
+        Preconditions.checkState(new File(root, "link").delete(), "link cannot be deleted");
+        for (int d = 0; d < 4; d++) {
+            File dir = new File(root, "d" + d);
+            for (int f = 0; f < 300; f++) Preconditions.checkState(new File(dir, "f" + f).delete(), "Cannot delete");
+            Preconditions.checkState(dir.delete(), "%s cannot be deleted", dir);
+        }
+        Preconditions.checkState(root.delete(), "%s cannot be deleted", root);
+
+        System.out.println("\nPass!");
+    }
+}